@@ -0,0 +1,245 @@
+package io.datadoc.authservice.config;
+
+import io.datadoc.authservice.model.audit.AuditOverflowPolicy;
+import io.datadoc.authservice.model.limit.OperationPriority;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This is a configuration class for the auth-service itself. It provides the settings of the
+ * service's own runtime, independent of the Keycloak instance.
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "auth-service")
+public class AuthServiceConfig {
+
+  private Threads threads = new Threads();
+  private UserCache userCache = new UserCache();
+  private Revocation revocation = new Revocation();
+  private RejectedTokens rejectedTokens = new RejectedTokens();
+  private Batch batch = new Batch();
+  private PersistedQueries persistedQueries = new PersistedQueries();
+  private Sessions sessions = new Sessions();
+  private LoginRateLimit loginRateLimit = new LoginRateLimit();
+  private Audit audit = new Audit();
+  private ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit();
+  private Grpc grpc = new Grpc();
+
+  @Getter
+  @Setter
+  public static class Threads {
+
+    private boolean virtual;
+    private Duration pinnedThreshold = Duration.ofMillis(20);
+  }
+
+  @Getter
+  @Setter
+  public static class UserCache {
+
+    private boolean enabled = true;
+    private long maximumSize = 10_000;
+    private Duration maxTtl = Duration.ofMinutes(5);
+    private Shared shared = new Shared();
+
+    @Getter
+    @Setter
+    public static class Shared {
+
+      // none - this instance only, memory - InMemorySharedCacheStore, redis - a Redis server.
+      private String store = "none";
+      // redis://[password@]host[:port][/database] or rediss:// for TLS.
+      private String url = "redis://localhost:6379";
+      // Prefix of the keys and the invalidation channel, so environments can share a server.
+      private String namespace = "auth-service";
+      // Reads taking longer are treated as misses.
+      private Duration timeout = Duration.ofMillis(100);
+      // Users loaded into the in-process cache on startup, revocations are always loaded.
+      private int warmUpSize = 10_000;
+    }
+  }
+
+  @Getter
+  @Setter
+  public static class Revocation {
+
+    private boolean enabled = true;
+    private int initialCapacity = 1024;
+    // Revoked sessions are remembered this long - at least the access token lifespan of the realm.
+    private Duration sessionTtl = Duration.ofMinutes(15);
+    // Revocations are only kept in memory when no file is set.
+    private String file;
+    private int fileCapacity = 1 << 20;
+  }
+
+  @Getter
+  @Setter
+  public static class RejectedTokens {
+
+    private boolean enabled = true;
+    private long maximumSize = 100_000;
+    // Kept short - e.g. a Keycloak node may accept a token another node didn't know yet.
+    private Duration ttl = Duration.ofSeconds(30);
+  }
+
+  @Getter
+  @Setter
+  public static class Batch {
+
+    // Keycloak userinfo calls made concurrently for the tokens of one request.
+    private int maxConcurrency = 16;
+    // Operations accepted in one /graphql/batch request.
+    private int maxOperations = 20;
+    // Access tokens accepted in the list of one `users` field.
+    private int maxTokens = 100;
+  }
+
+  @Getter
+  @Setter
+  public static class PersistedQueries {
+
+    private boolean enabled = true;
+    // Parsed and validated documents kept in memory, keyed by the hash of their text.
+    private long maximumSize = 1_000;
+    // Documents known up front - the only ones executed in the allow-list mode.
+    private String documents = "classpath:graphql/persisted/*.graphql";
+    private boolean allowListOnly;
+  }
+
+  @Getter
+  @Setter
+  public static class Sessions {
+
+    // memory - InMemorySessionStore, other values select a distributed SessionStore bean.
+    private String store = "memory";
+    private int stripes = 64;
+    private long maximumSize = 100_000;
+    // Sessions live as long as their refresh token, capped by this - also used for offline tokens.
+    private Duration maxTtl = Duration.ofHours(12);
+    private Refresh refresh = new Refresh();
+
+    @Getter
+    @Setter
+    public static class Refresh {
+
+      private boolean enabled = true;
+      // Access tokens are refreshed lead-time plus up to jitter before they expire.
+      private Duration leadTime = Duration.ofSeconds(30);
+      private Duration jitter = Duration.ofSeconds(30);
+      private int workers = 4;
+      // Refreshes started per second at most.
+      private int maxRate = 50;
+      private Duration retryDelay = Duration.ofSeconds(5);
+    }
+  }
+
+  @Getter
+  @Setter
+  public static class LoginRateLimit {
+
+    private boolean enabled = true;
+    // Attempts per client address - a whole NAT or office can share one.
+    private Limit address = new Limit(20, Duration.ofMinutes(1));
+    private Limit email = new Limit(5, Duration.ofMinutes(1));
+    private int stripes = 16;
+    // Buckets that are full again are dropped this often.
+    private Duration sweepInterval = Duration.ofSeconds(30);
+
+    @Getter
+    @Setter
+    public static class Limit {
+
+      // Burst of attempts allowed at once, refilled evenly over the period.
+      private int attempts;
+      private Duration period;
+
+      public Limit() {
+      }
+
+      public Limit(int attempts, Duration period) {
+        this.attempts = attempts;
+        this.period = period;
+      }
+    }
+  }
+
+  @Getter
+  @Setter
+  public static class Audit {
+
+    private boolean enabled = true;
+    // Preallocated event slots, rounded up to a power of two.
+    private int bufferSize = 8192;
+    private AuditOverflowPolicy overflow = AuditOverflowPolicy.DROP;
+    // Events handed to the sink at once at most.
+    private int batchSize = 256;
+    // How long the idle writer sleeps before it checks for new events.
+    private Duration pollInterval = Duration.ofMillis(10);
+    // file - MappedFileAuditSink, other values select an AuditSink bean.
+    private String sink = "file";
+    private String file = "logs/audit.jsonl";
+    // The file grows by this many bytes at once.
+    private int fileChunkSize = 16 << 20;
+    // Forces every batch to disk, not just to the page cache.
+    private boolean fileSync;
+  }
+
+  @Getter
+  @Setter
+  public static class ConcurrencyLimit {
+
+    private boolean enabled = true;
+    // Operations in flight at most - adapted to the RTT of the Keycloak calls from there.
+    private int initialLimit = 50;
+    private int minLimit = 8;
+    private int maxLimit = 1_000;
+    // Share of a new limit estimate taken over by the limit at every sample.
+    private double smoothing = 0.2;
+    // The limit only shrinks once the RTT exceeds the long-term RTT by this factor.
+    private double rttTolerance = 1.5;
+    // Samples the long-term RTT is averaged over.
+    private int longWindow = 600;
+    private Duration retryAfter = Duration.ofSeconds(1);
+    // Operations without an entry are NORMAL.
+    private Map<String, OperationPriority> priorities = new HashMap<>(Map.of(
+        "me", OperationPriority.HIGH,
+        "sessionUser", OperationPriority.HIGH,
+        "refresh", OperationPriority.HIGH,
+        "refreshSession", OperationPriority.HIGH,
+        "validateToken", OperationPriority.HIGH,
+        "getUser", OperationPriority.HIGH,
+        "login", OperationPriority.LOW,
+        "loginSession", OperationPriority.LOW
+    ));
+    // Share of the limit the operations of a priority may fill.
+    private Map<OperationPriority, Double> shares = new EnumMap<>(Map.of(
+        OperationPriority.HIGH, 1.0,
+        OperationPriority.NORMAL, 0.9,
+        OperationPriority.LOW, 0.6
+    ));
+  }
+
+  @Getter
+  @Setter
+  public static class Grpc {
+
+    private boolean enabled;
+    // Port of the internal gRPC server, -1 for none, e.g. with only the in-process server.
+    private int port = 9090;
+    // Loopback by default, as the service is internal - 0.0.0.0 for all interfaces.
+    private String address = "127.0.0.1";
+    // Name of an in-process server for callers in the same JVM, such as tests and benchmarks.
+    private String inProcessName;
+    // Requests of a stream resolved at once - further ones are read as these complete.
+    private int maxConcurrentPerStream = 16;
+    private Duration shutdownTimeout = Duration.ofSeconds(10);
+  }
+}
@@ -1,5 +1,16 @@
 package io.datadoc.authservice.config;
 
+import io.datadoc.authservice.model.auth.TokenVerificationMode;
+import io.datadoc.authservice.model.http.HttpExecutionMode;
+import io.datadoc.authservice.model.http.KeycloakEndpoint;
+import io.datadoc.authservice.model.http.LoadBalancingStrategy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -7,7 +18,8 @@ import org.springframework.context.annotation.Configuration;
 
 /**
  * This is a configuration class for the Keycloak. It provides basic information about the Keycloak
- * instance.
+ * instance. The realm, client and endpoints at the top level are the ones of the default tenant -
+ * other tenants are set under tenants or in the tenant-file.
  */
 @Getter
 @Setter
@@ -18,8 +30,20 @@ public class KeycloakConfig {
   private String realm;
   private Client client;
   private String baseUrl;
+  // Base URLs of the cluster nodes the calls are spread over, base-url itself when empty.
+  private List<String> nodes = new ArrayList<>();
   private String protocol;
+  private String issuer;
   private Endpoints endpoints;
+  private Verification verification = new Verification();
+  private Http http = new Http();
+  private Resilience resilience = new Resilience();
+  private LoadBalancing loadBalancing = new LoadBalancing();
+  private HttpExecutionMode executionMode = HttpExecutionMode.BLOCKING;
+  private Map<String, Tenant> tenants = new LinkedHashMap<>();
+  // YAML file with more tenants under a `tenants` key, reloaded when it changes.
+  private String tenantFile;
+  private Duration tenantReloadInterval = Duration.ofSeconds(10);
 
   @Getter
   @Setter
@@ -29,6 +53,23 @@ public class KeycloakConfig {
     private String secret;
   }
 
+  /**
+   * Realm and client of a tenant. Unset values are taken from the default tenant, the issuer
+   * defaults to base-url/realm and the nodes to the base-url - or to the nodes of the default
+   * tenant, when the base-url isn't set either.
+   */
+  @Getter
+  @Setter
+  public static class Tenant {
+
+    private String realm;
+    private Client client;
+    private String baseUrl;
+    private List<String> nodes;
+    private String protocol;
+    private String issuer;
+  }
+
   @Getter
   @Setter
   public static class Endpoints {
@@ -37,6 +78,150 @@ public class KeycloakConfig {
     private String revoke;
     private String logout;
     private String userInfo;
+    private String jwks;
+
+    /**
+     * Returns the URL of the given endpoint.
+     *
+     * @param endpoint The Keycloak endpoint.
+     * @return The URL of the endpoint.
+     */
+    public String get(KeycloakEndpoint endpoint) {
+      return switch (endpoint) {
+        case TOKEN -> this.token;
+        case REVOKE -> this.revoke;
+        case LOGOUT -> this.logout;
+        case USERINFO -> this.userInfo;
+      };
+    }
   }
-}
 
+  @Getter
+  @Setter
+  public static class Verification {
+
+    private TokenVerificationMode mode = TokenVerificationMode.REMOTE;
+    private Duration jwksCacheTtl = Duration.ofMinutes(15);
+    private Duration jwksRefreshTimeout = Duration.ofSeconds(5);
+    private Duration clockSkew = Duration.ofSeconds(30);
+  }
+
+  @Getter
+  @Setter
+  public static class Http {
+
+    private int maxConnections = 200;
+    private int maxConnectionsPerRoute = 50;
+    private Duration connectTimeout = Duration.ofSeconds(2);
+    private Duration socketTimeout = Duration.ofSeconds(5);
+    private Duration responseTimeout = Duration.ofSeconds(5);
+    private Duration connectionRequestTimeout = Duration.ofSeconds(1);
+    private Duration idleEvictionTime = Duration.ofSeconds(30);
+    private Duration timeToLive = Duration.ofMinutes(5);
+  }
+
+  /**
+   * Load balancing of the calls over the nodes of a tenant. Nodes failing their active health
+   * checks, or ejected as outliers by the errors and latency of the calls sent to them, get no
+   * calls - unless no node is left, then all of them are used.
+   */
+  @Getter
+  @Setter
+  public static class LoadBalancing {
+
+    private LoadBalancingStrategy strategy = LoadBalancingStrategy.POWER_OF_TWO_CHOICES;
+    // Calls the error rate and latency averages of a node span, roughly.
+    private int statisticsWindow = 20;
+    private HealthCheck healthCheck = new HealthCheck();
+    private OutlierEjection outlierEjection = new OutlierEjection();
+
+    /**
+     * Active health checks - the realm's certs endpoint of every node is fetched periodically.
+     */
+    @Getter
+    @Setter
+    public static class HealthCheck {
+
+      private boolean enabled = true;
+      private Duration interval = Duration.ofSeconds(5);
+      private int unhealthyThreshold = 2;
+      private int healthyThreshold = 2;
+    }
+
+    /**
+     * Passive outlier ejection - a node is ejected after consecutive-errors failed calls in a row,
+     * or once it handled minimum-calls calls and its error rate or its latency, compared to the
+     * fastest other node, crosses the thresholds. Failures are 5xx responses and I/O errors.
+     */
+    @Getter
+    @Setter
+    public static class OutlierEjection {
+
+      private boolean enabled = true;
+      private int consecutiveErrors = 5;
+      private int minimumCalls = 20;
+      private double errorRateThreshold = 0.5;
+      private double latencyFactor = 3;
+      // Nodes faster than this are never ejected for their latency.
+      private Duration minimumLatency = Duration.ofMillis(100);
+      // Every further ejection of a node lasts one base-ejection-time longer, up to the maximum.
+      private Duration baseEjectionTime = Duration.ofSeconds(30);
+      private Duration maxEjectionTime = Duration.ofMinutes(5);
+      private int maxEjectionPercent = 50;
+    }
+  }
+
+  @Getter
+  @Setter
+  public static class Resilience {
+
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+    private Bulkhead bulkhead = new Bulkhead();
+    private Retry retry = new Retry();
+
+    /**
+     * Circuit breaker settings - every endpoint has its own breaker. Only 5xx responses and calls
+     * failing without a response count as failures.
+     */
+    @Getter
+    @Setter
+    public static class CircuitBreaker {
+
+      private int slidingWindowSize = 50;
+      private int minimumNumberOfCalls = 20;
+      private float failureRateThreshold = 50;
+      private float slowCallRateThreshold = 80;
+      private Duration slowCallDurationThreshold = Duration.ofSeconds(2);
+      private Duration waitDurationInOpenState = Duration.ofSeconds(10);
+      private int permittedNumberOfCallsInHalfOpenState = 5;
+    }
+
+    /**
+     * Bulkhead settings - limit of concurrent calls per endpoint.
+     */
+    @Getter
+    @Setter
+    public static class Bulkhead {
+
+      private int maxConcurrentCalls = 50;
+      private Duration maxWaitDuration = Duration.ZERO;
+    }
+
+    /**
+     * Retry settings for the idempotent endpoints.
+     */
+    @Getter
+    @Setter
+    public static class Retry {
+
+      private Set<KeycloakEndpoint> endpoints = EnumSet.of(
+          KeycloakEndpoint.USERINFO, KeycloakEndpoint.REVOKE
+      );
+      private int maxAttempts = 3;
+      private Duration initialBackoff = Duration.ofMillis(50);
+      private Duration maxBackoff = Duration.ofMillis(500);
+      private double budgetRatio = 0.1;
+      private int budgetMaxRetries = 10;
+    }
+  }
+}
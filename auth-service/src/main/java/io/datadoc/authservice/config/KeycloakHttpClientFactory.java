@@ -0,0 +1,231 @@
+package io.datadoc.authservice.config;
+
+import io.datadoc.authservice.model.http.HttpExecutionMode;
+import io.datadoc.authservice.service.KeycloakResponseDecoder;
+import io.datadoc.authservice.service.KeycloakResponseHttpMessageConverter;
+import io.datadoc.authservice.service.KeycloakTenants;
+import io.datadoc.authservice.service.ReactiveKeycloakResponseDecoder;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import io.netty.channel.ChannelOption;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * KeycloakHttpClientFactory creates the HTTP clients of a Keycloak tenant. Every tenant gets its
+ * own connection pools sized by keycloak.http, so a slow tenant can't take the connections of the
+ * others:
+ *
+ * <ul>
+ *   <li>a RestTemplate on a pooled Apache HttpClient - idle and expired connections are evicted in
+ *   the background, pool statistics are exported as httpcomponents.httpclient.pool.* metrics
+ *   tagged with the tenant.</li>
+ *   <li>in the reactive execution mode, a WebClient on a pooled Reactor Netty client.</li>
+ * </ul>
+ *
+ * <p>The Keycloak responses are read by the streaming KeycloakResponseDecoder, ahead of the generic
+ * Jackson converters.
+ */
+@Component
+public class KeycloakHttpClientFactory {
+
+  private static final String POOL_METRICS_PREFIX = "httpcomponents.httpclient.pool";
+  private final KeycloakConfig.Http http;
+  private final HttpExecutionMode executionMode;
+  private final ObjectProvider<RestTemplateBuilder> restTemplateBuilder;
+  private final ObjectProvider<WebClient.Builder> webClientBuilder;
+  private final KeycloakResponseDecoder responseDecoder;
+  private final MeterRegistry meterRegistry;
+
+  public KeycloakHttpClientFactory(
+      KeycloakConfig keycloakConfig,
+      ObjectProvider<RestTemplateBuilder> restTemplateBuilder,
+      ObjectProvider<WebClient.Builder> webClientBuilder,
+      KeycloakResponseDecoder responseDecoder,
+      MeterRegistry meterRegistry
+  ) {
+    this.http = keycloakConfig.getHttp();
+    this.executionMode = keycloakConfig.getExecutionMode();
+    this.restTemplateBuilder = restTemplateBuilder;
+    this.webClientBuilder = webClientBuilder;
+    this.responseDecoder = responseDecoder;
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * Creates the HTTP clients of the tenant. The pool metrics of a previous instance of the tenant
+   * are replaced.
+   *
+   * @param tenantId The ID of the tenant.
+   * @return The clients - they have to be closed once the tenant is no longer used.
+   */
+  public Clients create(String tenantId) {
+    PoolingHttpClientConnectionManager connectionManager = connectionManager();
+    CloseableHttpClient httpClient = httpClient(connectionManager);
+    removePoolMetrics(tenantId);
+    new PoolingHttpClientConnectionManagerMetricsBinder(
+        connectionManager, "keycloak", Tags.of("tenant", tenantId)
+    ).bindTo(this.meterRegistry);
+
+    ConnectionProvider connectionProvider = null;
+    WebClient webClient = null;
+    if (this.executionMode == HttpExecutionMode.REACTIVE) {
+      connectionProvider = connectionProvider(tenantId);
+      webClient = webClient(connectionProvider);
+    }
+    return new Clients(
+        restTemplate(httpClient), webClient, connectionManager, httpClient, connectionProvider
+    );
+  }
+
+  private PoolingHttpClientConnectionManager connectionManager() {
+    return PoolingHttpClientConnectionManagerBuilder.create()
+        .setMaxConnTotal(this.http.getMaxConnections())
+        .setMaxConnPerRoute(this.http.getMaxConnectionsPerRoute())
+        .setDefaultConnectionConfig(ConnectionConfig.custom()
+            .setConnectTimeout(Timeout.of(this.http.getConnectTimeout()))
+            .setSocketTimeout(Timeout.of(this.http.getSocketTimeout()))
+            .setTimeToLive(TimeValue.of(this.http.getTimeToLive()))
+            .build())
+        .build();
+  }
+
+  private CloseableHttpClient httpClient(PoolingHttpClientConnectionManager connectionManager) {
+    return HttpClients.custom()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(RequestConfig.custom()
+            .setConnectionRequestTimeout(Timeout.of(this.http.getConnectionRequestTimeout()))
+            .setResponseTimeout(Timeout.of(this.http.getResponseTimeout()))
+            .build())
+        .evictExpiredConnections()
+        .evictIdleConnections(
+            TimeValue.of(this.http.getIdleEvictionTime().toMillis(), TimeUnit.MILLISECONDS)
+        )
+        .build();
+  }
+
+  /**
+   * Spring Boot only auto-configures the RestTemplateBuilder for servlet applications, so the
+   * reactive profile falls back to a plain builder.
+   */
+  private RestTemplate restTemplate(CloseableHttpClient httpClient) {
+    RestTemplate restTemplate = this.restTemplateBuilder.getIfAvailable(RestTemplateBuilder::new)
+        .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(httpClient))
+        .build();
+    restTemplate.getMessageConverters()
+        .add(0, new KeycloakResponseHttpMessageConverter(this.responseDecoder));
+    return restTemplate;
+  }
+
+  private ConnectionProvider connectionProvider(String tenantId) {
+    String name = KeycloakTenants.DEFAULT_TENANT.equals(tenantId)
+        ? "keycloak"
+        : "keycloak-" + tenantId;
+    return ConnectionProvider.builder(name)
+        .maxConnections(this.http.getMaxConnections())
+        .pendingAcquireTimeout(this.http.getConnectionRequestTimeout())
+        .maxIdleTime(this.http.getIdleEvictionTime())
+        .maxLifeTime(this.http.getTimeToLive())
+        .evictInBackground(this.http.getIdleEvictionTime())
+        .metrics(true)
+        .build();
+  }
+
+  private WebClient webClient(ConnectionProvider connectionProvider) {
+    HttpClient httpClient = HttpClient.create(connectionProvider)
+        .option(
+            ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) this.http.getConnectTimeout().toMillis()
+        )
+        .responseTimeout(this.http.getResponseTimeout());
+    return this.webClientBuilder.getObject()
+        .clientConnector(new ReactorClientHttpConnector(httpClient))
+        .codecs(codecs -> codecs.customCodecs()
+            .registerWithDefaultConfig(new ReactiveKeycloakResponseDecoder(this.responseDecoder)))
+        .build();
+  }
+
+  /**
+   * Gauges are identified by their name and tags, a new pool of the tenant would otherwise be
+   * reported by the gauges of the old one.
+   */
+  private void removePoolMetrics(String tenantId) {
+    for (Meter meter : this.meterRegistry.getMeters()) {
+      if (meter.getId().getName().startsWith(POOL_METRICS_PREFIX)
+          && tenantId.equals(meter.getId().getTag("tenant"))) {
+        this.meterRegistry.remove(meter);
+      }
+    }
+  }
+
+  /**
+   * HTTP clients of a tenant together with their connection pools.
+   */
+  public static final class Clients implements AutoCloseable {
+
+    private final RestTemplate restTemplate;
+    private final WebClient webClient;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final ConnectionProvider connectionProvider;
+
+    private Clients(
+        RestTemplate restTemplate,
+        WebClient webClient,
+        PoolingHttpClientConnectionManager connectionManager,
+        CloseableHttpClient httpClient,
+        ConnectionProvider connectionProvider
+    ) {
+      this.restTemplate = restTemplate;
+      this.webClient = webClient;
+      this.connectionManager = connectionManager;
+      this.httpClient = httpClient;
+      this.connectionProvider = connectionProvider;
+    }
+
+    /**
+     * Returns the RestTemplate of the tenant.
+     *
+     * @return The RestTemplate.
+     */
+    public RestTemplate getRestTemplate() {
+      return this.restTemplate;
+    }
+
+    /**
+     * Returns the WebClient of the tenant.
+     *
+     * @return The WebClient or null in the blocking execution mode.
+     */
+    public WebClient getWebClient() {
+      return this.webClient;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (this.connectionProvider != null) {
+        this.connectionProvider.dispose();
+      }
+      this.httpClient.close();
+      this.connectionManager.close();
+    }
+  }
+}
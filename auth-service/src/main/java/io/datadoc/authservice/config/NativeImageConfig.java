@@ -0,0 +1,37 @@
+package io.datadoc.authservice.config;
+
+import io.datadoc.authservice.model.auth.JwtPayload;
+import io.datadoc.authservice.model.auth.LoginCredentials;
+import io.datadoc.authservice.model.auth.Session;
+import io.datadoc.authservice.model.auth.UserMetadata;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.boot.context.properties.bind.BindableRuntimeHintsRegistrar;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+/**
+ * This is a configuration class for the AOT processing and the GraalVM native image. It registers
+ * what a native image can't discover on its own: the records GraphQL arguments are bound to and
+ * results are read from by reflection, the KeycloakConfig.Tenant properties bound by
+ * KeycloakTenants outside the @ConfigurationProperties binding, and the persisted query documents
+ * loaded from the classpath. Ignored on the JVM.
+ */
+@Configuration(proxyBeanMethods = false)
+@ImportRuntimeHints(NativeImageConfig.AuthServiceRuntimeHints.class)
+@RegisterReflectionForBinding({
+    JwtPayload.class, UserMetadata.class, LoginCredentials.class, Session.class
+})
+public class NativeImageConfig {
+
+  static class AuthServiceRuntimeHints implements RuntimeHintsRegistrar {
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+      BindableRuntimeHintsRegistrar.forTypes(KeycloakConfig.Tenant.class)
+          .registerHints(hints, classLoader);
+      hints.resources().registerPattern("graphql/persisted/*.graphql");
+    }
+  }
+}
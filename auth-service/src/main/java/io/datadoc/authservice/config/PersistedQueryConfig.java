@@ -0,0 +1,85 @@
+package io.datadoc.authservice.config;
+
+import io.datadoc.authservice.resolver.PersistedQueryHttpHandler;
+import io.datadoc.authservice.resolver.ReactivePersistedQueryHttpHandler;
+import io.datadoc.authservice.service.PersistedQueryDocumentProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.boot.autoconfigure.graphql.GraphQlSourceBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.graphql.server.WebGraphQlHandler;
+
+/**
+ * This is a configuration class for the persisted queries. GraphQL documents are looked up in the
+ * PersistedQueryDocumentProvider before being parsed and validated, and the GraphQL endpoint
+ * accepts requests sending only the hash of a query. It's active unless
+ * auth-service.persisted-queries.enabled is set to false.
+ */
+@Configuration
+@ConditionalOnProperty(
+    prefix = "auth-service.persisted-queries",
+    name = "enabled",
+    havingValue = "true",
+    matchIfMissing = true
+)
+public class PersistedQueryConfig {
+
+  /**
+   * Bean for the PersistedQueryDocumentProvider - caches the parsed and validated documents.
+   *
+   * @param authServiceConfig The auth-service configuration with the persisted queries settings.
+   * @param meterRegistry     The registry the cache metrics are exported to.
+   * @return The PersistedQueryDocumentProvider.
+   */
+  @Bean
+  public PersistedQueryDocumentProvider persistedQueryDocumentProvider(
+      AuthServiceConfig authServiceConfig,
+      MeterRegistry meterRegistry
+  ) {
+    return new PersistedQueryDocumentProvider(authServiceConfig, meterRegistry);
+  }
+
+  /**
+   * Sets the PersistedQueryDocumentProvider on the GraphQL engine.
+   *
+   * @param documentProvider The PersistedQueryDocumentProvider.
+   * @return The GraphQlSource builder customizer.
+   */
+  @Bean
+  public GraphQlSourceBuilderCustomizer persistedQueryCustomizer(
+      PersistedQueryDocumentProvider documentProvider
+  ) {
+    return builder -> builder.configureGraphQl(
+        graphQl -> graphQl.preparsedDocumentProvider(documentProvider)
+    );
+  }
+
+  /**
+   * Replaces Spring's GraphQL HTTP handler of the servlet web application.
+   *
+   * @param webGraphQlHandler The WebGraphQlHandler.
+   * @return The PersistedQueryHttpHandler.
+   */
+  @Bean
+  @ConditionalOnWebApplication(type = Type.SERVLET)
+  public PersistedQueryHttpHandler graphQlHttpHandler(WebGraphQlHandler webGraphQlHandler) {
+    return new PersistedQueryHttpHandler(webGraphQlHandler);
+  }
+
+  /**
+   * Replaces Spring's GraphQL HTTP handler of the reactive web application.
+   *
+   * @param webGraphQlHandler The WebGraphQlHandler.
+   * @return The ReactivePersistedQueryHttpHandler.
+   */
+  @Bean
+  @ConditionalOnWebApplication(type = Type.REACTIVE)
+  public ReactivePersistedQueryHttpHandler reactiveGraphQlHttpHandler(
+      WebGraphQlHandler webGraphQlHandler
+  ) {
+    return new ReactivePersistedQueryHttpHandler(webGraphQlHandler);
+  }
+}
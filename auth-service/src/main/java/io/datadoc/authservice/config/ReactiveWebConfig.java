@@ -0,0 +1,27 @@
+package io.datadoc.authservice.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This is a configuration class for the reactive web application. The WebClients calling Keycloak
+ * are created per tenant by the KeycloakHttpClientFactory.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveWebConfig {
+
+  /**
+   * Runs the reactive web application on Netty. Without this bean Spring Boot prefers Tomcat,
+   * because the servlet starter is on the classpath as well.
+   *
+   * @return The Netty server factory.
+   */
+  @Bean
+  public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+    return new NettyReactiveWebServerFactory();
+  }
+}
@@ -0,0 +1,70 @@
+package io.datadoc.authservice.config;
+
+import java.util.concurrent.Executors;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.graphql.data.method.annotation.support.AnnotatedControllerConfigurer;
+
+/**
+ * This is a configuration class for running request handling on virtual threads. Tomcat requests,
+ * the application task executor and asynchronous GraphQL data fetchers all get a new virtual thread
+ * per task, so blocking Keycloak calls don't hold on to platform threads. It's active when
+ * auth-service.threads.virtual is set to true - otherwise the regular platform thread pools are
+ * used.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "auth-service.threads", name = "virtual", havingValue = "true")
+public class VirtualThreadConfig {
+
+  /**
+   * Bean for the application task executor - replaces Spring Boot's thread pool.
+   *
+   * @return The virtual thread per task executor.
+   */
+  @Bean(name = {
+      TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+      "taskExecutor"
+  })
+  public AsyncTaskExecutor applicationTaskExecutor() {
+    return new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor());
+  }
+
+  /**
+   * Runs every Tomcat request on its own virtual thread.
+   *
+   * @return The Tomcat protocol handler customizer.
+   */
+  @Bean
+  @ConditionalOnWebApplication(type = Type.SERVLET)
+  public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+    return protocolHandler -> protocolHandler.setExecutor(
+        Executors.newVirtualThreadPerTaskExecutor()
+    );
+  }
+
+  /**
+   * Data fetchers returning a Callable are invoked on a new virtual thread.
+   *
+   * @return The BeanPostProcessor setting the executor of the AnnotatedControllerConfigurer.
+   */
+  @Bean
+  public static BeanPostProcessor graphQlControllerExecutorPostProcessor() {
+    return new BeanPostProcessor() {
+      @Override
+      public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof AnnotatedControllerConfigurer configurer) {
+          configurer.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        }
+        return bean;
+      }
+    };
+  }
+}
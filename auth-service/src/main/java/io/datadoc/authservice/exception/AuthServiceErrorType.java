@@ -0,0 +1,33 @@
+package io.datadoc.authservice.exception;
+
+import graphql.ErrorClassification;
+
+/**
+ * AuthServiceErrorType contains the error classifications of the auth-service, which don't have a
+ * counterpart in graphql-java's ErrorType.
+ */
+public enum AuthServiceErrorType implements ErrorClassification {
+  /**
+   * The call to Keycloak was rejected without being made - its circuit breaker is open or too many
+   * calls are already in flight. Clients should retry later.
+   */
+  KeycloakUnavailable,
+  /**
+   * The operation isn't one of the persisted queries and the endpoint only executes those.
+   */
+  OperationNotAllowed,
+  /**
+   * The operation was rejected without being executed - the service has as many operations in
+   * flight as it can handle. Clients should retry after the retryAfter extension.
+   */
+  Overloaded,
+  /**
+   * The login attempt was rejected without calling Keycloak - too many attempts were made for the
+   * email or from the client address. Clients should retry after the retryAfter extension.
+   */
+  RateLimited,
+  /**
+   * The tenant selected by the X-Tenant-ID header or the tenant argument isn't configured.
+   */
+  UnknownTenant
+}
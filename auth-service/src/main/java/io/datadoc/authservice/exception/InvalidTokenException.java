@@ -0,0 +1,22 @@
+package io.datadoc.authservice.exception;
+
+/**
+ * InvalidTokenException is thrown when a token fails local verification - bad signature, expired,
+ * wrong issuer or malformed.
+ */
+public class InvalidTokenException extends RuntimeException {
+
+  public InvalidTokenException(String message, Throwable cause) {
+    super(message, cause);
+  }
+
+  /**
+   * Creates an exception without a stack trace, to be thrown over and over - e.g. for every
+   * request with an expired token.
+   *
+   * @param message The message returned to the client.
+   */
+  public InvalidTokenException(String message) {
+    super(message, null, false, false);
+  }
+}
@@ -0,0 +1,20 @@
+package io.datadoc.authservice.exception;
+
+import java.time.Duration;
+import lombok.Getter;
+
+/**
+ * OverloadedException is thrown when an operation is shed by the ConcurrencyLimiter, before it's
+ * executed. It's thrown for every shed operation while the service is overloaded, so it doesn't
+ * fill in a stack trace.
+ */
+@Getter
+public class OverloadedException extends RuntimeException {
+
+  private final Duration retryAfter;
+
+  public OverloadedException(String message, Duration retryAfter) {
+    super(message, null, false, false);
+    this.retryAfter = retryAfter;
+  }
+}
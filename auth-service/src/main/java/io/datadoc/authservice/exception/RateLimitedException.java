@@ -0,0 +1,20 @@
+package io.datadoc.authservice.exception;
+
+import java.time.Duration;
+import lombok.Getter;
+
+/**
+ * RateLimitedException is thrown when a login attempt is rejected by the login rate limiter,
+ * before it reaches Keycloak. It's thrown for every attempt of a credential stuffing flood, so it
+ * doesn't fill in a stack trace.
+ */
+@Getter
+public class RateLimitedException extends RuntimeException {
+
+  private final Duration retryAfter;
+
+  public RateLimitedException(String message, Duration retryAfter) {
+    super(message, null, false, false);
+    this.retryAfter = retryAfter;
+  }
+}
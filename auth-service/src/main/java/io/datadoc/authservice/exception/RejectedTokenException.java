@@ -0,0 +1,19 @@
+package io.datadoc.authservice.exception;
+
+import lombok.Getter;
+
+/**
+ * RejectedTokenException replays a recent rejection of a token by Keycloak, without calling
+ * Keycloak again. It carries the status and the message of the original response and is thrown for
+ * every request with the token, so it doesn't fill in a stack trace.
+ */
+@Getter
+public class RejectedTokenException extends RuntimeException {
+
+  private final int status;
+
+  public RejectedTokenException(String message, int status) {
+    super(message, null, false, false);
+    this.status = status;
+  }
+}
@@ -0,0 +1,12 @@
+package io.datadoc.authservice.exception;
+
+/**
+ * TooManyTokensException is thrown when a `users` query passes more access tokens than
+ * auth-service.batch.max-tokens.
+ */
+public class TooManyTokensException extends RuntimeException {
+
+  public TooManyTokensException(String message) {
+    super(message);
+  }
+}
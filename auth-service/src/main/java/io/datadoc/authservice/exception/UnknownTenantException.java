@@ -0,0 +1,11 @@
+package io.datadoc.authservice.exception;
+
+/**
+ * UnknownTenantException is thrown when a request selects a tenant that isn't configured.
+ */
+public class UnknownTenantException extends RuntimeException {
+
+  public UnknownTenantException(String message) {
+    super(message);
+  }
+}
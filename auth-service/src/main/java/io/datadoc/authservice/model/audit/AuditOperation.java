@@ -0,0 +1,23 @@
+package io.datadoc.authservice.model.audit;
+
+import lombok.Getter;
+
+/**
+ * AuditOperation represents the operations recorded in the audit trail.
+ */
+@Getter
+public enum AuditOperation {
+  LOGIN("login"),
+  LOGIN_SESSION("loginSession"),
+  REFRESH("refresh"),
+  REFRESH_SESSION("refreshSession"),
+  LOGOUT("logout"),
+  LOGOUT_SESSION("logoutSession"),
+  REVOKE("revoke");
+
+  private final String name;
+
+  AuditOperation(String name) {
+    this.name = name;
+  }
+}
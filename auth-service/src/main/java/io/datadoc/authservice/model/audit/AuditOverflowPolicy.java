@@ -0,0 +1,18 @@
+package io.datadoc.authservice.model.audit;
+
+/**
+ * AuditOverflowPolicy determines what happens to an audit event when the buffer is full, because
+ * the sink can't keep up.
+ */
+public enum AuditOverflowPolicy {
+  /**
+   * The event is dropped and counted - the request never waits. The trail records how many events
+   * were dropped where.
+   */
+  DROP,
+  /**
+   * The request waits until the writer frees a slot - the trail is complete, but a slow sink slows
+   * down the requests.
+   */
+  BLOCK
+}
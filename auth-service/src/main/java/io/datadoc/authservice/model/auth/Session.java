@@ -0,0 +1,13 @@
+package io.datadoc.authservice.model.auth;
+
+/**
+ * Session is returned instead of the JwtPayload when the tokens are kept by the auth-service. The
+ * client only holds the opaque handle.
+ *
+ * @param handle                The opaque session handle.
+ * @param expiresIn             The time in seconds until the access token expires.
+ * @param refreshTokenExpiresIn The time in seconds until the refresh token expires.
+ */
+public record Session(String handle, int expiresIn, int refreshTokenExpiresIn) {
+
+}
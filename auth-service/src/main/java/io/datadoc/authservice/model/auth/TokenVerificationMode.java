@@ -0,0 +1,16 @@
+package io.datadoc.authservice.model.auth;
+
+/**
+ * TokenVerificationMode determines how access tokens are verified before user information is
+ * returned.
+ */
+public enum TokenVerificationMode {
+  /**
+   * Every access token is sent to the Keycloak userinfo endpoint.
+   */
+  REMOTE,
+  /**
+   * Access tokens are verified in-process against the realm's JWKS signing keys.
+   */
+  LOCAL
+}
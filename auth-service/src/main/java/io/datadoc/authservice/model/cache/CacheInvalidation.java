@@ -0,0 +1,30 @@
+package io.datadoc.authservice.model.cache;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * CacheInvalidation is the message an instance sends to every other instance when a token was
+ * revoked or a session logged out through it, so they drop the user's information they cached and
+ * reject the token too. It carries the hash and the IDs of the token, never the token itself.
+ *
+ * @param origin         ID of the instance that sent the message.
+ * @param sentAtMillis   When the message was sent, to measure how long it took to arrive.
+ * @param tenantId       The ID of the tenant that issued the token.
+ * @param tokenHash      SHA-256 hash of the revoked token, null on logout.
+ * @param tokenId        The `jti` claim of a revoked access token, null otherwise.
+ * @param tokenExpiresAt The expiry of the revoked access token in epoch seconds.
+ * @param sessionId      The `sid` claim of the session that ended, null if only an access token
+ *                       was revoked.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record CacheInvalidation(
+    String origin,
+    long sentAtMillis,
+    String tenantId,
+    String tokenHash,
+    String tokenId,
+    long tokenExpiresAt,
+    String sessionId
+) {
+
+}
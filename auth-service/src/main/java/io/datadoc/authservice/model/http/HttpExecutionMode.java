@@ -0,0 +1,15 @@
+package io.datadoc.authservice.model.http;
+
+/**
+ * HttpExecutionMode determines how the GraphQL resolvers wait for Keycloak responses.
+ */
+public enum HttpExecutionMode {
+  /**
+   * Keycloak is called with RestTemplate - the request thread blocks until the response arrives.
+   */
+  BLOCKING,
+  /**
+   * Keycloak is called with WebClient - the resolvers return publishers and no thread waits.
+   */
+  REACTIVE
+}
@@ -0,0 +1,20 @@
+package io.datadoc.authservice.model.http;
+
+import lombok.Getter;
+
+/**
+ * KeycloakEndpoint represents the Keycloak REST endpoints called by the auth-service.
+ */
+@Getter
+public enum KeycloakEndpoint {
+  TOKEN("token"),
+  REVOKE("revoke"),
+  LOGOUT("logout"),
+  USERINFO("userinfo");
+
+  private final String name;
+
+  KeycloakEndpoint(String name) {
+    this.name = name;
+  }
+}
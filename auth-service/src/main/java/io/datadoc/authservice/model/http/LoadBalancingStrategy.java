@@ -0,0 +1,21 @@
+package io.datadoc.authservice.model.http;
+
+/**
+ * LoadBalancingStrategy determines which Keycloak node of a tenant a call is sent to. Only the
+ * nodes that passed their health checks and aren't ejected as outliers are considered.
+ */
+public enum LoadBalancingStrategy {
+  /**
+   * The nodes take turns, regardless of how busy or slow they are.
+   */
+  ROUND_ROBIN,
+  /**
+   * The node with the fewest calls in flight, ties are broken by the lower latency.
+   */
+  LEAST_OUTSTANDING_REQUESTS,
+  /**
+   * Two random nodes are compared by their latency weighted by the calls in flight and the
+   * cheaper one is picked - close to the best node without scanning all of them.
+   */
+  POWER_OF_TWO_CHOICES
+}
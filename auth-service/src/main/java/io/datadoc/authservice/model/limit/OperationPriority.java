@@ -0,0 +1,23 @@
+package io.datadoc.authservice.model.limit;
+
+/**
+ * OperationPriority decides which GraphQL operations the ConcurrencyLimiter sheds first. Every
+ * priority may fill its share of the concurrency limit, so under pressure the operations of the
+ * lower priorities are rejected while the higher ones are still admitted.
+ */
+public enum OperationPriority {
+  /**
+   * Operations of users already logged in - refreshing and reading a session. Losing them logs
+   * users out, so they may fill the whole limit.
+   */
+  HIGH,
+  /**
+   * Operations without a configured priority, e.g. logout and revoke.
+   */
+  NORMAL,
+  /**
+   * New logins - the most expensive call for Keycloak, and the one a client can retry without
+   * losing anything.
+   */
+  LOW
+}
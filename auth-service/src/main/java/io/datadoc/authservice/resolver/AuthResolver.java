@@ -1,15 +1,26 @@
 package io.datadoc.authservice.resolver;
 
+import graphql.execution.DataFetcherResult;
+import graphql.schema.DataFetchingEnvironment;
+import io.datadoc.authservice.model.audit.AuditOperation;
 import io.datadoc.authservice.model.auth.JwtPayload;
 import io.datadoc.authservice.model.auth.LoginCredentials;
 import io.datadoc.authservice.model.auth.UserMetadata;
+import io.datadoc.authservice.service.AuditLog;
 import io.datadoc.authservice.service.KeycloakService;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import io.datadoc.authservice.service.KeycloakTenant;
+import io.datadoc.authservice.service.KeycloakTenants;
+import io.datadoc.authservice.service.LoginRateLimiter;
+import io.datadoc.authservice.service.UserInfoService;
+import io.datadoc.authservice.service.UserLoader;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.dataloader.DataLoader;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.graphql.data.method.annotation.Argument;
+import org.springframework.graphql.data.method.annotation.ContextValue;
 import org.springframework.graphql.data.method.annotation.MutationMapping;
 import org.springframework.graphql.data.method.annotation.QueryMapping;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.client.HttpStatusCodeException;
 
@@ -18,79 +29,149 @@ import org.springframework.web.client.HttpStatusCodeException;
  * GraphQL schema for more information.
  */
 @Controller
+@ConditionalOnProperty(
+    prefix = "keycloak", name = "execution-mode", havingValue = "blocking", matchIfMissing = true
+)
 public class AuthResolver {
 
-  private static final Logger LOGGER = LoggerFactory.getLogger(AuthResolver.class);
   private final KeycloakService keycloakService;
+  private final UserInfoService userInfoService;
+  private final UserLoader userLoader;
+  private final LoginRateLimiter loginRateLimiter;
+  private final KeycloakTenants keycloakTenants;
+  private final AuditLog auditLog;
 
-  public AuthResolver(KeycloakService keycloakService) {
+  public AuthResolver(
+      KeycloakService keycloakService,
+      UserInfoService userInfoService,
+      UserLoader userLoader,
+      LoginRateLimiter loginRateLimiter,
+      KeycloakTenants keycloakTenants,
+      AuditLog auditLog
+  ) {
     this.keycloakService = keycloakService;
+    this.userInfoService = userInfoService;
+    this.userLoader = userLoader;
+    this.loginRateLimiter = loginRateLimiter;
+    this.keycloakTenants = keycloakTenants;
+    this.auditLog = auditLog;
   }
 
   /**
    * User will be issued with JWT tokens (access, refresh, id) based on their credentials.
    *
-   * @param credentials User's email & password object.
+   * @param credentials   User's email & password object.
+   * @param tenant        The tenant to log in to - overrides the X-Tenant-ID header.
+   * @param tenantId      The tenant selected by the X-Tenant-ID header, the default one if null.
+   * @param clientAddress The IP address of the client - login attempts are rate limited by it.
    * @return JwtPayload containing the JWT tokens.
    * @see JwtPayload
    */
   @MutationMapping
-  public JwtPayload login(@Argument LoginCredentials credentials) throws HttpStatusCodeException {
-    ResponseEntity<JwtPayload> response = keycloakService.fetchTokensForUser(credentials);
-    LOGGER.info("Successfully issued JWT tokens - {}", response.getStatusCode());
-    return response.getBody();
+  public JwtPayload login(
+      @Argument LoginCredentials credentials,
+      @Argument String tenant,
+      @ContextValue(name = TenantInterceptor.TENANT_ID, required = false) String tenantId,
+      @ContextValue(name = ClientAddressInterceptor.CLIENT_ADDRESS, required = false)
+      String clientAddress
+  ) throws HttpStatusCodeException {
+    KeycloakTenant keycloakTenant = keycloakTenants.get(tenant != null ? tenant : tenantId);
+    return auditLog.record(
+        AuditOperation.LOGIN, keycloakTenant.getId(), credentials.email(), null, () -> {
+          loginRateLimiter.acquire(credentials, clientAddress);
+          return keycloakService.fetchTokensForUser(keycloakTenant, credentials).getBody();
+        }
+    );
   }
 
   /**
-   * Returns the user's information based on their access token.
+   * Returns the user's information based on their access token. All `me` fields of a request
+   * share one DataLoader, so every distinct token is resolved once.
    *
    * @param accessToken The user's access token.
+   * @param users       The DataLoader of the request resolving access tokens to users.
    * @return UserMetadata object containing the user's information.
    */
   @QueryMapping
-  public UserMetadata me(@Argument String accessToken) throws HttpStatusCodeException {
-    ResponseEntity<UserMetadata> response = keycloakService.fetchUser(accessToken);
-    LOGGER.info("Successfully fetched user info - {}", response.getStatusCode());
-    return response.getBody();
+  public CompletableFuture<UserMetadata> me(
+      @Argument String accessToken,
+      DataLoader<String, UserMetadata> users
+  ) {
+    return users.load(accessToken);
+  }
+
+  /**
+   * Returns the information of every user in one query - e.g. for a gateway checking many sessions.
+   *
+   * @param accessTokens The users' access tokens.
+   * @param users        The DataLoader of the request resolving access tokens to users.
+   * @param env          The DataFetchingEnvironment of the field.
+   * @return UserMetadata for every token in the same order, null with an error if a token failed.
+   */
+  @QueryMapping
+  public CompletableFuture<DataFetcherResult<List<UserMetadata>>> users(
+      @Argument List<String> accessTokens,
+      DataLoader<String, UserMetadata> users,
+      DataFetchingEnvironment env
+  ) {
+    return userLoader.loadAll(accessTokens, users, env);
   }
 
   /**
    * Logs out a user based on their ID token.
    *
-   * @param idToken The user's ID token previously issued by Keycloak.
+   * @param idToken  The user's ID token previously issued by Keycloak.
+   * @param tenantId The tenant selected by the X-Tenant-ID header, the token's issuer if null.
    * @return true if the user was logged out successfully, false otherwise.
    */
   @MutationMapping
-  public boolean logout(@Argument String idToken) throws HttpStatusCodeException {
-    ResponseEntity<String> response = keycloakService.logoutKeycloakUser(idToken);
-    LOGGER.info("Successfully logged out user - {}", response.getStatusCode());
-    return true;
+  public boolean logout(
+      @Argument String idToken,
+      @ContextValue(name = TenantInterceptor.TENANT_ID, required = false) String tenantId
+  ) throws HttpStatusCodeException {
+    KeycloakTenant tenant = keycloakTenants.resolve(tenantId, idToken);
+    return auditLog.record(AuditOperation.LOGOUT, tenant.getId(), null, idToken, () -> {
+      keycloakService.logoutKeycloakUser(tenant, idToken);
+      userInfoService.sessionLoggedOut(tenant, idToken);
+      return true;
+    });
   }
 
   /**
    * Refreshes a user's JWT tokens based on a refresh token - issues new JwtPayload to the user.
    *
    * @param refreshToken The user's refresh token.
+   * @param tenantId     The tenant selected by the X-Tenant-ID header, the token's issuer if null.
    * @return JwtPayload containing the JWT tokens
    * @see JwtPayload
    */
   @MutationMapping
-  public JwtPayload refresh(@Argument String refreshToken) throws HttpStatusCodeException {
-    ResponseEntity<JwtPayload> response = keycloakService.refreshTokens(refreshToken);
-    LOGGER.info("Successfully refreshed the JWT token - {}", response.getStatusCode());
-    return response.getBody();
+  public JwtPayload refresh(
+      @Argument String refreshToken,
+      @ContextValue(name = TenantInterceptor.TENANT_ID, required = false) String tenantId
+  ) throws HttpStatusCodeException {
+    KeycloakTenant tenant = keycloakTenants.resolve(tenantId, refreshToken);
+    return auditLog.record(AuditOperation.REFRESH, tenant.getId(), null, refreshToken,
+        () -> keycloakService.refreshTokens(tenant, refreshToken).getBody());
   }
 
   /**
    * Revokes a JWT token - invalidates the token.
    *
-   * @param token The JWT token to revoke.
+   * @param token    The JWT token to revoke.
+   * @param tenantId The tenant selected by the X-Tenant-ID header, the token's issuer if null.
    * @return true if the token was revoked successfully, false otherwise.
    */
   @MutationMapping
-  public boolean revoke(@Argument String token) throws HttpStatusCodeException {
-    ResponseEntity<String> res = keycloakService.revokeKeycloakToken(token);
-    LOGGER.info("Successfully revoked the JWT token - {}", res.getStatusCode());
-    return true;
+  public boolean revoke(
+      @Argument String token,
+      @ContextValue(name = TenantInterceptor.TENANT_ID, required = false) String tenantId
+  ) throws HttpStatusCodeException {
+    KeycloakTenant tenant = keycloakTenants.resolve(tenantId, token);
+    return auditLog.record(AuditOperation.REVOKE, tenant.getId(), null, token, () -> {
+      keycloakService.revokeKeycloakToken(tenant, token);
+      userInfoService.tokenRevoked(tenant, token);
+      return true;
+    });
   }
 }
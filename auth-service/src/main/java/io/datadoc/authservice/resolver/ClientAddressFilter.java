@@ -0,0 +1,32 @@
+package io.datadoc.authservice.resolver;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * ClientAddressFilter exposes the client's IP address of the servlet request as the clientAddress
+ * request attribute.
+ *
+ * @see ClientAddressInterceptor
+ */
+@Component
+@ConditionalOnWebApplication(type = Type.SERVLET)
+public class ClientAddressFilter extends OncePerRequestFilter {
+
+  @Override
+  protected void doFilterInternal(
+      HttpServletRequest request,
+      HttpServletResponse response,
+      FilterChain filterChain
+  ) throws ServletException, IOException {
+    request.setAttribute(ClientAddressInterceptor.CLIENT_ADDRESS, request.getRemoteAddr());
+    filterChain.doFilter(request, response);
+  }
+}
@@ -0,0 +1,34 @@
+package io.datadoc.authservice.resolver;
+
+import org.springframework.graphql.server.WebGraphQlInterceptor;
+import org.springframework.graphql.server.WebGraphQlRequest;
+import org.springframework.graphql.server.WebGraphQlResponse;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * ClientAddressInterceptor puts the client's IP address into the GraphQLContext of the request, so
+ * resolvers can get it with @ContextValue. WebGraphQlRequest doesn't carry the address, so it's
+ * taken from the request attribute set by the ClientAddressFilter or ReactiveClientAddressFilter.
+ *
+ * <p>Behind a proxy, set server.forward-headers-strategy so the address is the one of the client
+ * and not the one of the proxy.
+ */
+@Component
+public class ClientAddressInterceptor implements WebGraphQlInterceptor {
+
+  /**
+   * Name of the request attribute and the GraphQLContext value holding the client address.
+   */
+  public static final String CLIENT_ADDRESS = "clientAddress";
+
+  @Override
+  public Mono<WebGraphQlResponse> intercept(WebGraphQlRequest request, Chain chain) {
+    Object clientAddress = request.getAttributes().get(CLIENT_ADDRESS);
+    if (clientAddress != null) {
+      request.configureExecutionInput((input, builder) ->
+          builder.graphQLContext(context -> context.put(CLIENT_ADDRESS, clientAddress)).build());
+    }
+    return chain.next(request);
+  }
+}
@@ -0,0 +1,60 @@
+package io.datadoc.authservice.resolver;
+
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationFieldFetchParameters;
+import graphql.schema.DataFetcher;
+import io.datadoc.authservice.service.ConcurrencyLimiter;
+import java.util.concurrent.CompletionStage;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * ConcurrencyLimitInstrumentation puts the ConcurrencyLimiter in front of every operation - every
+ * field of Query and Mutation, so each operation of a batch is admitted on its own. An operation
+ * holds its permit until its result completes, including the asynchronous results of the reactive
+ * resolvers and the DataLoader. A shed operation fails with an OverloadedException, which the
+ * AuthServiceGraphQLExceptionResolver maps like any other error of the resolvers.
+ */
+@Component
+@ConditionalOnProperty(prefix = "auth-service.concurrency-limit", name = "enabled",
+    havingValue = "true", matchIfMissing = true)
+public class ConcurrencyLimitInstrumentation extends SimplePerformantInstrumentation {
+
+  private final ConcurrencyLimiter concurrencyLimiter;
+
+  public ConcurrencyLimitInstrumentation(ConcurrencyLimiter concurrencyLimiter) {
+    this.concurrencyLimiter = concurrencyLimiter;
+  }
+
+  @Override
+  public DataFetcher<?> instrumentDataFetcher(
+      DataFetcher<?> dataFetcher,
+      InstrumentationFieldFetchParameters parameters,
+      InstrumentationState state
+  ) {
+    String operation = parameters.getExecutionStepInfo().getFieldDefinition().getName();
+    // Fields of the results and introspection are left alone.
+    if (parameters.isTrivialDataFetcher()
+        || parameters.getExecutionStepInfo().getPath().getLevel() != 1
+        || operation.startsWith("__")) {
+      return dataFetcher;
+    }
+    return env -> {
+      this.concurrencyLimiter.acquire(operation);
+      Object result;
+      try {
+        result = dataFetcher.get(env);
+      } catch (Throwable t) {
+        this.concurrencyLimiter.release();
+        throw t;
+      }
+      if (result instanceof CompletionStage<?> stage) {
+        stage.whenComplete((value, e) -> this.concurrencyLimiter.release());
+      } else {
+        this.concurrencyLimiter.release();
+      }
+      return result;
+    };
+  }
+}
@@ -0,0 +1,116 @@
+package io.datadoc.authservice.resolver;
+
+import io.datadoc.authservice.config.AuthServiceConfig;
+import io.datadoc.authservice.service.PersistedQueryDocumentProvider;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.springframework.graphql.ExecutionGraphQlResponse;
+import org.springframework.graphql.ExecutionGraphQlService;
+import org.springframework.graphql.support.DefaultExecutionGraphQlRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * GraphQlBatchController executes a JSON array of GraphQL operations posted to /graphql/batch -
+ * the format used by batching gateways and clients. The operations run concurrently and the
+ * results are returned in the order of the operations. Concurrent `me` queries for the same token
+ * share one Keycloak call.
+ */
+@RestController
+public class GraphQlBatchController {
+
+  private final ExecutionGraphQlService graphQlService;
+  private final int maxOperations;
+
+  public GraphQlBatchController(
+      ExecutionGraphQlService graphQlService,
+      AuthServiceConfig authServiceConfig
+  ) {
+    this.graphQlService = graphQlService;
+    this.maxOperations = authServiceConfig.getBatch().getMaxOperations();
+  }
+
+  /**
+   * Executes the batch of GraphQL operations.
+   *
+   * @param operations    The operations - each with a query or a persisted query hash, and
+   *                      optional operationName and variables.
+   * @param tenantId      The tenant selected by the X-Tenant-ID header, passed on to the
+   *                      operations.
+   * @param clientAddress The IP address of the client, passed on to the operations.
+   * @return Mono emitting the result of every operation, in the same order.
+   * @throws ResponseStatusException With 400 if the batch is empty, too large or malformed.
+   */
+  @PostMapping(
+      path = "${spring.graphql.path:/graphql}/batch",
+      consumes = MediaType.APPLICATION_JSON_VALUE,
+      produces = MediaType.APPLICATION_JSON_VALUE
+  )
+  public Mono<List<Map<String, Object>>> execute(
+      @RequestBody List<Map<String, Object>> operations,
+      @RequestHeader(name = TenantInterceptor.TENANT_HEADER, required = false) String tenantId,
+      @RequestAttribute(name = ClientAddressInterceptor.CLIENT_ADDRESS, required = false)
+      String clientAddress
+  ) throws ResponseStatusException {
+    if (operations.isEmpty() || operations.size() > this.maxOperations) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "A batch must contain 1 to " + this.maxOperations + " operations");
+    }
+    operations.forEach(GraphQlBatchController::validate);
+    return Flux.fromIterable(operations)
+        .map(PersistedQueryDocumentProvider::withPersistedQueryMarker)
+        .flatMapSequential(operation -> execute(operation, tenantId, clientAddress))
+        .map(ExecutionGraphQlResponse::toMap)
+        .collectList();
+  }
+
+  @SuppressWarnings("unchecked")
+  private Mono<ExecutionGraphQlResponse> execute(
+      Map<String, Object> operation,
+      String tenantId,
+      String clientAddress
+  ) {
+    DefaultExecutionGraphQlRequest request = new DefaultExecutionGraphQlRequest(
+        (String) operation.get("query"),
+        (String) operation.get("operationName"),
+        (Map<String, Object>) operation.get("variables"),
+        (Map<String, Object>) operation.get("extensions"),
+        UUID.randomUUID().toString(),
+        null
+    );
+    // Batched operations don't go through the WebGraphQlInterceptors.
+    if (tenantId != null && !tenantId.isBlank()) {
+      request.configureExecutionInput((input, builder) -> builder.graphQLContext(context ->
+          context.put(TenantInterceptor.TENANT_ID, tenantId)).build());
+    }
+    if (clientAddress != null) {
+      request.configureExecutionInput((input, builder) -> builder.graphQLContext(context ->
+          context.put(ClientAddressInterceptor.CLIENT_ADDRESS, clientAddress)).build());
+    }
+    return this.graphQlService.execute(request);
+  }
+
+  private static void validate(Map<String, Object> operation) {
+    Object operationName = operation.get("operationName");
+    Object variables = operation.get("variables");
+    Object extensions = operation.get("extensions");
+    Object query = PersistedQueryDocumentProvider.withPersistedQueryMarker(operation).get("query");
+    if (!(query instanceof String)
+        || operationName != null && !(operationName instanceof String)
+        || variables != null && !(variables instanceof Map)
+        || extensions != null && !(extensions instanceof Map)) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "Every operation needs a query string or a persisted query hash, variables and "
+              + "extensions must be objects");
+    }
+  }
+}
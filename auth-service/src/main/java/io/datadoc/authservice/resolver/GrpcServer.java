@@ -0,0 +1,119 @@
+package io.datadoc.authservice.resolver;
+
+import io.datadoc.authservice.config.AuthServiceConfig;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+/**
+ * GrpcServer serves the TokenValidationGrpcService on the internal gRPC port and, if
+ * auth-service.grpc.in-process-name is set, on an in-process server, which callers in the same
+ * JVM reach with InProcessChannelBuilder.forName(name) - without a network. The network server
+ * only listens on auth-service.grpc.address, the loopback interface by default. The servers start
+ * with the application context and get the shutdown timeout to finish the calls in flight when it
+ * stops.
+ *
+ * <p>With auth-service.threads.virtual set, every call is handled on its own virtual thread.
+ */
+@Component
+@ConditionalOnProperty(prefix = "auth-service.grpc", name = "enabled", havingValue = "true")
+public class GrpcServer implements SmartLifecycle {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(GrpcServer.class);
+  private final TokenValidationGrpcService tokenValidationService;
+  private final AuthServiceConfig.Grpc config;
+  private final boolean virtualThreads;
+  private final List<Server> servers = new ArrayList<>();
+  private ExecutorService executor;
+
+  public GrpcServer(
+      TokenValidationGrpcService tokenValidationService,
+      AuthServiceConfig authServiceConfig
+  ) {
+    this.tokenValidationService = tokenValidationService;
+    this.config = authServiceConfig.getGrpc();
+    this.virtualThreads = authServiceConfig.getThreads().isVirtual();
+  }
+
+  @Override
+  public synchronized void start() {
+    if (this.virtualThreads) {
+      this.executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+    if (this.config.getPort() >= 0) {
+      start(NettyServerBuilder.forAddress(
+          new InetSocketAddress(this.config.getAddress(), this.config.getPort())
+      ));
+    }
+    if (this.config.getInProcessName() != null) {
+      start(InProcessServerBuilder.forName(this.config.getInProcessName()));
+    }
+  }
+
+  private void start(ServerBuilder<?> builder) {
+    if (this.executor != null) {
+      builder.executor(this.executor);
+    }
+    Server server = builder.addService(this.tokenValidationService).build();
+    try {
+      server.start();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to start the gRPC server", e);
+    }
+    this.servers.add(server);
+    LOGGER.info("gRPC server started on {}", server.getListenSockets());
+  }
+
+  @Override
+  public synchronized void stop() {
+    long deadline = System.nanoTime() + this.config.getShutdownTimeout().toNanos();
+    this.servers.forEach(Server::shutdown);
+    for (Server server : this.servers) {
+      try {
+        if (!server.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+          server.shutdownNow();
+        }
+      } catch (InterruptedException e) {
+        server.shutdownNow();
+        Thread.currentThread().interrupt();
+      }
+    }
+    this.servers.clear();
+    if (this.executor != null) {
+      this.executor.shutdown();
+      this.executor = null;
+    }
+  }
+
+  @Override
+  public synchronized boolean isRunning() {
+    return !this.servers.isEmpty();
+  }
+
+  /**
+   * Returns the port of the network server, e.g. when it was started on port 0.
+   *
+   * @return The port or -1 if there's no network server.
+   */
+  public synchronized int getPort() {
+    return this.servers.stream()
+        .mapToInt(Server::getPort)
+        .filter(port -> port >= 0)
+        .findFirst()
+        .orElse(-1);
+  }
+}
@@ -0,0 +1,138 @@
+package io.datadoc.authservice.resolver;
+
+import io.datadoc.authservice.service.PersistedQueryDocumentProvider;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+import jakarta.servlet.http.Part;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.graphql.server.WebGraphQlHandler;
+import org.springframework.graphql.server.webmvc.GraphQlHttpHandler;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.servlet.function.ServerRequest;
+import org.springframework.web.servlet.function.ServerResponse;
+import org.springframework.web.util.UriBuilder;
+
+/**
+ * PersistedQueryHttpHandler serves the GraphQL endpoint like Spring's GraphQlHttpHandler, but also
+ * accepts requests that send only the hash of a persisted query, without the query itself.
+ */
+public class PersistedQueryHttpHandler extends GraphQlHttpHandler {
+
+  public PersistedQueryHttpHandler(WebGraphQlHandler graphQlHandler) {
+    super(graphQlHandler);
+  }
+
+  @Override
+  public ServerResponse handleRequest(ServerRequest serverRequest) throws ServletException {
+    return super.handleRequest(new PersistedQueryServerRequest(serverRequest));
+  }
+
+  /**
+   * Reads the body of the request with the persisted query marker filled in. Everything else is
+   * delegated to the request.
+   */
+  private record PersistedQueryServerRequest(ServerRequest delegate) implements ServerRequest {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T body(ParameterizedTypeReference<T> bodyType)
+        throws ServletException, IOException {
+      T body = this.delegate.body(bodyType);
+      return body instanceof Map<?, ?> map
+          ? (T) PersistedQueryDocumentProvider.withPersistedQueryMarker((Map<String, Object>) map)
+          : body;
+    }
+
+    @Override
+    public <T> T body(Class<T> bodyType) throws ServletException, IOException {
+      return this.delegate.body(bodyType);
+    }
+
+    @Override
+    public HttpMethod method() {
+      return this.delegate.method();
+    }
+
+    @Override
+    @Deprecated
+    public String methodName() {
+      return this.delegate.method().name();
+    }
+
+    @Override
+    public URI uri() {
+      return this.delegate.uri();
+    }
+
+    @Override
+    public UriBuilder uriBuilder() {
+      return this.delegate.uriBuilder();
+    }
+
+    @Override
+    public Headers headers() {
+      return this.delegate.headers();
+    }
+
+    @Override
+    public MultiValueMap<String, Cookie> cookies() {
+      return this.delegate.cookies();
+    }
+
+    @Override
+    public Optional<InetSocketAddress> remoteAddress() {
+      return this.delegate.remoteAddress();
+    }
+
+    @Override
+    public List<HttpMessageConverter<?>> messageConverters() {
+      return this.delegate.messageConverters();
+    }
+
+    @Override
+    public Map<String, Object> attributes() {
+      return this.delegate.attributes();
+    }
+
+    @Override
+    public MultiValueMap<String, String> params() {
+      return this.delegate.params();
+    }
+
+    @Override
+    public MultiValueMap<String, Part> multipartData() throws IOException, ServletException {
+      return this.delegate.multipartData();
+    }
+
+    @Override
+    public Map<String, String> pathVariables() {
+      return this.delegate.pathVariables();
+    }
+
+    @Override
+    public HttpSession session() {
+      return this.delegate.session();
+    }
+
+    @Override
+    public Optional<Principal> principal() {
+      return this.delegate.principal();
+    }
+
+    @Override
+    public HttpServletRequest servletRequest() {
+      return this.delegate.servletRequest();
+    }
+  }
+}
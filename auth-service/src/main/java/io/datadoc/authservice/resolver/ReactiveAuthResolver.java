@@ -0,0 +1,178 @@
+package io.datadoc.authservice.resolver;
+
+import graphql.execution.DataFetcherResult;
+import graphql.schema.DataFetchingEnvironment;
+import io.datadoc.authservice.model.audit.AuditOperation;
+import io.datadoc.authservice.model.auth.JwtPayload;
+import io.datadoc.authservice.model.auth.LoginCredentials;
+import io.datadoc.authservice.model.auth.UserMetadata;
+import io.datadoc.authservice.service.AuditLog;
+import io.datadoc.authservice.service.KeycloakTenant;
+import io.datadoc.authservice.service.KeycloakTenants;
+import io.datadoc.authservice.service.LoginRateLimiter;
+import io.datadoc.authservice.service.ReactiveKeycloakService;
+import io.datadoc.authservice.service.UserInfoService;
+import io.datadoc.authservice.service.UserLoader;
+import java.util.List;
+import org.dataloader.DataLoader;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.graphql.data.method.annotation.Argument;
+import org.springframework.graphql.data.method.annotation.ContextValue;
+import org.springframework.graphql.data.method.annotation.MutationMapping;
+import org.springframework.graphql.data.method.annotation.QueryMapping;
+import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Mono;
+
+/**
+ * ReactiveAuthResolver provides the same GraphQL query & mutations as the AuthResolver, but
+ * resolves them asynchronously using the ReactiveKeycloakService. It's active when
+ * keycloak.execution-mode is set to reactive.
+ *
+ * @see AuthResolver
+ */
+@Controller
+@ConditionalOnProperty(prefix = "keycloak", name = "execution-mode", havingValue = "reactive")
+public class ReactiveAuthResolver {
+
+  private final ReactiveKeycloakService keycloakService;
+  private final UserInfoService userInfoService;
+  private final UserLoader userLoader;
+  private final LoginRateLimiter loginRateLimiter;
+  private final KeycloakTenants keycloakTenants;
+  private final AuditLog auditLog;
+
+  public ReactiveAuthResolver(
+      ReactiveKeycloakService keycloakService,
+      UserInfoService userInfoService,
+      UserLoader userLoader,
+      LoginRateLimiter loginRateLimiter,
+      KeycloakTenants keycloakTenants,
+      AuditLog auditLog
+  ) {
+    this.keycloakService = keycloakService;
+    this.userInfoService = userInfoService;
+    this.userLoader = userLoader;
+    this.loginRateLimiter = loginRateLimiter;
+    this.keycloakTenants = keycloakTenants;
+    this.auditLog = auditLog;
+  }
+
+  /**
+   * User will be issued with JWT tokens (access, refresh, id) based on their credentials.
+   *
+   * @param credentials   User's email & password object.
+   * @param tenant        The tenant to log in to - overrides the X-Tenant-ID header.
+   * @param tenantId      The tenant selected by the X-Tenant-ID header, the default one if null.
+   * @param clientAddress The IP address of the client - login attempts are rate limited by it.
+   * @return Mono emitting the JwtPayload containing the JWT tokens.
+   * @see JwtPayload
+   */
+  @MutationMapping
+  public Mono<JwtPayload> login(
+      @Argument LoginCredentials credentials,
+      @Argument String tenant,
+      @ContextValue(name = TenantInterceptor.TENANT_ID, required = false) String tenantId,
+      @ContextValue(name = ClientAddressInterceptor.CLIENT_ADDRESS, required = false)
+      String clientAddress
+  ) {
+    KeycloakTenant keycloakTenant = keycloakTenants.get(tenant != null ? tenant : tenantId);
+    return auditLog.recordAsync(
+        AuditOperation.LOGIN, keycloakTenant.getId(), credentials.email(), null,
+        Mono.defer(() -> {
+          loginRateLimiter.acquire(credentials, clientAddress);
+          return keycloakService.fetchTokensForUser(keycloakTenant, credentials);
+        })
+    );
+  }
+
+  /**
+   * Returns the user's information based on their access token. Cached and locally verified
+   * tokens are answered without calling Keycloak. All `me` fields of a request share one
+   * DataLoader, so every distinct token is resolved once.
+   *
+   * @param accessToken The user's access token.
+   * @param users       The DataLoader of the request resolving access tokens to users.
+   * @return Mono emitting the UserMetadata object containing the user's information.
+   */
+  @QueryMapping
+  public Mono<UserMetadata> me(
+      @Argument String accessToken,
+      DataLoader<String, UserMetadata> users
+  ) {
+    return Mono.fromFuture(users.load(accessToken));
+  }
+
+  /**
+   * Returns the information of every user in one query - e.g. for a gateway checking many sessions.
+   *
+   * @param accessTokens The users' access tokens.
+   * @param users        The DataLoader of the request resolving access tokens to users.
+   * @param env          The DataFetchingEnvironment of the field.
+   * @return Mono emitting UserMetadata for every token in the same order, null with an error if a
+   * token failed.
+   */
+  @QueryMapping
+  public Mono<DataFetcherResult<List<UserMetadata>>> users(
+      @Argument List<String> accessTokens,
+      DataLoader<String, UserMetadata> users,
+      DataFetchingEnvironment env
+  ) {
+    return Mono.fromFuture(userLoader.loadAll(accessTokens, users, env));
+  }
+
+  /**
+   * Logs out a user based on their ID token.
+   *
+   * @param idToken  The user's ID token previously issued by Keycloak.
+   * @param tenantId The tenant selected by the X-Tenant-ID header, the token's issuer if null.
+   * @return Mono emitting true if the user was logged out successfully.
+   */
+  @MutationMapping
+  public Mono<Boolean> logout(
+      @Argument String idToken,
+      @ContextValue(name = TenantInterceptor.TENANT_ID, required = false) String tenantId
+  ) {
+    KeycloakTenant tenant = keycloakTenants.resolve(tenantId, idToken);
+    return auditLog.recordAsync(AuditOperation.LOGOUT, tenant.getId(), null, idToken,
+        keycloakService.logoutKeycloakUser(tenant, idToken)
+            .then(Mono.fromRunnable(() -> userInfoService.sessionLoggedOut(tenant, idToken)))
+            .thenReturn(true));
+  }
+
+  /**
+   * Refreshes a user's JWT tokens based on a refresh token - issues new JwtPayload to the user.
+   *
+   * @param refreshToken The user's refresh token.
+   * @param tenantId     The tenant selected by the X-Tenant-ID header, the token's issuer if null.
+   * @return Mono emitting the JwtPayload containing the JWT tokens
+   * @see JwtPayload
+   */
+  @MutationMapping
+  public Mono<JwtPayload> refresh(
+      @Argument String refreshToken,
+      @ContextValue(name = TenantInterceptor.TENANT_ID, required = false) String tenantId
+  ) {
+    KeycloakTenant tenant = keycloakTenants.resolve(tenantId, refreshToken);
+    return auditLog.recordAsync(AuditOperation.REFRESH, tenant.getId(), null, refreshToken,
+        keycloakService.refreshTokens(tenant, refreshToken));
+  }
+
+  /**
+   * Revokes a JWT token - invalidates the token.
+   *
+   * @param token    The JWT token to revoke.
+   * @param tenantId The tenant selected by the X-Tenant-ID header, the token's issuer if null.
+   * @return Mono emitting true if the token was revoked successfully.
+   */
+  @MutationMapping
+  public Mono<Boolean> revoke(
+      @Argument String token,
+      @ContextValue(name = TenantInterceptor.TENANT_ID, required = false) String tenantId
+  ) {
+    KeycloakTenant tenant = keycloakTenants.resolve(tenantId, token);
+    return auditLog.recordAsync(AuditOperation.REVOKE, tenant.getId(), null, token,
+        keycloakService.revokeKeycloakToken(tenant, token)
+            .then(Mono.fromRunnable(() -> userInfoService.tokenRevoked(tenant, token)))
+            .thenReturn(true));
+  }
+}
@@ -0,0 +1,33 @@
+package io.datadoc.authservice.resolver;
+
+import java.net.InetSocketAddress;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * ReactiveClientAddressFilter is the ClientAddressFilter of the reactive web application - it
+ * exposes the client's IP address as the clientAddress exchange attribute.
+ *
+ * @see ClientAddressInterceptor
+ */
+@Component
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveClientAddressFilter implements WebFilter {
+
+  @Override
+  public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+    InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+    if (remoteAddress != null) {
+      exchange.getAttributes().put(ClientAddressInterceptor.CLIENT_ADDRESS,
+          remoteAddress.getAddress() != null
+              ? remoteAddress.getAddress().getHostAddress()
+              : remoteAddress.getHostString());
+    }
+    return chain.filter(exchange);
+  }
+}
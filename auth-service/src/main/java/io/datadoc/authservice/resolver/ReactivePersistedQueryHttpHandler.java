@@ -0,0 +1,35 @@
+package io.datadoc.authservice.resolver;
+
+import io.datadoc.authservice.service.PersistedQueryDocumentProvider;
+import java.util.Map;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.graphql.server.WebGraphQlHandler;
+import org.springframework.graphql.server.webflux.GraphQlHttpHandler;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.reactive.function.server.support.ServerRequestWrapper;
+import reactor.core.publisher.Mono;
+
+/**
+ * ReactivePersistedQueryHttpHandler is the PersistedQueryHttpHandler of the reactive web
+ * application - it accepts requests that send only the hash of a persisted query.
+ */
+public class ReactivePersistedQueryHttpHandler extends GraphQlHttpHandler {
+
+  public ReactivePersistedQueryHttpHandler(WebGraphQlHandler graphQlHandler) {
+    super(graphQlHandler);
+  }
+
+  @Override
+  public Mono<ServerResponse> handleRequest(ServerRequest serverRequest) {
+    return super.handleRequest(new ServerRequestWrapper(serverRequest) {
+      @Override
+      @SuppressWarnings("unchecked")
+      public <T> Mono<T> bodyToMono(ParameterizedTypeReference<T> typeReference) {
+        return super.bodyToMono(typeReference).map(body -> body instanceof Map<?, ?> map
+            ? (T) PersistedQueryDocumentProvider.withPersistedQueryMarker((Map<String, Object>) map)
+            : body);
+      }
+    });
+  }
+}
@@ -0,0 +1,151 @@
+package io.datadoc.authservice.resolver;
+
+import io.datadoc.authservice.model.audit.AuditOperation;
+import io.datadoc.authservice.model.auth.LoginCredentials;
+import io.datadoc.authservice.model.auth.Session;
+import io.datadoc.authservice.model.auth.UserMetadata;
+import io.datadoc.authservice.service.AuditLog;
+import io.datadoc.authservice.service.KeycloakTenant;
+import io.datadoc.authservice.service.KeycloakTenants;
+import io.datadoc.authservice.service.LoginRateLimiter;
+import io.datadoc.authservice.service.ReactiveKeycloakService;
+import io.datadoc.authservice.service.SessionService;
+import io.datadoc.authservice.service.UserInfoService;
+import org.dataloader.DataLoader;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.graphql.data.method.annotation.Argument;
+import org.springframework.graphql.data.method.annotation.ContextValue;
+import org.springframework.graphql.data.method.annotation.MutationMapping;
+import org.springframework.graphql.data.method.annotation.QueryMapping;
+import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Mono;
+
+/**
+ * ReactiveSessionResolver provides the same GraphQL query & mutations as the SessionResolver, but
+ * resolves them asynchronously using the ReactiveKeycloakService. It's active when
+ * keycloak.execution-mode is set to reactive.
+ *
+ * @see SessionResolver
+ */
+@Controller
+@ConditionalOnProperty(prefix = "keycloak", name = "execution-mode", havingValue = "reactive")
+public class ReactiveSessionResolver {
+
+  private final ReactiveKeycloakService keycloakService;
+  private final UserInfoService userInfoService;
+  private final SessionService sessionService;
+  private final LoginRateLimiter loginRateLimiter;
+  private final KeycloakTenants keycloakTenants;
+  private final AuditLog auditLog;
+
+  public ReactiveSessionResolver(
+      ReactiveKeycloakService keycloakService,
+      UserInfoService userInfoService,
+      SessionService sessionService,
+      LoginRateLimiter loginRateLimiter,
+      KeycloakTenants keycloakTenants,
+      AuditLog auditLog
+  ) {
+    this.keycloakService = keycloakService;
+    this.userInfoService = userInfoService;
+    this.sessionService = sessionService;
+    this.loginRateLimiter = loginRateLimiter;
+    this.keycloakTenants = keycloakTenants;
+    this.auditLog = auditLog;
+  }
+
+  /**
+   * User will be issued with JWT tokens based on their credentials, which are kept in a new
+   * session.
+   *
+   * @param credentials   User's email & password object.
+   * @param tenant        The tenant to log in to - overrides the X-Tenant-ID header.
+   * @param tenantId      The tenant selected by the X-Tenant-ID header, the default one if null.
+   * @param clientAddress The IP address of the client - login attempts are rate limited by it.
+   * @return Mono emitting the Session containing the handle of the new session.
+   */
+  @MutationMapping
+  public Mono<Session> loginSession(
+      @Argument LoginCredentials credentials,
+      @Argument String tenant,
+      @ContextValue(name = TenantInterceptor.TENANT_ID, required = false) String tenantId,
+      @ContextValue(name = ClientAddressInterceptor.CLIENT_ADDRESS, required = false)
+      String clientAddress
+  ) {
+    KeycloakTenant keycloakTenant = keycloakTenants.get(tenant != null ? tenant : tenantId);
+    return auditLog.recordAsync(
+        AuditOperation.LOGIN_SESSION, keycloakTenant.getId(), credentials.email(), null,
+        Mono.defer(() -> {
+          loginRateLimiter.acquire(credentials, clientAddress);
+          return keycloakService.fetchTokensForUser(keycloakTenant, credentials)
+              .map(sessionService::create);
+        })
+    );
+  }
+
+  /**
+   * Returns the user's information based on the access token of their session.
+   *
+   * @param handle The session handle.
+   * @param users  The DataLoader of the request resolving access tokens to users.
+   * @return Mono emitting the UserMetadata object containing the user's information.
+   */
+  @QueryMapping
+  public Mono<UserMetadata> sessionUser(
+      @Argument String handle,
+      DataLoader<String, UserMetadata> users
+  ) {
+    return Mono.fromCallable(() -> sessionService.getTokens(handle))
+        .flatMap(tokens -> Mono.fromFuture(users.load(tokens.accessToken())));
+  }
+
+  /**
+   * Refreshes the JWT tokens of the session.
+   *
+   * @param handle   The session handle.
+   * @param tenantId The tenant selected by the X-Tenant-ID header, the token's issuer if null.
+   * @return Mono emitting the Session with the expiry of the new tokens.
+   */
+  @MutationMapping
+  public Mono<Session> refreshSession(
+      @Argument String handle,
+      @ContextValue(name = TenantInterceptor.TENANT_ID, required = false) String tenantId
+  ) {
+    return Mono.fromCallable(() -> sessionService.getTokens(handle))
+        .flatMap(tokens -> {
+          KeycloakTenant tenant = keycloakTenants.resolve(tenantId, tokens.accessToken());
+          return auditLog.recordAsync(
+              AuditOperation.REFRESH_SESSION, tenant.getId(), null, tokens.accessToken(),
+              keycloakService.refreshTokens(tenant, tokens.refreshToken())
+                  .map(refreshed -> sessionService.update(handle, refreshed))
+          );
+        });
+  }
+
+  /**
+   * Logs out the user of the session and forgets the session.
+   *
+   * @param handle   The session handle.
+   * @param tenantId The tenant selected by the X-Tenant-ID header, the token's issuer if null.
+   * @return Mono emitting true if the user was logged out successfully.
+   */
+  @MutationMapping
+  public Mono<Boolean> logoutSession(
+      @Argument String handle,
+      @ContextValue(name = TenantInterceptor.TENANT_ID, required = false) String tenantId
+  ) {
+    return Mono.fromCallable(() -> sessionService.getTokens(handle))
+        .flatMap(tokens -> {
+          KeycloakTenant tenant = keycloakTenants.resolve(tenantId, tokens.accessToken());
+          return auditLog.recordAsync(
+              AuditOperation.LOGOUT_SESSION, tenant.getId(), null, tokens.accessToken(),
+              keycloakService.logoutKeycloakUser(tenant, tokens.idToken())
+                  .then(Mono.fromRunnable(() -> {
+                    userInfoService.sessionLoggedOut(tenant, tokens.idToken());
+                    sessionService.remove(handle);
+                  }))
+                  .thenReturn(true)
+          );
+        });
+  }
+}
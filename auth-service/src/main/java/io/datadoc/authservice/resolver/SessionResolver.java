@@ -0,0 +1,150 @@
+package io.datadoc.authservice.resolver;
+
+import io.datadoc.authservice.model.audit.AuditOperation;
+import io.datadoc.authservice.model.auth.JwtPayload;
+import io.datadoc.authservice.model.auth.LoginCredentials;
+import io.datadoc.authservice.model.auth.Session;
+import io.datadoc.authservice.model.auth.UserMetadata;
+import io.datadoc.authservice.service.AuditLog;
+import io.datadoc.authservice.service.KeycloakService;
+import io.datadoc.authservice.service.KeycloakTenant;
+import io.datadoc.authservice.service.KeycloakTenants;
+import io.datadoc.authservice.service.LoginRateLimiter;
+import io.datadoc.authservice.service.SessionService;
+import io.datadoc.authservice.service.UserInfoService;
+import java.util.concurrent.CompletableFuture;
+import org.dataloader.DataLoader;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.graphql.data.method.annotation.Argument;
+import org.springframework.graphql.data.method.annotation.ContextValue;
+import org.springframework.graphql.data.method.annotation.MutationMapping;
+import org.springframework.graphql.data.method.annotation.QueryMapping;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.client.HttpStatusCodeException;
+
+/**
+ * SessionResolver provides the GraphQL query & mutations of the sessions kept by the auth-service -
+ * the client gets an opaque handle instead of the JWT tokens. Refer to the GraphQL schema for more
+ * information.
+ *
+ * @see SessionService
+ */
+@Controller
+@ConditionalOnProperty(
+    prefix = "keycloak", name = "execution-mode", havingValue = "blocking", matchIfMissing = true
+)
+public class SessionResolver {
+
+  private final KeycloakService keycloakService;
+  private final UserInfoService userInfoService;
+  private final SessionService sessionService;
+  private final LoginRateLimiter loginRateLimiter;
+  private final KeycloakTenants keycloakTenants;
+  private final AuditLog auditLog;
+
+  public SessionResolver(
+      KeycloakService keycloakService,
+      UserInfoService userInfoService,
+      SessionService sessionService,
+      LoginRateLimiter loginRateLimiter,
+      KeycloakTenants keycloakTenants,
+      AuditLog auditLog
+  ) {
+    this.keycloakService = keycloakService;
+    this.userInfoService = userInfoService;
+    this.sessionService = sessionService;
+    this.loginRateLimiter = loginRateLimiter;
+    this.keycloakTenants = keycloakTenants;
+    this.auditLog = auditLog;
+  }
+
+  /**
+   * User will be issued with JWT tokens based on their credentials, which are kept in a new
+   * session.
+   *
+   * @param credentials   User's email & password object.
+   * @param tenant        The tenant to log in to - overrides the X-Tenant-ID header.
+   * @param tenantId      The tenant selected by the X-Tenant-ID header, the default one if null.
+   * @param clientAddress The IP address of the client - login attempts are rate limited by it.
+   * @return Session containing the handle of the new session.
+   */
+  @MutationMapping
+  public Session loginSession(
+      @Argument LoginCredentials credentials,
+      @Argument String tenant,
+      @ContextValue(name = TenantInterceptor.TENANT_ID, required = false) String tenantId,
+      @ContextValue(name = ClientAddressInterceptor.CLIENT_ADDRESS, required = false)
+      String clientAddress
+  ) throws HttpStatusCodeException {
+    KeycloakTenant keycloakTenant = keycloakTenants.get(tenant != null ? tenant : tenantId);
+    return auditLog.record(
+        AuditOperation.LOGIN_SESSION, keycloakTenant.getId(), credentials.email(), null, () -> {
+          loginRateLimiter.acquire(credentials, clientAddress);
+          return sessionService.create(
+              keycloakService.fetchTokensForUser(keycloakTenant, credentials).getBody());
+        }
+    );
+  }
+
+  /**
+   * Returns the user's information based on the access token of their session.
+   *
+   * @param handle The session handle.
+   * @param users  The DataLoader of the request resolving access tokens to users.
+   * @return UserMetadata object containing the user's information.
+   */
+  @QueryMapping
+  public CompletableFuture<UserMetadata> sessionUser(
+      @Argument String handle,
+      DataLoader<String, UserMetadata> users
+  ) {
+    return users.load(sessionService.getTokens(handle).accessToken());
+  }
+
+  /**
+   * Refreshes the JWT tokens of the session.
+   *
+   * @param handle   The session handle.
+   * @param tenantId The tenant selected by the X-Tenant-ID header, the token's issuer if null.
+   * @return Session with the expiry of the new tokens.
+   */
+  @MutationMapping
+  public Session refreshSession(
+      @Argument String handle,
+      @ContextValue(name = TenantInterceptor.TENANT_ID, required = false) String tenantId
+  ) throws HttpStatusCodeException {
+    JwtPayload tokens = sessionService.getTokens(handle);
+    KeycloakTenant tenant = keycloakTenants.resolve(tenantId, tokens.accessToken());
+    return auditLog.record(
+        AuditOperation.REFRESH_SESSION, tenant.getId(), null, tokens.accessToken(), () -> {
+          JwtPayload refreshed = keycloakService.refreshTokens(tenant, tokens.refreshToken())
+              .getBody();
+          return sessionService.update(handle, refreshed);
+        }
+    );
+  }
+
+  /**
+   * Logs out the user of the session and forgets the session.
+   *
+   * @param handle   The session handle.
+   * @param tenantId The tenant selected by the X-Tenant-ID header, the token's issuer if null.
+   * @return true if the user was logged out successfully.
+   */
+  @MutationMapping
+  public boolean logoutSession(
+      @Argument String handle,
+      @ContextValue(name = TenantInterceptor.TENANT_ID, required = false) String tenantId
+  ) throws HttpStatusCodeException {
+    JwtPayload tokens = sessionService.getTokens(handle);
+    KeycloakTenant tenant = keycloakTenants.resolve(tenantId, tokens.accessToken());
+    return auditLog.record(
+        AuditOperation.LOGOUT_SESSION, tenant.getId(), null, tokens.accessToken(), () -> {
+          keycloakService.logoutKeycloakUser(tenant, tokens.idToken());
+          userInfoService.sessionLoggedOut(tenant, tokens.idToken());
+          sessionService.remove(handle);
+          return true;
+        }
+    );
+  }
+}
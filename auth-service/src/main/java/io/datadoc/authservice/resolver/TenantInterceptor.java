@@ -0,0 +1,36 @@
+package io.datadoc.authservice.resolver;
+
+import org.springframework.graphql.server.WebGraphQlInterceptor;
+import org.springframework.graphql.server.WebGraphQlRequest;
+import org.springframework.graphql.server.WebGraphQlResponse;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * TenantInterceptor puts the tenant selected by the X-Tenant-ID header into the GraphQLContext of
+ * the request, so resolvers can get it with @ContextValue. Without the header, tokens are sent to
+ * the tenant that issued them and logins to the default tenant.
+ */
+@Component
+public class TenantInterceptor implements WebGraphQlInterceptor {
+
+  /**
+   * Name of the HTTP header selecting the tenant.
+   */
+  public static final String TENANT_HEADER = "X-Tenant-ID";
+
+  /**
+   * Name of the GraphQLContext value holding the selected tenant ID.
+   */
+  public static final String TENANT_ID = "tenantId";
+
+  @Override
+  public Mono<WebGraphQlResponse> intercept(WebGraphQlRequest request, Chain chain) {
+    String tenantId = request.getHeaders().getFirst(TENANT_HEADER);
+    if (tenantId != null && !tenantId.isBlank()) {
+      request.configureExecutionInput((input, builder) ->
+          builder.graphQLContext(context -> context.put(TENANT_ID, tenantId)).build());
+    }
+    return chain.next(request);
+  }
+}
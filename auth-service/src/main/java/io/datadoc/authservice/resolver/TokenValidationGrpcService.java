@@ -0,0 +1,350 @@
+package io.datadoc.authservice.resolver;
+
+import io.datadoc.authservice.config.AuthServiceConfig;
+import io.datadoc.authservice.exception.AuthServiceErrorType;
+import io.datadoc.authservice.exception.InvalidTokenException;
+import io.datadoc.authservice.exception.OverloadedException;
+import io.datadoc.authservice.exception.RejectedTokenException;
+import io.datadoc.authservice.exception.UnknownTenantException;
+import io.datadoc.authservice.grpc.Error;
+import io.datadoc.authservice.grpc.GetUserResponse;
+import io.datadoc.authservice.grpc.TokenRequest;
+import io.datadoc.authservice.grpc.TokenValidationGrpc;
+import io.datadoc.authservice.grpc.User;
+import io.datadoc.authservice.grpc.ValidateTokenResponse;
+import io.datadoc.authservice.model.auth.UserMetadata;
+import io.datadoc.authservice.service.ConcurrencyLimiter;
+import io.datadoc.authservice.service.UserLoader;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+/**
+ * TokenValidationGrpcService answers the `me` query for other services over gRPC - the tokens are
+ * resolved by the UserLoader like the DataLoader of the GraphQL requests does, from the cache, by
+ * local verification or from Keycloak, and admitted by the ConcurrencyLimiter one by one.
+ *
+ * <p>The streaming RPCs resolve up to auth-service.grpc.max-concurrent-per-stream requests of a
+ * stream at once and only read more as these complete, so a gateway can pipeline any number of
+ * tokens over one connection without flooding the service. Responses are sent as the tokens are
+ * resolved and carry the id of their request.
+ *
+ * <p>Responses of calls the client cancelled while their tokens were resolved aren't sent.
+ *
+ * <p>Every request is timed in the grpc.server.requests metric tagged with the method and the
+ * status code.
+ */
+@Component
+@ConditionalOnProperty(prefix = "auth-service.grpc", name = "enabled", havingValue = "true")
+public class TokenValidationGrpcService extends TokenValidationGrpc.TokenValidationImplBase {
+
+  private static final String VALIDATE_TOKEN = "validateToken";
+  private static final String GET_USER = "getUser";
+  private final UserLoader userLoader;
+  private final ConcurrencyLimiter concurrencyLimiter;
+  private final MeterRegistry meterRegistry;
+  private final ConcurrentMap<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+  private final int maxConcurrentPerStream;
+
+  public TokenValidationGrpcService(
+      UserLoader userLoader,
+      ConcurrencyLimiter concurrencyLimiter,
+      MeterRegistry meterRegistry,
+      AuthServiceConfig authServiceConfig
+  ) {
+    this.userLoader = userLoader;
+    this.concurrencyLimiter = concurrencyLimiter;
+    this.meterRegistry = meterRegistry;
+    this.maxConcurrentPerStream = authServiceConfig.getGrpc().getMaxConcurrentPerStream();
+  }
+
+  @Override
+  public void validateToken(
+      TokenRequest request,
+      StreamObserver<ValidateTokenResponse> responses
+  ) {
+    ServerCallStreamObserver<ValidateTokenResponse> call =
+        (ServerCallStreamObserver<ValidateTokenResponse>) responses;
+    resolve(VALIDATE_TOKEN, request).whenComplete((user, e) -> {
+      if (call.isCancelled()) {
+        return;
+      }
+      call.onNext(toValidateTokenResponse(request, user, e));
+      call.onCompleted();
+    });
+  }
+
+  @Override
+  public StreamObserver<TokenRequest> validateTokenStream(
+      StreamObserver<ValidateTokenResponse> responses
+  ) {
+    return new TokenStream<>(VALIDATE_TOKEN, responses,
+        TokenValidationGrpcService::toValidateTokenResponse);
+  }
+
+  @Override
+  public void getUser(TokenRequest request, StreamObserver<User> responses) {
+    ServerCallStreamObserver<User> call = (ServerCallStreamObserver<User>) responses;
+    resolve(GET_USER, request).whenComplete((user, e) -> {
+      if (call.isCancelled()) {
+        return;
+      }
+      if (e != null) {
+        call.onError(Failure.of(e).toStatus().asRuntimeException());
+      } else if (user == null) {
+        call.onError(Status.NOT_FOUND.withDescription("User not found").asRuntimeException());
+      } else {
+        call.onNext(toUser(user));
+        call.onCompleted();
+      }
+    });
+  }
+
+  @Override
+  public StreamObserver<TokenRequest> getUserStream(StreamObserver<GetUserResponse> responses) {
+    return new TokenStream<>(GET_USER, responses, TokenValidationGrpcService::toGetUserResponse);
+  }
+
+  /**
+   * Resolves the token of a request, once the ConcurrencyLimiter admitted it.
+   */
+  private CompletableFuture<UserMetadata> resolve(String method, TokenRequest request) {
+    Timer.Sample sample = Timer.start(this.meterRegistry);
+    boolean limited = this.concurrencyLimiter.isEnabled();
+    CompletableFuture<UserMetadata> user;
+    try {
+      if (limited) {
+        this.concurrencyLimiter.acquire(method);
+      }
+      String tenantId = request.getTenantId().isEmpty() ? null : request.getTenantId();
+      user = this.userLoader.loadUser(request.getAccessToken(), tenantId).toFuture();
+      if (limited) {
+        user = user.whenComplete((value, e) -> this.concurrencyLimiter.release());
+      }
+    } catch (RuntimeException e) {
+      user = CompletableFuture.failedFuture(e);
+    }
+    return user.whenComplete((value, e) -> sample.stop(
+        timer(method, e == null ? Status.Code.OK : Failure.of(e).code())));
+  }
+
+  private Timer timer(String method, Status.Code code) {
+    return this.timers.computeIfAbsent(new TimerKey(method, code), key ->
+        Timer.builder("grpc.server.requests")
+            .description("Requests of the internal gRPC service, every message of a stream")
+            .tag("method", key.method())
+            .tag("status", key.code().name())
+            .publishPercentileHistogram()
+            .register(this.meterRegistry));
+  }
+
+  /**
+   * An invalid token is a valid result of ValidateToken, other failures are errors.
+   */
+  private static ValidateTokenResponse toValidateTokenResponse(
+      TokenRequest request,
+      UserMetadata user,
+      Throwable e
+  ) {
+    ValidateTokenResponse.Builder response = ValidateTokenResponse.newBuilder()
+        .setId(request.getId());
+    if (e == null) {
+      response.setValid(user != null);
+      if (user != null) {
+        response.setUser(toUser(user));
+      }
+    } else {
+      Failure failure = Failure.of(e);
+      if (failure.code() != Status.Code.UNAUTHENTICATED) {
+        response.setError(failure.toError());
+      }
+    }
+    return response.build();
+  }
+
+  private static GetUserResponse toGetUserResponse(
+      TokenRequest request,
+      UserMetadata user,
+      Throwable e
+  ) {
+    GetUserResponse.Builder response = GetUserResponse.newBuilder().setId(request.getId());
+    if (e != null) {
+      response.setError(Failure.of(e).toError());
+    } else if (user != null) {
+      response.setUser(toUser(user));
+    }
+    return response.build();
+  }
+
+  private static User toUser(UserMetadata user) {
+    return User.newBuilder()
+        .setId(nullToEmpty(user.id()))
+        .setUsername(nullToEmpty(user.username()))
+        .setFirstName(nullToEmpty(user.firstName()))
+        .setLastName(nullToEmpty(user.lastName()))
+        .setEmail(nullToEmpty(user.email()))
+        .setEmailVerified(user.emailVerified())
+        .build();
+  }
+
+  private static String nullToEmpty(String value) {
+    return value == null ? "" : value;
+  }
+
+  /**
+   * Builds the response of a stream from a request and its user, or the failure to resolve it.
+   */
+  @FunctionalInterface
+  private interface ResponseMapper<R> {
+
+    R toResponse(TokenRequest request, UserMetadata user, Throwable e);
+  }
+
+  /**
+   * The requests of a stream. Inbound flow control is manual: maxConcurrentPerStream requests are
+   * read up front, and one more whenever a response was sent. The response stream is completed
+   * once the client half-closed its stream and every request was answered.
+   */
+  private final class TokenStream<R> implements StreamObserver<TokenRequest> {
+
+    private final String method;
+    private final ServerCallStreamObserver<R> responses;
+    private final ResponseMapper<R> mapper;
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean halfClosed;
+    private boolean completed;
+
+    TokenStream(String method, StreamObserver<R> responses, ResponseMapper<R> mapper) {
+      this.method = method;
+      this.responses = (ServerCallStreamObserver<R>) responses;
+      this.mapper = mapper;
+      this.responses.disableAutoRequest();
+      this.responses.request(maxConcurrentPerStream);
+    }
+
+    @Override
+    public void onNext(TokenRequest request) {
+      this.pending.incrementAndGet();
+      resolve(this.method, request).whenComplete((user, e) -> {
+        R response = this.mapper.toResponse(request, user, e);
+        synchronized (this) {
+          if (!this.completed && !this.responses.isCancelled()) {
+            this.responses.onNext(response);
+            this.responses.request(1);
+          }
+        }
+        if (this.pending.decrementAndGet() == 0 && this.halfClosed) {
+          complete();
+        }
+      });
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      // The client cancelled the stream - the pending requests complete without being sent.
+      synchronized (this) {
+        this.completed = true;
+      }
+    }
+
+    @Override
+    public void onCompleted() {
+      this.halfClosed = true;
+      if (this.pending.get() == 0) {
+        complete();
+      }
+    }
+
+    private synchronized void complete() {
+      if (!this.completed) {
+        this.completed = true;
+        this.responses.onCompleted();
+      }
+    }
+  }
+
+  /**
+   * A failed request as a gRPC status and a GraphQL error classification - the same
+   * classifications the AuthServiceGraphQLExceptionResolver returns for the `me` query.
+   */
+  private record Failure(Status.Code code, String classification, String message,
+                         int retryAfter) {
+
+    static Failure of(Throwable e) {
+      if (e instanceof CompletionException && e.getCause() != null) {
+        return of(e.getCause());
+      }
+      if (e instanceof InvalidTokenException) {
+        return new Failure(Status.Code.UNAUTHENTICATED, "ValidationError", e.getMessage(), 0);
+      }
+      if (e instanceof RejectedTokenException rejectedTokenException) {
+        return rejectedTokenException.getStatus() == 400
+            ? new Failure(Status.Code.INVALID_ARGUMENT, "DataFetchingException", e.getMessage(), 0)
+            : new Failure(Status.Code.UNAUTHENTICATED, "ValidationError", e.getMessage(), 0);
+      }
+      if (e instanceof OverloadedException overloadedException) {
+        long retryAfterMillis = overloadedException.getRetryAfter().toMillis();
+        return new Failure(Status.Code.UNAVAILABLE, AuthServiceErrorType.Overloaded.name(),
+            e.getMessage(), (int) ((retryAfterMillis + 999) / 1000));
+      }
+      if (e instanceof UnknownTenantException) {
+        return new Failure(Status.Code.INVALID_ARGUMENT,
+            AuthServiceErrorType.UnknownTenant.name(), e.getMessage(), 0);
+      }
+      if (e instanceof CallNotPermittedException || e instanceof BulkheadFullException) {
+        return new Failure(Status.Code.UNAVAILABLE,
+            AuthServiceErrorType.KeycloakUnavailable.name(),
+            "Keycloak is temporarily unavailable, try again later.", 0);
+      }
+      Throwable t = NestedExceptionUtils.getMostSpecificCause(e);
+      HttpStatusCode status = t instanceof HttpStatusCodeException httpException
+          ? httpException.getStatusCode()
+          : t instanceof WebClientResponseException webClientException
+              ? webClientException.getStatusCode()
+              : null;
+      if (status != null && (status.value() == 401 || status.value() == 403)) {
+        return new Failure(Status.Code.UNAUTHENTICATED, "ValidationError", t.getMessage(), 0);
+      }
+      if (status != null && status.is4xxClientError()) {
+        return new Failure(Status.Code.INVALID_ARGUMENT, "DataFetchingException", t.getMessage(),
+            0);
+      }
+      return new Failure(Status.Code.INTERNAL, "ExecutionAborted",
+          "An internal server error occurred.", 0);
+    }
+
+    Status toStatus() {
+      return Status.fromCode(this.code).withDescription(this.message);
+    }
+
+    Error toError() {
+      return Error.newBuilder()
+          .setClassification(this.classification)
+          .setMessage(this.message == null ? "" : this.message)
+          .setRetryAfter(this.retryAfter)
+          .build();
+    }
+  }
+
+  /**
+   * Tags of a grpc.server.requests timer.
+   */
+  private record TimerKey(String method, Status.Code code) {
+
+  }
+}
@@ -0,0 +1,138 @@
+package io.datadoc.authservice.service;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import io.datadoc.authservice.model.audit.AuditOperation;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+/**
+ * AuditEvent is a slot of the AuditLog's ring buffer - the slots are allocated once and reused, so
+ * publishing an event allocates nothing. The request thread only stores what it already has at
+ * hand. The work needed to describe the event - reading the user ID from the token and the status
+ * from the error - is left to the writer thread.
+ *
+ * <p>An event is only valid while it's passed to AuditSink.write, sinks must not keep it.
+ */
+public final class AuditEvent {
+
+  private long timestampMillis;
+  private long latencyNanos;
+  private AuditOperation operation;
+  private String tenantId;
+  private String username;
+  private String token;
+  private Throwable error;
+  private String userId;
+  private int status;
+
+  AuditEvent() {
+  }
+
+  /**
+   * Fills the slot on the request thread.
+   */
+  void set(
+      AuditOperation operation,
+      String tenantId,
+      String username,
+      String token,
+      long latencyNanos,
+      Throwable error
+  ) {
+    this.timestampMillis = System.currentTimeMillis();
+    this.operation = operation;
+    this.tenantId = tenantId;
+    this.username = username;
+    this.token = token;
+    this.latencyNanos = latencyNanos;
+    this.error = error;
+  }
+
+  /**
+   * Derives the user ID and the status on the writer thread. The token isn't verified - it's only
+   * read to tell who the event is about.
+   */
+  void describe() {
+    JWTClaimsSet claims = this.token == null ? null : TokenVerifier.readUnverified(this.token);
+    this.userId = claims == null ? null : claims.getSubject();
+    if (this.error instanceof HttpStatusCodeException httpException) {
+      this.status = httpException.getStatusCode().value();
+    } else if (this.error instanceof WebClientResponseException webClientException) {
+      this.status = webClientException.getStatusCode().value();
+    } else {
+      this.status = 0;
+    }
+  }
+
+  /**
+   * Drops the references, so the tokens and errors don't outlive the event.
+   */
+  void clear() {
+    this.tenantId = null;
+    this.username = null;
+    this.token = null;
+    this.error = null;
+    this.userId = null;
+  }
+
+  public long getTimestampMillis() {
+    return this.timestampMillis;
+  }
+
+  public AuditOperation getOperation() {
+    return this.operation;
+  }
+
+  /**
+   * Returns the tenant the operation was made on.
+   *
+   * @return The tenant ID or null if it wasn't known before the operation failed.
+   */
+  public String getTenantId() {
+    return this.tenantId;
+  }
+
+  /**
+   * Returns the user ID - the `sub` claim of the token the operation was made with.
+   *
+   * @return The user ID or null for logins and tokens that can't be read.
+   */
+  public String getUserId() {
+    return this.userId;
+  }
+
+  /**
+   * Returns the username the login was attempted with.
+   *
+   * @return The email or null for the other operations.
+   */
+  public String getUsername() {
+    return this.username;
+  }
+
+  public boolean isSuccess() {
+    return this.error == null;
+  }
+
+  /**
+   * Returns the HTTP status Keycloak failed the operation with.
+   *
+   * @return The status or 0 if the operation succeeded or failed without a Keycloak response.
+   */
+  public int getStatus() {
+    return this.status;
+  }
+
+  /**
+   * Returns the type of the error the operation failed with.
+   *
+   * @return The simple class name of the error or null if the operation succeeded.
+   */
+  public String getErrorType() {
+    return this.error == null ? null : this.error.getClass().getSimpleName();
+  }
+
+  public long getLatencyNanos() {
+    return this.latencyNanos;
+  }
+}
@@ -0,0 +1,290 @@
+package io.datadoc.authservice.service;
+
+import io.datadoc.authservice.config.AuthServiceConfig;
+import io.datadoc.authservice.model.audit.AuditOperation;
+import io.datadoc.authservice.model.audit.AuditOverflowPolicy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * AuditLog keeps the audit trail of the authentication mutations - who logged in, refreshed,
+ * logged out or revoked a token, whether it succeeded, the status Keycloak answered with and how
+ * long it took.
+ *
+ * <p>Recording an event must not slow the request down, so the resolvers only publish it into a
+ * ring buffer of preallocated AuditEvent slots. A producer claims a sequence with a CAS, fills the
+ * slot and publishes the sequence - no locks and no allocation. A single writer thread drains the
+ * buffer in batches to the AuditSink and flushes the sink once per batch. When the writer falls
+ * behind and the buffer is full, auth-service.audit.overflow decides whether the event is dropped
+ * (and the gap recorded in the trail) or the request waits for a free slot.
+ *
+ * <p>The events are counted by the audit.events counter tagged with the outcome (written, dropped,
+ * failed), the audit.buffer.size gauge shows the events waiting for the writer.
+ */
+@Service
+public class AuditLog {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AuditLog.class);
+  private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+  private static final int BLOCK_SPINS = 100;
+  private final boolean enabled;
+  private final AuditOverflowPolicy overflow;
+  private final int batchSize;
+  private final long pollIntervalNanos;
+  private final AuditSink sink;
+  private final AuditEvent[] events;
+  private final int mask;
+  private final AtomicLong claimed = new AtomicLong();
+  private final AtomicLongArray published;
+  private final AtomicLong pendingDrops = new AtomicLong();
+  private final Counter writtenCounter;
+  private final Counter droppedCounter;
+  private final Counter failedCounter;
+  private final Thread writer;
+  private volatile long consumed;
+  private volatile boolean closed;
+
+  public AuditLog(
+      AuthServiceConfig authServiceConfig,
+      AuditSink sink,
+      MeterRegistry meterRegistry
+  ) {
+    AuthServiceConfig.Audit config = authServiceConfig.getAudit();
+    this.enabled = config.isEnabled();
+    this.overflow = config.getOverflow();
+    this.batchSize = config.getBatchSize();
+    this.pollIntervalNanos = config.getPollInterval().toNanos();
+    this.sink = sink;
+    int capacity = Integer.highestOneBit(Math.max(2, config.getBufferSize() - 1)) << 1;
+    this.mask = capacity - 1;
+    this.events = new AuditEvent[this.enabled ? capacity : 0];
+    this.published = new AtomicLongArray(this.events.length);
+    for (int i = 0; i < this.events.length; i++) {
+      this.events[i] = new AuditEvent();
+      this.published.set(i, -1);
+    }
+    this.writtenCounter = counter(meterRegistry, "written");
+    this.droppedCounter = counter(meterRegistry, "dropped");
+    this.failedCounter = counter(meterRegistry, "failed");
+    Gauge.builder("audit.buffer.size", this, log -> log.claimed.get() - log.consumed)
+        .description("Audit events waiting for the writer")
+        .register(meterRegistry);
+    if (this.enabled) {
+      try {
+        sink.open();
+      } catch (IOException e) {
+        throw new UncheckedIOException("Unable to open the audit sink", e);
+      }
+      this.writer = Thread.ofPlatform().daemon().name("audit-log-writer").start(this::drain);
+    } else {
+      this.writer = null;
+    }
+  }
+
+  /**
+   * Runs a blocking operation and records its outcome.
+   *
+   * @param operation The audited operation.
+   * @param tenantId  The ID of the tenant the operation is made on.
+   * @param username  The username of a login, null otherwise.
+   * @param token     The token the operation is made with - it tells the user, null for logins.
+   * @param call      The operation.
+   * @param <T>       The type of the result.
+   * @return The result of the operation.
+   */
+  public <T> T record(
+      AuditOperation operation,
+      String tenantId,
+      String username,
+      String token,
+      Supplier<T> call
+  ) {
+    if (!this.enabled) {
+      return call.get();
+    }
+    long start = System.nanoTime();
+    try {
+      T result = call.get();
+      publish(operation, tenantId, username, token, System.nanoTime() - start, null);
+      return result;
+    } catch (RuntimeException e) {
+      publish(operation, tenantId, username, token, System.nanoTime() - start, e);
+      throw e;
+    }
+  }
+
+  /**
+   * Records the outcome of a non-blocking operation - the latency is measured from subscription.
+   *
+   * @param operation The audited operation.
+   * @param tenantId  The ID of the tenant the operation is made on.
+   * @param username  The username of a login, null otherwise.
+   * @param token     The token the operation is made with - it tells the user, null for logins.
+   * @param call      The operation.
+   * @param <T>       The type of the result.
+   * @return Mono emitting the result of the operation.
+   */
+  public <T> Mono<T> recordAsync(
+      AuditOperation operation,
+      String tenantId,
+      String username,
+      String token,
+      Mono<T> call
+  ) {
+    if (!this.enabled) {
+      return call;
+    }
+    return Mono.defer(() -> {
+      long start = System.nanoTime();
+      return call
+          .doOnSuccess(result -> publish(
+              operation, tenantId, username, token, System.nanoTime() - start, null))
+          .doOnError(e -> publish(
+              operation, tenantId, username, token, System.nanoTime() - start, e));
+    });
+  }
+
+  /**
+   * Stops accepting events, writes the buffered ones and closes the sink.
+   */
+  @PreDestroy
+  public void close() {
+    if (this.writer == null) {
+      return;
+    }
+    this.closed = true;
+    LockSupport.unpark(this.writer);
+    try {
+      this.writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    try {
+      this.sink.close();
+    } catch (IOException e) {
+      LOGGER.warn("Unable to close the audit sink", e);
+    }
+  }
+
+  private void publish(
+      AuditOperation operation,
+      String tenantId,
+      String username,
+      String token,
+      long latencyNanos,
+      Throwable error
+  ) {
+    long sequence = claim();
+    if (sequence < 0) {
+      this.pendingDrops.incrementAndGet();
+      this.droppedCounter.increment();
+      return;
+    }
+    int index = (int) (sequence & this.mask);
+    this.events[index].set(operation, tenantId, username, token, latencyNanos, error);
+    this.published.setRelease(index, sequence);
+  }
+
+  /**
+   * Claims the next sequence, waiting for a free slot if the overflow policy is BLOCK.
+   *
+   * @return The sequence or -1 if the event must be dropped.
+   */
+  private long claim() {
+    int spins = 0;
+    while (!this.closed) {
+      long sequence = this.claimed.get();
+      if (sequence - this.consumed < this.events.length) {
+        if (this.claimed.compareAndSet(sequence, sequence + 1)) {
+          return sequence;
+        }
+      } else if (this.overflow == AuditOverflowPolicy.DROP) {
+        return -1;
+      } else if (spins++ < BLOCK_SPINS) {
+        Thread.onSpinWait();
+      } else {
+        LockSupport.parkNanos(BLOCK_PARK_NANOS);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * The writer loop - runs until the log is closed and every claimed event was written.
+   */
+  private void drain() {
+    long next = this.consumed;
+    while (!this.closed || next < this.claimed.get()) {
+      long end = next + this.batchSize;
+      long written = next;
+      while (written < end) {
+        int index = (int) (written & this.mask);
+        if (this.published.getAcquire(index) != written) {
+          break;
+        }
+        write(this.events[index]);
+        written++;
+      }
+      long drops = this.pendingDrops.getAndSet(0);
+      if (drops > 0) {
+        writeDropped(drops);
+      }
+      if (written == next && drops == 0) {
+        LockSupport.parkNanos(this.pollIntervalNanos);
+        continue;
+      }
+      flush();
+      this.consumed = written;
+      next = written;
+    }
+  }
+
+  private void write(AuditEvent event) {
+    try {
+      event.describe();
+      this.sink.write(event);
+      this.writtenCounter.increment();
+    } catch (IOException | RuntimeException e) {
+      this.failedCounter.increment();
+      LOGGER.warn("Unable to write the audit event", e);
+    } finally {
+      event.clear();
+    }
+  }
+
+  private void writeDropped(long count) {
+    try {
+      this.sink.writeDropped(count, System.currentTimeMillis());
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Unable to record {} dropped audit events", count, e);
+    }
+  }
+
+  private void flush() {
+    try {
+      this.sink.flush();
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Unable to flush the audit sink", e);
+    }
+  }
+
+  private static Counter counter(MeterRegistry meterRegistry, String outcome) {
+    return Counter.builder("audit.events")
+        .description("Audit events by outcome")
+        .tag("outcome", outcome)
+        .register(meterRegistry);
+  }
+}
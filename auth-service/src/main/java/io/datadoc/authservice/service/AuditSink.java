@@ -0,0 +1,54 @@
+package io.datadoc.authservice.service;
+
+import java.io.IOException;
+
+/**
+ * AuditSink stores the audit trail. The AuditLog hands it the events in batches, always from its
+ * single writer thread, so implementations need no synchronization and may block on I/O. The sink
+ * is opened and closed by the AuditLog, only when auditing is enabled.
+ *
+ * <p>The MappedFileAuditSink is used by default. Another sink - e.g. shipping the events to a
+ * SIEM - is a bean implementing this interface, selected by auth-service.audit.sink.
+ */
+public interface AuditSink {
+
+  /**
+   * Called before the first event is written.
+   *
+   * @throws IOException If the sink can't be opened.
+   */
+  default void open() throws IOException {
+  }
+
+  /**
+   * Writes an event. The event is only valid during the call.
+   *
+   * @param event The audit event.
+   * @throws IOException If the event can't be written.
+   */
+  void write(AuditEvent event) throws IOException;
+
+  /**
+   * Records that events were dropped because the buffer was full, so the gap shows in the trail.
+   *
+   * @param count           The number of dropped events.
+   * @param timestampMillis When the drop was noticed.
+   * @throws IOException If the record can't be written.
+   */
+  void writeDropped(long count, long timestampMillis) throws IOException;
+
+  /**
+   * Called after every batch of events.
+   *
+   * @throws IOException If the batch can't be flushed.
+   */
+  void flush() throws IOException;
+
+  /**
+   * Called after the last event was written.
+   *
+   * @throws IOException If the sink can't be closed.
+   */
+  default void close() throws IOException {
+  }
+}
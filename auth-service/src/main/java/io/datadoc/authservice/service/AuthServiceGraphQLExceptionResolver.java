@@ -6,19 +6,45 @@ import graphql.ErrorType;
 import graphql.GraphQLError;
 import graphql.GraphqlErrorBuilder;
 import graphql.schema.DataFetchingEnvironment;
+import io.datadoc.authservice.exception.AuthServiceErrorType;
+import io.datadoc.authservice.exception.InvalidTokenException;
+import io.datadoc.authservice.exception.OverloadedException;
+import io.datadoc.authservice.exception.RateLimitedException;
+import io.datadoc.authservice.exception.RejectedTokenException;
+import io.datadoc.authservice.exception.TooManyTokensException;
+import io.datadoc.authservice.exception.UnknownTenantException;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.springframework.core.NestedExceptionUtils;
 import org.springframework.graphql.execution.DataFetcherExceptionResolverAdapter;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 
 /**
  * AuthServiceGraphQLExceptionResolver is responsible for mapping exceptions thrown by the
- * AuthResolver to GraphQL errors.
+ * AuthResolver to GraphQL errors. Every mapped error is counted in the graphql.errors metric tagged
+ * with the operation, the error classification and the HTTP status returned by Keycloak. The
+ * counters are registered once per tag set, as errors come in floods.
  */
 @Component
 public class AuthServiceGraphQLExceptionResolver extends DataFetcherExceptionResolverAdapter {
 
+  private static final String NO_STATUS = "NONE";
+  private final MeterRegistry meterRegistry;
+  private final ConcurrentMap<ErrorKey, Counter> errorCounters = new ConcurrentHashMap<>();
+
+  public AuthServiceGraphQLExceptionResolver(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
   /**
    * Maps the exception to a GraphQLError.
    *
@@ -28,13 +54,89 @@ public class AuthServiceGraphQLExceptionResolver extends DataFetcherExceptionRes
    */
   @Override
   protected GraphQLError resolveToSingleError(Throwable ex, DataFetchingEnvironment env) {
+    // Failures of the DataLoader's futures arrive wrapped, e.g. for the `me` query.
+    if (ex instanceof CompletionException && ex.getCause() != null) {
+      return resolveToSingleError(ex.getCause(), env);
+    }
+
+    // Token was rejected by local verification - same classification as a Keycloak 401.
+    if (ex instanceof InvalidTokenException) {
+      countError(env, ErrorType.ValidationError, HttpStatus.UNAUTHORIZED.value());
+      return GraphqlErrorBuilder.newError(env)
+          .errorType(ErrorType.ValidationError)
+          .message(ex.getMessage())
+          .build();
+    }
+
+    // Token was rejected by Keycloak before - replayed without calling it, as the first rejection.
+    if (ex instanceof RejectedTokenException rejectedTokenException) {
+      HttpStatus status = HttpStatus.valueOf(rejectedTokenException.getStatus());
+      ErrorClassification errorClassification = mapHttpStatusToErrorClassification(status);
+      countError(env, errorClassification, status.value());
+      return GraphqlErrorBuilder.newError(env)
+          .errorType(errorClassification)
+          .message(ex.getMessage())
+          .build();
+    }
+
+    // Login attempt was rejected by the rate limiter - Keycloak wasn't called.
+    if (ex instanceof RateLimitedException rateLimitedException) {
+      countError(env, AuthServiceErrorType.RateLimited, HttpStatus.TOO_MANY_REQUESTS.value());
+      long retryAfterMillis = rateLimitedException.getRetryAfter().toMillis();
+      return GraphqlErrorBuilder.newError(env)
+          .errorType(AuthServiceErrorType.RateLimited)
+          .message(ex.getMessage())
+          .extensions(Map.of("retryAfter", (retryAfterMillis + 999) / 1000))
+          .build();
+    }
+
+    // Operation was shed by the concurrency limiter - it wasn't executed.
+    if (ex instanceof OverloadedException overloadedException) {
+      countError(env, AuthServiceErrorType.Overloaded, HttpStatus.SERVICE_UNAVAILABLE.value());
+      long retryAfterMillis = overloadedException.getRetryAfter().toMillis();
+      return GraphqlErrorBuilder.newError(env)
+          .errorType(AuthServiceErrorType.Overloaded)
+          .message(ex.getMessage())
+          .extensions(Map.of("retryAfter", (retryAfterMillis + 999) / 1000))
+          .build();
+    }
+
+    // The users query passed more tokens than allowed - none of them was resolved.
+    if (ex instanceof TooManyTokensException) {
+      countError(env, ErrorType.ValidationError, HttpStatus.BAD_REQUEST.value());
+      return GraphqlErrorBuilder.newError(env)
+          .errorType(ErrorType.ValidationError)
+          .message(ex.getMessage())
+          .build();
+    }
+
+    // The selected tenant isn't configured - Keycloak wasn't called.
+    if (ex instanceof UnknownTenantException) {
+      countError(env, AuthServiceErrorType.UnknownTenant, HttpStatus.BAD_REQUEST.value());
+      return GraphqlErrorBuilder.newError(env)
+          .errorType(AuthServiceErrorType.UnknownTenant)
+          .message(ex.getMessage())
+          .build();
+    }
+
+    // Keycloak call was rejected by its circuit breaker or bulkhead - fail fast.
+    if (ex instanceof CallNotPermittedException || ex instanceof BulkheadFullException) {
+      countError(env, AuthServiceErrorType.KeycloakUnavailable, null);
+      return GraphqlErrorBuilder.newError(env)
+          .errorType(AuthServiceErrorType.KeycloakUnavailable)
+          .message("Keycloak is temporarily unavailable, try again later.")
+          .build();
+    }
+
     Throwable t = NestedExceptionUtils.getMostSpecificCause(ex);
 
-    // Exception is a HttpClientErrorException.
-    if (t instanceof HttpClientErrorException httpException) {
+    // Exception is a HttpClientErrorException (RestTemplate) or a 4xx WebClientResponseException.
+    HttpStatus clientErrorStatus = getClientErrorStatus(t);
+    if (clientErrorStatus != null) {
       ErrorClassification errorClassification = mapHttpStatusToErrorClassification(
-          (HttpStatus) httpException.getStatusCode()
+          clientErrorStatus
       );
+      countError(env, errorClassification, clientErrorStatus.value());
       return GraphqlErrorBuilder.newError(env)
           .errorType(errorClassification)
           .message(t.getMessage())
@@ -43,6 +145,7 @@ public class AuthServiceGraphQLExceptionResolver extends DataFetcherExceptionRes
 
     // Handle all other exceptions.
     if (t instanceof Exception) {
+      countError(env, ErrorType.ExecutionAborted, null);
       return GraphqlErrorBuilder.newError(env)
           .errorType(ErrorType.ExecutionAborted)
           .message("An internal server error occurred.")
@@ -51,6 +154,70 @@ public class AuthServiceGraphQLExceptionResolver extends DataFetcherExceptionRes
     return null;
   }
 
+  /**
+   * Maps the failure of a single element of a list field, e.g. one token of the `users` query, to a
+   * GraphQLError pointing at the element.
+   *
+   * @param ex    The exception
+   * @param env   The DataFetchingEnvironment of the list field.
+   * @param index The index of the failed element.
+   * @return The GraphQLError
+   */
+  public GraphQLError resolveElementError(Throwable ex, DataFetchingEnvironment env, int index) {
+    Throwable cause = ex instanceof CompletionException && ex.getCause() != null
+        ? ex.getCause()
+        : ex;
+    GraphQLError error = resolveToSingleError(cause, env);
+    return GraphqlErrorBuilder.newError()
+        .errorType(error == null ? ErrorType.ExecutionAborted : error.getErrorType())
+        .message(error == null ? "An internal server error occurred." : error.getMessage())
+        .locations(error == null ? null : error.getLocations())
+        .path(env.getExecutionStepInfo().getPath().segment(index))
+        .build();
+  }
+
+  /**
+   * Counts a mapped error in the graphql.errors metric.
+   *
+   * @param env            The DataFetchingEnvironment of the failed operation.
+   * @param classification The classification the error was mapped to.
+   * @param status         The HTTP status behind the error or null if there's none.
+   */
+  private void countError(
+      DataFetchingEnvironment env,
+      ErrorClassification classification,
+      Integer status
+  ) {
+    ErrorKey key = new ErrorKey(env.getField().getName(), classification.toString(), status);
+    this.errorCounters.computeIfAbsent(key, this::errorCounter).increment();
+  }
+
+  private Counter errorCounter(ErrorKey key) {
+    return Counter.builder("graphql.errors")
+        .description("Errors returned by the GraphQL operations")
+        .tag("operation", key.operation())
+        .tag("classification", key.classification())
+        .tag("status", key.status() == null ? NO_STATUS : key.status().toString())
+        .register(this.meterRegistry);
+  }
+
+  /**
+   * Returns the HTTP status of a 4xx response from Keycloak.
+   *
+   * @param t The exception thrown by the RestTemplate or the WebClient.
+   * @return The HttpStatus or null if the exception isn't a 4xx client error.
+   */
+  private HttpStatus getClientErrorStatus(Throwable t) {
+    if (t instanceof HttpClientErrorException httpException) {
+      return (HttpStatus) httpException.getStatusCode();
+    }
+    if (t instanceof WebClientResponseException webClientException
+        && webClientException.getStatusCode().is4xxClientError()) {
+      return HttpStatus.resolve(webClientException.getStatusCode().value());
+    }
+    return null;
+  }
+
   /**
    * Maps the HttpStatus to the corresponding ErrorClassification.
    *
@@ -63,7 +230,11 @@ public class AuthServiceGraphQLExceptionResolver extends DataFetcherExceptionRes
       default -> ErrorType.DataFetchingException;
     };
   }
-}
-
 
+  /**
+   * Tags of a graphql.errors counter.
+   */
+  private record ErrorKey(String operation, String classification, Integer status) {
 
+  }
+}
@@ -0,0 +1,198 @@
+package io.datadoc.authservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jwt.JWTClaimsSet;
+import io.datadoc.authservice.config.AuthServiceConfig;
+import io.datadoc.authservice.model.cache.CacheInvalidation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+
+/**
+ * CacheReplicator keeps the instances sharing a SharedCacheStore in step. A token revoked or a
+ * session logged out through one instance is sent to every other one as a CacheInvalidation, which
+ * evicts the user's information from its near cache and records the revocation in its
+ * RevocationStore, so LOCAL verification rejects the token everywhere. The revocations are also
+ * kept in the shared store until they expire.
+ *
+ * <p>A new instance subscribes to the invalidations and then warms up: it loads the revocations
+ * and up to auth-service.user-cache.shared.warm-up-size users from the shared store before it
+ * serves requests. Messages are counted in userinfo.invalidations by direction, and
+ * userinfo.invalidation.lag records how long they took from the sender to this instance - across
+ * hosts, it includes the skew of their clocks.
+ *
+ * <p>Without a SharedCacheStore every method does nothing.
+ */
+@Service
+public class CacheReplicator {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CacheReplicator.class);
+  private static final String ACCESS_TOKEN_TYPE = "Bearer";
+  private static final String REVOKED_TOKEN_PREFIX = "revocation:token:";
+  private static final String ENDED_SESSION_PREFIX = "revocation:session:";
+  private final String instanceId = UUID.randomUUID().toString();
+  private final SharedCacheStore sharedStore;
+  private final UserInfoCache userInfoCache;
+  private final RevocationStore revocationStore;
+  private final ObjectMapper objectMapper;
+  private final Duration sessionTtl;
+  private final Counter sent;
+  private final Counter received;
+  private final Timer lag;
+
+  public CacheReplicator(
+      ObjectProvider<SharedCacheStore> sharedStore,
+      UserInfoCache userInfoCache,
+      RevocationStore revocationStore,
+      ObjectMapper objectMapper,
+      AuthServiceConfig authServiceConfig,
+      MeterRegistry meterRegistry
+  ) {
+    this.sharedStore = sharedStore.getIfAvailable();
+    this.userInfoCache = userInfoCache;
+    this.revocationStore = revocationStore;
+    this.objectMapper = objectMapper;
+    this.sessionTtl = authServiceConfig.getRevocation().getSessionTtl();
+    this.sent = invalidations(meterRegistry, "sent");
+    this.received = invalidations(meterRegistry, "received");
+    this.lag = Timer.builder("userinfo.invalidation.lag")
+        .description("Time from sending an invalidation on one instance to applying it on another")
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+    if (this.sharedStore != null) {
+      // Subscribed first, so nothing revoked during the warm-up is missed.
+      this.sharedStore.subscribe(this::receive);
+      warmUp(authServiceConfig.getUserCache().getShared().getWarmUpSize());
+    }
+  }
+
+  private static Counter invalidations(MeterRegistry meterRegistry, String direction) {
+    return Counter.builder("userinfo.invalidations")
+        .description("Cache invalidations exchanged with the other instances")
+        .tag("direction", direction)
+        .register(meterRegistry);
+  }
+
+  /**
+   * Tells the other instances about a token revoked through this one. Access tokens are revoked on
+   * their own, revoking a refresh token ends its whole session.
+   *
+   * @param tenantId The ID of the tenant that issued the token.
+   * @param token    The revoked JWT token.
+   * @param claims   The claims of the token, null if it isn't a JWT.
+   */
+  public void tokenRevoked(String tenantId, String token, JWTClaimsSet claims) {
+    if (this.sharedStore == null) {
+      return;
+    }
+    String tokenId = null;
+    long tokenExpiresAt = 0;
+    String sessionId = null;
+    if (claims != null && ACCESS_TOKEN_TYPE.equals(claims.getClaim("typ"))) {
+      if (claims.getJWTID() != null && claims.getExpirationTime() != null) {
+        tokenId = claims.getJWTID();
+        tokenExpiresAt = claims.getExpirationTime().toInstant().getEpochSecond();
+      }
+    } else if (claims != null && claims.getClaim("sid") instanceof String sid) {
+      sessionId = sid;
+    }
+    publish(tenantId, TokenHasher.sha256(token), tokenId, tokenExpiresAt, sessionId);
+  }
+
+  /**
+   * Tells the other instances about a session logged out through this one.
+   *
+   * @param tenantId The ID of the tenant that issued the token.
+   * @param claims   The claims of the user's ID token.
+   */
+  public void sessionLoggedOut(String tenantId, JWTClaimsSet claims) {
+    if (this.sharedStore != null && claims.getClaim("sid") instanceof String sid) {
+      publish(tenantId, null, null, 0, sid);
+    }
+  }
+
+  private void publish(
+      String tenantId,
+      String tokenHash,
+      String tokenId,
+      long tokenExpiresAt,
+      String sessionId
+  ) {
+    CacheInvalidation invalidation = new CacheInvalidation(this.instanceId,
+        System.currentTimeMillis(), tenantId, tokenHash, tokenId, tokenExpiresAt, sessionId);
+    try {
+      // Stored before it's sent, so an instance warming up meanwhile gets at least one of them.
+      if (tokenId != null) {
+        long ttlSeconds = tokenExpiresAt - invalidation.sentAtMillis() / 1000;
+        if (ttlSeconds > 0) {
+          this.sharedStore.put(REVOKED_TOKEN_PREFIX + tokenId, Long.toString(tokenExpiresAt),
+              null, Duration.ofSeconds(ttlSeconds));
+        }
+      }
+      if (sessionId != null) {
+        this.sharedStore.put(ENDED_SESSION_PREFIX + sessionId, "", null, this.sessionTtl);
+      }
+      this.sharedStore.publish(this.objectMapper.writeValueAsString(invalidation));
+      this.sent.increment();
+    } catch (JsonProcessingException | RuntimeException e) {
+      LOGGER.warn("Unable to send the invalidation of tenant {} to the other instances",
+          tenantId, e);
+    }
+  }
+
+  private void receive(String message) {
+    CacheInvalidation invalidation;
+    try {
+      invalidation = this.objectMapper.readValue(message, CacheInvalidation.class);
+    } catch (JsonProcessingException e) {
+      LOGGER.warn("Skipping an unreadable cache invalidation", e);
+      return;
+    }
+    if (this.instanceId.equals(invalidation.origin())) {
+      return;
+    }
+    this.userInfoCache.evict(invalidation);
+    if (invalidation.tokenId() != null) {
+      this.revocationStore.revokeToken(invalidation.tokenId(), invalidation.tokenExpiresAt());
+    }
+    if (invalidation.sessionId() != null) {
+      this.revocationStore.endSession(invalidation.sessionId());
+    }
+    this.received.increment();
+    this.lag.record(Math.max(0, System.currentTimeMillis() - invalidation.sentAtMillis()),
+        TimeUnit.MILLISECONDS);
+  }
+
+  private void warmUp(int warmUpSize) {
+    long started = System.nanoTime();
+    AtomicInteger revocations = new AtomicInteger();
+    int users;
+    try {
+      this.sharedStore.scan(REVOKED_TOKEN_PREFIX, Integer.MAX_VALUE, (key, expiresAt) -> {
+        this.revocationStore.revokeToken(key.substring(REVOKED_TOKEN_PREFIX.length()),
+            Long.parseLong(expiresAt));
+        revocations.incrementAndGet();
+      });
+      // Ended sessions are remembered for the whole session TTL again, a little longer than needed.
+      this.sharedStore.scan(ENDED_SESSION_PREFIX, Integer.MAX_VALUE, (key, value) -> {
+        this.revocationStore.endSession(key.substring(ENDED_SESSION_PREFIX.length()));
+        revocations.incrementAndGet();
+      });
+      users = this.userInfoCache.warmUp(warmUpSize);
+    } catch (RuntimeException e) {
+      LOGGER.warn("Unable to warm up from the shared user cache, starting cold", e);
+      return;
+    }
+    LOGGER.info("Loaded {} revocations and {} users from the shared user cache in {}ms",
+        revocations.get(), users, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+  }
+}
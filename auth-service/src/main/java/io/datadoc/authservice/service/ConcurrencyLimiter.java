@@ -0,0 +1,160 @@
+package io.datadoc.authservice.service;
+
+import io.datadoc.authservice.config.AuthServiceConfig;
+import io.datadoc.authservice.exception.OverloadedException;
+import io.datadoc.authservice.model.limit.OperationPriority;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import org.springframework.stereotype.Service;
+
+/**
+ * ConcurrencyLimiter caps the GraphQL operations in flight, so an overloaded service rejects the
+ * excess right away instead of queueing every request until it times out. The limit adapts to the
+ * RTT of the Keycloak calls (gradient algorithm): while the RTT stays close to its long-term
+ * average the limit grows by its square root, and once calls queue up and the RTT rises, the limit
+ * shrinks in proportion - by half at most per sample. Samples taken while fewer than half of the
+ * limit is used are ignored, as they say nothing about a higher limit.
+ *
+ * <p>Operations of a lower OperationPriority may only fill a share of the limit, so new logins are
+ * shed first and sessions already logged in are kept alive.
+ *
+ * <p>graphql.concurrency.limit and graphql.concurrency.in.flight are the current limit and the
+ * operations in flight. Shed operations are counted in graphql.concurrency.shed tagged with the
+ * operation and its priority.
+ */
+@Service
+public class ConcurrencyLimiter {
+
+  private final boolean enabled;
+  private final int minLimit;
+  private final int maxLimit;
+  private final double smoothing;
+  private final double rttTolerance;
+  private final double alpha;
+  private final Duration retryAfter;
+  private final Map<String, OperationPriority> priorities;
+  private final Map<OperationPriority, Double> shares;
+  private final MeterRegistry meterRegistry;
+  private final ConcurrentMap<ShedKey, Counter> shedCounters = new ConcurrentHashMap<>();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final ReentrantLock lock = new ReentrantLock();
+  private volatile double limit;
+  private double longRttNanos;
+
+  public ConcurrencyLimiter(AuthServiceConfig authServiceConfig, MeterRegistry meterRegistry) {
+    AuthServiceConfig.ConcurrencyLimit config = authServiceConfig.getConcurrencyLimit();
+    this.enabled = config.isEnabled();
+    this.minLimit = config.getMinLimit();
+    this.maxLimit = config.getMaxLimit();
+    this.smoothing = config.getSmoothing();
+    this.rttTolerance = config.getRttTolerance();
+    this.alpha = 2.0 / (config.getLongWindow() + 1);
+    this.retryAfter = config.getRetryAfter();
+    this.priorities = Map.copyOf(config.getPriorities());
+    this.shares = new EnumMap<>(OperationPriority.class);
+    for (OperationPriority priority : OperationPriority.values()) {
+      this.shares.put(priority, config.getShares().getOrDefault(priority, 1.0));
+    }
+    this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, config.getInitialLimit()));
+    this.meterRegistry = meterRegistry;
+    if (this.enabled) {
+      Gauge.builder("graphql.concurrency.limit", this, limiter -> limiter.limit)
+          .description("Adaptive limit of the GraphQL operations in flight")
+          .register(meterRegistry);
+      Gauge.builder("graphql.concurrency.in.flight", this.inFlight, AtomicInteger::get)
+          .description("GraphQL operations in flight")
+          .register(meterRegistry);
+    }
+  }
+
+  public boolean isEnabled() {
+    return this.enabled;
+  }
+
+  /**
+   * Admits an operation, which must be released once it completed.
+   *
+   * @param operation The name of the operation's field, e.g. login.
+   * @throws OverloadedException If the operations in flight fill the share of the limit of the
+   *                             operation's priority.
+   */
+  public void acquire(String operation) throws OverloadedException {
+    OperationPriority priority = this.priorities.getOrDefault(operation, OperationPriority.NORMAL);
+    int allowed = Math.max(1, (int) (this.limit * this.shares.get(priority)));
+    int current;
+    do {
+      current = this.inFlight.get();
+      if (current >= allowed) {
+        shedCounter(operation, priority).increment();
+        throw new OverloadedException("The service is overloaded, try again later.",
+            this.retryAfter);
+      }
+    } while (!this.inFlight.compareAndSet(current, current + 1));
+  }
+
+  /**
+   * Releases an operation admitted by acquire.
+   */
+  public void release() {
+    this.inFlight.decrementAndGet();
+  }
+
+  /**
+   * Adapts the limit to the RTT of a completed Keycloak call. Samples arriving while another one
+   * is applied are skipped - the next one will do.
+   *
+   * @param rttNanos The time the call took.
+   */
+  public void onSample(long rttNanos) {
+    if (!this.enabled || rttNanos <= 0 || !this.lock.tryLock()) {
+      return;
+    }
+    try {
+      if (this.longRttNanos == 0) {
+        this.longRttNanos = rttNanos;
+      } else {
+        this.longRttNanos += this.alpha * (rttNanos - this.longRttNanos);
+      }
+      // After a period of congestion the long-term RTT is inflated, and would keep the limit
+      // from shrinking when the RTT rises again - let it follow the drop quicker.
+      if (this.longRttNanos > 2.0 * rttNanos) {
+        this.longRttNanos *= 0.95;
+      }
+      double current = this.limit;
+      if (this.inFlight.get() < current / 2) {
+        return;
+      }
+      double gradient = Math.max(0.5, Math.min(1.0,
+          this.rttTolerance * this.longRttNanos / rttNanos));
+      double estimate = current * gradient + Math.sqrt(current);
+      double next = current * (1 - this.smoothing) + estimate * this.smoothing;
+      this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, next));
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  private Counter shedCounter(String operation, OperationPriority priority) {
+    return this.shedCounters.computeIfAbsent(new ShedKey(operation, priority), key ->
+        Counter.builder("graphql.concurrency.shed")
+            .description("GraphQL operations shed by the concurrency limiter")
+            .tag("operation", key.operation())
+            .tag("priority", key.priority().name())
+            .register(this.meterRegistry));
+  }
+
+  /**
+   * Tags of a graphql.concurrency.shed counter.
+   */
+  private record ShedKey(String operation, OperationPriority priority) {
+
+  }
+}
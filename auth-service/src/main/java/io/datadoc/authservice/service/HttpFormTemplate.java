@@ -0,0 +1,200 @@
+package io.datadoc.authservice.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HttpFormTemplate renders the URL-encoded body of an HTTP form whose fields are mostly the same on
+ * every request - e.g. the grant type, client ID and client secret sent to Keycloak. The constant
+ * fields are encoded once, when the template is built. Rendering only encodes the values of the
+ * variable fields, straight into the byte array sent as the request body - no map, strings or
+ * intermediate buffers are allocated.
+ *
+ * <p>The encoding is the one of Spring's FormHttpMessageConverter - UTF-8, spaces as '+'.
+ * Templates are immutable and can be shared by any number of threads.
+ */
+public final class HttpFormTemplate {
+
+  private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+  private final byte[] constantFields;
+  private final byte[][] variablePrefixes;
+
+  private HttpFormTemplate(byte[] constantFields, byte[][] variablePrefixes) {
+    this.constantFields = constantFields;
+    this.variablePrefixes = variablePrefixes;
+  }
+
+  /**
+   * Creates a builder of a new template.
+   *
+   * @return The HttpFormTemplate.Builder.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Renders the form body with the values of the variable fields.
+   *
+   * @param values The values in the order the variable fields were added to the template - null is
+   *               rendered as an empty value.
+   * @return The URL-encoded form body.
+   */
+  public byte[] render(String... values) {
+    if (values.length != this.variablePrefixes.length) {
+      throw new IllegalArgumentException("Expected " + this.variablePrefixes.length
+          + " form values, got " + values.length);
+    }
+    int length = this.constantFields.length;
+    for (int i = 0; i < values.length; i++) {
+      length += this.variablePrefixes[i].length + encodedLength(nullToEmpty(values[i]));
+    }
+    byte[] body = new byte[length];
+    System.arraycopy(this.constantFields, 0, body, 0, this.constantFields.length);
+    int position = this.constantFields.length;
+    for (int i = 0; i < values.length; i++) {
+      byte[] prefix = this.variablePrefixes[i];
+      System.arraycopy(prefix, 0, body, position, prefix.length);
+      position = encode(nullToEmpty(values[i]), body, position + prefix.length);
+    }
+    return body;
+  }
+
+  private static String nullToEmpty(String value) {
+    return value == null ? "" : value;
+  }
+
+  private static boolean isUnreserved(char c) {
+    return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+        || c == '-' || c == '.' || c == '_' || c == '*';
+  }
+
+  private static int encodedLength(String value) {
+    int length = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (isUnreserved(c) || c == ' ') {
+        length++;
+      } else if (c < 0x80) {
+        length += 3;
+      } else if (c < 0x800) {
+        length += 6;
+      } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        length += 12;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        // Unpaired surrogates are encoded as '?', like String.getBytes does.
+        length += 3;
+      } else {
+        length += 9;
+      }
+    }
+    return length;
+  }
+
+  private static int encode(String value, byte[] body, int position) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (isUnreserved(c)) {
+        body[position++] = (byte) c;
+      } else if (c == ' ') {
+        body[position++] = '+';
+      } else if (c < 0x80) {
+        position = percentEncode(c, body, position);
+      } else if (c < 0x800) {
+        position = percentEncode(0xc0 | c >> 6, body, position);
+        position = percentEncode(0x80 | c & 0x3f, body, position);
+      } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        position = percentEncode(0xf0 | codePoint >> 18, body, position);
+        position = percentEncode(0x80 | codePoint >> 12 & 0x3f, body, position);
+        position = percentEncode(0x80 | codePoint >> 6 & 0x3f, body, position);
+        position = percentEncode(0x80 | codePoint & 0x3f, body, position);
+      } else if (Character.isSurrogate(c)) {
+        position = percentEncode('?', body, position);
+      } else {
+        position = percentEncode(0xe0 | c >> 12, body, position);
+        position = percentEncode(0x80 | c >> 6 & 0x3f, body, position);
+        position = percentEncode(0x80 | c & 0x3f, body, position);
+      }
+    }
+    return position;
+  }
+
+  private static int percentEncode(int b, byte[] body, int position) {
+    body[position] = '%';
+    body[position + 1] = HEX[b >> 4 & 0xf];
+    body[position + 2] = HEX[b & 0xf];
+    return position + 3;
+  }
+
+  /**
+   * Builder of an HttpFormTemplate. Fields are rendered in the order they're added, the constant
+   * ones first.
+   */
+  public static final class Builder {
+
+    private final ByteArrayOutputStream constantFields = new ByteArrayOutputStream();
+    private final List<String> variableFields = new ArrayList<>();
+
+    private Builder() {
+    }
+
+    /**
+     * Add a field with the same value on every request.
+     *
+     * @param name  The name of the field.
+     * @param value The value of the field.
+     * @return this
+     */
+    public Builder with(String name, String value) {
+      if (this.constantFields.size() > 0) {
+        this.constantFields.write('&');
+      }
+      this.constantFields.writeBytes(encodeToBytes(name));
+      this.constantFields.write('=');
+      this.constantFields.writeBytes(encodeToBytes(value));
+      return this;
+    }
+
+    /**
+     * Add a field whose value is passed to render.
+     *
+     * @param name The name of the field.
+     * @return this
+     */
+    public Builder withVariable(String name) {
+      this.variableFields.add(name);
+      return this;
+    }
+
+    /**
+     * Build the template.
+     *
+     * @return The HttpFormTemplate.
+     */
+    public HttpFormTemplate build() {
+      byte[][] variablePrefixes = new byte[this.variableFields.size()][];
+      for (int i = 0; i < variablePrefixes.length; i++) {
+        ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+        if (i > 0 || this.constantFields.size() > 0) {
+          prefix.write('&');
+        }
+        prefix.writeBytes(encodeToBytes(this.variableFields.get(i)));
+        prefix.write('=');
+        variablePrefixes[i] = prefix.toByteArray();
+      }
+      return new HttpFormTemplate(this.constantFields.toByteArray(), variablePrefixes);
+    }
+
+    private static byte[] encodeToBytes(String value) {
+      byte[] bytes = new byte[encodedLength(value)];
+      encode(value, bytes, 0);
+      return bytes;
+    }
+  }
+}
@@ -11,15 +11,16 @@ import org.springframework.stereotype.Service;
 @Service
 public class HttpService {
 
+  private static final HttpHeaders FORM_HEADERS = createFormHeaders();
+
   /**
-   * Get the headers for a request that requires a form body.
+   * Get the headers for a request that requires a form body. The same read-only instance is
+   * returned on every call.
    *
    * @return The headers for a request that requires a form body.
    */
   public HttpHeaders getHttpFormHeaders() {
-    HttpHeaders headers = new HttpHeaders();
-    headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
-    return headers;
+    return FORM_HEADERS;
   }
 
   /**
@@ -34,4 +35,10 @@ public class HttpService {
     headers.set("Authorization", "Bearer " + token);
     return headers;
   }
+
+  private static HttpHeaders createFormHeaders() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+    return HttpHeaders.readOnlyHttpHeaders(headers);
+  }
 }
@@ -0,0 +1,174 @@
+package io.datadoc.authservice.service;
+
+import io.datadoc.authservice.config.AuthServiceConfig;
+import io.datadoc.authservice.model.auth.JwtPayload;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * InMemorySessionStore keeps the sessions in the memory of this instance. The sessions are spread
+ * over stripes, each a map with its own lock, so concurrent requests for different sessions rarely
+ * wait for each other. ReentrantLocks are used rather than synchronized, so virtual threads aren't
+ * pinned.
+ *
+ * <p>Expired sessions are never returned. They are dropped from a stripe on the first write after
+ * its sweep interval. When a stripe is full, its oldest session is dropped. The number of sessions
+ * is exported as the session.store.size gauge.
+ */
+@Component
+@ConditionalOnProperty(
+    prefix = "auth-service.sessions", name = "store", havingValue = "memory", matchIfMissing = true
+)
+public class InMemorySessionStore implements SessionStore {
+
+  private static final long SWEEP_INTERVAL_MILLIS = Duration.ofMinutes(1).toMillis();
+  private final Stripe[] stripes;
+  private final AtomicInteger size = new AtomicInteger();
+
+  public InMemorySessionStore(AuthServiceConfig authServiceConfig, MeterRegistry meterRegistry) {
+    AuthServiceConfig.Sessions config = authServiceConfig.getSessions();
+    int stripeCount = Integer.highestOneBit(Math.max(1, config.getStripes() - 1) << 1);
+    int stripeSize = (int) Math.max(1, config.getMaximumSize() / stripeCount);
+    this.stripes = new Stripe[stripeCount];
+    for (int i = 0; i < stripeCount; i++) {
+      this.stripes[i] = new Stripe(stripeSize);
+    }
+    Gauge.builder("session.store.size", this.size, AtomicInteger::get)
+        .description("Sessions kept in memory, including expired ones not dropped yet")
+        .register(meterRegistry);
+  }
+
+  @Override
+  public void put(String key, JwtPayload tokens, Duration timeToLive) {
+    long now = System.currentTimeMillis();
+    stripe(key).put(key, new Entry(tokens, now + timeToLive.toMillis()), now);
+  }
+
+  @Override
+  public boolean replace(
+      String key, JwtPayload expected, JwtPayload tokens, Duration timeToLive
+  ) {
+    long now = System.currentTimeMillis();
+    return stripe(key).replace(key, expected, new Entry(tokens, now + timeToLive.toMillis()), now);
+  }
+
+  @Override
+  public JwtPayload get(String key) {
+    return stripe(key).get(key, System.currentTimeMillis());
+  }
+
+  @Override
+  public JwtPayload remove(String key) {
+    return stripe(key).remove(key, System.currentTimeMillis());
+  }
+
+  private Stripe stripe(String key) {
+    int hash = key.hashCode();
+    return this.stripes[(hash ^ (hash >>> 16)) & (this.stripes.length - 1)];
+  }
+
+  /**
+   * Stored tokens with the epoch millisecond the session expires at.
+   */
+  private record Entry(JwtPayload tokens, long expiresAtMillis) {
+
+  }
+
+  /**
+   * Insertion ordered map of a part of the sessions, guarded by its own lock.
+   */
+  private final class Stripe {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Entry> entries;
+    private long nextSweepAtMillis;
+
+    Stripe(int maximumSize) {
+      this.entries = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+          if (size() > maximumSize) {
+            size.decrementAndGet();
+            return true;
+          }
+          return false;
+        }
+      };
+    }
+
+    void put(String key, Entry entry, long now) {
+      this.lock.lock();
+      try {
+        if (now >= this.nextSweepAtMillis) {
+          sweep(now);
+        }
+        // Removed first, so a replaced session moves to the end of the insertion order.
+        if (this.entries.remove(key) == null) {
+          size.incrementAndGet();
+        }
+        this.entries.put(key, entry);
+      } finally {
+        this.lock.unlock();
+      }
+    }
+
+    boolean replace(String key, JwtPayload expected, Entry entry, long now) {
+      this.lock.lock();
+      try {
+        Entry current = this.entries.get(key);
+        if (current == null || current.expiresAtMillis() <= now
+            || !current.tokens().equals(expected)) {
+          return false;
+        }
+        this.entries.remove(key);
+        this.entries.put(key, entry);
+        return true;
+      } finally {
+        this.lock.unlock();
+      }
+    }
+
+    JwtPayload get(String key, long now) {
+      this.lock.lock();
+      try {
+        Entry entry = this.entries.get(key);
+        return entry == null || entry.expiresAtMillis() <= now ? null : entry.tokens();
+      } finally {
+        this.lock.unlock();
+      }
+    }
+
+    JwtPayload remove(String key, long now) {
+      this.lock.lock();
+      try {
+        Entry entry = this.entries.remove(key);
+        if (entry == null) {
+          return null;
+        }
+        size.decrementAndGet();
+        return entry.expiresAtMillis() <= now ? null : entry.tokens();
+      } finally {
+        this.lock.unlock();
+      }
+    }
+
+    private void sweep(long now) {
+      Iterator<Entry> iterator = this.entries.values().iterator();
+      while (iterator.hasNext()) {
+        if (iterator.next().expiresAtMillis() <= now) {
+          iterator.remove();
+          size.decrementAndGet();
+        }
+      }
+      this.nextSweepAtMillis = now + SWEEP_INTERVAL_MILLIS;
+    }
+  }
+}
@@ -0,0 +1,178 @@
+package io.datadoc.authservice.service;
+
+import io.datadoc.authservice.config.AuthServiceConfig;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * InMemorySharedCacheStore stands in for a shared store within a single JVM, e.g. for tests and
+ * benchmarks running several application contexts as replicas. The contexts with the same
+ * namespace share the entries and the messages, like instances connected to the same Redis server.
+ *
+ * <p>Expired entries are never returned. They are dropped on the first write after the sweep
+ * interval. Messages are delivered in order on a thread of the namespace, so a slow subscriber
+ * doesn't hold up the publishers.
+ */
+@Component
+@ConditionalOnProperty(
+    prefix = "auth-service.user-cache.shared", name = "store", havingValue = "memory"
+)
+public class InMemorySharedCacheStore implements SharedCacheStore {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(InMemorySharedCacheStore.class);
+  private static final long SWEEP_INTERVAL_MILLIS = Duration.ofMinutes(1).toMillis();
+  private static final Map<String, Namespace> NAMESPACES = new ConcurrentHashMap<>();
+  private final Namespace namespace;
+  private final CopyOnWriteArrayList<Consumer<String>> subscribers = new CopyOnWriteArrayList<>();
+
+  public InMemorySharedCacheStore(AuthServiceConfig authServiceConfig) {
+    this.namespace = NAMESPACES.computeIfAbsent(
+        authServiceConfig.getUserCache().getShared().getNamespace(), Namespace::new
+    );
+  }
+
+  @Override
+  public String get(String key) {
+    Entry entry = this.namespace.entries.get(key);
+    return entry == null || entry.expiresAtMillis() <= System.currentTimeMillis()
+        ? null
+        : entry.value();
+  }
+
+  @Override
+  public CompletableFuture<String> getAsync(String key) {
+    return CompletableFuture.completedFuture(get(key));
+  }
+
+  @Override
+  public void put(String key, String value, String group, Duration timeToLive) {
+    long now = System.currentTimeMillis();
+    this.namespace.sweep(now);
+    if (group != null) {
+      this.namespace.groups.computeIfAbsent(group, g -> ConcurrentHashMap.newKeySet()).add(key);
+    }
+    Entry previous = this.namespace.entries.put(
+        key, new Entry(value, group, now + timeToLive.toMillis())
+    );
+    if (previous != null && previous.group() != null && !previous.group().equals(group)) {
+      this.namespace.unindex(key, previous.group());
+    }
+  }
+
+  @Override
+  public void remove(String key) {
+    Entry entry = this.namespace.entries.remove(key);
+    if (entry != null && entry.group() != null) {
+      this.namespace.unindex(key, entry.group());
+    }
+  }
+
+  @Override
+  public void removeGroup(String group) {
+    Set<String> keys = this.namespace.groups.remove(group);
+    if (keys != null) {
+      keys.forEach(this.namespace.entries::remove);
+    }
+  }
+
+  @Override
+  public void scan(String prefix, int limit, BiConsumer<String, String> consumer) {
+    long now = System.currentTimeMillis();
+    int count = 0;
+    for (Map.Entry<String, Entry> entry : this.namespace.entries.entrySet()) {
+      if (count >= limit) {
+        return;
+      }
+      if (entry.getKey().startsWith(prefix) && entry.getValue().expiresAtMillis() > now) {
+        consumer.accept(entry.getKey(), entry.getValue().value());
+        count++;
+      }
+    }
+  }
+
+  @Override
+  public void publish(String message) {
+    this.namespace.publish(message);
+  }
+
+  @Override
+  public void subscribe(Consumer<String> subscriber) {
+    this.subscribers.add(subscriber);
+    this.namespace.stores.add(this);
+  }
+
+  @PreDestroy
+  public void close() {
+    this.namespace.stores.remove(this);
+  }
+
+  private void deliver(String message) {
+    for (Consumer<String> subscriber : this.subscribers) {
+      try {
+        subscriber.accept(message);
+      } catch (RuntimeException e) {
+        LOGGER.warn("Unable to handle a shared cache message", e);
+      }
+    }
+  }
+
+  private record Entry(String value, String group, long expiresAtMillis) {
+
+  }
+
+  /**
+   * The entries and the subscribed stores of a namespace.
+   */
+  private static final class Namespace {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> groups = new ConcurrentHashMap<>();
+    private final Set<InMemorySharedCacheStore> stores = ConcurrentHashMap.newKeySet();
+    private final ExecutorService publisher;
+    private final AtomicLong nextSweepMillis = new AtomicLong();
+
+    Namespace(String name) {
+      this.publisher = Executors.newSingleThreadExecutor(
+          Thread.ofPlatform().daemon().name("shared-cache-" + name).factory()
+      );
+    }
+
+    void publish(String message) {
+      this.publisher.execute(() -> this.stores.forEach(store -> store.deliver(message)));
+    }
+
+    void unindex(String key, String group) {
+      this.groups.computeIfPresent(group, (g, keys) -> {
+        keys.remove(key);
+        return keys.isEmpty() ? null : keys;
+      });
+    }
+
+    void sweep(long now) {
+      long next = this.nextSweepMillis.get();
+      if (now < next || !this.nextSweepMillis.compareAndSet(next, now + SWEEP_INTERVAL_MILLIS)) {
+        return;
+      }
+      this.entries.forEach((key, entry) -> {
+        if (entry.expiresAtMillis() <= now && this.entries.remove(key, entry)
+            && entry.group() != null) {
+          unindex(key, entry.group());
+        }
+      });
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package io.datadoc.authservice.service;
+
+import io.datadoc.authservice.model.auth.LoginCredentials;
+import io.datadoc.authservice.model.http.HttpGrantType;
+import io.datadoc.authservice.model.http.HttpScope;
+
+/**
+ * KeycloakForms renders the form bodies of the requests to Keycloak. The fields that are the same
+ * on every request - grant type, client ID, client secret and scope - are encoded once per
+ * endpoint, only the user's credentials or token are encoded per request. Every tenant has its own
+ * forms, as it has its own client.
+ *
+ * @see HttpFormTemplate
+ */
+public class KeycloakForms {
+
+  private final HttpFormTemplate loginForm;
+  private final HttpFormTemplate refreshForm;
+  private final HttpFormTemplate revokeForm;
+  private final HttpFormTemplate logoutForm;
+
+  public KeycloakForms(String clientId, String clientSecret) {
+    this.loginForm = HttpFormTemplate.builder()
+        .with("grant_type", HttpGrantType.PASSWORD.getGrantType())
+        .with("client_id", clientId)
+        .with("client_secret", clientSecret)
+        .with("scope", HttpScope.OPENID.getScope())
+        .withVariable("username")
+        .withVariable("password")
+        .build();
+    this.refreshForm = HttpFormTemplate.builder()
+        .with("grant_type", HttpGrantType.REFRESH_TOKEN.getGrantType())
+        .with("client_id", clientId)
+        .with("client_secret", clientSecret)
+        .withVariable("refresh_token")
+        .build();
+    this.revokeForm = HttpFormTemplate.builder()
+        .with("grant_type", HttpGrantType.CLIENT_CREDENTIALS.getGrantType())
+        .with("client_id", clientId)
+        .with("client_secret", clientSecret)
+        .withVariable("token")
+        .build();
+    this.logoutForm = HttpFormTemplate.builder()
+        .with("client_id", clientId)
+        .with("client_secret", clientSecret)
+        .withVariable("id_token")
+        .build();
+  }
+
+  /**
+   * Renders the password grant form of the token endpoint.
+   *
+   * @param credentials The user's credentials - email & password.
+   * @return The URL-encoded form body.
+   */
+  public byte[] login(LoginCredentials credentials) {
+    return this.loginForm.render(credentials.email(), credentials.password());
+  }
+
+  /**
+   * Renders the refresh token grant form of the token endpoint.
+   *
+   * @param refreshToken The refresh token issued to the user by Keycloak.
+   * @return The URL-encoded form body.
+   */
+  public byte[] refresh(String refreshToken) {
+    return this.refreshForm.render(refreshToken);
+  }
+
+  /**
+   * Renders the form of the revoke endpoint.
+   *
+   * @param token JWT token to be revoked.
+   * @return The URL-encoded form body.
+   */
+  public byte[] revoke(String token) {
+    return this.revokeForm.render(token);
+  }
+
+  /**
+   * Renders the form of the logout endpoint.
+   *
+   * @param idToken ID token issued upon user login.
+   * @return The URL-encoded form body.
+   */
+  public byte[] logout(String idToken) {
+    return this.logoutForm.render(idToken);
+  }
+}
@@ -0,0 +1,397 @@
+package io.datadoc.authservice.service;
+
+import io.datadoc.authservice.config.KeycloakConfig;
+import io.datadoc.authservice.model.http.KeycloakEndpoint;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.RestTemplate;
+import reactor.core.publisher.Mono;
+
+/**
+ * KeycloakLoadBalancer spreads the calls to a tenant over the nodes of its Keycloak cluster. The
+ * endpoint URLs starting with the tenant's base URL are sent to the same path on every node, the
+ * base URL itself stays the public one the tokens are issued by.
+ *
+ * <p>A node is picked by the keycloak.load-balancing strategy among the available ones:
+ *
+ * <ul>
+ *   <li>active health checks fetch the realm's certs endpoint of every node periodically, a node
+ *   failing unhealthy-threshold checks in a row gets no calls until it passes healthy-threshold
+ *   checks.</li>
+ *   <li>passive outlier ejection watches the calls - a node failing too many of them, or much
+ *   slower than the fastest other node, is ejected for a while. At most max-ejection-percent of
+ *   the nodes are ejected at once.</li>
+ * </ul>
+ *
+ * <p>When no node is available, all of them are used - a wrong verdict must not take the whole
+ * tenant down. The breakers and retries of KeycloakResilience wrap the balancer, so every retried
+ * attempt picks its node again.
+ *
+ * <p>Every node has its keycloak.node.* metrics tagged with the tenant and the node's base URL.
+ */
+public final class KeycloakLoadBalancer {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(KeycloakLoadBalancer.class);
+  private static final String METRICS_PREFIX = "keycloak.node.";
+  // Cost of a node without a latency sample that already has calls in flight - it may be stuck.
+  private static final double UNSAMPLED_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(60);
+  private final String tenantId;
+  private final KeycloakNode[] nodes;
+  private final KeycloakConfig.LoadBalancing settings;
+  private final int maxEjectedNodes;
+  private final RestTemplate restTemplate;
+  private final MeterRegistry meterRegistry;
+  private final Set<Meter> meters = Collections.newSetFromMap(new IdentityHashMap<>());
+  private final AtomicInteger nextNode = new AtomicInteger();
+  private final ScheduledFuture<?> healthChecks;
+
+  KeycloakLoadBalancer(
+      String tenantId,
+      String baseUrl,
+      List<String> nodeUrls,
+      KeycloakConfig.Endpoints endpoints,
+      KeycloakConfig.LoadBalancing settings,
+      RestTemplate restTemplate,
+      ScheduledExecutorService scheduler,
+      MeterRegistry meterRegistry
+  ) {
+    this.tenantId = tenantId;
+    this.settings = settings;
+    this.restTemplate = restTemplate;
+    this.meterRegistry = meterRegistry;
+    removeMeters();
+    this.nodes = new KeycloakNode[nodeUrls.size()];
+    for (int i = 0; i < this.nodes.length; i++) {
+      this.nodes[i] = newNode(baseUrl, stripTrailingSlash(nodeUrls.get(i)), endpoints);
+    }
+    this.maxEjectedNodes = this.nodes.length
+        * settings.getOutlierEjection().getMaxEjectionPercent() / 100;
+
+    KeycloakConfig.LoadBalancing.HealthCheck healthCheck = settings.getHealthCheck();
+    if (healthCheck.isEnabled() && this.nodes.length > 1) {
+      long interval = healthCheck.getInterval().toMillis();
+      this.healthChecks = scheduler.scheduleWithFixedDelay(
+          this::checkHealth, 0, interval, TimeUnit.MILLISECONDS
+      );
+    } else {
+      this.healthChecks = null;
+    }
+  }
+
+  /**
+   * Makes a blocking call to a node of the tenant.
+   *
+   * @param endpoint The called endpoint.
+   * @param call     The call, given the URL of the endpoint on the picked node.
+   * @param <T>      The type of the response.
+   * @return The response of the call.
+   */
+  public <T> T execute(KeycloakEndpoint endpoint, Function<String, T> call) {
+    KeycloakNode node = choose();
+    node.start();
+    long start = System.nanoTime();
+    try {
+      T response = call.apply(node.getUrl(endpoint));
+      complete(node, start, null);
+      return response;
+    } catch (RuntimeException e) {
+      complete(node, start, e);
+      throw e;
+    }
+  }
+
+  /**
+   * Makes a non-blocking call to a node of the tenant - the node is picked on subscription.
+   *
+   * @param endpoint The called endpoint.
+   * @param call     The call, given the URL of the endpoint on the picked node.
+   * @param <T>      The type of the response.
+   * @return Mono emitting the response of the call.
+   */
+  public <T> Mono<T> executeAsync(KeycloakEndpoint endpoint, Function<String, Mono<T>> call) {
+    return Mono.defer(() -> {
+      KeycloakNode node = choose();
+      node.start();
+      long start = System.nanoTime();
+      return call.apply(node.getUrl(endpoint))
+          .doOnSuccess(response -> complete(node, start, null))
+          .doOnError(e -> complete(node, start, e))
+          .doOnCancel(node::cancel);
+    });
+  }
+
+  /**
+   * Stops the health checks and removes the metrics of the nodes, unless they were already taken
+   * over by a newer balancer of the same tenant.
+   */
+  void close() {
+    if (this.healthChecks != null) {
+      this.healthChecks.cancel(false);
+    }
+    synchronized (this.meters) {
+      for (Meter meter : this.meterRegistry.getMeters()) {
+        if (this.meters.contains(meter)) {
+          this.meterRegistry.remove(meter);
+        }
+      }
+    }
+  }
+
+  private KeycloakNode choose() {
+    KeycloakNode[] nodes = this.nodes;
+    if (nodes.length == 1) {
+      return nodes[0];
+    }
+    long now = System.nanoTime();
+    return switch (this.settings.getStrategy()) {
+      case ROUND_ROBIN -> {
+        int next = Math.floorMod(this.nextNode.getAndIncrement(), nodes.length);
+        int index = nextAvailable(next, -1, now);
+        yield nodes[index < 0 ? next : index];
+      }
+      case LEAST_OUTSTANDING_REQUESTS -> leastOutstandingRequests(now);
+      case POWER_OF_TWO_CHOICES -> powerOfTwoChoices(now);
+    };
+  }
+
+  private KeycloakNode leastOutstandingRequests(long now) {
+    KeycloakNode[] nodes = this.nodes;
+    // Starting at a random node spreads the ties.
+    int offset = ThreadLocalRandom.current().nextInt(nodes.length);
+    boolean anyAvailable = nextAvailable(offset, -1, now) >= 0;
+    KeycloakNode best = null;
+    for (int i = 0; i < nodes.length; i++) {
+      KeycloakNode node = nodes[(offset + i) % nodes.length];
+      if (anyAvailable && !node.isAvailable(now)) {
+        continue;
+      }
+      if (best == null
+          || node.getOutstanding() < best.getOutstanding()
+          || node.getOutstanding() == best.getOutstanding()
+          && node.getLatencyNanos() < best.getLatencyNanos()) {
+        best = node;
+      }
+    }
+    return best;
+  }
+
+  private KeycloakNode powerOfTwoChoices(long now) {
+    KeycloakNode[] nodes = this.nodes;
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int first = nextAvailable(random.nextInt(nodes.length), -1, now);
+    if (first < 0) {
+      // No node is available, pick among all of them.
+      first = random.nextInt(nodes.length);
+      int second = (first + 1 + random.nextInt(nodes.length - 1)) % nodes.length;
+      return cheaper(nodes[first], nodes[second]);
+    }
+    int second = nextAvailable(random.nextInt(nodes.length), first, now);
+    return second < 0 ? nodes[first] : cheaper(nodes[first], nodes[second]);
+  }
+
+  private static KeycloakNode cheaper(KeycloakNode first, KeycloakNode second) {
+    return cost(first) <= cost(second) ? first : second;
+  }
+
+  /**
+   * The latency of the node weighted by its calls in flight - a fast node takes more calls until
+   * it's as slow as the others.
+   */
+  private static double cost(KeycloakNode node) {
+    double latency = node.getLatencyNanos();
+    int outstanding = node.getOutstanding();
+    if (latency == 0) {
+      return outstanding == 0 ? 0 : UNSAMPLED_PENALTY_NANOS + outstanding;
+    }
+    return latency * (outstanding + 1);
+  }
+
+  /**
+   * Returns the index of the first available node from the given one, wrapping around.
+   *
+   * @return The index of the node or -1 if there's none.
+   */
+  private int nextAvailable(int from, int excluded, long now) {
+    for (int i = 0; i < this.nodes.length; i++) {
+      int index = (from + i) % this.nodes.length;
+      if (index != excluded && this.nodes[index].isAvailable(now)) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  private void complete(KeycloakNode node, long start, Throwable error) {
+    long now = System.nanoTime();
+    node.complete(now - start, error != null && KeycloakResilience.isKeycloakFailure(error));
+    if (this.settings.getOutlierEjection().isEnabled() && this.nodes.length > 1) {
+      ejectIfOutlier(node, now);
+    }
+  }
+
+  private void ejectIfOutlier(KeycloakNode node, long now) {
+    KeycloakConfig.LoadBalancing.OutlierEjection ejection = this.settings.getOutlierEjection();
+    String reason = node.getOutlierReason(ejection, fastestLatency(node, now));
+    if (reason == null) {
+      return;
+    }
+    synchronized (this) {
+      int ejected = 0;
+      for (KeycloakNode other : this.nodes) {
+        ejected += other.isEjected(now) ? 1 : 0;
+      }
+      if (node.isEjected(now) || ejected >= this.maxEjectedNodes) {
+        return;
+      }
+      node.eject(now, ejection);
+    }
+    LOGGER.warn("Ejected Keycloak node {} of tenant {} - {}",
+        node.getBaseUrl(), this.tenantId, reason);
+    register(Counter.builder(METRICS_PREFIX + "ejections")
+        .description("Ejections of a Keycloak node as an outlier")
+        .tags(tags(node))
+        .tag("reason", reason)
+        .register(this.meterRegistry)).increment();
+  }
+
+  /**
+   * Returns the latency of the fastest other available node with enough calls to compare.
+   */
+  private double fastestLatency(KeycloakNode node, long now) {
+    int minimumCalls = this.settings.getOutlierEjection().getMinimumCalls();
+    double fastest = 0;
+    for (KeycloakNode other : this.nodes) {
+      if (other != node && other.isAvailable(now) && other.getCalls() >= minimumCalls
+          && (fastest == 0 || other.getLatencyNanos() < fastest)) {
+        fastest = other.getLatencyNanos();
+      }
+    }
+    return fastest;
+  }
+
+  private void checkHealth() {
+    for (KeycloakNode node : this.nodes) {
+      if (node.startHealthCheck()) {
+        // The checks block on the node, the scheduler's thread is shared by all tenants.
+        Thread.ofVirtual().name("keycloak-health-check").start(() -> checkHealth(node));
+      }
+    }
+  }
+
+  private void checkHealth(KeycloakNode node) {
+    boolean passed;
+    try {
+      this.restTemplate.getForEntity(node.getHealthCheckUrl(), String.class);
+      passed = true;
+    } catch (RuntimeException e) {
+      // Also when the pool was closed under the check, with the tenant replaced or shut down.
+      passed = false;
+    }
+    if (node.completeHealthCheck(passed, this.settings.getHealthCheck())) {
+      if (passed) {
+        LOGGER.info("Keycloak node {} of tenant {} is healthy again",
+            node.getBaseUrl(), this.tenantId);
+      } else {
+        LOGGER.warn("Keycloak node {} of tenant {} failed its health checks",
+            node.getBaseUrl(), this.tenantId);
+      }
+    }
+  }
+
+  private KeycloakNode newNode(
+      String baseUrl,
+      String nodeUrl,
+      KeycloakConfig.Endpoints endpoints
+  ) {
+    Map<KeycloakEndpoint, String> urls = new EnumMap<>(KeycloakEndpoint.class);
+    for (KeycloakEndpoint endpoint : KeycloakEndpoint.values()) {
+      urls.put(endpoint, nodeUrl(baseUrl, nodeUrl, endpoints.get(endpoint)));
+    }
+    Tags tags = Tags.of("tenant", this.tenantId, "node", nodeUrl);
+    KeycloakNode node = new KeycloakNode(
+        nodeUrl,
+        urls,
+        nodeUrl(baseUrl, nodeUrl, endpoints.getJwks()),
+        this.settings.getStatisticsWindow(),
+        callCounter(tags, "SUCCESS"),
+        callCounter(tags, "FAILURE")
+    );
+    register(Gauge.builder(METRICS_PREFIX + "outstanding", node, KeycloakNode::getOutstanding)
+        .description("Calls in flight to a Keycloak node")
+        .tags(tags)
+        .register(this.meterRegistry));
+    register(TimeGauge.builder(METRICS_PREFIX + "latency", node, TimeUnit.NANOSECONDS,
+            KeycloakNode::getLatencyNanos)
+        .description("Moving average of the latency of a Keycloak node")
+        .tags(tags)
+        .register(this.meterRegistry));
+    register(Gauge.builder(METRICS_PREFIX + "healthy", node, n -> n.isHealthy() ? 1 : 0)
+        .description("Whether a Keycloak node passes its health checks")
+        .tags(tags)
+        .register(this.meterRegistry));
+    register(Gauge.builder(METRICS_PREFIX + "ejected", node,
+            n -> n.isEjected(System.nanoTime()) ? 1 : 0)
+        .description("Whether a Keycloak node is ejected as an outlier")
+        .tags(tags)
+        .register(this.meterRegistry));
+    return node;
+  }
+
+  private Counter callCounter(Tags tags, String outcome) {
+    return register(Counter.builder(METRICS_PREFIX + "calls")
+        .description("Calls completed by a Keycloak node - failures are 5xx and I/O errors")
+        .tags(tags)
+        .tag("outcome", outcome)
+        .register(this.meterRegistry));
+  }
+
+  private Tags tags(KeycloakNode node) {
+    return Tags.of("tenant", this.tenantId, "node", node.getBaseUrl());
+  }
+
+  private <M extends Meter> M register(M meter) {
+    synchronized (this.meters) {
+      this.meters.add(meter);
+    }
+    return meter;
+  }
+
+  /**
+   * Gauges are identified by their name and tags, the nodes of a rebuilt tenant would otherwise be
+   * reported by the gauges of the old ones.
+   */
+  private void removeMeters() {
+    for (Meter meter : this.meterRegistry.getMeters()) {
+      if (meter.getId().getName().startsWith(METRICS_PREFIX)
+          && this.tenantId.equals(meter.getId().getTag("tenant"))) {
+        this.meterRegistry.remove(meter);
+      }
+    }
+  }
+
+  private static String nodeUrl(String baseUrl, String nodeUrl, String url) {
+    return url.startsWith(baseUrl) ? nodeUrl + url.substring(baseUrl.length()) : url;
+  }
+
+  private static String stripTrailingSlash(String url) {
+    return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+  }
+}
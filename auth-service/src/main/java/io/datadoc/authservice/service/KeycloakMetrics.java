@@ -0,0 +1,119 @@
+package io.datadoc.authservice.service;
+
+import io.datadoc.authservice.model.http.KeycloakEndpoint;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import org.springframework.boot.actuate.metrics.http.Outcome;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+/**
+ * KeycloakMetrics times the calls made to Keycloak. Every call is recorded in the keycloak.requests
+ * timer tagged with the tenant, the endpoint, the HTTP status and the outcome. Calls failing
+ * without a response (connection refused, timeout) are tagged with status IO_ERROR. The RTT of
+ * every call is also handed to the ConcurrencyLimiter. The timers are registered once per tag set.
+ */
+@Component
+public class KeycloakMetrics {
+
+  private static final String IO_ERROR = "IO_ERROR";
+  private final MeterRegistry meterRegistry;
+  private final ConcurrencyLimiter concurrencyLimiter;
+  private final ConcurrentMap<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+
+  public KeycloakMetrics(MeterRegistry meterRegistry, ConcurrencyLimiter concurrencyLimiter) {
+    this.meterRegistry = meterRegistry;
+    this.concurrencyLimiter = concurrencyLimiter;
+  }
+
+  /**
+   * Times a blocking call to Keycloak.
+   *
+   * @param tenantId The ID of the called tenant.
+   * @param endpoint The called endpoint.
+   * @param call     The call to time.
+   * @param <T>      The type of the response body.
+   * @return The response of the call.
+   */
+  public <T> ResponseEntity<T> record(
+      String tenantId,
+      KeycloakEndpoint endpoint,
+      Supplier<ResponseEntity<T>> call
+  ) {
+    Timer.Sample sample = Timer.start(this.meterRegistry);
+    Integer status = null;
+    try {
+      ResponseEntity<T> response = call.get();
+      status = response.getStatusCode().value();
+      return response;
+    } catch (RuntimeException e) {
+      status = getStatus(e);
+      throw e;
+    } finally {
+      this.concurrencyLimiter.onSample(sample.stop(timer(tenantId, endpoint, status)));
+    }
+  }
+
+  /**
+   * Times a non-blocking call to Keycloak - the timer starts on subscription.
+   *
+   * @param tenantId The ID of the called tenant.
+   * @param endpoint The called endpoint.
+   * @param call     The call to time.
+   * @param <T>      The type of the response body.
+   * @return Mono emitting the response of the call.
+   */
+  public <T> Mono<ResponseEntity<T>> record(
+      String tenantId,
+      KeycloakEndpoint endpoint,
+      Mono<ResponseEntity<T>> call
+  ) {
+    return Mono.defer(() -> {
+      Timer.Sample sample = Timer.start(this.meterRegistry);
+      return call
+          .doOnSuccess(response -> this.concurrencyLimiter.onSample(sample.stop(timer(
+              tenantId, endpoint, response == null ? null : response.getStatusCode().value()))))
+          .doOnError(e -> this.concurrencyLimiter.onSample(
+              sample.stop(timer(tenantId, endpoint, getStatus(e)))));
+    });
+  }
+
+  private Timer timer(String tenantId, KeycloakEndpoint endpoint, Integer status) {
+    return this.timers.computeIfAbsent(new TimerKey(tenantId, endpoint, status), this::register);
+  }
+
+  private Timer register(TimerKey key) {
+    Integer status = key.status();
+    return Timer.builder("keycloak.requests")
+        .description("Calls made to Keycloak")
+        .tag("tenant", key.tenantId())
+        .tag("endpoint", key.endpoint().getName())
+        .tag("status", status == null ? IO_ERROR : status.toString())
+        .tag("outcome", status == null ? Outcome.UNKNOWN.name() : Outcome.forStatus(status).name())
+        .publishPercentileHistogram()
+        .register(this.meterRegistry);
+  }
+
+  private static Integer getStatus(Throwable e) {
+    if (e instanceof HttpStatusCodeException httpException) {
+      return httpException.getStatusCode().value();
+    }
+    if (e instanceof WebClientResponseException webClientException) {
+      return webClientException.getStatusCode().value();
+    }
+    return null;
+  }
+
+  /**
+   * Tags of a keycloak.requests timer.
+   */
+  private record TimerKey(String tenantId, KeycloakEndpoint endpoint, Integer status) {
+
+  }
+}
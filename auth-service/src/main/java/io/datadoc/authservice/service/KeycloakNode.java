@@ -0,0 +1,210 @@
+package io.datadoc.authservice.service;
+
+import io.datadoc.authservice.config.KeycloakConfig;
+import io.datadoc.authservice.model.http.KeycloakEndpoint;
+import io.micrometer.core.instrument.Counter;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * KeycloakNode is one node of a tenant's Keycloak cluster together with the statistics the
+ * KeycloakLoadBalancer picks nodes by - the calls in flight, the moving averages of the latency and
+ * the error rate of the completed calls, the result of the health checks and the ejection.
+ *
+ * <p>The statistics are updated under the node's lock and read without it - a node is picked on
+ * values that may be a call behind, which is fine for load balancing.
+ */
+final class KeycloakNode {
+
+  private final String baseUrl;
+  private final Map<KeycloakEndpoint, String> urls;
+  private final String healthCheckUrl;
+  private final double alpha;
+  private final Counter successfulCalls;
+  private final Counter failedCalls;
+  private final AtomicInteger outstanding = new AtomicInteger();
+  private final AtomicBoolean healthCheckRunning = new AtomicBoolean();
+  private volatile double latencyNanos;
+  private volatile int calls;
+  private volatile boolean healthy = true;
+  private volatile boolean ejected;
+  private volatile long ejectedUntilNanos;
+  private double errorRate;
+  private int consecutiveErrors;
+  private int ejections;
+  private int healthChecksInRow;
+
+  KeycloakNode(
+      String baseUrl,
+      Map<KeycloakEndpoint, String> urls,
+      String healthCheckUrl,
+      int statisticsWindow,
+      Counter successfulCalls,
+      Counter failedCalls
+  ) {
+    this.baseUrl = baseUrl;
+    this.urls = new EnumMap<>(urls);
+    this.healthCheckUrl = healthCheckUrl;
+    this.alpha = 2.0 / (statisticsWindow + 1);
+    this.successfulCalls = successfulCalls;
+    this.failedCalls = failedCalls;
+  }
+
+  String getBaseUrl() {
+    return this.baseUrl;
+  }
+
+  String getUrl(KeycloakEndpoint endpoint) {
+    return this.urls.get(endpoint);
+  }
+
+  String getHealthCheckUrl() {
+    return this.healthCheckUrl;
+  }
+
+  int getOutstanding() {
+    return this.outstanding.get();
+  }
+
+  /**
+   * Returns the moving average of the latency.
+   *
+   * @return The latency in nanoseconds, 0 until the first call completes after the node was added
+   *     or ejected.
+   */
+  double getLatencyNanos() {
+    return this.latencyNanos;
+  }
+
+  int getCalls() {
+    return this.calls;
+  }
+
+  boolean isHealthy() {
+    return this.healthy;
+  }
+
+  boolean isEjected(long nowNanos) {
+    return this.ejected && nowNanos - this.ejectedUntilNanos < 0;
+  }
+
+  boolean isAvailable(long nowNanos) {
+    return this.healthy && !isEjected(nowNanos);
+  }
+
+  void start() {
+    this.outstanding.incrementAndGet();
+  }
+
+  /**
+   * Records a completed call.
+   *
+   * @param latencyNanos The latency of the call.
+   * @param failed       Whether the node failed to handle the call - 5xx or I/O error.
+   */
+  void complete(long latencyNanos, boolean failed) {
+    this.outstanding.decrementAndGet();
+    (failed ? this.failedCalls : this.successfulCalls).increment();
+    synchronized (this) {
+      this.latencyNanos = this.calls == 0
+          ? latencyNanos
+          : this.latencyNanos + this.alpha * (latencyNanos - this.latencyNanos);
+      this.errorRate += this.alpha * ((failed ? 1 : 0) - this.errorRate);
+      this.consecutiveErrors = failed ? this.consecutiveErrors + 1 : 0;
+      this.calls++;
+    }
+  }
+
+  /**
+   * Records a call cancelled before it completed - it says nothing about the node.
+   */
+  void cancel() {
+    this.outstanding.decrementAndGet();
+  }
+
+  /**
+   * Checks if the node is an outlier. A node that handled enough calls without being one is
+   * forgiven its previous ejections.
+   *
+   * @param ejection            The outlier ejection settings.
+   * @param fastestLatencyNanos The latency of the fastest other node or 0 if it isn't known.
+   * @return The reason to eject the node or null.
+   */
+  synchronized String getOutlierReason(
+      KeycloakConfig.LoadBalancing.OutlierEjection ejection,
+      double fastestLatencyNanos
+  ) {
+    if (this.consecutiveErrors >= ejection.getConsecutiveErrors()) {
+      return "consecutive_errors";
+    }
+    if (this.calls < ejection.getMinimumCalls()) {
+      return null;
+    }
+    if (this.errorRate >= ejection.getErrorRateThreshold()) {
+      return "error_rate";
+    }
+    if (fastestLatencyNanos > 0
+        && this.latencyNanos > ejection.getMinimumLatency().toNanos()
+        && this.latencyNanos > fastestLatencyNanos * ejection.getLatencyFactor()) {
+      return "latency";
+    }
+    this.ejections = 0;
+    return null;
+  }
+
+  /**
+   * Ejects the node - every ejection in a row lasts longer. The statistics start over, so the node
+   * comes back as a new one.
+   */
+  synchronized void eject(
+      long nowNanos,
+      KeycloakConfig.LoadBalancing.OutlierEjection ejection
+  ) {
+    this.ejections++;
+    long duration = Math.min(
+        ejection.getBaseEjectionTime().toNanos() * this.ejections,
+        ejection.getMaxEjectionTime().toNanos()
+    );
+    this.ejectedUntilNanos = nowNanos + duration;
+    this.ejected = true;
+    this.latencyNanos = 0;
+    this.errorRate = 0;
+    this.consecutiveErrors = 0;
+    this.calls = 0;
+  }
+
+  /**
+   * Claims the next health check, so a slow node doesn't pile them up.
+   *
+   * @return false if the previous health check is still running.
+   */
+  boolean startHealthCheck() {
+    return this.healthCheckRunning.compareAndSet(false, true);
+  }
+
+  /**
+   * Records the result of a health check. The node changes its state after the threshold of
+   * results in a row.
+   *
+   * @return true if the node became healthy or unhealthy.
+   */
+  boolean completeHealthCheck(boolean passed, KeycloakConfig.LoadBalancing.HealthCheck check) {
+    try {
+      if (passed == this.healthy) {
+        this.healthChecksInRow = 0;
+        return false;
+      }
+      int threshold = passed ? check.getHealthyThreshold() : check.getUnhealthyThreshold();
+      if (++this.healthChecksInRow < threshold) {
+        return false;
+      }
+      this.healthChecksInRow = 0;
+      this.healthy = passed;
+      return true;
+    } finally {
+      this.healthCheckRunning.set(false);
+    }
+  }
+}
@@ -0,0 +1,310 @@
+package io.datadoc.authservice.service;
+
+import io.datadoc.authservice.config.KeycloakConfig;
+import io.datadoc.authservice.model.http.HttpExecutionMode;
+import io.datadoc.authservice.model.http.KeycloakEndpoint;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.core.IntervalFunction;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedRetryMetrics;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.github.resilience4j.reactor.retry.RetryOperator;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.github.resilience4j.retry.RetryRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+/**
+ * KeycloakResilience keeps the auth-service responsive while Keycloak is degraded. Every endpoint
+ * of every tenant has its own circuit breaker, which opens when too many calls fail with 5xx, time
+ * out or are slow, and a bulkhead limiting the calls in flight. Rejected calls fail right away with
+ * CallNotPermittedException or BulkheadFullException instead of holding a request thread. Calls to
+ * the idempotent endpoints are retried on transient failures with jittered exponential backoff,
+ * limited by a RetryBudget.
+ *
+ * <p>Breaker state, bulkhead usage and retries are exported as resilience4j.* metrics, rejections
+ * as keycloak.requests.rejected tagged with the tenant, the endpoint and the reason. The guards of
+ * a tenant are created on its first call, and dropped with their metrics when the tenant is removed
+ * or replaced.
+ */
+@Component
+public class KeycloakResilience {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(KeycloakResilience.class);
+  private final Map<String, Map<KeycloakEndpoint, Guard>> guards = new ConcurrentHashMap<>();
+  private final KeycloakConfig.Resilience config;
+  private final MeterRegistry meterRegistry;
+  private final CircuitBreakerRegistry circuitBreakerRegistry;
+  private final BulkheadRegistry bulkheadRegistry;
+  private final RetryRegistry retryRegistry;
+
+  public KeycloakResilience(KeycloakConfig keycloakConfig, MeterRegistry meterRegistry) {
+    this.config = keycloakConfig.getResilience();
+    this.meterRegistry = meterRegistry;
+    this.circuitBreakerRegistry = CircuitBreakerRegistry.of(
+        circuitBreakerConfig(this.config.getCircuitBreaker())
+    );
+    this.bulkheadRegistry = BulkheadRegistry.of(
+        bulkheadConfig(this.config.getBulkhead(), keycloakConfig.getExecutionMode())
+    );
+    this.retryRegistry = RetryRegistry.ofDefaults();
+
+    TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(this.circuitBreakerRegistry)
+        .bindTo(meterRegistry);
+    TaggedBulkheadMetrics.ofBulkheadRegistry(this.bulkheadRegistry).bindTo(meterRegistry);
+    TaggedRetryMetrics.ofRetryRegistry(this.retryRegistry).bindTo(meterRegistry);
+  }
+
+  /**
+   * Makes a blocking call to Keycloak through the endpoint's retry, circuit breaker and bulkhead.
+   *
+   * @param tenantId The ID of the called tenant.
+   * @param endpoint The called endpoint.
+   * @param call     The call to make.
+   * @param <T>      The type of the response.
+   * @return The response of the call.
+   */
+  public <T> T execute(String tenantId, KeycloakEndpoint endpoint, Supplier<T> call) {
+    Guard guard = guard(tenantId, endpoint);
+    Supplier<T> guarded = CircuitBreaker.decorateSupplier(
+        guard.circuitBreaker(),
+        Bulkhead.decorateSupplier(guard.bulkhead(), call)
+    );
+    if (guard.retry() == null) {
+      return guarded.get();
+    }
+    guard.retryBudget().deposit();
+    return Retry.decorateSupplier(guard.retry(), guarded).get();
+  }
+
+  /**
+   * Non-blocking counterpart of {@link #execute(String, KeycloakEndpoint, Supplier)}. Retries
+   * resubscribe to the call, so it has to be lazy - as the WebClient's response Mono is.
+   *
+   * @param tenantId The ID of the called tenant.
+   * @param endpoint The called endpoint.
+   * @param call     The call to make.
+   * @param <T>      The type of the response.
+   * @return Mono emitting the response of the call.
+   */
+  public <T> Mono<T> execute(String tenantId, KeycloakEndpoint endpoint, Mono<T> call) {
+    Guard guard = guard(tenantId, endpoint);
+    Mono<T> guarded = call
+        .transformDeferred(BulkheadOperator.of(guard.bulkhead()))
+        .transformDeferred(CircuitBreakerOperator.of(guard.circuitBreaker()));
+    if (guard.retry() == null) {
+      return guarded;
+    }
+    return Mono.defer(() -> {
+      guard.retryBudget().deposit();
+      return guarded.transformDeferred(RetryOperator.of(guard.retry()));
+    });
+  }
+
+  /**
+   * Drops the guards of a tenant removed or replaced by a reload, together with their metrics. A
+   * replaced tenant starts over with closed circuit breakers and empty bulkheads on its next call,
+   * instead of inheriting the state of its old Keycloak URLs. Calls already in flight keep the
+   * guards they started with.
+   *
+   * @param tenantId The ID of the removed or replaced tenant.
+   */
+  public void removeTenant(String tenantId) {
+    Map<KeycloakEndpoint, Guard> removed = this.guards.remove(tenantId);
+    if (removed == null) {
+      return;
+    }
+    // Removing them from the registries also removes their resilience4j.* meters.
+    for (Guard guard : removed.values()) {
+      this.circuitBreakerRegistry.remove(guard.circuitBreaker().getName());
+      this.bulkheadRegistry.remove(guard.bulkhead().getName());
+      if (guard.retry() != null) {
+        this.retryRegistry.remove(guard.retry().getName());
+      }
+      guard.meters().forEach(this.meterRegistry::remove);
+    }
+  }
+
+  private Guard guard(String tenantId, KeycloakEndpoint endpoint) {
+    return this.guards.computeIfAbsent(tenantId, this::createGuards).get(endpoint);
+  }
+
+  /**
+   * Creates the guards of every endpoint of a tenant. The names of the default tenant's breakers,
+   * bulkheads and retries are the endpoint names, the ones of other tenants are prefixed with the
+   * tenant ID.
+   */
+  private Map<KeycloakEndpoint, Guard> createGuards(String tenantId) {
+    Map<KeycloakEndpoint, Guard> guards = new EnumMap<>(KeycloakEndpoint.class);
+    for (KeycloakEndpoint endpoint : KeycloakEndpoint.values()) {
+      String name = KeycloakTenants.DEFAULT_TENANT.equals(tenantId)
+          ? endpoint.getName()
+          : tenantId + "." + endpoint.getName();
+      List<Meter> meters = new ArrayList<>();
+      CircuitBreaker circuitBreaker = this.circuitBreakerRegistry.circuitBreaker(name);
+      Counter circuitOpen = rejectedCounter(tenantId, endpoint, "circuit_open");
+      meters.add(circuitOpen);
+      circuitBreaker.getEventPublisher()
+          .onCallNotPermitted(event -> circuitOpen.increment())
+          .onStateTransition(event -> LOGGER.warn("Keycloak {} circuit breaker transitioned: {}",
+              name, event.getStateTransition()));
+
+      Bulkhead bulkhead = this.bulkheadRegistry.bulkhead(name);
+      Counter bulkheadFull = rejectedCounter(tenantId, endpoint, "bulkhead_full");
+      meters.add(bulkheadFull);
+      bulkhead.getEventPublisher().onCallRejected(event -> bulkheadFull.increment());
+
+      Retry retry = null;
+      RetryBudget retryBudget = null;
+      KeycloakConfig.Resilience.Retry retryConfig = this.config.getRetry();
+      if (retryConfig.getEndpoints().contains(endpoint)) {
+        retryBudget = new RetryBudget(
+            retryConfig.getBudgetRatio(),
+            retryConfig.getBudgetMaxRetries()
+        );
+        Counter budgetExhausted = Counter.builder("keycloak.retry.budget.exhausted")
+            .description("Retries skipped because the retry budget was exhausted")
+            .tag("tenant", tenantId)
+            .tag("endpoint", endpoint.getName())
+            .register(this.meterRegistry);
+        meters.add(budgetExhausted);
+        retry = this.retryRegistry.retry(name, retryConfig(retryConfig, retryBudget,
+            budgetExhausted));
+      }
+      guards.put(endpoint, new Guard(circuitBreaker, bulkhead, retry, retryBudget, meters));
+    }
+    return guards;
+  }
+
+  private static CircuitBreakerConfig circuitBreakerConfig(
+      KeycloakConfig.Resilience.CircuitBreaker config
+  ) {
+    return CircuitBreakerConfig.custom()
+        .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+        .slidingWindowSize(config.getSlidingWindowSize())
+        .minimumNumberOfCalls(config.getMinimumNumberOfCalls())
+        .failureRateThreshold(config.getFailureRateThreshold())
+        .slowCallRateThreshold(config.getSlowCallRateThreshold())
+        .slowCallDurationThreshold(config.getSlowCallDurationThreshold())
+        .waitDurationInOpenState(config.getWaitDurationInOpenState())
+        .permittedNumberOfCallsInHalfOpenState(config.getPermittedNumberOfCallsInHalfOpenState())
+        .recordException(KeycloakResilience::isKeycloakFailure)
+        .ignoreExceptions(BulkheadFullException.class)
+        .build();
+  }
+
+  /**
+   * The reactive bulkhead must not block the event loop, so it never waits for a free permit.
+   */
+  private static BulkheadConfig bulkheadConfig(
+      KeycloakConfig.Resilience.Bulkhead config,
+      HttpExecutionMode executionMode
+  ) {
+    return BulkheadConfig.custom()
+        .maxConcurrentCalls(config.getMaxConcurrentCalls())
+        .maxWaitDuration(executionMode == HttpExecutionMode.REACTIVE
+            ? Duration.ZERO
+            : config.getMaxWaitDuration())
+        .build();
+  }
+
+  private static RetryConfig retryConfig(
+      KeycloakConfig.Resilience.Retry config,
+      RetryBudget retryBudget,
+      Counter budgetExhausted
+  ) {
+    return RetryConfig.custom()
+        .maxAttempts(config.getMaxAttempts())
+        .intervalFunction(IntervalFunction.ofExponentialRandomBackoff(
+            config.getInitialBackoff(), 2, 0.5, config.getMaxBackoff()
+        ))
+        .retryOnException(e -> {
+          if (!isTransientFailure(e)) {
+            return false;
+          }
+          if (retryBudget.tryWithdraw()) {
+            return true;
+          }
+          budgetExhausted.increment();
+          return false;
+        })
+        .build();
+  }
+
+  private Counter rejectedCounter(String tenantId, KeycloakEndpoint endpoint, String reason) {
+    return Counter.builder("keycloak.requests.rejected")
+        .description("Calls to Keycloak rejected by the circuit breaker or the bulkhead")
+        .tag("tenant", tenantId)
+        .tag("endpoint", endpoint.getName())
+        .tag("reason", reason)
+        .register(this.meterRegistry);
+  }
+
+  /**
+   * Keycloak failed to handle the call - 4xx responses are the client's fault, not Keycloak's.
+   */
+  static boolean isKeycloakFailure(Throwable e) {
+    return e instanceof ResourceAccessException
+        || e instanceof HttpServerErrorException
+        || e instanceof WebClientRequestException
+        || e instanceof WebClientResponseException responseException
+        && responseException.getStatusCode().is5xxServerError();
+  }
+
+  /**
+   * The call failed without a response or with a status a repeated call may not get.
+   */
+  private static boolean isTransientFailure(Throwable e) {
+    if (e instanceof ResourceAccessException || e instanceof WebClientRequestException) {
+      return true;
+    }
+    int status;
+    if (e instanceof HttpServerErrorException serverErrorException) {
+      status = serverErrorException.getStatusCode().value();
+    } else if (e instanceof WebClientResponseException responseException) {
+      status = responseException.getStatusCode().value();
+    } else {
+      return false;
+    }
+    return status == 502 || status == 503 || status == 504;
+  }
+
+  /**
+   * The circuit breaker, bulkhead and the optional retry of an endpoint, with the meters registered
+   * for them besides the resilience4j.* ones.
+   */
+  private record Guard(
+      CircuitBreaker circuitBreaker,
+      Bulkhead bulkhead,
+      Retry retry,
+      RetryBudget retryBudget,
+      List<Meter> meters
+  ) {
+
+  }
+}
@@ -0,0 +1,142 @@
+package io.datadoc.authservice.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.BufferRecycler;
+import io.datadoc.authservice.model.auth.JwtPayload;
+import io.datadoc.authservice.model.auth.UserMetadata;
+import java.io.IOException;
+import java.io.InputStream;
+import org.springframework.stereotype.Component;
+
+/**
+ * KeycloakResponseDecoder decodes the responses of the Keycloak token and userinfo endpoints into
+ * JwtPayload and UserMetadata. The body is read token by token with Jackson's streaming JsonParser,
+ * straight into the record's fields - there is no data binding, no reflection and no buffering of
+ * the whole body. Fields the records don't have are skipped without being read into a tree.
+ *
+ * <p>Jackson keeps its read buffers in a thread local by default, which a virtual thread per
+ * request never reuses. The decoder keeps them in a fixed set of recyclers picked by thread ID
+ * instead. Recyclers are thread-safe - threads sharing one at the same time just allocate.
+ */
+@Component
+public class KeycloakResponseDecoder {
+
+  private final JsonFactory jsonFactory = new RecyclingJsonFactory();
+
+  /**
+   * Checks if the type can be decoded.
+   *
+   * @param type The type of the response.
+   * @return true for JwtPayload and UserMetadata, false otherwise.
+   */
+  public boolean canDecode(Class<?> type) {
+    return type == JwtPayload.class || type == UserMetadata.class;
+  }
+
+  /**
+   * Decodes the response body into the given type. The stream isn't closed.
+   *
+   * @param body The JSON response body.
+   * @param type JwtPayload or UserMetadata.
+   * @return The decoded response.
+   * @throws IOException If the body can't be read or isn't a JSON object.
+   */
+  public <T> T decode(InputStream body, Class<T> type) throws IOException {
+    try (JsonParser parser = this.jsonFactory.createParser(body)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new JsonParseException(parser, "Expected a JSON object");
+      }
+      if (type == JwtPayload.class) {
+        return type.cast(readJwtPayload(parser));
+      }
+      if (type == UserMetadata.class) {
+        return type.cast(readUserMetadata(parser));
+      }
+      throw new IllegalArgumentException("Unsupported type " + type.getName());
+    }
+  }
+
+  private static JwtPayload readJwtPayload(JsonParser parser) throws IOException {
+    String tokenType = null;
+    String accessToken = null;
+    String refreshToken = null;
+    String idToken = null;
+    int expiresIn = 0;
+    int refreshTokenExpiresIn = 0;
+    String field;
+    while ((field = parser.nextFieldName()) != null) {
+      parser.nextToken();
+      switch (field) {
+        case "token_type" -> tokenType = parser.getValueAsString();
+        case "access_token" -> accessToken = parser.getValueAsString();
+        case "refresh_token" -> refreshToken = parser.getValueAsString();
+        case "id_token" -> idToken = parser.getValueAsString();
+        case "expires_in" -> expiresIn = parser.getValueAsInt();
+        case "refresh_expires_in" -> refreshTokenExpiresIn = parser.getValueAsInt();
+        default -> parser.skipChildren();
+      }
+    }
+    expectEndObject(parser);
+    return new JwtPayload(
+        tokenType, accessToken, refreshToken, idToken, expiresIn, refreshTokenExpiresIn
+    );
+  }
+
+  private static UserMetadata readUserMetadata(JsonParser parser) throws IOException {
+    String id = null;
+    String username = null;
+    String firstName = null;
+    String lastName = null;
+    String email = null;
+    boolean emailVerified = false;
+    String field;
+    while ((field = parser.nextFieldName()) != null) {
+      parser.nextToken();
+      switch (field) {
+        case "sub" -> id = parser.getValueAsString();
+        case "preferred_username" -> username = parser.getValueAsString();
+        case "given_name" -> firstName = parser.getValueAsString();
+        case "family_name" -> lastName = parser.getValueAsString();
+        case "email" -> email = parser.getValueAsString();
+        case "email_verified" -> emailVerified = parser.getValueAsBoolean();
+        default -> parser.skipChildren();
+      }
+    }
+    expectEndObject(parser);
+    return new UserMetadata(id, username, firstName, lastName, email, emailVerified);
+  }
+
+  private static void expectEndObject(JsonParser parser) throws IOException {
+    if (parser.currentToken() != JsonToken.END_OBJECT) {
+      throw new JsonParseException(parser, "Expected a field name or the end of the JSON object");
+    }
+  }
+
+  /**
+   * JsonFactory taking the buffer recyclers of its parsers from a fixed set, rather than from a
+   * thread local.
+   */
+  private static final class RecyclingJsonFactory extends JsonFactory {
+
+    private final BufferRecycler[] recyclers;
+
+    RecyclingJsonFactory() {
+      int count = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+      this.recyclers = new BufferRecycler[count];
+      for (int i = 0; i < count; i++) {
+        this.recyclers[i] = new BufferRecycler();
+      }
+      // The stream belongs to the HTTP client, which closes or reuses it.
+      disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    }
+
+    @Override
+    public BufferRecycler _getBufferRecycler() {
+      long threadId = Thread.currentThread().threadId();
+      return this.recyclers[(int) (threadId ^ (threadId >>> 32)) & (this.recyclers.length - 1)];
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package io.datadoc.authservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.IOException;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.util.StreamUtils;
+
+/**
+ * KeycloakResponseHttpMessageConverter reads the Keycloak token and userinfo responses of the
+ * RestTemplate with the KeycloakResponseDecoder. It only reads - requests are written by the other
+ * converters.
+ */
+public class KeycloakResponseHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+  private final KeycloakResponseDecoder decoder;
+
+  public KeycloakResponseHttpMessageConverter(KeycloakResponseDecoder decoder) {
+    super(MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+    this.decoder = decoder;
+  }
+
+  @Override
+  protected boolean supports(Class<?> clazz) {
+    return this.decoder.canDecode(clazz);
+  }
+
+  @Override
+  public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+    return false;
+  }
+
+  @Override
+  protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage)
+      throws IOException, HttpMessageNotReadableException {
+    try {
+      return this.decoder.decode(StreamUtils.nonClosing(inputMessage.getBody()), clazz);
+    } catch (JsonProcessingException e) {
+      throw new HttpMessageNotReadableException(
+          "JSON parse error: " + e.getOriginalMessage(), e, inputMessage
+      );
+    }
+  }
+
+  @Override
+  protected void writeInternal(Object object, HttpOutputMessage outputMessage) {
+    throw new UnsupportedOperationException("Keycloak responses are only read");
+  }
+}
@@ -1,152 +1,216 @@
 package io.datadoc.authservice.service;
 
-import io.datadoc.authservice.config.KeycloakConfig;
 import io.datadoc.authservice.model.auth.JwtPayload;
 import io.datadoc.authservice.model.auth.LoginCredentials;
 import io.datadoc.authservice.model.auth.UserMetadata;
-import io.datadoc.authservice.model.http.HttpGrantType;
-import io.datadoc.authservice.model.http.HttpScope;
+import io.datadoc.authservice.model.http.KeycloakEndpoint;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.HttpStatusCodeException;
-import org.springframework.web.client.RestTemplate;
 
 /**
  * This class provides methods for interacting with Keycloak. Its main purpose is to interact with
- * Keycloak REST endpoints. The http requests are made using Spring's RestTemplate.
+ * Keycloak REST endpoints. The http requests are made using the RestTemplate of the called tenant.
+ * Tokens are checked by the RejectedTokenCache before they're sent, and the ones Keycloak rejects
+ * are recorded there - the userinfo calls are checked by the UserInfoService before.
  * TODO(bskokdev) - Add integration tests!!!.
  */
 @Service
 public class KeycloakService {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(KeycloakService.class);
-  private final RestTemplate restTemplate;
-  private final KeycloakConfig keycloakConfig;
   private final HttpService httpService;
+  private final KeycloakMetrics keycloakMetrics;
+  private final KeycloakResilience keycloakResilience;
+  private final RejectedTokenCache rejectedTokenCache;
+  private final SingleFlight<String, ResponseEntity<UserMetadata>> userInfoFlight;
+  private final SingleFlight<String, ResponseEntity<JwtPayload>> refreshFlight;
 
   public KeycloakService(
-      RestTemplate restTemplate,
-      KeycloakConfig keycloakConfig,
-      HttpService httpService
+      HttpService httpService,
+      KeycloakMetrics keycloakMetrics,
+      KeycloakResilience keycloakResilience,
+      RejectedTokenCache rejectedTokenCache,
+      MeterRegistry meterRegistry
   ) {
-    this.restTemplate = restTemplate;
-    this.keycloakConfig = keycloakConfig;
     this.httpService = httpService;
+    this.keycloakMetrics = keycloakMetrics;
+    this.keycloakResilience = keycloakResilience;
+    this.rejectedTokenCache = rejectedTokenCache;
+    this.userInfoFlight = new SingleFlight<>("userinfo", meterRegistry);
+    this.refreshFlight = new SingleFlight<>("refresh", meterRegistry);
   }
 
   /**
    * Request JWT tokens from Keycloak instance for the user with the given credentials.
    *
+   * @param tenant      The tenant the user belongs to.
    * @param credentials The user's credentials - email & password.
    * @return ResponseEntity with JwtPayload containing the JWT tokens.
    * @throws HttpStatusCodeException If the request to Keycloak fails.
    */
-  public ResponseEntity<JwtPayload> fetchTokensForUser(LoginCredentials credentials)
-      throws HttpStatusCodeException {
-    MultiValueMap<String, String> httpForm = new HttpFormBuilder().
-        withGrantType(HttpGrantType.PASSWORD.getGrantType()).
-        withClientId(this.keycloakConfig.getClient().getId()).
-        withClientSecret(this.keycloakConfig.getClient().getSecret()).
-        withUsername(credentials.email()).
-        withPassword(credentials.password()).
-        withScope(HttpScope.OPENID.getScope()).
-        build();
-
-    LOGGER.info("Keycloak requesting JWT token for user...");
-    return restTemplate.postForEntity(
-        this.keycloakConfig.getEndpoints().getToken(),
+  public ResponseEntity<JwtPayload> fetchTokensForUser(
+      KeycloakTenant tenant,
+      LoginCredentials credentials
+  ) throws HttpStatusCodeException {
+    byte[] httpForm = tenant.getForms().login(credentials);
+
+    LOGGER.debug("Keycloak requesting JWT token for user...");
+    return call(tenant, KeycloakEndpoint.TOKEN, url -> tenant.getRestTemplate().postForEntity(
+        url,
         new HttpEntity<>(httpForm, this.httpService.getHttpFormHeaders()),
         JwtPayload.class
-    );
+    ));
   }
 
   /**
    * Request user information from Keycloak instance for the user with the given access token.
+   * Concurrent requests for the same token share one call to Keycloak.
    *
+   * @param tenant      The tenant that issued the token.
    * @param accessToken The user's access token.
    * @return ResponseEntity with UserMetadata containing the user's information.
    * @throws HttpStatusCodeException If the request to Keycloak fails - Unauthorized, Bad Request
    */
-  public ResponseEntity<UserMetadata> fetchUser(String accessToken) throws HttpStatusCodeException {
-    LOGGER.info("Keycloak requesting user info...");
-    return restTemplate.exchange(
-        this.keycloakConfig.getEndpoints().getUserInfo(),
-        HttpMethod.GET,
-        new HttpEntity<>(null, this.httpService.getHttpFormHeaders(accessToken)),
-        UserMetadata.class
-    );
+  public ResponseEntity<UserMetadata> fetchUser(KeycloakTenant tenant, String accessToken)
+      throws HttpStatusCodeException {
+    return this.userInfoFlight.execute(flightKey(tenant, accessToken), () -> {
+      LOGGER.debug("Keycloak requesting user info...");
+      return callWithToken(tenant, KeycloakEndpoint.USERINFO, accessToken,
+          url -> tenant.getRestTemplate().exchange(
+              url,
+              HttpMethod.GET,
+              new HttpEntity<>(null, this.httpService.getHttpFormHeaders(accessToken)),
+              UserMetadata.class
+          ));
+    });
   }
 
 
   /**
    * Request tokens refresh from Keycloak instance for the user with the given refresh token.
+   * Concurrent requests with the same refresh token share one call to Keycloak - retried
+   * duplicates would otherwise fail on Keycloak's refresh token reuse check. Expired tokens and
+   * the ones Keycloak rejected recently fail without a call.
    *
+   * @param tenant       The tenant that issued the token.
    * @param refreshToken The refresh token issued to the user by Keycloak.
    * @return ResponseEntity with JwtPayload containing the JWT tokens.
    * @throws HttpStatusCodeException If the request to Keycloak fails - Unauthorized, Bad Request
    */
-  public ResponseEntity<JwtPayload> refreshTokens(String refreshToken)
+  public ResponseEntity<JwtPayload> refreshTokens(KeycloakTenant tenant, String refreshToken)
       throws HttpStatusCodeException {
-    MultiValueMap<String, String> httpForm = new HttpFormBuilder().
-        withGrantType(HttpGrantType.REFRESH_TOKEN.getGrantType()).
-        withClientId(this.keycloakConfig.getClient().getId()).
-        withClientSecret(this.keycloakConfig.getClient().getSecret()).
-        withRefreshToken(refreshToken).
-        build();
-
-    LOGGER.info("Keycloak attempting to refresh a JWT token...");
-    return restTemplate.postForEntity(
-        this.keycloakConfig.getEndpoints().getToken(),
-        new HttpEntity<>(httpForm, this.httpService.getHttpFormHeaders()),
-        JwtPayload.class
-    );
+    this.rejectedTokenCache.check(tenant, KeycloakEndpoint.TOKEN, refreshToken);
+    return this.refreshFlight.execute(flightKey(tenant, refreshToken), () -> {
+      LOGGER.debug("Keycloak attempting to refresh a JWT token...");
+      byte[] httpForm = tenant.getForms().refresh(refreshToken);
+      return callWithToken(tenant, KeycloakEndpoint.TOKEN, refreshToken,
+          url -> tenant.getRestTemplate().postForEntity(
+              url,
+              new HttpEntity<>(httpForm, this.httpService.getHttpFormHeaders()),
+              JwtPayload.class
+          ));
+    });
   }
 
   /**
-   * Request Keycloak to revoke the given JWT token.
+   * Request Keycloak to revoke the given JWT token. Malformed and expired tokens are revoked
+   * without a call, as Keycloak would answer 200 for them, the ones Keycloak rejected recently fail
+   * without a call.
    *
-   * @param token JWT token to be revoked.
+   * @param tenant The tenant that issued the token.
+   * @param token  JWT token to be revoked.
    * @throws HttpStatusCodeException If the request to Keycloak fails - Unauthorized, Bad Request
    */
-  public ResponseEntity<String> revokeKeycloakToken(String token) throws HttpStatusCodeException {
-    MultiValueMap<String, String> httpForm = new HttpFormBuilder().
-        withGrantType(HttpGrantType.CLIENT_CREDENTIALS.getGrantType()).
-        withClientId(this.keycloakConfig.getClient().getId()).
-        withClientSecret(this.keycloakConfig.getClient().getSecret()).
-        withGenericToken(token).
-        build();
-
-    LOGGER.info("Keycloak attempting to revoke a JWT token...");
-    return restTemplate.postForEntity(
-        this.keycloakConfig.getEndpoints().getRevoke(),
-        new HttpEntity<>(httpForm, this.httpService.getHttpFormHeaders()),
-        String.class
-    );
+  public ResponseEntity<String> revokeKeycloakToken(KeycloakTenant tenant, String token)
+      throws HttpStatusCodeException {
+    if (this.rejectedTokenCache.isSpent(token)) {
+      LOGGER.debug("Malformed or expired token, nothing to revoke");
+      return ResponseEntity.ok().build();
+    }
+    this.rejectedTokenCache.check(tenant, KeycloakEndpoint.REVOKE, token);
+    byte[] httpForm = tenant.getForms().revoke(token);
+
+    LOGGER.debug("Keycloak attempting to revoke a JWT token...");
+    return callWithToken(tenant, KeycloakEndpoint.REVOKE, token,
+        url -> tenant.getRestTemplate().postForEntity(
+            url,
+            new HttpEntity<>(httpForm, this.httpService.getHttpFormHeaders()),
+            String.class
+        ));
   }
 
   /**
    * Request Keycloak to log out a user based on their ID token.
    *
+   * @param tenant  The tenant that issued the token.
    * @param idToken ID token issued upon user login.
    * @throws HttpStatusCodeException If the request to Keycloak fails - Unauthorized, Bad Request
    */
-  public ResponseEntity<String> logoutKeycloakUser(String idToken) throws HttpStatusCodeException {
-    MultiValueMap<String, String> httpForm = new HttpFormBuilder().
-        withIdToken(idToken).
-        withClientId(this.keycloakConfig.getClient().getId()).
-        withClientSecret(this.keycloakConfig.getClient().getSecret()).
-        build();
-
-    LOGGER.info("Keycloak attempting to logout a user...");
-    return restTemplate.postForEntity(
-        this.keycloakConfig.getEndpoints().getLogout(),
+  public ResponseEntity<String> logoutKeycloakUser(KeycloakTenant tenant, String idToken)
+      throws HttpStatusCodeException {
+    byte[] httpForm = tenant.getForms().logout(idToken);
+
+    LOGGER.debug("Keycloak attempting to logout a user...");
+    return call(tenant, KeycloakEndpoint.LOGOUT, url -> tenant.getRestTemplate().postForEntity(
+        url,
         new HttpEntity<>(httpForm, this.httpService.getHttpFormHeaders()),
         String.class
+    ));
+  }
+
+  /**
+   * Makes a call sending the token and records the token in the RejectedTokenCache if Keycloak
+   * rejects it.
+   */
+  private <T> ResponseEntity<T> callWithToken(
+      KeycloakTenant tenant,
+      KeycloakEndpoint endpoint,
+      String token,
+      Function<String, ResponseEntity<T>> call
+  ) {
+    try {
+      return call(tenant, endpoint, call);
+    } catch (RuntimeException e) {
+      this.rejectedTokenCache.record(tenant, endpoint, token, e);
+      throw e;
+    }
+  }
+
+  /**
+   * Makes the call through the endpoint's circuit breaker, bulkhead and retry. Every attempt is
+   * timed separately and sent to the node picked by the tenant's load balancer.
+   *
+   * @param tenant   The called tenant.
+   * @param endpoint The called endpoint.
+   * @param call     The call to make, given the URL of the endpoint.
+   * @param <T>      The type of the response body.
+   * @return The response of the call.
+   */
+  private <T> ResponseEntity<T> call(
+      KeycloakTenant tenant,
+      KeycloakEndpoint endpoint,
+      Function<String, ResponseEntity<T>> call
+  ) {
+    return this.keycloakResilience.execute(
+        tenant.getId(),
+        endpoint,
+        () -> this.keycloakMetrics.record(
+            tenant.getId(), endpoint, () -> tenant.getLoadBalancer().execute(endpoint, call)
+        )
     );
   }
+
+  /**
+   * Identical calls are keyed by the tenant and the hash of the token, never the token itself.
+   */
+  private static String flightKey(KeycloakTenant tenant, String token) {
+    return tenant.getId() + ':' + TokenHasher.sha256(token);
+  }
 }
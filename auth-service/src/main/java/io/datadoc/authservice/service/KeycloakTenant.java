@@ -0,0 +1,108 @@
+package io.datadoc.authservice.service;
+
+import io.datadoc.authservice.config.KeycloakConfig;
+import io.datadoc.authservice.config.KeycloakHttpClientFactory;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.List;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/**
+ * KeycloakTenant is a Keycloak realm and client the auth-service authenticates against. It holds
+ * everything a call to the realm needs, set up once when the tenant is loaded - the load balancer
+ * with the endpoint URLs of the realm's nodes, the forms with the client's credentials, the
+ * verifier of the realm's tokens and the HTTP clients with the tenant's own connection pools.
+ *
+ * @see KeycloakTenants
+ */
+public final class KeycloakTenant {
+
+  private final String id;
+  private final Settings settings;
+  private final KeycloakLoadBalancer loadBalancer;
+  private final KeycloakForms forms;
+  private final TokenVerifier tokenVerifier;
+  private final KeycloakHttpClientFactory.Clients clients;
+
+  KeycloakTenant(
+      String id,
+      Settings settings,
+      KeycloakConfig.Endpoints endpoints,
+      KeycloakConfig.Verification verification,
+      KeycloakHttpClientFactory.Clients clients,
+      KeycloakLoadBalancer loadBalancer
+  ) throws MalformedURLException {
+    this.id = id;
+    this.settings = settings;
+    this.loadBalancer = loadBalancer;
+    this.forms = new KeycloakForms(settings.clientId(), settings.clientSecret());
+    this.tokenVerifier = new TokenVerifier(endpoints.getJwks(), settings.issuer(), verification);
+    this.clients = clients;
+  }
+
+  /**
+   * Returns the ID of the tenant - also the value of the tenant tag of its metrics.
+   *
+   * @return The tenant ID.
+   */
+  public String getId() {
+    return this.id;
+  }
+
+  /**
+   * Returns the issuer of the tokens of the tenant's realm.
+   *
+   * @return The issuer.
+   */
+  public String getIssuer() {
+    return this.settings.issuer();
+  }
+
+  KeycloakLoadBalancer getLoadBalancer() {
+    return this.loadBalancer;
+  }
+
+  KeycloakForms getForms() {
+    return this.forms;
+  }
+
+  TokenVerifier getTokenVerifier() {
+    return this.tokenVerifier;
+  }
+
+  RestTemplate getRestTemplate() {
+    return this.clients.getRestTemplate();
+  }
+
+  WebClient getWebClient() {
+    return this.clients.getWebClient();
+  }
+
+  Settings getSettings() {
+    return this.settings;
+  }
+
+  /**
+   * Stops the health checks and closes the connection pools of the tenant.
+   */
+  void close() throws IOException {
+    this.loadBalancer.close();
+    this.clients.close();
+  }
+
+  /**
+   * Resolved settings of a tenant - a tenant is only rebuilt when they change.
+   */
+  record Settings(
+      String realm,
+      String clientId,
+      String clientSecret,
+      String baseUrl,
+      List<String> nodes,
+      String protocol,
+      String issuer
+  ) {
+
+  }
+}
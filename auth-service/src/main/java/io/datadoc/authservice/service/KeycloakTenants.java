@@ -0,0 +1,346 @@
+package io.datadoc.authservice.service;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import io.datadoc.authservice.config.KeycloakConfig;
+import io.datadoc.authservice.config.KeycloakHttpClientFactory;
+import io.datadoc.authservice.exception.UnknownTenantException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.bind.PropertySourcesPlaceholdersResolver;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * KeycloakTenants keeps the tenants the auth-service authenticates against. The default tenant is
+ * configured at the top level of the keycloak properties, other tenants under keycloak.tenants or
+ * in keycloak.tenant-file. Unset values of a tenant are taken from the default tenant.
+ *
+ * <p>The tenants file is checked every keycloak.tenant-reload-interval and reloaded when it was
+ * modified, without a restart. Only added and changed tenants are built, the others keep their
+ * connection pools. The pools of removed and replaced tenants are closed after a grace period, so
+ * calls already in flight can finish. Their circuit breakers, bulkheads and retries are dropped
+ * right away, so a replaced tenant doesn't inherit the state of the old one. A file that fails to
+ * load is logged and the current tenants are kept.
+ *
+ * <p>The calls to a tenant are spread over its nodes by its KeycloakLoadBalancer, whose health
+ * checks are scheduled on the same thread as the reloads.
+ */
+@Service
+public class KeycloakTenants {
+
+  /**
+   * ID of the tenant configured at the top level of the keycloak properties.
+   */
+  public static final String DEFAULT_TENANT = "default";
+  private static final Logger LOGGER = LoggerFactory.getLogger(KeycloakTenants.class);
+  private static final Duration CLOSE_GRACE_PERIOD = Duration.ofMinutes(1);
+  private final KeycloakConfig keycloakConfig;
+  private final KeycloakHttpClientFactory clientFactory;
+  private final ConfigurableEnvironment environment;
+  private final MeterRegistry meterRegistry;
+  private final KeycloakResilience keycloakResilience;
+  private final Path tenantFile;
+  private final ScheduledExecutorService scheduler;
+  private volatile Tenants tenants;
+  private FileTime tenantFileModified;
+
+  public KeycloakTenants(
+      KeycloakConfig keycloakConfig,
+      KeycloakHttpClientFactory clientFactory,
+      ConfigurableEnvironment environment,
+      MeterRegistry meterRegistry,
+      KeycloakResilience keycloakResilience
+  ) throws IOException {
+    this.keycloakConfig = keycloakConfig;
+    this.clientFactory = clientFactory;
+    this.environment = environment;
+    this.meterRegistry = meterRegistry;
+    this.keycloakResilience = keycloakResilience;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().daemon().name("keycloak-tenants").factory()
+    );
+    String tenantFile = keycloakConfig.getTenantFile();
+    this.tenantFile = tenantFile == null || tenantFile.isBlank() ? null : Path.of(tenantFile);
+
+    Map<String, KeycloakConfig.Tenant> configured = new LinkedHashMap<>(
+        keycloakConfig.getTenants()
+    );
+    if (this.tenantFile != null) {
+      this.tenantFileModified = Files.getLastModifiedTime(this.tenantFile);
+      configured.putAll(loadTenantFile());
+    }
+    this.tenants = build(configured, Map.of());
+
+    if (this.tenantFile != null) {
+      long interval = keycloakConfig.getTenantReloadInterval().toMillis();
+      this.scheduler.scheduleWithFixedDelay(
+          this::reloadIfModified, interval, interval, TimeUnit.MILLISECONDS
+      );
+    }
+    Gauge.builder("keycloak.tenants", this, t -> t.tenants.byId().size())
+        .description("Keycloak tenants currently loaded, including the default one")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Returns the tenant with the given ID.
+   *
+   * @param tenantId The tenant ID or null for the default tenant.
+   * @return The KeycloakTenant.
+   * @throws UnknownTenantException If there's no such tenant.
+   */
+  public KeycloakTenant get(String tenantId) throws UnknownTenantException {
+    if (tenantId == null) {
+      return this.tenants.byId().get(DEFAULT_TENANT);
+    }
+    KeycloakTenant tenant = this.tenants.byId().get(tenantId);
+    if (tenant == null) {
+      throw new UnknownTenantException("Unknown tenant " + tenantId);
+    }
+    return tenant;
+  }
+
+  /**
+   * Returns the tenant a token belongs to. The explicitly selected tenant wins, otherwise the
+   * tenant is looked up by the issuer of the token - the token is NOT verified, so the tenant is
+   * only used to pick the realm the token is sent to or verified against.
+   *
+   * @param tenantId The explicitly selected tenant ID or null.
+   * @param token    The JWT token.
+   * @return The KeycloakTenant - the default one if the issuer isn't known.
+   * @throws UnknownTenantException If the selected tenant doesn't exist.
+   */
+  public KeycloakTenant resolve(String tenantId, String token) throws UnknownTenantException {
+    if (tenantId != null) {
+      return get(tenantId);
+    }
+    Tenants current = this.tenants;
+    JWTClaimsSet claims = TokenVerifier.readUnverified(token);
+    KeycloakTenant tenant = claims == null || claims.getIssuer() == null
+        ? null
+        : current.byIssuer().get(claims.getIssuer());
+    return tenant != null ? tenant : current.byId().get(DEFAULT_TENANT);
+  }
+
+  @PreDestroy
+  public void close() {
+    this.scheduler.shutdownNow();
+    this.tenants.byId().values().forEach(KeycloakTenants::close);
+  }
+
+  private void reloadIfModified() {
+    try {
+      FileTime modified = Files.getLastModifiedTime(this.tenantFile);
+      if (modified.equals(this.tenantFileModified)) {
+        return;
+      }
+      this.tenantFileModified = modified;
+      Map<String, KeycloakConfig.Tenant> configured = new LinkedHashMap<>(
+          this.keycloakConfig.getTenants()
+      );
+      configured.putAll(loadTenantFile());
+      Tenants previous = this.tenants;
+      this.tenants = build(configured, previous.byId());
+      previous.byId().forEach((id, tenant) -> {
+        if (this.tenants.byId().get(id) != tenant) {
+          this.keycloakResilience.removeTenant(id);
+          this.scheduler.schedule(
+              () -> close(tenant), CLOSE_GRACE_PERIOD.toMillis(), TimeUnit.MILLISECONDS
+          );
+        }
+      });
+      LOGGER.info("Reloaded Keycloak tenants {}", this.tenants.byId().keySet());
+    } catch (IOException | RuntimeException e) {
+      LOGGER.error("Unable to reload the Keycloak tenants, keeping the current ones", e);
+    }
+  }
+
+  private Map<String, KeycloakConfig.Tenant> loadTenantFile() throws IOException {
+    FileSystemResource resource = new FileSystemResource(this.tenantFile);
+    Binder binder = new Binder(
+        ConfigurationPropertySources.from(
+            new YamlPropertySourceLoader().load(resource.getFilename(), resource)
+        ),
+        new PropertySourcesPlaceholdersResolver(this.environment)
+    );
+    return binder.bind("tenants", Bindable.mapOf(String.class, KeycloakConfig.Tenant.class))
+        .orElse(Map.of());
+  }
+
+  /**
+   * Builds the tenants, reusing the current instances of the tenants whose settings didn't change.
+   * Nothing is replaced when any tenant fails to build.
+   */
+  private Tenants build(
+      Map<String, KeycloakConfig.Tenant> configured,
+      Map<String, KeycloakTenant> current
+  ) throws MalformedURLException {
+    Map<String, KeycloakTenant> byId = new LinkedHashMap<>();
+    Map<String, KeycloakTenant> built = new HashMap<>();
+    try {
+      KeycloakTenant defaultTenant = current.get(DEFAULT_TENANT);
+      if (defaultTenant == null) {
+        defaultTenant = newTenant(DEFAULT_TENANT, defaultSettings(),
+            this.keycloakConfig.getEndpoints());
+        built.put(DEFAULT_TENANT, defaultTenant);
+      }
+      byId.put(DEFAULT_TENANT, defaultTenant);
+
+      for (Map.Entry<String, KeycloakConfig.Tenant> entry : configured.entrySet()) {
+        String id = entry.getKey();
+        if (DEFAULT_TENANT.equals(id)) {
+          throw new IllegalArgumentException("Tenant " + id + " is configured at the top level");
+        }
+        KeycloakTenant.Settings settings = settings(entry.getValue());
+        KeycloakTenant tenant = current.get(id);
+        if (tenant == null || !tenant.getSettings().equals(settings)) {
+          tenant = newTenant(id, settings, endpoints(settings));
+          built.put(id, tenant);
+        }
+        byId.put(id, tenant);
+      }
+    } catch (MalformedURLException | RuntimeException e) {
+      built.values().forEach(KeycloakTenants::close);
+      throw e;
+    }
+
+    Map<String, KeycloakTenant> byIssuer = new HashMap<>();
+    byId.values().forEach(tenant -> byIssuer.putIfAbsent(tenant.getIssuer(), tenant));
+    return new Tenants(Map.copyOf(byId), Map.copyOf(byIssuer));
+  }
+
+  private KeycloakTenant newTenant(
+      String id,
+      KeycloakTenant.Settings settings,
+      KeycloakConfig.Endpoints endpoints
+  ) throws MalformedURLException {
+    KeycloakHttpClientFactory.Clients clients = this.clientFactory.create(id);
+    KeycloakLoadBalancer loadBalancer = null;
+    try {
+      loadBalancer = new KeycloakLoadBalancer(
+          id,
+          settings.baseUrl(),
+          settings.nodes(),
+          endpoints,
+          this.keycloakConfig.getLoadBalancing(),
+          clients.getRestTemplate(),
+          this.scheduler,
+          this.meterRegistry
+      );
+      return new KeycloakTenant(
+          id, settings, endpoints, this.keycloakConfig.getVerification(), clients, loadBalancer
+      );
+    } catch (MalformedURLException | RuntimeException e) {
+      if (loadBalancer != null) {
+        loadBalancer.close();
+      }
+      closeQuietly(clients);
+      throw e;
+    }
+  }
+
+  private KeycloakTenant.Settings defaultSettings() {
+    KeycloakConfig config = this.keycloakConfig;
+    return new KeycloakTenant.Settings(
+        config.getRealm(),
+        config.getClient().getId(),
+        config.getClient().getSecret(),
+        config.getBaseUrl(),
+        defaultNodes(),
+        config.getProtocol(),
+        config.getIssuer()
+    );
+  }
+
+  private KeycloakTenant.Settings settings(KeycloakConfig.Tenant tenant) {
+    KeycloakConfig config = this.keycloakConfig;
+    KeycloakConfig.Client client = tenant.getClient();
+    String realm = Objects.requireNonNull(tenant.getRealm(), "A tenant needs a realm");
+    String baseUrl = Objects.requireNonNullElse(tenant.getBaseUrl(), config.getBaseUrl());
+    return new KeycloakTenant.Settings(
+        realm,
+        client == null || client.getId() == null ? config.getClient().getId() : client.getId(),
+        client == null || client.getSecret() == null
+            ? config.getClient().getSecret()
+            : client.getSecret(),
+        baseUrl,
+        nodes(tenant),
+        Objects.requireNonNullElse(tenant.getProtocol(), config.getProtocol()),
+        Objects.requireNonNullElse(tenant.getIssuer(), baseUrl + "/" + realm)
+    );
+  }
+
+  private List<String> defaultNodes() {
+    List<String> nodes = this.keycloakConfig.getNodes();
+    return nodes == null || nodes.isEmpty()
+        ? List.of(this.keycloakConfig.getBaseUrl())
+        : List.copyOf(nodes);
+  }
+
+  private List<String> nodes(KeycloakConfig.Tenant tenant) {
+    if (tenant.getNodes() != null && !tenant.getNodes().isEmpty()) {
+      return List.copyOf(tenant.getNodes());
+    }
+    return tenant.getBaseUrl() != null ? List.of(tenant.getBaseUrl()) : defaultNodes();
+  }
+
+  private static KeycloakConfig.Endpoints endpoints(KeycloakTenant.Settings settings) {
+    String protocolUrl = settings.baseUrl() + "/" + settings.realm()
+        + "/protocol/" + settings.protocol();
+    KeycloakConfig.Endpoints endpoints = new KeycloakConfig.Endpoints();
+    endpoints.setToken(protocolUrl + "/token");
+    endpoints.setRevoke(protocolUrl + "/revoke");
+    endpoints.setLogout(protocolUrl + "/logout");
+    endpoints.setUserInfo(protocolUrl + "/userinfo");
+    endpoints.setJwks(protocolUrl + "/certs");
+    return endpoints;
+  }
+
+  private static void close(KeycloakTenant tenant) {
+    try {
+      tenant.close();
+    } catch (IOException e) {
+      LOGGER.warn("Unable to close the connection pools of tenant {}", tenant.getId(), e);
+    }
+  }
+
+  private static void closeQuietly(KeycloakHttpClientFactory.Clients clients) {
+    try {
+      clients.close();
+    } catch (IOException e) {
+      LOGGER.warn("Unable to close the connection pools of a tenant", e);
+    }
+  }
+
+  /**
+   * Immutable snapshot of the loaded tenants, swapped as a whole on reload.
+   */
+  private record Tenants(
+      Map<String, KeycloakTenant> byId,
+      Map<String, KeycloakTenant> byIssuer
+  ) {
+
+  }
+}
@@ -0,0 +1,106 @@
+package io.datadoc.authservice.service;
+
+import io.datadoc.authservice.config.AuthServiceConfig;
+import io.datadoc.authservice.exception.RateLimitedException;
+import io.datadoc.authservice.model.auth.LoginCredentials;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.Locale;
+import org.springframework.stereotype.Service;
+
+/**
+ * LoginRateLimiter rejects login attempts before they reach Keycloak, which hashes the password of
+ * every attempt. Attempts are limited per client address and per email, each by its own
+ * TokenBucketLimiter - so a credential stuffing burst from one address is stopped, and so is a
+ * slow attack on one account from many addresses.
+ *
+ * <p>Attempts are counted in the login.rate.limit metric tagged with the limit (address, email)
+ * and the outcome (allowed, rejected). login.rate.limit.keys is the number of buckets kept.
+ */
+@Service
+public class LoginRateLimiter {
+
+  private final boolean enabled;
+  private final Limiter address;
+  private final Limiter email;
+
+  public LoginRateLimiter(AuthServiceConfig authServiceConfig, MeterRegistry meterRegistry) {
+    AuthServiceConfig.LoginRateLimit config = authServiceConfig.getLoginRateLimit();
+    this.enabled = config.isEnabled();
+    this.address = new Limiter("address", config.getAddress(), config, meterRegistry);
+    this.email = new Limiter("email", config.getEmail(), config, meterRegistry);
+  }
+
+  /**
+   * Takes a login attempt from the client address and the email.
+   *
+   * @param credentials   The user's credentials - email & password.
+   * @param clientAddress The IP address of the client or null if it isn't known.
+   * @throws RateLimitedException If either has no attempts left.
+   */
+  public void acquire(LoginCredentials credentials, String clientAddress)
+      throws RateLimitedException {
+    if (!this.enabled) {
+      return;
+    }
+    if (clientAddress != null) {
+      this.address.acquire(clientAddress);
+    }
+    if (credentials != null && credentials.email() != null) {
+      this.email.acquire(credentials.email().trim().toLowerCase(Locale.ROOT));
+    }
+  }
+
+  /**
+   * TokenBucketLimiter with its metrics.
+   */
+  private static final class Limiter {
+
+    private final String name;
+    private final TokenBucketLimiter buckets;
+    private final Counter allowed;
+    private final Counter rejected;
+
+    Limiter(
+        String name,
+        AuthServiceConfig.LoginRateLimit.Limit limit,
+        AuthServiceConfig.LoginRateLimit config,
+        MeterRegistry meterRegistry
+    ) {
+      this.name = name;
+      this.buckets = new TokenBucketLimiter(limit.getAttempts(), limit.getPeriod(),
+          config.getStripes(), config.getSweepInterval());
+      this.allowed = attemptCounter(meterRegistry, name, "allowed");
+      this.rejected = attemptCounter(meterRegistry, name, "rejected");
+      Gauge.builder("login.rate.limit.keys", this.buckets, TokenBucketLimiter::size)
+          .description("Token buckets kept by the login rate limiter")
+          .tag("limit", name)
+          .register(meterRegistry);
+    }
+
+    void acquire(String key) throws RateLimitedException {
+      long wait = this.buckets.tryAcquire(key);
+      if (wait == TokenBucketLimiter.ALLOWED) {
+        this.allowed.increment();
+        return;
+      }
+      this.rejected.increment();
+      throw new RateLimitedException("Too many login attempts for this " + this.name
+          + ", try again later.", Duration.ofNanos(wait));
+    }
+
+    private static Counter attemptCounter(
+        MeterRegistry meterRegistry,
+        String limit,
+        String outcome
+    ) {
+      return Counter.builder("login.rate.limit")
+          .description("Login attempts checked by the login rate limiter")
+          .tag("limit", limit)
+          .tag("outcome", outcome)
+          .register(meterRegistry);
+    }
+  }
+}
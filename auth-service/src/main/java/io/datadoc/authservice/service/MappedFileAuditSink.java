@@ -0,0 +1,167 @@
+package io.datadoc.authservice.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.datadoc.authservice.config.AuthServiceConfig;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * MappedFileAuditSink appends the audit events to a file as JSON Lines - one object per line, ready
+ * for grep and jq:
+ *
+ * <pre>
+ * {"time":"2023-08-01T10:15:30.123Z","operation":"login","tenant":"default",
+ *  "username":"user1@mockrealm.com","outcome":"FAILURE","status":401,"error":"Unauthorized",
+ *  "latencyMicros":8412}
+ * </pre>
+ *
+ * <p>The file is written through a memory mapping, which grows by
+ * auth-service.audit.file-chunk-size at once. Writes are plain memory copies - the OS writes the
+ * pages to disk, so the events survive a crash of the process. auth-service.audit.file-sync forces
+ * every batch to disk, so they also survive a crash of the host. The unused rest of the last chunk
+ * is cut off on close. After a crash it's zero-filled, and the next start appends after the last
+ * line.
+ */
+@Component
+@ConditionalOnProperty(
+    prefix = "auth-service.audit", name = "sink", havingValue = "file", matchIfMissing = true
+)
+public class MappedFileAuditSink implements AuditSink {
+
+  private final Path file;
+  private final int chunkSize;
+  private final boolean sync;
+  private final RecordBuffer record = new RecordBuffer();
+  private JsonGenerator generator;
+  private FileChannel channel;
+  private MappedByteBuffer buffer;
+  private long position;
+
+  public MappedFileAuditSink(AuthServiceConfig authServiceConfig) {
+    AuthServiceConfig.Audit config = authServiceConfig.getAudit();
+    this.file = Path.of(config.getFile());
+    this.chunkSize = config.getFileChunkSize();
+    this.sync = config.isFileSync();
+  }
+
+  @Override
+  public void open() throws IOException {
+    Path parent = this.file.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    this.channel = FileChannel.open(this.file,
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.position = findEnd();
+    this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, this.position, this.chunkSize);
+    JsonFactory jsonFactory = new JsonFactory();
+    jsonFactory.setRootValueSeparator(null);
+    this.generator = jsonFactory.createGenerator(this.record);
+  }
+
+  @Override
+  public void write(AuditEvent event) throws IOException {
+    JsonGenerator json = this.generator;
+    json.writeStartObject();
+    json.writeStringField("time", Instant.ofEpochMilli(event.getTimestampMillis()).toString());
+    json.writeStringField("operation", event.getOperation().getName());
+    writeOptionalField("tenant", event.getTenantId());
+    writeOptionalField("user", event.getUserId());
+    writeOptionalField("username", event.getUsername());
+    json.writeStringField("outcome", event.isSuccess() ? "SUCCESS" : "FAILURE");
+    if (event.getStatus() != 0) {
+      json.writeNumberField("status", event.getStatus());
+    }
+    writeOptionalField("error", event.getErrorType());
+    json.writeNumberField("latencyMicros",
+        TimeUnit.NANOSECONDS.toMicros(event.getLatencyNanos()));
+    json.writeEndObject();
+    append();
+  }
+
+  @Override
+  public void writeDropped(long count, long timestampMillis) throws IOException {
+    JsonGenerator json = this.generator;
+    json.writeStartObject();
+    json.writeStringField("time", Instant.ofEpochMilli(timestampMillis).toString());
+    json.writeNumberField("dropped", count);
+    json.writeEndObject();
+    append();
+  }
+
+  @Override
+  public void flush() {
+    if (this.sync) {
+      this.buffer.force();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.buffer.force();
+    this.channel.truncate(this.position);
+    this.channel.close();
+  }
+
+  private void writeOptionalField(String name, String value) throws IOException {
+    if (value != null) {
+      this.generator.writeStringField(name, value);
+    }
+  }
+
+  /**
+   * Copies the rendered line into the mapping, mapping the next chunk when it doesn't fit.
+   */
+  private void append() throws IOException {
+    this.generator.writeRaw('\n');
+    this.generator.flush();
+    int length = this.record.size();
+    if (this.buffer.remaining() < length) {
+      this.buffer.force();
+      this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, this.position,
+          Math.max(this.chunkSize, length));
+    }
+    this.record.copyTo(this.buffer);
+    this.position += length;
+    this.record.reset();
+  }
+
+  /**
+   * Returns the end of the last line - the file is zero-filled after it if it wasn't closed.
+   */
+  private long findEnd() throws IOException {
+    long size = this.channel.size();
+    long start = Math.max(0, size - this.chunkSize);
+    MappedByteBuffer tail = this.channel.map(FileChannel.MapMode.READ_ONLY, start, size - start);
+    for (int i = tail.limit() - 1; i >= 0; i--) {
+      if (tail.get(i) != 0) {
+        return start + i + 1;
+      }
+    }
+    return start;
+  }
+
+  /**
+   * Buffer of the line being rendered, copied out without another array.
+   */
+  private static final class RecordBuffer extends ByteArrayOutputStream {
+
+    RecordBuffer() {
+      super(512);
+    }
+
+    void copyTo(MappedByteBuffer buffer) {
+      buffer.put(this.buf, 0, this.count);
+    }
+  }
+}
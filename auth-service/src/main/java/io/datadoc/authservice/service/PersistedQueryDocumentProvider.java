@@ -0,0 +1,198 @@
+package io.datadoc.authservice.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import graphql.ErrorClassification;
+import graphql.ExecutionInput;
+import graphql.GraphqlErrorBuilder;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.PreparsedDocumentProvider;
+import graphql.execution.preparsed.persisted.PersistedQueryIdInvalid;
+import graphql.execution.preparsed.persisted.PersistedQueryNotFound;
+import graphql.execution.preparsed.persisted.PersistedQuerySupport;
+import io.datadoc.authservice.config.AuthServiceConfig;
+import io.datadoc.authservice.exception.AuthServiceErrorType;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+/**
+ * PersistedQueryDocumentProvider keeps the parsed and validated GraphQL documents keyed by the
+ * SHA-256 hash of their text, so the fixed operations of the clients are parsed and validated once
+ * instead of on every request. It implements Automatic Persisted Queries - a client sends only the
+ * hash in the persistedQuery extension, and on a PersistedQueryNotFound error sends the hash again
+ * together with the query, which registers it.
+ *
+ * <p>The documents under auth-service.persisted-queries.documents are known up front. In the
+ * allow-list mode only those are executed and nothing can be registered. Hit, miss and eviction
+ * counts are exported as cache.* metrics tagged with cache=graphql-documents.
+ */
+public class PersistedQueryDocumentProvider implements PreparsedDocumentProvider {
+
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(PersistedQueryDocumentProvider.class);
+  private static final String PERSISTED_QUERY_EXTENSION = "persistedQuery";
+  private static final HexFormat HEX = HexFormat.of();
+  private final boolean allowListOnly;
+  private final Map<String, String> persistedQueries;
+  private final Cache<String, PreparsedDocumentEntry> documents;
+
+  public PersistedQueryDocumentProvider(
+      AuthServiceConfig authServiceConfig,
+      MeterRegistry meterRegistry
+  ) {
+    AuthServiceConfig.PersistedQueries config = authServiceConfig.getPersistedQueries();
+    this.allowListOnly = config.isAllowListOnly();
+    this.persistedQueries = loadPersistedQueries(config.getDocuments());
+    this.documents = Caffeine.newBuilder()
+        .maximumSize(config.getMaximumSize())
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, this.documents, "graphql-documents");
+  }
+
+  /**
+   * Fills in the query of a request sending only the persisted query hash. Spring GraphQL rejects
+   * requests without a query before they are executed, graphql-java's marker is used instead.
+   *
+   * @param body The body of the GraphQL request.
+   * @return The body with a query.
+   */
+  public static Map<String, Object> withPersistedQueryMarker(Map<String, Object> body) {
+    if (body.get("query") != null
+        || !(body.get("extensions") instanceof Map<?, ?> extensions)
+        || !extensions.containsKey(PERSISTED_QUERY_EXTENSION)) {
+      return body;
+    }
+    Map<String, Object> filled = new HashMap<>(body);
+    filled.put("query", PersistedQuerySupport.PERSISTED_QUERY_MARKER);
+    return filled;
+  }
+
+  /**
+   * Still abstract in graphql-java 20, but graphql-java itself only calls getDocumentAsync.
+   */
+  @Override
+  @Deprecated
+  public PreparsedDocumentEntry getDocument(
+      ExecutionInput executionInput,
+      Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction
+  ) {
+    return getDocumentAsync(executionInput, parseAndValidateFunction).join();
+  }
+
+  @Override
+  public CompletableFuture<PreparsedDocumentEntry> getDocumentAsync(
+      ExecutionInput executionInput,
+      Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction
+  ) {
+    return CompletableFuture.completedFuture(
+        findDocument(executionInput, parseAndValidateFunction));
+  }
+
+  private PreparsedDocumentEntry findDocument(
+      ExecutionInput executionInput,
+      Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction
+  ) {
+    String query = executionInput.getQuery();
+    boolean hashOnly = query == null || query.isBlank()
+        || PersistedQuerySupport.PERSISTED_QUERY_MARKER.equals(query);
+    String hash = getPersistedQueryHash(executionInput);
+    if (hash == null) {
+      if (hashOnly) {
+        return parseAndValidateFunction.apply(executionInput);
+      }
+      hash = sha256(query);
+    } else if (!hashOnly && !hash.equalsIgnoreCase(sha256(query))) {
+      return error(new PersistedQueryIdInvalid(hash), "PersistedQueryIdInvalid",
+          "PERSISTED_QUERY_ID_INVALID");
+    }
+    hash = hash.toLowerCase();
+
+    ExecutionInput input = executionInput;
+    if (hashOnly) {
+      PreparsedDocumentEntry document = this.documents.getIfPresent(hash);
+      if (document != null) {
+        return document;
+      }
+      String persistedQuery = this.persistedQueries.get(hash);
+      if (persistedQuery == null) {
+        return error(new PersistedQueryNotFound(hash), "PersistedQueryNotFound",
+            "PERSISTED_QUERY_NOT_FOUND");
+      }
+      input = executionInput.transform(builder -> builder.query(persistedQuery));
+    } else if (this.allowListOnly && !this.persistedQueries.containsKey(hash)) {
+      return error(AuthServiceErrorType.OperationNotAllowed,
+          "Only persisted operations are allowed", "PERSISTED_QUERY_NOT_ALLOWED");
+    }
+
+    ExecutionInput parsedInput = input;
+    return this.documents.get(hash, key -> parseAndValidateFunction.apply(parsedInput));
+  }
+
+  /**
+   * Returns the lowercase hex SHA-256 hash the client sent in the persistedQuery extension.
+   */
+  private static String getPersistedQueryHash(ExecutionInput executionInput) {
+    if (executionInput.getExtensions().get(PERSISTED_QUERY_EXTENSION)
+        instanceof Map<?, ?> persistedQuery
+        && persistedQuery.get("sha256Hash") instanceof String hash) {
+      return hash;
+    }
+    return null;
+  }
+
+  /**
+   * Loads the documents known up front, keyed by the hash of their text without the surrounding
+   * whitespace.
+   */
+  private static Map<String, String> loadPersistedQueries(String location) {
+    Map<String, String> persistedQueries = new LinkedHashMap<>();
+    if (location == null || location.isBlank()) {
+      return persistedQueries;
+    }
+    try {
+      for (Resource resource : new PathMatchingResourcePatternResolver().getResources(location)) {
+        String query = resource.getContentAsString(StandardCharsets.UTF_8).strip();
+        persistedQueries.put(sha256(query), query);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to load the persisted queries from " + location, e);
+    }
+    LOGGER.info("Loaded {} persisted queries from {}", persistedQueries.size(), location);
+    return Map.copyOf(persistedQueries);
+  }
+
+  private static PreparsedDocumentEntry error(
+      ErrorClassification errorType, String message, String code
+  ) {
+    return new PreparsedDocumentEntry(GraphqlErrorBuilder.newError()
+        .errorType(errorType)
+        .message(message)
+        .extensions(Map.of("code", code))
+        .build());
+  }
+
+  private static String sha256(String query) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HEX.formatHex(digest.digest(query.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not supported by the JVM", e);
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package io.datadoc.authservice.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractDataBufferDecoder;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+/**
+ * ReactiveKeycloakResponseDecoder reads the Keycloak token and userinfo responses of the WebClient
+ * with the KeycloakResponseDecoder. The buffers of the response are joined, up to the codecs'
+ * max-in-memory-size, and parsed in place - they aren't copied into a byte array.
+ */
+public class ReactiveKeycloakResponseDecoder extends AbstractDataBufferDecoder<Object> {
+
+  private final KeycloakResponseDecoder decoder;
+
+  public ReactiveKeycloakResponseDecoder(KeycloakResponseDecoder decoder) {
+    super(MimeTypeUtils.APPLICATION_JSON, new MimeType("application", "*+json"));
+    this.decoder = decoder;
+  }
+
+  @Override
+  public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+    return this.decoder.canDecode(elementType.toClass()) && super.canDecode(elementType, mimeType);
+  }
+
+  @Override
+  public Object decode(
+      DataBuffer buffer, ResolvableType targetType, MimeType mimeType, Map<String, Object> hints
+  ) throws DecodingException {
+    try (InputStream body = buffer.asInputStream(true)) {
+      return this.decoder.decode(body, targetType.toClass());
+    } catch (IOException e) {
+      throw new DecodingException("JSON decoding error: " + e.getMessage(), e);
+    }
+  }
+}
@@ -0,0 +1,175 @@
+package io.datadoc.authservice.service;
+
+import io.datadoc.authservice.model.auth.JwtPayload;
+import io.datadoc.authservice.model.auth.LoginCredentials;
+import io.datadoc.authservice.model.auth.UserMetadata;
+import io.datadoc.authservice.model.http.KeycloakEndpoint;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.function.Function;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of the KeycloakService. The http requests are made using the WebClient
+ * of the called tenant, so no thread waits for Keycloak to respond. Tokens go through the
+ * RejectedTokenCache the same way.
+ */
+@Service
+@ConditionalOnProperty(prefix = "keycloak", name = "execution-mode", havingValue = "reactive")
+public class ReactiveKeycloakService {
+
+  private final KeycloakMetrics keycloakMetrics;
+  private final KeycloakResilience keycloakResilience;
+  private final RejectedTokenCache rejectedTokenCache;
+  private final SingleFlight<String, UserMetadata> userInfoFlight;
+  private final SingleFlight<String, JwtPayload> refreshFlight;
+
+  public ReactiveKeycloakService(
+      KeycloakMetrics keycloakMetrics,
+      KeycloakResilience keycloakResilience,
+      RejectedTokenCache rejectedTokenCache,
+      MeterRegistry meterRegistry
+  ) {
+    this.keycloakMetrics = keycloakMetrics;
+    this.keycloakResilience = keycloakResilience;
+    this.rejectedTokenCache = rejectedTokenCache;
+    this.userInfoFlight = new SingleFlight<>("userinfo", meterRegistry);
+    this.refreshFlight = new SingleFlight<>("refresh", meterRegistry);
+  }
+
+  /**
+   * Request JWT tokens from Keycloak instance for the user with the given credentials.
+   *
+   * @param tenant      The tenant the user belongs to.
+   * @param credentials The user's credentials - email & password.
+   * @return Mono emitting the JwtPayload containing the JWT tokens.
+   * @see WebClientResponseException If the request to Keycloak fails.
+   */
+  public Mono<JwtPayload> fetchTokensForUser(KeycloakTenant tenant, LoginCredentials credentials) {
+    return postForm(
+        tenant, KeycloakEndpoint.TOKEN, tenant.getForms().login(credentials), JwtPayload.class);
+  }
+
+  /**
+   * Request user information from Keycloak instance for the user with the given access token.
+   * Concurrent requests for the same token share one call to Keycloak.
+   *
+   * @param tenant      The tenant that issued the token.
+   * @param accessToken The user's access token.
+   * @return Mono emitting the UserMetadata containing the user's information.
+   * @see WebClientResponseException If the request to Keycloak fails - Unauthorized, Bad Request
+   */
+  public Mono<UserMetadata> fetchUser(KeycloakTenant tenant, String accessToken) {
+    return this.userInfoFlight.executeAsync(flightKey(tenant, accessToken), () ->
+        call(tenant, KeycloakEndpoint.USERINFO, url -> tenant.getWebClient().get()
+            .uri(url)
+            .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
+            .retrieve()
+            .toEntity(UserMetadata.class))
+        .mapNotNull(HttpEntity::getBody)
+        .doOnError(e -> this.rejectedTokenCache.record(
+            tenant, KeycloakEndpoint.USERINFO, accessToken, e)));
+  }
+
+  /**
+   * Request tokens refresh from Keycloak instance for the user with the given refresh token.
+   * Concurrent requests with the same refresh token share one call to Keycloak.
+   *
+   * @param tenant       The tenant that issued the token.
+   * @param refreshToken The refresh token issued to the user by Keycloak.
+   * @return Mono emitting the JwtPayload containing the JWT tokens.
+   * @see WebClientResponseException If the request to Keycloak fails - Unauthorized, Bad Request
+   */
+  public Mono<JwtPayload> refreshTokens(KeycloakTenant tenant, String refreshToken) {
+    RuntimeException rejection = this.rejectedTokenCache.find(
+        tenant, KeycloakEndpoint.TOKEN, refreshToken);
+    if (rejection != null) {
+      return Mono.error(rejection);
+    }
+    return this.refreshFlight.executeAsync(flightKey(tenant, refreshToken), () -> postForm(tenant,
+        KeycloakEndpoint.TOKEN, tenant.getForms().refresh(refreshToken), JwtPayload.class)
+        .doOnError(e -> this.rejectedTokenCache.record(
+            tenant, KeycloakEndpoint.TOKEN, refreshToken, e)));
+  }
+
+  /**
+   * Request Keycloak to revoke the given JWT token. Malformed and expired tokens are revoked
+   * without a call, as Keycloak would answer 200 for them.
+   *
+   * @param tenant The tenant that issued the token.
+   * @param token  JWT token to be revoked.
+   * @return Mono completing once Keycloak has revoked the token.
+   * @see WebClientResponseException If the request to Keycloak fails - Unauthorized, Bad Request
+   */
+  public Mono<Void> revokeKeycloakToken(KeycloakTenant tenant, String token) {
+    if (this.rejectedTokenCache.isSpent(token)) {
+      return Mono.empty();
+    }
+    RuntimeException rejection = this.rejectedTokenCache.find(
+        tenant, KeycloakEndpoint.REVOKE, token);
+    if (rejection != null) {
+      return Mono.error(rejection);
+    }
+    return postForm(tenant, KeycloakEndpoint.REVOKE, tenant.getForms().revoke(token), Void.class)
+        .doOnError(e -> this.rejectedTokenCache.record(tenant, KeycloakEndpoint.REVOKE, token, e));
+  }
+
+  /**
+   * Request Keycloak to log out a user based on their ID token.
+   *
+   * @param tenant  The tenant that issued the token.
+   * @param idToken ID token issued upon user login.
+   * @return Mono completing once Keycloak has logged the user out.
+   * @see WebClientResponseException If the request to Keycloak fails - Unauthorized, Bad Request
+   */
+  public Mono<Void> logoutKeycloakUser(KeycloakTenant tenant, String idToken) {
+    return postForm(
+        tenant, KeycloakEndpoint.LOGOUT, tenant.getForms().logout(idToken), Void.class);
+  }
+
+  private <T> Mono<T> postForm(
+      KeycloakTenant tenant,
+      KeycloakEndpoint endpoint,
+      byte[] httpForm,
+      Class<T> type
+  ) {
+    return call(tenant, endpoint, url -> tenant.getWebClient().post()
+        .uri(url)
+        .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+        .bodyValue(httpForm)
+        .retrieve()
+        .toEntity(type))
+        .mapNotNull(HttpEntity::getBody);
+  }
+
+  /**
+   * Makes the call through the endpoint's circuit breaker, bulkhead and retry. Every attempt is
+   * timed separately and sent to the node picked by the tenant's load balancer.
+   */
+  private <T> Mono<ResponseEntity<T>> call(
+      KeycloakTenant tenant,
+      KeycloakEndpoint endpoint,
+      Function<String, Mono<ResponseEntity<T>>> call
+  ) {
+    return this.keycloakResilience.execute(
+        tenant.getId(),
+        endpoint,
+        this.keycloakMetrics.record(
+            tenant.getId(), endpoint, tenant.getLoadBalancer().executeAsync(endpoint, call)
+        )
+    );
+  }
+
+  /**
+   * Identical calls are keyed by the tenant and the hash of the token, never the token itself.
+   */
+  private static String flightKey(KeycloakTenant tenant, String token) {
+    return tenant.getId() + ':' + TokenHasher.sha256(token);
+  }
+}
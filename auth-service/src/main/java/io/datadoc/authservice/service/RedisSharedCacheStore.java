@@ -0,0 +1,174 @@
+package io.datadoc.authservice.service;
+
+import io.datadoc.authservice.config.AuthServiceConfig;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.protocol.ProtocolVersion;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * RedisSharedCacheStore keeps the shared tier of the user cache on a Redis server, or anything
+ * speaking its protocol, such as Valkey or KeyDB. Entries are strings set with a PX expiry, the
+ * keys of a group are a set expiring with its latest entry, and the messages go over a pub/sub
+ * channel. Every key and the channel are prefixed with the namespace.
+ *
+ * <p>Reads wait up to auth-service.user-cache.shared.timeout - getAsync() completes its future
+ * within it - writes and messages are sent without waiting for the reply. The connections are
+ * opened on startup and reconnect on their own; while the server is unreachable, reads fail, which
+ * the UserInfoCache treats as misses.
+ */
+@Component
+@ConditionalOnProperty(
+    prefix = "auth-service.user-cache.shared", name = "store", havingValue = "redis"
+)
+public class RedisSharedCacheStore implements SharedCacheStore {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RedisSharedCacheStore.class);
+  private static final int SCAN_BATCH_SIZE = 500;
+  private final String prefix;
+  private final String channel;
+  private final Duration timeout;
+  private final RedisClient client;
+  private final StatefulRedisConnection<String, String> connection;
+  private final StatefulRedisPubSubConnection<String, String> pubSubConnection;
+  private final RedisCommands<String, String> commands;
+  private final RedisAsyncCommands<String, String> asyncCommands;
+  private final CopyOnWriteArrayList<Consumer<String>> subscribers = new CopyOnWriteArrayList<>();
+
+  public RedisSharedCacheStore(AuthServiceConfig authServiceConfig) {
+    AuthServiceConfig.UserCache.Shared config = authServiceConfig.getUserCache().getShared();
+    this.prefix = config.getNamespace() + ':';
+    this.channel = this.prefix + "invalidations";
+    this.timeout = config.getTimeout();
+    RedisURI uri = RedisURI.create(config.getUrl());
+    this.client = RedisClient.create(uri);
+    // RESP2 is spoken by every Redis-compatible server, RESP3 adds nothing the cache needs.
+    this.client.setOptions(ClientOptions.builder().protocolVersion(ProtocolVersion.RESP2).build());
+    this.connection = this.client.connect();
+    // Only the commands time out this fast, connecting keeps the default timeout.
+    this.connection.setTimeout(config.getTimeout());
+    this.commands = this.connection.sync();
+    this.asyncCommands = this.connection.async();
+    this.pubSubConnection = this.client.connectPubSub();
+    this.pubSubConnection.addListener(new RedisPubSubAdapter<>() {
+      @Override
+      public void message(String channel, String message) {
+        deliver(message);
+      }
+    });
+    LOGGER.info("Shared user cache on {}:{}", uri.getHost(), uri.getPort());
+  }
+
+  @Override
+  public String get(String key) {
+    return this.commands.get(this.prefix + key);
+  }
+
+  @Override
+  public CompletableFuture<String> getAsync(String key) {
+    return this.asyncCommands.get(this.prefix + key).toCompletableFuture()
+        .orTimeout(this.timeout.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void put(String key, String value, String group, Duration timeToLive) {
+    String redisKey = this.prefix + key;
+    this.asyncCommands.set(redisKey, value, SetArgs.Builder.px(timeToLive));
+    if (group != null) {
+      // The set of a group lives as long as its latest entry - the one of the newest token.
+      String redisGroup = this.prefix + group;
+      this.asyncCommands.sadd(redisGroup, redisKey);
+      this.asyncCommands.pexpire(redisGroup, timeToLive);
+    }
+  }
+
+  @Override
+  public void remove(String key) {
+    this.asyncCommands.del(this.prefix + key);
+  }
+
+  @Override
+  public void removeGroup(String group) {
+    String redisGroup = this.prefix + group;
+    this.asyncCommands.smembers(redisGroup).thenAccept(keys -> {
+      List<String> redisKeys = new ArrayList<>(keys);
+      redisKeys.add(redisGroup);
+      this.asyncCommands.del(redisKeys.toArray(String[]::new));
+    });
+  }
+
+  @Override
+  public void scan(String prefix, int limit, BiConsumer<String, String> consumer) {
+    ScanArgs args = ScanArgs.Builder.matches(this.prefix + prefix + '*').limit(SCAN_BATCH_SIZE);
+    ScanCursor cursor = ScanCursor.INITIAL;
+    int count = 0;
+    while (count < limit && !cursor.isFinished()) {
+      KeyScanCursor<String> keys = this.commands.scan(cursor, args);
+      List<String> batch = keys.getKeys().subList(0,
+          Math.min(keys.getKeys().size(), limit - count));
+      if (!batch.isEmpty()) {
+        // Entries expired since the scan have no value.
+        for (KeyValue<String, String> entry : this.commands.mget(batch.toArray(String[]::new))) {
+          if (entry.hasValue()) {
+            consumer.accept(entry.getKey().substring(this.prefix.length()), entry.getValue());
+            count++;
+          }
+        }
+      }
+      cursor = keys;
+    }
+  }
+
+  @Override
+  public void publish(String message) {
+    this.asyncCommands.publish(this.channel, message);
+  }
+
+  @Override
+  public void subscribe(Consumer<String> subscriber) {
+    this.subscribers.add(subscriber);
+    if (this.subscribers.size() == 1) {
+      this.pubSubConnection.sync().subscribe(this.channel);
+    }
+  }
+
+  @PreDestroy
+  public void close() {
+    this.pubSubConnection.close();
+    this.connection.close();
+    this.client.shutdown();
+  }
+
+  private void deliver(String message) {
+    for (Consumer<String> subscriber : this.subscribers) {
+      try {
+        subscriber.accept(message);
+      } catch (RuntimeException e) {
+        LOGGER.warn("Unable to handle a shared cache message", e);
+      }
+    }
+  }
+}
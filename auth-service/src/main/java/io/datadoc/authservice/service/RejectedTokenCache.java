@@ -0,0 +1,187 @@
+package io.datadoc.authservice.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nimbusds.jwt.JWTClaimsSet;
+import io.datadoc.authservice.config.AuthServiceConfig;
+import io.datadoc.authservice.config.KeycloakConfig;
+import io.datadoc.authservice.exception.InvalidTokenException;
+import io.datadoc.authservice.exception.RejectedTokenException;
+import io.datadoc.authservice.model.http.KeycloakEndpoint;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.util.Date;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+/**
+ * RejectedTokenCache keeps clients retrying bad tokens from costing a Keycloak call every time.
+ * Before a token is sent to Keycloak or verified, it's rejected right away if it isn't a JWT or
+ * its `exp` claim has passed, beyond the clock skew of the verification. The claims are only
+ * decoded, which is all it takes to tell that Keycloak would reject the token. Tokens without an
+ * expiry, such as offline tokens, are left to Keycloak. Revoking such a token isn't rejected -
+ * Keycloak answers 200 for invalid tokens, as RFC 7009 requires - the caller skips the call
+ * instead, see isSpent().
+ *
+ * <p>Tokens Keycloak rejected with 400, 401 or 403, or that failed local verification, are
+ * remembered for auth-service.rejected-tokens.ttl by endpoint, tenant and the SHA-256 hash of the
+ * token. Until then the same rejection is replayed. The exceptions thrown are allocated once, the
+ * one of a remembered token when it was rejected, and carry no stack trace.
+ *
+ * <p>Rejections are counted in token.rejections by reason (malformed, expired, cached), lookups
+ * in the cache.* metrics tagged with cache=rejectedtokens.
+ */
+@Service
+public class RejectedTokenCache {
+
+  private static final InvalidTokenException MALFORMED = new InvalidTokenException(
+      "Malformed token"
+  );
+  private static final InvalidTokenException EXPIRED = new InvalidTokenException(
+      "Token has expired"
+  );
+  private final boolean enabled;
+  private final long clockSkewMillis;
+  private final Cache<String, RuntimeException> cache;
+  private final Counter malformed;
+  private final Counter expired;
+  private final Counter cached;
+
+  public RejectedTokenCache(
+      AuthServiceConfig authServiceConfig,
+      KeycloakConfig keycloakConfig,
+      MeterRegistry meterRegistry
+  ) {
+    AuthServiceConfig.RejectedTokens config = authServiceConfig.getRejectedTokens();
+    this.enabled = config.isEnabled();
+    this.clockSkewMillis = keycloakConfig.getVerification().getClockSkew().toMillis();
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(config.getMaximumSize())
+        .expireAfterWrite(config.getTtl())
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, this.cache, "rejectedtokens");
+    this.malformed = rejections(meterRegistry, "malformed");
+    this.expired = rejections(meterRegistry, "expired");
+    this.cached = rejections(meterRegistry, "cached");
+  }
+
+  private static Counter rejections(MeterRegistry meterRegistry, String reason) {
+    return Counter.builder("token.rejections")
+        .description("Tokens rejected without calling Keycloak or verifying them")
+        .tag("reason", reason)
+        .register(meterRegistry);
+  }
+
+  /**
+   * Throws the rejection of a token Keycloak would reject.
+   *
+   * @param tenant   The tenant the token is sent to.
+   * @param endpoint The endpoint the token is sent to.
+   * @param token    The token.
+   * @throws InvalidTokenException  If the token is malformed, has expired or failed local
+   *                                verification recently.
+   * @throws RejectedTokenException If Keycloak rejected the token recently.
+   */
+  public void check(KeycloakTenant tenant, KeycloakEndpoint endpoint, String token) {
+    RuntimeException rejection = find(tenant, endpoint, token);
+    if (rejection != null) {
+      throw rejection;
+    }
+  }
+
+  /**
+   * Returns the rejection of a token Keycloak would reject - for the reactive callers, which emit
+   * it as an error.
+   *
+   * @param tenant   The tenant the token is sent to.
+   * @param endpoint The endpoint the token is sent to.
+   * @param token    The token.
+   * @return The InvalidTokenException or RejectedTokenException, null if the token may be sent.
+   */
+  public RuntimeException find(KeycloakTenant tenant, KeycloakEndpoint endpoint, String token) {
+    if (!this.enabled) {
+      return null;
+    }
+    if (endpoint != KeycloakEndpoint.REVOKE) {
+      InvalidTokenException unusable = unusable(token);
+      if (unusable != null) {
+        (unusable == MALFORMED ? this.malformed : this.expired).increment();
+        return unusable;
+      }
+    }
+    RuntimeException rejection = this.cache.getIfPresent(key(tenant, endpoint, token));
+    if (rejection != null) {
+      this.cached.increment();
+    }
+    return rejection;
+  }
+
+  /**
+   * Checks whether revoking the token is pointless, because it's malformed or has expired. Keycloak
+   * would answer such a revocation with 200 without doing anything.
+   *
+   * @param token The token to revoke.
+   * @return true if the revocation can succeed without calling Keycloak.
+   */
+  public boolean isSpent(String token) {
+    return this.enabled && unusable(token) != null;
+  }
+
+  private InvalidTokenException unusable(String token) {
+    JWTClaimsSet claims = TokenVerifier.readUnverified(token);
+    if (claims == null) {
+      return MALFORMED;
+    }
+    Date expiresAt = claims.getExpirationTime();
+    if (expiresAt != null && expiresAt.getTime() > 0
+        && expiresAt.getTime() + this.clockSkewMillis < System.currentTimeMillis()) {
+      return EXPIRED;
+    }
+    return null;
+  }
+
+  /**
+   * Remembers a token Keycloak rejected with 400, 401 or 403, or that failed local verification.
+   * Other failures, e.g. 5xx responses or timeouts, aren't the token's fault and are ignored.
+   *
+   * @param tenant   The tenant the token was sent to.
+   * @param endpoint The endpoint the token was sent to.
+   * @param token    The token.
+   * @param e        The failure of the call or the verification.
+   */
+  public void record(KeycloakTenant tenant, KeycloakEndpoint endpoint, String token, Throwable e) {
+    if (!this.enabled) {
+      return;
+    }
+    RuntimeException rejection = null;
+    if (e instanceof InvalidTokenException) {
+      rejection = new InvalidTokenException(e.getMessage());
+    } else {
+      Throwable t = NestedExceptionUtils.getMostSpecificCause(e);
+      HttpStatusCode status = t instanceof HttpStatusCodeException httpException
+          ? httpException.getStatusCode()
+          : t instanceof WebClientResponseException webClientException
+              ? webClientException.getStatusCode()
+              : null;
+      if (status != null && isTokenRejection(status.value())) {
+        rejection = new RejectedTokenException(t.getMessage(), status.value());
+      }
+    }
+    if (rejection != null) {
+      this.cache.put(key(tenant, endpoint, token), rejection);
+    }
+  }
+
+  private static boolean isTokenRejection(int status) {
+    return status == 400 || status == 401 || status == 403;
+  }
+
+  private static String key(KeycloakTenant tenant, KeycloakEndpoint endpoint, String token) {
+    return endpoint.getName() + ':' + tenant.getId() + ':' + TokenHasher.sha256(token);
+  }
+}
@@ -0,0 +1,52 @@
+package io.datadoc.authservice.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RetryBudget caps retries to a fraction of the calls. Every call deposits `ratio` of a retry into
+ * the budget and every retry withdraws a whole one, so during an outage retries add at most `ratio`
+ * extra load on top of the regular traffic instead of multiplying it. The balance is capped, so a
+ * quiet period can't save up a burst of retries.
+ */
+public class RetryBudget {
+
+  private static final long UNIT = 1_000;
+  private final AtomicLong balance;
+  private final long deposit;
+  private final long maxBalance;
+
+  /**
+   * Creates a full budget.
+   *
+   * @param ratio      Fraction of a retry earned by every call, e.g. 0.1 for one retry per ten calls.
+   * @param maxRetries Maximum number of retries the budget can hold.
+   */
+  public RetryBudget(double ratio, int maxRetries) {
+    this.deposit = Math.round(ratio * UNIT);
+    this.maxBalance = maxRetries * UNIT;
+    this.balance = new AtomicLong(this.maxBalance);
+  }
+
+  /**
+   * Records a call - earns a fraction of a retry.
+   */
+  public void deposit() {
+    this.balance.getAndUpdate(balance -> Math.min(this.maxBalance, balance + this.deposit));
+  }
+
+  /**
+   * Withdraws one retry from the budget.
+   *
+   * @return true if the retry is allowed, false if the budget is exhausted.
+   */
+  public boolean tryWithdraw() {
+    long current;
+    do {
+      current = this.balance.get();
+      if (current < UNIT) {
+        return false;
+      }
+    } while (!this.balance.compareAndSet(current, current - UNIT));
+    return true;
+  }
+}
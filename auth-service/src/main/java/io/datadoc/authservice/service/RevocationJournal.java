@@ -0,0 +1,118 @@
+package io.datadoc.authservice.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * RevocationJournal persists the revocations in a memory-mapped file, so they survive a restart.
+ * The file holds a header with the number of records followed by fixed-size records of the
+ * identifier hash and its expiry. Records are appended through the mapping, the OS writes them to
+ * disk. When the file is full, it's rewritten with the entries that aren't expired yet.
+ *
+ * <p>Not thread-safe - the RevocationStore serializes the writes.
+ */
+final class RevocationJournal implements AutoCloseable {
+
+  private static final long MAGIC = 0x5245564f4b453031L;
+  private static final int HEADER_BYTES = 16;
+  private static final int RECORD_BYTES = 16;
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+  private final int capacity;
+  private int count;
+
+  RevocationJournal(Path file, int capacity) {
+    this.capacity = capacity;
+    try {
+      Path parent = file.toAbsolutePath().getParent();
+      if (parent != null) {
+        Files.createDirectories(parent);
+      }
+      this.channel = FileChannel.open(file,
+          StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0,
+          HEADER_BYTES + (long) capacity * RECORD_BYTES);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to map the revocation file " + file, e);
+    }
+    if (this.buffer.getLong(0) == MAGIC) {
+      this.count = (int) Math.min(this.buffer.getLong(8), capacity);
+    } else {
+      writeCount(0);
+      this.buffer.putLong(0, MAGIC);
+    }
+  }
+
+  /**
+   * Passes every record that isn't expired to the table.
+   *
+   * @param table       The table to load the records into.
+   * @param epochSecond The current epoch second.
+   */
+  void replay(RevocationTable table, long epochSecond) {
+    for (int i = 0; i < this.count; i++) {
+      int offset = HEADER_BYTES + i * RECORD_BYTES;
+      long expiresAtEpochSecond = this.buffer.getLong(offset + 8);
+      if (expiresAtEpochSecond > epochSecond) {
+        table.put(this.buffer.getLong(offset), expiresAtEpochSecond, epochSecond);
+      }
+    }
+  }
+
+  /**
+   * Appends a record. A full journal is rewritten from the table first.
+   *
+   * @param hash                 The identifier hash.
+   * @param expiresAtEpochSecond The epoch second the entry expires at.
+   * @param table                The table holding every revocation, including this one.
+   * @param epochSecond          The current epoch second.
+   */
+  void append(long hash, long expiresAtEpochSecond, RevocationTable table, long epochSecond) {
+    if (this.count == this.capacity) {
+      rewrite(table, epochSecond);
+      return;
+    }
+    write(this.count, hash, expiresAtEpochSecond);
+    writeCount(this.count + 1);
+  }
+
+  @Override
+  public void close() {
+    this.buffer.force();
+    try {
+      this.channel.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Replaces the records with the live entries of the table. The table can hold more entries than
+   * the file, the ones that don't fit are only kept in memory.
+   */
+  private void rewrite(RevocationTable table, long epochSecond) {
+    int[] written = {0};
+    table.forEach(epochSecond, (hash, expiresAtEpochSecond) -> {
+      if (written[0] < this.capacity) {
+        write(written[0]++, hash, expiresAtEpochSecond);
+      }
+    });
+    writeCount(written[0]);
+  }
+
+  private void write(int index, long hash, long expiresAtEpochSecond) {
+    int offset = HEADER_BYTES + index * RECORD_BYTES;
+    this.buffer.putLong(offset, hash);
+    this.buffer.putLong(offset + 8, expiresAtEpochSecond);
+  }
+
+  private void writeCount(int count) {
+    this.count = count;
+    this.buffer.putLong(8, count);
+  }
+}
@@ -0,0 +1,173 @@
+package io.datadoc.authservice.service;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import io.datadoc.authservice.config.AuthServiceConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.nio.file.Path;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * RevocationStore remembers the tokens revoked and the sessions logged out through this service,
+ * so locally verified tokens are rejected right away instead of being accepted until they expire.
+ * Tokens are identified by their `jti` claim and sessions by the `sid` claim. Every entry expires
+ * with the token, a session after auth-service.revocation.session-ttl.
+ *
+ * <p>Identifiers are kept as 64-bit hashes in a primitive RevocationTable, which fits a million
+ * entries in 32MB and is checked without allocating. Optionally, the entries are persisted in a
+ * memory-mapped file. The number of entries is exported as the revocation.store.size gauge.
+ */
+@Service
+public class RevocationStore {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RevocationStore.class);
+  private final boolean enabled;
+  private final long sessionTtlSeconds;
+  private final RevocationTable table;
+  private final RevocationJournal journal;
+  private final ReentrantLock writeLock = new ReentrantLock();
+
+  public RevocationStore(AuthServiceConfig authServiceConfig, MeterRegistry meterRegistry) {
+    AuthServiceConfig.Revocation config = authServiceConfig.getRevocation();
+    this.enabled = config.isEnabled();
+    this.sessionTtlSeconds = config.getSessionTtl().toSeconds();
+    this.table = new RevocationTable(config.getInitialCapacity());
+    if (this.enabled && config.getFile() != null && !config.getFile().isBlank()) {
+      this.journal = new RevocationJournal(Path.of(config.getFile()), config.getFileCapacity());
+      this.journal.replay(this.table, now());
+      LOGGER.info("Loaded {} revocations from {}", this.table.size(), config.getFile());
+    } else {
+      this.journal = null;
+    }
+    Gauge.builder("revocation.store.size", this.table, RevocationTable::size)
+        .description("Revoked tokens and sessions, including expired ones not dropped yet")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Checks whether the token or its session was revoked.
+   *
+   * @param claims The claims of the token.
+   * @return true if the token must be rejected.
+   */
+  public boolean isRevoked(JWTClaimsSet claims) {
+    return isRevoked(
+        claims.getJWTID(), claims.getClaim("sid") instanceof String sessionId ? sessionId : null
+    );
+  }
+
+  /**
+   * Checks whether the token or its session was revoked - e.g. for the user's information cached
+   * for the token.
+   *
+   * @param tokenId   The `jti` claim of the token, may be null.
+   * @param sessionId The `sid` claim of the token, may be null.
+   * @return true if the token must be rejected.
+   */
+  public boolean isRevoked(String tokenId, String sessionId) {
+    if (!this.enabled || this.table.size() == 0) {
+      return false;
+    }
+    long now = now();
+    if (tokenId != null && this.table.contains(hash(tokenId), now)) {
+      return true;
+    }
+    return sessionId != null && this.table.contains(hash(sessionId), now);
+  }
+
+  /**
+   * Records a token revoked in Keycloak. Access tokens are revoked on their own, revoking a refresh
+   * token ends its whole session.
+   *
+   * @param claims The claims of the revoked token.
+   */
+  public void tokenRevoked(JWTClaimsSet claims) {
+    if (!"Bearer".equals(claims.getClaim("typ"))) {
+      sessionEnded(claims);
+      return;
+    }
+    if (claims.getJWTID() != null && claims.getExpirationTime() != null) {
+      revokeToken(claims.getJWTID(), claims.getExpirationTime().toInstant().getEpochSecond());
+    }
+  }
+
+  /**
+   * Records a revoked access token by its ID - e.g. one revoked through another instance.
+   *
+   * @param tokenId              The `jti` claim of the token.
+   * @param expiresAtEpochSecond The expiry of the token.
+   */
+  public void revokeToken(String tokenId, long expiresAtEpochSecond) {
+    add(tokenId, expiresAtEpochSecond);
+  }
+
+  /**
+   * Records the end of the session the token belongs to.
+   *
+   * @param claims The claims of a token from the session - e.g. the ID token used to log out.
+   */
+  public void sessionEnded(JWTClaimsSet claims) {
+    if (claims.getClaim("sid") instanceof String sessionId) {
+      endSession(sessionId);
+    }
+  }
+
+  /**
+   * Records the end of a session by its ID - e.g. one logged out through another instance.
+   *
+   * @param sessionId The `sid` claim of the session's tokens.
+   */
+  public void endSession(String sessionId) {
+    add(sessionId, now() + this.sessionTtlSeconds);
+  }
+
+  @PreDestroy
+  public void close() {
+    if (this.journal != null) {
+      this.journal.close();
+    }
+  }
+
+  private void add(String id, long expiresAtEpochSecond) {
+    if (!this.enabled) {
+      return;
+    }
+    long now = now();
+    long hash = hash(id);
+    this.writeLock.lock();
+    try {
+      this.table.put(hash, expiresAtEpochSecond, now);
+      if (this.journal != null) {
+        this.journal.append(hash, expiresAtEpochSecond, this.table, now);
+      }
+    } finally {
+      this.writeLock.unlock();
+    }
+  }
+
+  private static long now() {
+    return System.currentTimeMillis() / 1000;
+  }
+
+  /**
+   * 64-bit FNV-1a over the characters with the MurmurHash3 finalizer - spreads the bits for the
+   * table's linear probing. 0 marks an empty slot, so it's never returned.
+   */
+  static long hash(String id) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < id.length(); i++) {
+      hash ^= id.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb93fe53a87c5L;
+    hash ^= hash >>> 33;
+    return hash == 0 ? 1 : hash;
+  }
+}
@@ -0,0 +1,156 @@
+package io.datadoc.authservice.service;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * RevocationTable is an open-addressing hash set of 64-bit identifier hashes, each with the epoch
+ * second it expires at. Both are stored side by side in a single long array, so an entry costs 16
+ * bytes per slot and no objects. Lookups use an optimistic read and never lock or allocate; writes
+ * are rare and take the write lock. Expired entries are dropped whenever the table is rebuilt.
+ */
+final class RevocationTable {
+
+  private static final int MAX_LOAD_PERCENT = 50;
+  private final StampedLock lock = new StampedLock();
+  private long[] slots;
+  private volatile int size;
+
+  RevocationTable(int initialCapacity) {
+    this.slots = new long[2 * Integer.highestOneBit(Math.max(16, initialCapacity - 1) << 1)];
+  }
+
+  /**
+   * Checks whether the identifier hash is in the table and not expired yet.
+   *
+   * @param hash        The identifier hash - never 0.
+   * @param epochSecond The current epoch second.
+   * @return true if the identifier is revoked.
+   */
+  boolean contains(long hash, long epochSecond) {
+    long stamp = this.lock.tryOptimisticRead();
+    boolean contains = find(this.slots, hash, epochSecond);
+    if (!this.lock.validate(stamp)) {
+      stamp = this.lock.readLock();
+      try {
+        contains = find(this.slots, hash, epochSecond);
+      } finally {
+        this.lock.unlockRead(stamp);
+      }
+    }
+    return contains;
+  }
+
+  /**
+   * Adds the identifier hash, or extends its expiry if it's already in the table.
+   *
+   * @param hash                 The identifier hash - never 0.
+   * @param expiresAtEpochSecond The epoch second the entry expires at.
+   * @param epochSecond          The current epoch second - used to drop expired entries.
+   */
+  void put(long hash, long expiresAtEpochSecond, long epochSecond) {
+    long stamp = this.lock.writeLock();
+    try {
+      if ((this.size + 1) * 100L > (this.slots.length / 2) * (long) MAX_LOAD_PERCENT) {
+        rebuild(epochSecond);
+      }
+      if (insert(this.slots, hash, expiresAtEpochSecond)) {
+        this.size++;
+      }
+    } finally {
+      this.lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Passes every entry that isn't expired to the consumer.
+   *
+   * @param epochSecond The current epoch second.
+   * @param consumer    The consumer of the entries.
+   */
+  void forEach(long epochSecond, EntryConsumer consumer) {
+    long stamp = this.lock.readLock();
+    try {
+      for (int i = 0; i < this.slots.length; i += 2) {
+        if (this.slots[i] != 0 && this.slots[i + 1] > epochSecond) {
+          consumer.accept(this.slots[i], this.slots[i + 1]);
+        }
+      }
+    } finally {
+      this.lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Returns the number of entries, including the expired ones not dropped yet.
+   */
+  int size() {
+    return this.size;
+  }
+
+  /**
+   * Rehashes the entries that aren't expired, into a table twice as large if at least half of them
+   * are still live.
+   */
+  private void rebuild(long epochSecond) {
+    int live = 0;
+    for (int i = 0; i < this.slots.length; i += 2) {
+      if (this.slots[i] != 0 && this.slots[i + 1] > epochSecond) {
+        live++;
+      }
+    }
+    boolean grow = (live + 1) * 100L > (this.slots.length / 2) * (long) MAX_LOAD_PERCENT / 2;
+    long[] rebuilt = new long[grow ? this.slots.length * 2 : this.slots.length];
+    for (int i = 0; i < this.slots.length; i += 2) {
+      if (this.slots[i] != 0 && this.slots[i + 1] > epochSecond) {
+        insert(rebuilt, this.slots[i], this.slots[i + 1]);
+      }
+    }
+    this.slots = rebuilt;
+    this.size = live;
+  }
+
+  private static boolean find(long[] slots, long hash, long epochSecond) {
+    int mask = slots.length / 2 - 1;
+    for (int i = (int) hash & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+      long slotHash = slots[2 * i];
+      if (slotHash == hash) {
+        return slots[2 * i + 1] > epochSecond;
+      }
+      if (slotHash == 0) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Inserts with linear probing. The expiry is written before the hash, which marks the slot as
+   * taken for the optimistic readers.
+   *
+   * @return true if a new slot was taken, false if an existing entry was updated.
+   */
+  private static boolean insert(long[] slots, long hash, long expiresAtEpochSecond) {
+    int mask = slots.length / 2 - 1;
+    for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+      long slotHash = slots[2 * i];
+      if (slotHash == hash) {
+        slots[2 * i + 1] = Math.max(slots[2 * i + 1], expiresAtEpochSecond);
+        return false;
+      }
+      if (slotHash == 0) {
+        slots[2 * i + 1] = expiresAtEpochSecond;
+        slots[2 * i] = hash;
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Consumer of the table entries.
+   */
+  @FunctionalInterface
+  interface EntryConsumer {
+
+    void accept(long hash, long expiresAtEpochSecond);
+  }
+}
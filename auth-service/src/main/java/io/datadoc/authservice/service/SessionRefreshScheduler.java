@@ -0,0 +1,200 @@
+package io.datadoc.authservice.service;
+
+import io.datadoc.authservice.config.AuthServiceConfig;
+import io.datadoc.authservice.exception.InvalidTokenException;
+import io.datadoc.authservice.exception.RejectedTokenException;
+import io.datadoc.authservice.model.auth.JwtPayload;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.HttpClientErrorException;
+
+/**
+ * SessionRefreshScheduler refreshes the tokens of the sessions before their access token expires,
+ * so the clients of the sessions never get an expired token on the request path. Every refresh is
+ * due lead-time plus a random jitter before the expiry, which spreads the refreshes of tokens
+ * issued at the same time. Due refreshes are taken from a DelayQueue and started at no more than
+ * max-rate per second on a pool of workers, so Keycloak's token endpoint sees a smooth load.
+ *
+ * <p>A failed refresh is retried after retry-delay while the access token is still valid, except
+ * when Keycloak rejects the refresh token. Refreshes are counted in the session.refresh metric by
+ * outcome, and session.refresh.lead records how long before the expiry they were made.
+ */
+final class SessionRefreshScheduler implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SessionRefreshScheduler.class);
+  private final DelayQueue<RefreshTask> queue = new DelayQueue<>();
+  private final Refresher refresher;
+  private final long leadTimeNanos;
+  private final long jitterNanos;
+  private final long retryDelayNanos;
+  private final long dispatchIntervalNanos;
+  private final Semaphore permits;
+  private final ExecutorService workers;
+  private final Thread dispatcher;
+  private final Timer leadTime;
+  private final Counter succeeded;
+  private final Counter failed;
+  private final Counter stale;
+  private long nextDispatchNanos;
+
+  SessionRefreshScheduler(
+      AuthServiceConfig.Sessions.Refresh config,
+      MeterRegistry meterRegistry,
+      Refresher refresher
+  ) {
+    this.refresher = refresher;
+    this.leadTimeNanos = config.getLeadTime().toNanos();
+    this.jitterNanos = config.getJitter().toNanos();
+    this.retryDelayNanos = config.getRetryDelay().toNanos();
+    this.dispatchIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, config.getMaxRate());
+    this.permits = new Semaphore(config.getWorkers());
+    this.workers = Executors.newFixedThreadPool(config.getWorkers(),
+        Thread.ofPlatform().daemon().name("session-refresh-", 0).factory());
+    this.leadTime = Timer.builder("session.refresh.lead")
+        .description("Time left until the access token expired when its session was refreshed")
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+    this.succeeded = refreshCounter(meterRegistry, "success");
+    this.failed = refreshCounter(meterRegistry, "failure");
+    this.stale = refreshCounter(meterRegistry, "stale");
+    Gauge.builder("session.refresh.pending", this.queue, DelayQueue::size)
+        .description("Session refreshes scheduled, including stale ones")
+        .register(meterRegistry);
+    this.dispatcher = Thread.ofPlatform().daemon().name("session-refresh-dispatcher")
+        .start(this::dispatch);
+  }
+
+  /**
+   * Schedules the refresh of the session's tokens ahead of the expiry of the access token.
+   * Refreshes already scheduled for older tokens of the session are skipped when due.
+   *
+   * @param key    The key of the session.
+   * @param tokens The tokens of the session.
+   */
+  void schedule(String key, JwtPayload tokens) {
+    long now = System.nanoTime();
+    long expiresAtNanos = now + TimeUnit.SECONDS.toNanos(tokens.expiresIn());
+    long jitter = this.jitterNanos > 0 ? ThreadLocalRandom.current().nextLong(this.jitterNanos) : 0;
+    // Short-lived tokens are refreshed halfway through their lifetime at the latest.
+    long dueInNanos = Math.max(
+        (expiresAtNanos - now) / 2,
+        expiresAtNanos - now - this.leadTimeNanos - jitter
+    );
+    if (tokens.refreshTokenExpiresIn() > 0
+        && dueInNanos >= TimeUnit.SECONDS.toNanos(tokens.refreshTokenExpiresIn())) {
+      return;
+    }
+    this.queue.add(new RefreshTask(key, tokens, now + dueInNanos, expiresAtNanos));
+  }
+
+  @Override
+  public void close() {
+    this.dispatcher.interrupt();
+    this.workers.shutdownNow();
+  }
+
+  /**
+   * Takes the due refreshes off the queue and hands them to the workers, paced to max-rate.
+   */
+  private void dispatch() {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        RefreshTask task = this.queue.take();
+        long now = System.nanoTime();
+        if (this.nextDispatchNanos - now > 0) {
+          LockSupport.parkNanos(this.nextDispatchNanos - now);
+          now = System.nanoTime();
+        }
+        this.nextDispatchNanos = Math.max(now, this.nextDispatchNanos) + this.dispatchIntervalNanos;
+        this.permits.acquire();
+        this.workers.execute(() -> {
+          try {
+            refresh(task);
+          } finally {
+            this.permits.release();
+          }
+        });
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void refresh(RefreshTask task) {
+    long leftNanos = task.expiresAtNanos() - System.nanoTime();
+    try {
+      if (!this.refresher.refresh(task.key(), task.tokens())) {
+        this.stale.increment();
+        return;
+      }
+      this.succeeded.increment();
+      this.leadTime.record(Math.max(0, leftNanos), TimeUnit.NANOSECONDS);
+    } catch (RuntimeException e) {
+      this.failed.increment();
+      long retryAtNanos = System.nanoTime() + this.retryDelayNanos;
+      // Rejected tokens stay rejected, whether Keycloak was called or not.
+      boolean retry = !(e instanceof HttpClientErrorException
+          || e instanceof InvalidTokenException
+          || e instanceof RejectedTokenException)
+          && task.expiresAtNanos() - retryAtNanos > 0;
+      LOGGER.warn("Failed to refresh a session{} - {}", retry ? ", retrying" : "", e.toString());
+      if (retry) {
+        this.queue.add(new RefreshTask(task.key(), task.tokens(), retryAtNanos,
+            task.expiresAtNanos()));
+      }
+    }
+  }
+
+  private static Counter refreshCounter(MeterRegistry meterRegistry, String outcome) {
+    return Counter.builder("session.refresh")
+        .description("Background session refreshes")
+        .tag("outcome", outcome)
+        .register(meterRegistry);
+  }
+
+  /**
+   * Refreshes the tokens of a session.
+   */
+  @FunctionalInterface
+  interface Refresher {
+
+    /**
+     * Refreshes the tokens of the session, unless they changed since the refresh was scheduled.
+     *
+     * @param key    The key of the session.
+     * @param tokens The tokens of the session when the refresh was scheduled.
+     * @return true if the tokens were refreshed, false if the session was refreshed since or ended.
+     */
+    boolean refresh(String key, JwtPayload tokens);
+  }
+
+  /**
+   * Refresh of a session due at the given System.nanoTime().
+   */
+  private record RefreshTask(
+      String key, JwtPayload tokens, long dueAtNanos, long expiresAtNanos
+  ) implements Delayed {
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(this.dueAtNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package io.datadoc.authservice.service;
+
+import io.datadoc.authservice.config.AuthServiceConfig;
+import io.datadoc.authservice.exception.InvalidTokenException;
+import io.datadoc.authservice.model.auth.JwtPayload;
+import io.datadoc.authservice.model.auth.Session;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import org.springframework.stereotype.Service;
+
+/**
+ * SessionService manages the sessions whose tokens are kept by the auth-service. The client gets a
+ * short random handle instead of the JWT tokens and sends it back to resolve the user, refresh or
+ * log out. Sessions are stored in the SessionStore under the SHA-256 hash of the handle, so a heap
+ * dump or the store's backend doesn't leak usable handles.
+ *
+ * <p>A session lives as long as its refresh token, capped by auth-service.sessions.max-ttl. Its
+ * tokens are refreshed in the background before the access token expires, unless
+ * auth-service.sessions.refresh.enabled is set to false. The tokens are refreshed by the tenant
+ * that issued them.
+ */
+@Service
+public class SessionService {
+
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+  private static final int HANDLE_BYTES = 32;
+  private static final InvalidTokenException UNKNOWN_SESSION = new InvalidTokenException(
+      "Unknown or expired session"
+  );
+  private final SecureRandom random = new SecureRandom();
+  private final SessionStore sessionStore;
+  private final KeycloakService keycloakService;
+  private final KeycloakTenants keycloakTenants;
+  private final Duration maxTtl;
+  private final SessionRefreshScheduler refreshScheduler;
+
+  public SessionService(
+      SessionStore sessionStore,
+      KeycloakService keycloakService,
+      KeycloakTenants keycloakTenants,
+      AuthServiceConfig authServiceConfig,
+      MeterRegistry meterRegistry
+  ) {
+    this.sessionStore = sessionStore;
+    this.keycloakService = keycloakService;
+    this.keycloakTenants = keycloakTenants;
+    AuthServiceConfig.Sessions config = authServiceConfig.getSessions();
+    this.maxTtl = config.getMaxTtl();
+    this.refreshScheduler = config.getRefresh().isEnabled()
+        ? new SessionRefreshScheduler(config.getRefresh(), meterRegistry, this::refreshInBackground)
+        : null;
+  }
+
+  /**
+   * Stores the tokens under a new handle.
+   *
+   * @param tokens The tokens issued by Keycloak.
+   * @return The Session with the new handle.
+   */
+  public Session create(JwtPayload tokens) {
+    byte[] bytes = new byte[HANDLE_BYTES];
+    this.random.nextBytes(bytes);
+    String handle = ENCODER.encodeToString(bytes);
+    return update(handle, tokens);
+  }
+
+  /**
+   * Returns the tokens of the session.
+   *
+   * @param handle The session handle.
+   * @return The tokens of the session.
+   * @throws InvalidTokenException If the session doesn't exist or has expired.
+   */
+  public JwtPayload getTokens(String handle) throws InvalidTokenException {
+    JwtPayload tokens = this.sessionStore.get(TokenHasher.sha256(handle));
+    if (tokens == null) {
+      throw UNKNOWN_SESSION;
+    }
+    return tokens;
+  }
+
+  /**
+   * Replaces the tokens of the session - e.g. after they were refreshed.
+   *
+   * @param handle The session handle.
+   * @param tokens The new tokens issued by Keycloak.
+   * @return The Session.
+   */
+  public Session update(String handle, JwtPayload tokens) {
+    String key = TokenHasher.sha256(handle);
+    this.sessionStore.put(key, tokens, timeToLive(tokens));
+    scheduleRefresh(key, tokens);
+    return new Session(handle, tokens.expiresIn(), tokens.refreshTokenExpiresIn());
+  }
+
+  /**
+   * Forgets the session.
+   *
+   * @param handle The session handle.
+   */
+  public void remove(String handle) {
+    this.sessionStore.remove(TokenHasher.sha256(handle));
+  }
+
+  @PreDestroy
+  public void close() {
+    if (this.refreshScheduler != null) {
+      this.refreshScheduler.close();
+    }
+  }
+
+  /**
+   * Refreshes the tokens of the session if it still has the tokens the refresh was scheduled for.
+   */
+  private boolean refreshInBackground(String key, JwtPayload scheduled) {
+    JwtPayload current = this.sessionStore.get(key);
+    if (current == null || !current.equals(scheduled)) {
+      return false;
+    }
+    KeycloakTenant tenant = this.keycloakTenants.resolve(null, current.accessToken());
+    JwtPayload refreshed = this.keycloakService.refreshTokens(tenant, current.refreshToken())
+        .getBody();
+    if (!this.sessionStore.replace(key, current, refreshed, timeToLive(refreshed))) {
+      return false;
+    }
+    scheduleRefresh(key, refreshed);
+    return true;
+  }
+
+  private void scheduleRefresh(String key, JwtPayload tokens) {
+    if (this.refreshScheduler != null) {
+      this.refreshScheduler.schedule(key, tokens);
+    }
+  }
+
+  /**
+   * Offline tokens don't expire, Keycloak returns 0 as their refresh_expires_in.
+   */
+  private Duration timeToLive(JwtPayload tokens) {
+    if (tokens.refreshTokenExpiresIn() <= 0) {
+      return this.maxTtl;
+    }
+    Duration refreshTokenTtl = Duration.ofSeconds(tokens.refreshTokenExpiresIn());
+    return refreshTokenTtl.compareTo(this.maxTtl) < 0 ? refreshTokenTtl : this.maxTtl;
+  }
+}
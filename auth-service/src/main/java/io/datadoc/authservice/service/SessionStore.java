@@ -0,0 +1,53 @@
+package io.datadoc.authservice.service;
+
+import io.datadoc.authservice.model.auth.JwtPayload;
+import java.time.Duration;
+
+/**
+ * SessionStore keeps the tokens of the sessions managed by the auth-service. Keys are the hashes
+ * of the session handles, never the handles themselves.
+ *
+ * <p>The InMemorySessionStore is used by default. A distributed implementation - e.g. backed by
+ * Redis, so every instance sees every session - is a bean implementing this interface, selected by
+ * auth-service.sessions.store. Its methods are called on the request threads, including the event
+ * loop in the reactive execution mode, so they must answer quickly.
+ */
+public interface SessionStore {
+
+  /**
+   * Stores the tokens, replacing the ones stored under the key before.
+   *
+   * @param key        The key of the session.
+   * @param tokens     The tokens of the session.
+   * @param timeToLive How long the session is kept.
+   */
+  void put(String key, JwtPayload tokens, Duration timeToLive);
+
+  /**
+   * Replaces the tokens only if the session still has the expected ones - used by the background
+   * refresh, so a session that was refreshed by the client or ended meanwhile isn't overwritten.
+   *
+   * @param key        The key of the session.
+   * @param expected   The tokens the session is expected to have.
+   * @param tokens     The new tokens of the session.
+   * @param timeToLive How long the session is kept.
+   * @return true if the tokens were replaced.
+   */
+  boolean replace(String key, JwtPayload expected, JwtPayload tokens, Duration timeToLive);
+
+  /**
+   * Returns the tokens of the session.
+   *
+   * @param key The key of the session.
+   * @return The tokens or null if the session doesn't exist or has expired.
+   */
+  JwtPayload get(String key);
+
+  /**
+   * Removes the session.
+   *
+   * @param key The key of the session.
+   * @return The tokens of the removed session or null if it didn't exist or had expired.
+   */
+  JwtPayload remove(String key);
+}
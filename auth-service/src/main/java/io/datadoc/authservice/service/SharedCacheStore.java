@@ -0,0 +1,86 @@
+package io.datadoc.authservice.service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * SharedCacheStore is the tier of the user cache shared by every instance of the auth-service, in
+ * front of which each instance keeps its UserInfoCache. It also carries the invalidation messages
+ * the instances send each other on revoke and logout. Keys are hashes and ids derived from the
+ * tokens, never the tokens themselves.
+ *
+ * <p>The RedisSharedCacheStore is used with a Redis server, the InMemorySharedCacheStore stands in
+ * for it in a single JVM. The implementation is selected by auth-service.user-cache.shared.store.
+ * Its methods are called on the request threads, so they must answer quickly - writes shouldn't
+ * wait for the store at all. On the event loop of the reactive execution mode, reads go through
+ * getAsync(), which doesn't block the thread either.
+ */
+public interface SharedCacheStore {
+
+  /**
+   * Returns the value of the key.
+   *
+   * @param key The key of the entry.
+   * @return The value or null if the entry doesn't exist or has expired.
+   */
+  String get(String key);
+
+  /**
+   * Returns the value of the key without blocking the calling thread.
+   *
+   * @param key The key of the entry.
+   * @return Future completed with the value, or null if the entry doesn't exist or has expired.
+   */
+  CompletableFuture<String> getAsync(String key);
+
+  /**
+   * Stores the value, replacing the one stored under the key before.
+   *
+   * @param key        The key of the entry.
+   * @param value      The value of the entry.
+   * @param group      The group the entry is removed with, e.g. the session of a token, or null.
+   * @param timeToLive How long the entry is kept.
+   */
+  void put(String key, String value, String group, Duration timeToLive);
+
+  /**
+   * Removes the entry.
+   *
+   * @param key The key of the entry.
+   */
+  void remove(String key);
+
+  /**
+   * Removes every entry stored with the group.
+   *
+   * @param group The group of the entries.
+   */
+  void removeGroup(String group);
+
+  /**
+   * Passes the entries whose keys start with the prefix to the consumer - used to warm up the
+   * in-process cache of a new instance.
+   *
+   * @param prefix   The prefix of the keys.
+   * @param limit    The number of entries passed at most.
+   * @param consumer Receives the key and the value of every entry.
+   */
+  void scan(String prefix, int limit, BiConsumer<String, String> consumer);
+
+  /**
+   * Sends the message to the subscribers of every instance, this one included.
+   *
+   * @param message The message.
+   */
+  void publish(String message);
+
+  /**
+   * Subscribes to the messages published by every instance. Messages are delivered in the order
+   * they were published, on a thread of the store.
+   *
+   * @param subscriber Receives every message.
+   */
+  void subscribe(Consumer<String> subscriber);
+}
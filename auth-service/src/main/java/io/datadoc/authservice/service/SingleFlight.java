@@ -0,0 +1,160 @@
+package io.datadoc.authservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+/**
+ * SingleFlight coalesces concurrent calls with the same key. The first caller executes the call,
+ * every caller arriving while it's in flight waits for and shares its result or error. Nothing is
+ * cached - once the call completes the next caller executes it again. Coalesced calls are counted
+ * in the keycloak.requests.coalesced metric.
+ *
+ * <p>A non-blocking call is cancelled only once every subscriber sharing it has cancelled, so a
+ * client disconnecting doesn't fail the others waiting for the same call.
+ *
+ * @param <K> The type of the key identifying identical calls.
+ * @param <V> The type of the call's result.
+ */
+public class SingleFlight<K, V> {
+
+  private final ConcurrentMap<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+  private final Counter coalescedCounter;
+
+  /**
+   * Creates a SingleFlight for one kind of Keycloak call.
+   *
+   * @param operation     The name of the coalesced operation - used as the metric tag.
+   * @param meterRegistry The registry of the coalesced calls counter.
+   */
+  public SingleFlight(String operation, MeterRegistry meterRegistry) {
+    this.coalescedCounter = Counter.builder("keycloak.requests.coalesced")
+        .description("Keycloak calls answered by an identical call already in flight")
+        .tag("operation", operation)
+        .register(meterRegistry);
+  }
+
+  /**
+   * Executes the blocking call, unless an identical call is already in flight.
+   *
+   * @param key  The key identifying identical calls.
+   * @param call The call to execute.
+   * @return The result of the call.
+   */
+  public V execute(K key, Supplier<V> call) {
+    Flight<V> flight = new Flight<>();
+    Flight<V> existing = this.inFlight.putIfAbsent(key, flight);
+    if (existing != null) {
+      this.coalescedCounter.increment();
+      return await(existing.result);
+    }
+    try {
+      V result = call.get();
+      flight.result.complete(result);
+      return result;
+    } catch (Throwable e) {
+      // Errors too, or the callers waiting for the call would wait forever.
+      flight.result.completeExceptionally(e);
+      throw e;
+    } finally {
+      this.inFlight.remove(key, flight);
+    }
+  }
+
+  /**
+   * Executes the non-blocking call, unless an identical call is already in flight.
+   *
+   * @param key  The key identifying identical calls.
+   * @param call The call to execute.
+   * @return Mono emitting the result of the call.
+   */
+  public Mono<V> executeAsync(K key, Supplier<Mono<V>> call) {
+    return Mono.deferContextual(context -> {
+      Flight<V> flight = new Flight<>();
+      Flight<V> existing;
+      while ((existing = this.inFlight.putIfAbsent(key, flight)) != null) {
+        if (existing.join()) {
+          this.coalescedCounter.increment();
+          return existing.share();
+        }
+        // Its last subscriber just cancelled it - start a new call instead.
+        this.inFlight.remove(key, existing);
+      }
+      flight.result.whenComplete((result, e) -> this.inFlight.remove(key, flight));
+      Mono<V> mono;
+      try {
+        mono = call.get();
+      } catch (Throwable e) {
+        // Or the callers that joined the flight, and every later one, would wait forever.
+        flight.result.completeExceptionally(e);
+        return Mono.error(e);
+      }
+      // Subscribed apart from the caller, so the call outlives it while others share it.
+      flight.call = mono
+          .contextWrite(context)
+          .subscribe(flight.result::complete, flight.result::completeExceptionally,
+              () -> flight.result.complete(null));
+      return flight.share();
+    });
+  }
+
+  private static <V> V await(CompletableFuture<V> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      if (e.getCause() instanceof Error cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * A call in flight with the number of subscribers sharing it.
+   */
+  private static final class Flight<V> {
+
+    private final CompletableFuture<V> result = new CompletableFuture<>();
+    private final AtomicInteger subscribers = new AtomicInteger(1);
+    private volatile Disposable call;
+
+    /**
+     * Adds a subscriber, unless the last one has left already and the call is cancelled.
+     */
+    boolean join() {
+      int count;
+      do {
+        count = this.subscribers.get();
+        if (count == 0) {
+          return false;
+        }
+      } while (!this.subscribers.compareAndSet(count, count + 1));
+      return true;
+    }
+
+    Mono<V> share() {
+      // Every subscriber gets a copy - cancelling it doesn't complete the shared result.
+      return Mono.fromFuture(this.result.copy()).doFinally(signal -> leave());
+    }
+
+    private void leave() {
+      if (this.subscribers.decrementAndGet() == 0 && !this.result.isDone()) {
+        Disposable call = this.call;
+        if (call != null) {
+          call.dispose();
+        }
+        this.result.cancel(false);
+      }
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package io.datadoc.authservice.service;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TokenBucketLimiter limits the rate of attempts per key - e.g. per email or client address. Every
+ * key has a token bucket holding up to `attempts` tokens, refilled evenly over `period`.
+ *
+ * <p>A bucket is a single AtomicLong - the time it will be full again, as in the generic cell rate
+ * algorithm - and is updated with compare-and-set, without locks. Buckets are kept in stripes of
+ * ConcurrentHashMaps. A full bucket is the same as a missing one, so each stripe drops its full
+ * buckets on the first attempt after its sweep interval.
+ */
+final class TokenBucketLimiter {
+
+  /**
+   * Returned by tryAcquire when the attempt is allowed.
+   */
+  static final long ALLOWED = 0;
+  private static final long EVICTED = Long.MIN_VALUE;
+  private final Stripe[] stripes;
+  private final long intervalNanos;
+  private final long periodNanos;
+  private final long sweepIntervalNanos;
+
+  TokenBucketLimiter(int attempts, Duration period, int stripes, Duration sweepInterval) {
+    this.periodNanos = period.toNanos();
+    this.intervalNanos = Math.max(1, this.periodNanos / Math.max(1, attempts));
+    this.sweepIntervalNanos = sweepInterval.toNanos();
+    int stripeCount = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+    this.stripes = new Stripe[stripeCount];
+    long now = System.nanoTime();
+    for (int i = 0; i < stripeCount; i++) {
+      this.stripes[i] = new Stripe(now + this.sweepIntervalNanos);
+    }
+  }
+
+  /**
+   * Takes a token from the key's bucket.
+   *
+   * @param key The key, e.g. the email or the client address.
+   * @return ALLOWED, or the nanoseconds until a token is available if the bucket is empty.
+   */
+  long tryAcquire(String key) {
+    long now = System.nanoTime();
+    Stripe stripe = stripe(key);
+    stripe.sweepIfDue(now);
+    while (true) {
+      Bucket bucket = stripe.buckets.get(key);
+      if (bucket == null) {
+        Bucket created = new Bucket(now);
+        bucket = stripe.buckets.putIfAbsent(key, created);
+        if (bucket == null) {
+          bucket = created;
+        }
+      }
+      long wait = bucket.tryAcquire(now);
+      // The bucket was evicted after it was looked up - the next lookup finds or creates another.
+      if (wait != EVICTED) {
+        return wait;
+      }
+    }
+  }
+
+  /**
+   * Returns the number of buckets kept, including full ones not dropped yet.
+   *
+   * @return The number of buckets.
+   */
+  long size() {
+    long size = 0;
+    for (Stripe stripe : this.stripes) {
+      size += stripe.buckets.mappingCount();
+    }
+    return size;
+  }
+
+  private Stripe stripe(String key) {
+    int hash = key.hashCode();
+    return this.stripes[(hash ^ (hash >>> 16)) & (this.stripes.length - 1)];
+  }
+
+  /**
+   * Token bucket of a key - holds the System.nanoTime() at which it will be full again.
+   */
+  private final class Bucket extends AtomicLong {
+
+    Bucket(long fullAtNanos) {
+      super(fullAtNanos);
+    }
+
+    long tryAcquire(long now) {
+      while (true) {
+        long fullAt = get();
+        if (fullAt == EVICTED) {
+          return EVICTED;
+        }
+        long next = Math.max(fullAt, now) + intervalNanos;
+        long wait = next - now - periodNanos;
+        if (wait > 0) {
+          return wait;
+        }
+        if (compareAndSet(fullAt, next)) {
+          return ALLOWED;
+        }
+      }
+    }
+
+    boolean evictIfFull(long now) {
+      long fullAt = get();
+      return fullAt - now <= 0 && compareAndSet(fullAt, EVICTED);
+    }
+  }
+
+  /**
+   * Part of the buckets, swept by the thread that sees its sweep due first.
+   */
+  private final class Stripe {
+
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweepAtNanos;
+
+    Stripe(long nextSweepAtNanos) {
+      this.nextSweepAtNanos = new AtomicLong(nextSweepAtNanos);
+    }
+
+    void sweepIfDue(long now) {
+      long sweepAt = this.nextSweepAtNanos.get();
+      if (now - sweepAt < 0
+          || !this.nextSweepAtNanos.compareAndSet(sweepAt, now + sweepIntervalNanos)) {
+        return;
+      }
+      this.buckets.forEach((key, bucket) -> {
+        if (bucket.evictIfFull(now)) {
+          this.buckets.remove(key, bucket);
+        }
+      });
+    }
+  }
+}
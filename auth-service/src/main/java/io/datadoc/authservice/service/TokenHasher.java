@@ -0,0 +1,33 @@
+package io.datadoc.authservice.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * TokenHasher derives the keys under which tokens are stored in memory. Raw tokens are never used
+ * as keys, so a heap dump doesn't leak usable credentials.
+ */
+public final class TokenHasher {
+
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+  private TokenHasher() {
+  }
+
+  /**
+   * Hashes the token with SHA-256.
+   *
+   * @param token The token to hash.
+   * @return The base64url encoded SHA-256 hash of the token.
+   */
+  public static String sha256(String token) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return ENCODER.encodeToString(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not supported by the JVM", e);
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package io.datadoc.authservice.service;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.jwk.source.JWKSourceBuilder;
+import com.nimbusds.jose.proc.BadJOSEException;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.JWTParser;
+import com.nimbusds.jwt.proc.ConfigurableJWTProcessor;
+import com.nimbusds.jwt.proc.DefaultJWTClaimsVerifier;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import io.datadoc.authservice.config.KeycloakConfig;
+import io.datadoc.authservice.exception.InvalidTokenException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.text.ParseException;
+import java.util.Set;
+
+/**
+ * TokenVerifier validates Keycloak access tokens in-process. The realm's signing keys are fetched
+ * from the JWKS endpoint and cached - the cache is refreshed ahead of its expiry in the background
+ * and whenever a token is signed with an unknown key ID (key rotation). Every tenant has its own
+ * verifier, as it has its own realm keys and issuer.
+ */
+public class TokenVerifier {
+
+  private static final Set<JWSAlgorithm> SUPPORTED_ALGORITHMS = Set.of(
+      JWSAlgorithm.RS256, JWSAlgorithm.RS384, JWSAlgorithm.RS512,
+      JWSAlgorithm.PS256, JWSAlgorithm.PS384, JWSAlgorithm.PS512,
+      JWSAlgorithm.ES256, JWSAlgorithm.ES384, JWSAlgorithm.ES512
+  );
+  private static final String ACCESS_TOKEN_TYPE = "Bearer";
+
+  private final ConfigurableJWTProcessor<SecurityContext> jwtProcessor;
+
+  public TokenVerifier(
+      String jwksUrl,
+      String issuer,
+      KeycloakConfig.Verification verification
+  ) throws MalformedURLException {
+    JWKSource<SecurityContext> jwkSource = JWKSourceBuilder
+        .<SecurityContext>create(URI.create(jwksUrl).toURL())
+        .cache(
+            verification.getJwksCacheTtl().toMillis(),
+            verification.getJwksRefreshTimeout().toMillis()
+        )
+        .refreshAheadCache(true)
+        .build();
+
+    // Keycloak puts the token type into the "typ" claim - ID and refresh tokens must not pass.
+    DefaultJWTClaimsVerifier<SecurityContext> claimsVerifier = new DefaultJWTClaimsVerifier<>(
+        new JWTClaimsSet.Builder()
+            .issuer(issuer)
+            .claim("typ", ACCESS_TOKEN_TYPE)
+            .build(),
+        Set.of("sub", "exp", "iat")
+    );
+    claimsVerifier.setMaxClockSkew((int) verification.getClockSkew().toSeconds());
+
+    this.jwtProcessor = new DefaultJWTProcessor<>();
+    this.jwtProcessor.setJWSKeySelector(
+        new JWSVerificationKeySelector<>(SUPPORTED_ALGORITHMS, jwkSource)
+    );
+    this.jwtProcessor.setJWTClaimsSetVerifier(claimsVerifier);
+  }
+
+  /**
+   * Reads the claims of a token WITHOUT verifying it. The claims may only be used for bookkeeping
+   * (cache expiry, session ID), never to make an authentication decision.
+   *
+   * @param token The JWT token.
+   * @return The unverified claims or null if the token is not a JWT.
+   */
+  public static JWTClaimsSet readUnverified(String token) {
+    try {
+      return JWTParser.parse(token).getJWTClaimsSet();
+    } catch (ParseException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Verifies the signature, expiry and issuer of an access token.
+   *
+   * @param accessToken The user's access token.
+   * @return The verified claims of the token.
+   * @throws InvalidTokenException If the token is malformed or fails verification.
+   */
+  public JWTClaimsSet verify(String accessToken) throws InvalidTokenException {
+    try {
+      return this.jwtProcessor.process(accessToken, null);
+    } catch (ParseException | BadJOSEException e) {
+      throw new InvalidTokenException("Invalid access token: " + e.getMessage(), e);
+    } catch (JOSEException e) {
+      throw new IllegalStateException("Unable to verify the access token", e);
+    }
+  }
+}
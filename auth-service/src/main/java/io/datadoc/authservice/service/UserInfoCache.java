@@ -0,0 +1,448 @@
+package io.datadoc.authservice.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jwt.JWTClaimsSet;
+import io.datadoc.authservice.config.AuthServiceConfig;
+import io.datadoc.authservice.model.auth.UserMetadata;
+import io.datadoc.authservice.model.cache.CacheInvalidation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * UserInfoCache keeps the user's information resolved for an access token, so repeated `me`
+ * queries with the same token don't reach Keycloak. Entries are keyed by the tenant and the SHA-256
+ * hash of the token, so every tenant has its own partition, and expire no later than the token
+ * itself. Revoking the token or logging out its session
+ * removes the entries right away. Hit, miss and eviction counts are exported as cache.* metrics
+ * tagged with cache=userinfo.
+ *
+ * <p>Every hit is checked against the RevocationStore, so a token revoked anywhere isn't answered
+ * from an entry another instance wrote before it learned about the revocation. Entries resolved
+ * while a revocation or logout came in aren't cached: callers read generation() before resolving
+ * the user and pass it to put(), which drops the entry if anything was invalidated meanwhile.
+ *
+ * <p>With a SharedCacheStore, the cache is the near tier in front of the store shared by every
+ * instance: misses are looked up in the store, entries are written through to it and revoking or
+ * logging out removes them from both. Entries removed by other instances are evicted with
+ * evict(CacheInvalidation). Hits and misses of the store are counted in cache.gets tagged with
+ * cache=userinfo-shared, failed calls in userinfo.shared.errors - they never fail a request.
+ */
+@Service
+public class UserInfoCache {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(UserInfoCache.class);
+  private static final String ACCESS_TOKEN_TYPE = "Bearer";
+  private static final String SHARED_CACHE_NAME = "userinfo-shared";
+  private static final String USER_PREFIX = "user:";
+  private static final String SESSION_PREFIX = "session:";
+  private final boolean enabled;
+  private final long maxTtlNanos;
+  private final Cache<String, CachedUser> cache;
+  private final Map<String, Set<String>> keysBySession = new ConcurrentHashMap<>();
+  private final AtomicLong generation = new AtomicLong();
+  private final RevocationStore revocationStore;
+  private final SharedCacheStore sharedStore;
+  private final ObjectMapper objectMapper;
+  private final Counter sharedHits;
+  private final Counter sharedMisses;
+  private final Counter sharedErrors;
+
+  public UserInfoCache(
+      AuthServiceConfig authServiceConfig,
+      RevocationStore revocationStore,
+      ObjectProvider<SharedCacheStore> sharedStore,
+      ObjectMapper objectMapper,
+      MeterRegistry meterRegistry
+  ) {
+    AuthServiceConfig.UserCache config = authServiceConfig.getUserCache();
+    this.enabled = config.isEnabled();
+    this.maxTtlNanos = config.getMaxTtl().toNanos();
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(config.getMaximumSize())
+        .expireAfter(new TokenLifetimeExpiry())
+        .removalListener(this::unindexSession)
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, this.cache, "userinfo");
+    this.revocationStore = revocationStore;
+    this.sharedStore = this.enabled ? sharedStore.getIfAvailable() : null;
+    this.objectMapper = objectMapper;
+    this.sharedHits = sharedGets(meterRegistry, "hit");
+    this.sharedMisses = sharedGets(meterRegistry, "miss");
+    this.sharedErrors = Counter.builder("userinfo.shared.errors")
+        .description("Calls of the shared user cache that failed and were skipped")
+        .register(meterRegistry);
+  }
+
+  private static Counter sharedGets(MeterRegistry meterRegistry, String result) {
+    return Counter.builder("cache.gets")
+        .description("The number of times cache lookup methods have returned a cached value"
+            + " (hit) or not (miss)")
+        .tag("cache", SHARED_CACHE_NAME)
+        .tag("result", result)
+        .register(meterRegistry);
+  }
+
+  /**
+   * Returns the cached user's information for the access token.
+   *
+   * @param tenantId    The ID of the tenant that issued the token.
+   * @param accessToken The user's access token.
+   * @return UserMetadata or null if the token isn't cached or was revoked.
+   */
+  public UserMetadata get(String tenantId, String accessToken) {
+    if (!this.enabled) {
+      return null;
+    }
+    String key = key(tenantId, accessToken);
+    CachedUser cached = this.cache.getIfPresent(key);
+    if (cached == null && this.sharedStore != null) {
+      cached = getShared(key);
+    }
+    return checkRevoked(key, cached);
+  }
+
+  /**
+   * Returns the current generation of the cache, which changes whenever entries are invalidated.
+   *
+   * @return The generation to pass to put() once the user's information is resolved.
+   */
+  public long generation() {
+    return this.generation.get();
+  }
+
+  /**
+   * Returns the cached user's information for the access token without blocking the calling
+   * thread - for the event loop of the reactive execution mode.
+   *
+   * @param tenantId    The ID of the tenant that issued the token.
+   * @param accessToken The user's access token.
+   * @return Mono emitting the UserMetadata, empty if the token isn't cached or was revoked.
+   */
+  public Mono<UserMetadata> getAsync(String tenantId, String accessToken) {
+    if (!this.enabled) {
+      return Mono.empty();
+    }
+    String key = key(tenantId, accessToken);
+    CachedUser cached = this.cache.getIfPresent(key);
+    if (cached != null || this.sharedStore == null) {
+      return Mono.justOrEmpty(checkRevoked(key, cached));
+    }
+    // A future completed with null completes the Mono empty.
+    return Mono.fromFuture(() -> this.sharedStore.getAsync(USER_PREFIX + key)
+        .handle((value, e) -> {
+          if (e != null) {
+            sharedReadFailed(e);
+          }
+          return checkRevoked(key, keepShared(key, value == null ? null : read(value)));
+        }));
+  }
+
+  /**
+   * Looks up a near cache miss in the shared store and keeps the entry found in the near cache.
+   */
+  private CachedUser getShared(String key) {
+    CachedUser cached = null;
+    try {
+      String value = this.sharedStore.get(USER_PREFIX + key);
+      cached = value == null ? null : read(value);
+    } catch (RuntimeException e) {
+      sharedReadFailed(e);
+    }
+    return keepShared(key, cached);
+  }
+
+  private void sharedReadFailed(Throwable e) {
+    this.sharedErrors.increment();
+    LOGGER.debug("Unable to read the shared user cache", e);
+  }
+
+  private UserMetadata checkRevoked(String key, CachedUser cached) {
+    if (cached == null) {
+      return null;
+    }
+    if (this.revocationStore.isRevoked(cached.tokenId(), cached.sid())) {
+      this.cache.invalidate(key);
+      return null;
+    }
+    return cached.user();
+  }
+
+  private CachedUser keepShared(String key, CachedUser cached) {
+    if (cached == null || cached.expiresAtMillis() <= System.currentTimeMillis()) {
+      this.sharedMisses.increment();
+      return null;
+    }
+    this.sharedHits.increment();
+    putLocally(key, cached);
+    return cached;
+  }
+
+  /**
+   * Caches the user's information until the access token expires. Tokens that aren't JWTs or don't
+   * carry an expiry aren't cached.
+   *
+   * @param tenantId    The ID of the tenant that issued the token.
+   * @param accessToken The user's access token.
+   * @param user        The user's information resolved for the token.
+   * @param claims      The claims of the token - verified or not, they are only used for expiry
+   *                    and to check revocations.
+   * @param generation  The generation() read before the user's information was resolved.
+   */
+  public void put(
+      String tenantId,
+      String accessToken,
+      UserMetadata user,
+      JWTClaimsSet claims,
+      long generation
+  ) {
+    if (!this.enabled || user == null || claims == null || claims.getExpirationTime() == null
+        || this.generation.get() != generation) {
+      return;
+    }
+    String sid = claims.getClaim("sid") instanceof String s ? s : null;
+    CachedUser cached = new CachedUser(user, claims.getExpirationTime().getTime(),
+        getSessionId(tenantId, claims), claims.getJWTID(), sid);
+    if (this.revocationStore.isRevoked(cached.tokenId(), cached.sid())) {
+      return;
+    }
+    String key = key(tenantId, accessToken);
+    putLocally(key, cached);
+    // Invalidations bump the generation before removing entries, so one that came in since the
+    // check above either removed this entry already or is seen here.
+    if (this.generation.get() != generation) {
+      this.cache.invalidate(key);
+      return;
+    }
+    if (this.sharedStore != null) {
+      putShared(key, cached);
+    }
+  }
+
+  private void putLocally(String key, CachedUser cached) {
+    if (cached.sessionId() != null) {
+      this.keysBySession.computeIfAbsent(cached.sessionId(), sid -> ConcurrentHashMap.newKeySet())
+          .add(key);
+    }
+    this.cache.put(key, cached);
+  }
+
+  private void putShared(String key, CachedUser cached) {
+    long ttlNanos = Math.min(
+        TimeUnit.MILLISECONDS.toNanos(cached.expiresAtMillis() - System.currentTimeMillis()),
+        this.maxTtlNanos
+    );
+    if (ttlNanos <= 0) {
+      return;
+    }
+    try {
+      this.sharedStore.put(USER_PREFIX + key, this.objectMapper.writeValueAsString(cached),
+          cached.sessionId() == null ? null : SESSION_PREFIX + cached.sessionId(),
+          Duration.ofNanos(ttlNanos));
+    } catch (JsonProcessingException | RuntimeException e) {
+      this.sharedErrors.increment();
+      LOGGER.debug("Unable to write the shared user cache", e);
+    }
+  }
+
+  /**
+   * Removes the entries invalidated by revoking the token. A revoked access token only removes
+   * itself, a revoked refresh token removes every access token of its session.
+   *
+   * @param tenantId The ID of the tenant that issued the token.
+   * @param token    The revoked JWT token.
+   */
+  public void invalidateToken(String tenantId, String token) {
+    if (!this.enabled) {
+      return;
+    }
+    this.generation.incrementAndGet();
+    String key = key(tenantId, token);
+    this.cache.invalidate(key);
+    removeShared(USER_PREFIX + key, false);
+    JWTClaimsSet claims = TokenVerifier.readUnverified(token);
+    if (claims != null && !ACCESS_TOKEN_TYPE.equals(claims.getClaim("typ"))) {
+      invalidateSession(getSessionId(tenantId, claims), true);
+    }
+  }
+
+  /**
+   * Removes every access token of the session the ID token belongs to - used on logout.
+   *
+   * @param tenantId The ID of the tenant that issued the token.
+   * @param idToken  The user's ID token.
+   */
+  public void invalidateSessionOf(String tenantId, String idToken) {
+    if (!this.enabled) {
+      return;
+    }
+    this.generation.incrementAndGet();
+    JWTClaimsSet claims = TokenVerifier.readUnverified(idToken);
+    if (claims != null) {
+      invalidateSession(getSessionId(tenantId, claims), true);
+    }
+  }
+
+  /**
+   * Removes the entries another instance invalidated from the near cache - the other instance
+   * already removed them from the shared store.
+   *
+   * @param invalidation The message of the other instance.
+   */
+  public void evict(CacheInvalidation invalidation) {
+    if (!this.enabled) {
+      return;
+    }
+    this.generation.incrementAndGet();
+    String tenantId = invalidation.tenantId();
+    if (invalidation.tokenHash() != null) {
+      this.cache.invalidate(tenantId + ':' + invalidation.tokenHash());
+    }
+    if (invalidation.sessionId() != null) {
+      invalidateSession(tenantId + ':' + invalidation.sessionId(), false);
+    }
+  }
+
+  /**
+   * Loads entries of the shared store into the near cache, so a new instance doesn't send the
+   * first request of every token to Keycloak.
+   *
+   * @param limit The number of entries loaded at most.
+   * @return The number of entries loaded.
+   */
+  public int warmUp(int limit) {
+    if (this.sharedStore == null || limit <= 0) {
+      return 0;
+    }
+    AtomicInteger loaded = new AtomicInteger();
+    long now = System.currentTimeMillis();
+    this.sharedStore.scan(USER_PREFIX, limit, (sharedKey, value) -> {
+      CachedUser cached = read(value);
+      if (cached != null && cached.expiresAtMillis() > now) {
+        putLocally(sharedKey.substring(USER_PREFIX.length()), cached);
+        loaded.incrementAndGet();
+      }
+    });
+    return loaded.get();
+  }
+
+  private void invalidateSession(String sessionId, boolean shared) {
+    if (sessionId == null) {
+      return;
+    }
+    Set<String> keys = this.keysBySession.remove(sessionId);
+    if (keys != null) {
+      this.cache.invalidateAll(keys);
+    }
+    if (shared) {
+      removeShared(SESSION_PREFIX + sessionId, true);
+    }
+  }
+
+  private void removeShared(String key, boolean group) {
+    if (this.sharedStore == null) {
+      return;
+    }
+    try {
+      if (group) {
+        this.sharedStore.removeGroup(key);
+      } else {
+        this.sharedStore.remove(key);
+      }
+    } catch (RuntimeException e) {
+      this.sharedErrors.increment();
+      LOGGER.warn("Unable to remove {} from the shared user cache", key, e);
+    }
+  }
+
+  private CachedUser read(String value) {
+    try {
+      return this.objectMapper.readValue(value, CachedUser.class);
+    } catch (JsonProcessingException e) {
+      LOGGER.debug("Skipping an unreadable entry of the shared user cache", e);
+      return null;
+    }
+  }
+
+  private void unindexSession(String key, CachedUser cached, RemovalCause cause) {
+    // A replaced entry is still cached under the key, which putLocally has indexed already.
+    if (cause == RemovalCause.REPLACED || cached == null || cached.sessionId() == null) {
+      return;
+    }
+    this.keysBySession.computeIfPresent(cached.sessionId(), (sid, keys) -> {
+      keys.remove(key);
+      return keys.isEmpty() ? null : keys;
+    });
+  }
+
+  private static String key(String tenantId, String token) {
+    return tenantId + ':' + TokenHasher.sha256(token);
+  }
+
+  private static String getSessionId(String tenantId, JWTClaimsSet claims) {
+    Object sessionId = claims.getClaim("sid");
+    return sessionId instanceof String sid ? tenantId + ':' + sid : null;
+  }
+
+  /**
+   * Cached user's information together with the expiry of the token it was resolved for, and the
+   * `jti` and `sid` claims the revocations are checked by. sessionId is the tenant's session key.
+   */
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  private record CachedUser(
+      UserMetadata user,
+      long expiresAtMillis,
+      String sessionId,
+      String tokenId,
+      String sid
+  ) {
+
+  }
+
+  /**
+   * Expires every entry when its token expires, capped by the configured maximum time to live.
+   */
+  private class TokenLifetimeExpiry implements Expiry<String, CachedUser> {
+
+    @Override
+    public long expireAfterCreate(String key, CachedUser value, long currentTime) {
+      long tokenTtlNanos = TimeUnit.MILLISECONDS.toNanos(
+          value.expiresAtMillis() - System.currentTimeMillis()
+      );
+      return Math.max(0, Math.min(tokenTtlNanos, maxTtlNanos));
+    }
+
+    @Override
+    public long expireAfterUpdate(
+        String key, CachedUser value, long currentTime, long currentDuration
+    ) {
+      return expireAfterCreate(key, value, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(
+        String key, CachedUser value, long currentTime, long currentDuration
+    ) {
+      return currentDuration;
+    }
+  }
+}
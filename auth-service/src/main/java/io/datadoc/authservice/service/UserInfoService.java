@@ -0,0 +1,247 @@
+package io.datadoc.authservice.service;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import io.datadoc.authservice.config.KeycloakConfig;
+import io.datadoc.authservice.exception.InvalidTokenException;
+import io.datadoc.authservice.exception.RejectedTokenException;
+import io.datadoc.authservice.model.auth.TokenVerificationMode;
+import io.datadoc.authservice.model.auth.UserMetadata;
+import io.datadoc.authservice.model.http.KeycloakEndpoint;
+import java.text.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+import reactor.core.publisher.Mono;
+
+/**
+ * UserInfoService resolves the user's information for an access token. Depending on the configured
+ * verification mode the token is either sent to the Keycloak userinfo endpoint, or verified locally
+ * against the realm of the token's tenant and the user's information is read from the token
+ * claims.
+ */
+@Service
+public class UserInfoService {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(UserInfoService.class);
+  private static final InvalidTokenException REVOKED = new InvalidTokenException(
+      "Token has been revoked"
+  );
+  private final KeycloakService keycloakService;
+  private final UserInfoCache userInfoCache;
+  private final RejectedTokenCache rejectedTokenCache;
+  private final RevocationStore revocationStore;
+  private final CacheReplicator cacheReplicator;
+  private final KeycloakConfig keycloakConfig;
+
+  public UserInfoService(
+      KeycloakService keycloakService,
+      UserInfoCache userInfoCache,
+      RejectedTokenCache rejectedTokenCache,
+      RevocationStore revocationStore,
+      CacheReplicator cacheReplicator,
+      KeycloakConfig keycloakConfig
+  ) {
+    this.keycloakService = keycloakService;
+    this.userInfoCache = userInfoCache;
+    this.rejectedTokenCache = rejectedTokenCache;
+    this.revocationStore = revocationStore;
+    this.cacheReplicator = cacheReplicator;
+    this.keycloakConfig = keycloakConfig;
+  }
+
+  /**
+   * Returns the user's information for the given access token. Cached tokens are answered from
+   * memory. In local verification mode Keycloak is only called when the token doesn't carry all
+   * the user claims.
+   *
+   * @param tenant      The tenant that issued the token.
+   * @param accessToken The user's access token.
+   * @return UserMetadata containing the user's information.
+   * @throws HttpStatusCodeException If the request to Keycloak fails - Unauthorized, Bad Request
+   */
+  public UserMetadata fetchUser(KeycloakTenant tenant, String accessToken)
+      throws HttpStatusCodeException {
+    UserMetadata user = fetchUserLocally(tenant, accessToken);
+    if (user != null) {
+      return user;
+    }
+    return fetchUserRemotely(tenant, accessToken);
+  }
+
+  /**
+   * Returns the user's information from the Keycloak userinfo endpoint and caches it.
+   *
+   * @param tenant      The tenant that issued the token.
+   * @param accessToken The user's access token.
+   * @return UserMetadata containing the user's information.
+   * @throws HttpStatusCodeException If the request to Keycloak fails - Unauthorized, Bad Request
+   */
+  public UserMetadata fetchUserRemotely(KeycloakTenant tenant, String accessToken)
+      throws HttpStatusCodeException {
+    long generation = this.userInfoCache.generation();
+    UserMetadata user = this.keycloakService.fetchUser(tenant, accessToken).getBody();
+    cacheUser(tenant, accessToken, user, generation);
+    return user;
+  }
+
+  /**
+   * Resolves the user's information from the cache or the access token itself, without calling
+   * Keycloak. Tokens the RejectedTokenCache knows Keycloak would reject fail right away.
+   *
+   * @param tenant      The tenant that issued the token.
+   * @param accessToken The user's access token.
+   * @return UserMetadata or null if the token isn't cached and local verification is disabled or a
+   * user claim is missing - the caller has to ask the userinfo endpoint then.
+   * @throws InvalidTokenException  If the token fails local verification, has expired or was
+   *                                revoked.
+   * @throws RejectedTokenException If Keycloak rejected the token recently.
+   */
+  public UserMetadata fetchUserLocally(KeycloakTenant tenant, String accessToken)
+      throws InvalidTokenException {
+    UserMetadata cached = this.userInfoCache.get(tenant.getId(), accessToken);
+    if (cached != null) {
+      return cached;
+    }
+    return verifyLocally(tenant, accessToken);
+  }
+
+  /**
+   * Returns the cached user's information without blocking the calling thread - the reactive
+   * execution mode continues with verifyLocally() on a miss.
+   *
+   * @param tenant      The tenant that issued the token.
+   * @param accessToken The user's access token.
+   * @return Mono emitting the UserMetadata, empty if the token isn't cached.
+   */
+  public Mono<UserMetadata> findCachedUser(KeycloakTenant tenant, String accessToken) {
+    return this.userInfoCache.getAsync(tenant.getId(), accessToken);
+  }
+
+  /**
+   * Resolves the user's information of a token that isn't cached from the token itself, without
+   * calling Keycloak. Tokens the RejectedTokenCache knows Keycloak would reject fail right away.
+   *
+   * @param tenant      The tenant that issued the token.
+   * @param accessToken The user's access token.
+   * @return UserMetadata or null if local verification is disabled or a user claim is missing.
+   * @throws InvalidTokenException  If the token fails local verification, has expired or was
+   *                                revoked.
+   * @throws RejectedTokenException If Keycloak rejected the token recently.
+   */
+  public UserMetadata verifyLocally(KeycloakTenant tenant, String accessToken)
+      throws InvalidTokenException {
+    long generation = this.userInfoCache.generation();
+    this.rejectedTokenCache.check(tenant, KeycloakEndpoint.USERINFO, accessToken);
+    if (this.keycloakConfig.getVerification().getMode() != TokenVerificationMode.LOCAL) {
+      return null;
+    }
+    JWTClaimsSet claims;
+    try {
+      claims = tenant.getTokenVerifier().verify(accessToken);
+    } catch (InvalidTokenException e) {
+      this.rejectedTokenCache.record(tenant, KeycloakEndpoint.USERINFO, accessToken, e);
+      throw e;
+    }
+    if (this.revocationStore.isRevoked(claims)) {
+      throw REVOKED;
+    }
+    UserMetadata user = toUserMetadata(claims);
+    if (user == null) {
+      LOGGER.debug("Access token is missing user claims, falling back to userinfo...");
+      return null;
+    }
+    this.userInfoCache.put(tenant.getId(), accessToken, user, claims, generation);
+    return user;
+  }
+
+  /**
+   * Caches the user's information returned by the Keycloak userinfo endpoint - unless the token
+   * was revoked or a logout came in while the endpoint was called.
+   *
+   * @param tenant      The tenant that issued the token.
+   * @param accessToken The user's access token.
+   * @param user        The user's information returned for the token.
+   * @param generation  The UserInfoCache generation read before calling the endpoint.
+   */
+  public void cacheUser(
+      KeycloakTenant tenant,
+      String accessToken,
+      UserMetadata user,
+      long generation
+  ) {
+    this.userInfoCache.put(
+        tenant.getId(), accessToken, user, TokenVerifier.readUnverified(accessToken), generation
+    );
+  }
+
+  /**
+   * Returns the UserInfoCache generation to pass to cacheUser(), read before calling Keycloak.
+   *
+   * @return The current generation of the cache.
+   */
+  public long cacheGeneration() {
+    return this.userInfoCache.generation();
+  }
+
+  /**
+   * Forgets everything known about a token revoked in Keycloak and records the revocation, so the
+   * token is rejected by local verification too - on every instance sharing the user cache.
+   *
+   * @param tenant The tenant that issued the token.
+   * @param token  The revoked JWT token.
+   */
+  public void tokenRevoked(KeycloakTenant tenant, String token) {
+    this.userInfoCache.invalidateToken(tenant.getId(), token);
+    JWTClaimsSet claims = TokenVerifier.readUnverified(token);
+    if (claims != null) {
+      this.revocationStore.tokenRevoked(claims);
+    }
+    this.cacheReplicator.tokenRevoked(tenant.getId(), token, claims);
+  }
+
+  /**
+   * Forgets everything known about the session of a user logged out of Keycloak and records the
+   * end of the session, so its tokens are rejected by local verification too - on every instance
+   * sharing the user cache.
+   *
+   * @param tenant  The tenant that issued the token.
+   * @param idToken The ID token of the logged out user.
+   */
+  public void sessionLoggedOut(KeycloakTenant tenant, String idToken) {
+    this.userInfoCache.invalidateSessionOf(tenant.getId(), idToken);
+    JWTClaimsSet claims = TokenVerifier.readUnverified(idToken);
+    if (claims != null) {
+      this.revocationStore.sessionEnded(claims);
+      this.cacheReplicator.sessionLoggedOut(tenant.getId(), claims);
+    }
+  }
+
+  /**
+   * Builds the user's information from verified token claims.
+   *
+   * @param claims The verified access token claims.
+   * @return UserMetadata or null if any of the required claims is missing.
+   */
+  private UserMetadata toUserMetadata(JWTClaimsSet claims) {
+    try {
+      String username = claims.getStringClaim("preferred_username");
+      String email = claims.getStringClaim("email");
+      Boolean emailVerified = claims.getBooleanClaim("email_verified");
+      if (username == null || email == null || emailVerified == null) {
+        return null;
+      }
+      return new UserMetadata(
+          claims.getSubject(),
+          username,
+          claims.getStringClaim("given_name"),
+          claims.getStringClaim("family_name"),
+          email,
+          emailVerified
+      );
+    } catch (ParseException e) {
+      // A claim has an unexpected type - let the userinfo endpoint decide.
+      return null;
+    }
+  }
+}
@@ -0,0 +1,187 @@
+package io.datadoc.authservice.service;
+
+import graphql.GraphQLContext;
+import graphql.GraphQLError;
+import graphql.execution.DataFetcherResult;
+import graphql.schema.DataFetchingEnvironment;
+import io.datadoc.authservice.config.AuthServiceConfig;
+import io.datadoc.authservice.config.KeycloakConfig;
+import io.datadoc.authservice.exception.TooManyTokensException;
+import io.datadoc.authservice.model.auth.TokenVerificationMode;
+import io.datadoc.authservice.model.auth.UserMetadata;
+import io.datadoc.authservice.resolver.TenantInterceptor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import org.dataloader.BatchLoaderEnvironment;
+import org.dataloader.DataLoader;
+import org.dataloader.Try;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.graphql.execution.BatchLoaderRegistry;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * UserLoader registers the DataLoader resolving access tokens to the user's information. All `me`
+ * and `users` fields of one request share it, so every distinct token is resolved once. Cached and
+ * locally verified tokens are answered right away, the rest call the Keycloak userinfo endpoint
+ * concurrently - up to auth-service.batch.max-concurrency calls at a time. Every token is sent to
+ * the tenant selected by the request, or else to the tenant that issued it.
+ *
+ * <p>In the reactive execution mode, local verification runs on the blocking scheduler, like the
+ * userinfo calls of the blocking mode - a key missing from the cached JWKS is fetched over HTTP.
+ *
+ * <p>A token that fails, e.g. with 401 from Keycloak, only fails its own fields. A `users` field
+ * with more than auth-service.batch.max-tokens tokens fails as a whole, so one operation can't fan
+ * out to an unbounded number of calls.
+ */
+@Component
+public class UserLoader {
+
+  private final UserInfoService userInfoService;
+  private final KeycloakTenants keycloakTenants;
+  private final ReactiveKeycloakService reactiveKeycloakService;
+  private final AuthServiceGraphQLExceptionResolver exceptionResolver;
+  private final Scheduler blockingScheduler;
+  private final boolean localVerification;
+  private final int maxConcurrency;
+  private final int maxTokens;
+
+  public UserLoader(
+      BatchLoaderRegistry batchLoaderRegistry,
+      UserInfoService userInfoService,
+      KeycloakTenants keycloakTenants,
+      ObjectProvider<ReactiveKeycloakService> reactiveKeycloakService,
+      AuthServiceGraphQLExceptionResolver exceptionResolver,
+      AuthServiceConfig authServiceConfig,
+      KeycloakConfig keycloakConfig
+  ) {
+    this.userInfoService = userInfoService;
+    this.keycloakTenants = keycloakTenants;
+    this.reactiveKeycloakService = reactiveKeycloakService.getIfAvailable();
+    this.exceptionResolver = exceptionResolver;
+    this.blockingScheduler = authServiceConfig.getThreads().isVirtual()
+        ? Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), "userinfo")
+        : Schedulers.boundedElastic();
+    this.localVerification =
+        keycloakConfig.getVerification().getMode() == TokenVerificationMode.LOCAL;
+    this.maxConcurrency = authServiceConfig.getBatch().getMaxConcurrency();
+    this.maxTokens = authServiceConfig.getBatch().getMaxTokens();
+    batchLoaderRegistry.forTypePair(String.class, UserMetadata.class)
+        .registerMappedBatchLoader((accessTokens, env) -> loadUsers(accessTokens, tenantId(env)));
+  }
+
+  /**
+   * Resolves a list of tokens. Failed tokens resolve to null, with an error pointing at their index
+   * in the list.
+   *
+   * @param accessTokens The access tokens.
+   * @param loader       The DataLoader of the request.
+   * @param env          The DataFetchingEnvironment of the list field.
+   * @return The user's information for every token, in the order of the tokens - failed with
+   * TooManyTokensException if there are more than auth-service.batch.max-tokens.
+   */
+  public CompletableFuture<DataFetcherResult<List<UserMetadata>>> loadAll(
+      List<String> accessTokens,
+      DataLoader<String, UserMetadata> loader,
+      DataFetchingEnvironment env
+  ) {
+    if (accessTokens.size() > this.maxTokens) {
+      return CompletableFuture.failedFuture(new TooManyTokensException(
+          "At most " + this.maxTokens + " access tokens can be passed at once"));
+    }
+    List<CompletableFuture<UserMetadata>> users = accessTokens.stream().map(loader::load).toList();
+    return CompletableFuture.allOf(users.stream()
+            .map(user -> user.exceptionally(e -> null))
+            .toArray(CompletableFuture[]::new))
+        .thenApply(ignored -> {
+          List<UserMetadata> data = new ArrayList<>(users.size());
+          List<GraphQLError> errors = new ArrayList<>();
+          for (int i = 0; i < users.size(); i++) {
+            CompletableFuture<UserMetadata> user = users.get(i);
+            if (user.isCompletedExceptionally()) {
+              data.add(null);
+              errors.add(this.exceptionResolver.resolveElementError(
+                  user.handle((value, e) -> e).join(), env, i
+              ));
+            } else {
+              data.add(user.join());
+            }
+          }
+          return DataFetcherResult.<List<UserMetadata>>newResult()
+              .data(data)
+              .errors(errors)
+              .build();
+        });
+  }
+
+  /**
+   * The DataLoader completes the futures of failed tokens exceptionally when their value is a
+   * failed Try. Values are typed as UserMetadata by the registry, hence the cast of the map.
+   */
+  @SuppressWarnings("unchecked")
+  private Mono<Map<String, UserMetadata>> loadUsers(Set<String> accessTokens, String tenantId) {
+    Mono<? extends Map<String, ?>> users = Flux.fromIterable(accessTokens)
+        .flatMap(accessToken -> loadUser(accessToken, tenantId)
+                .<Object>map(user -> user)
+                .onErrorResume(e -> Mono.just(Try.failed(e)))
+                .map(user -> Map.entry(accessToken, user)),
+            this.maxConcurrency)
+        .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    return (Mono<Map<String, UserMetadata>>) users;
+  }
+
+  /**
+   * Resolves one token the way the DataLoader does - from the cache, by local verification or from
+   * the Keycloak userinfo endpoint. Used by the callers outside of GraphQL, e.g. the gRPC service.
+   *
+   * @param accessToken The user's access token.
+   * @param tenantId    The selected tenant, the token's issuer if null.
+   * @return Mono emitting the user's information.
+   */
+  public Mono<UserMetadata> loadUser(String accessToken, String tenantId) {
+    return Mono.fromCallable(() -> this.keycloakTenants.resolve(tenantId, accessToken))
+        .flatMap(tenant -> loadUser(accessToken, tenant));
+  }
+
+  private Mono<UserMetadata> loadUser(String accessToken, KeycloakTenant tenant) {
+    if (this.reactiveKeycloakService != null) {
+      // The shared cache is read without blocking the event loop, the verification off it.
+      Mono<UserMetadata> verified = Mono.fromCallable(
+          () -> this.userInfoService.verifyLocally(tenant, accessToken)
+      );
+      Mono<UserMetadata> local = this.userInfoService.findCachedUser(tenant, accessToken)
+          .switchIfEmpty(this.localVerification
+              ? verified.subscribeOn(this.blockingScheduler)
+              : verified);
+      return local.switchIfEmpty(Mono.defer(() -> {
+        long generation = this.userInfoService.cacheGeneration();
+        return this.reactiveKeycloakService.fetchUser(tenant, accessToken)
+            .doOnNext(user -> this.userInfoService.cacheUser(
+                tenant, accessToken, user, generation
+            ));
+      }));
+    }
+    Mono<UserMetadata> local = Mono.fromCallable(
+        () -> this.userInfoService.fetchUserLocally(tenant, accessToken)
+    );
+    return local.switchIfEmpty(Mono.fromCallable(
+            () -> this.userInfoService.fetchUserRemotely(tenant, accessToken))
+        .subscribeOn(this.blockingScheduler));
+  }
+
+  /**
+   * The DataLoader's context is the GraphQLContext of the request.
+   */
+  private static String tenantId(BatchLoaderEnvironment env) {
+    return env.getContext() instanceof GraphQLContext context
+        ? context.get(TenantInterceptor.TENANT_ID)
+        : null;
+  }
+}
@@ -0,0 +1,77 @@
+package io.datadoc.authservice.service;
+
+import io.datadoc.authservice.config.AuthServiceConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.stream.Collectors;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+/**
+ * VirtualThreadPinningMonitor reports virtual threads pinned to their carrier thread - typically by
+ * blocking inside a synchronized block on the request path. It listens to the JFR
+ * jdk.VirtualThreadPinned event from startup, logs the offending stack trace and counts the
+ * occurrences in the jvm.threads.virtual.pinned metric.
+ */
+@Service
+@ConditionalOnProperty(prefix = "auth-service.threads", name = "virtual", havingValue = "true")
+public class VirtualThreadPinningMonitor implements SmartLifecycle {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+  private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+  private static final int REPORTED_FRAMES = 8;
+  private final AuthServiceConfig authServiceConfig;
+  private final Counter pinnedCounter;
+  private RecordingStream recordingStream;
+
+  public VirtualThreadPinningMonitor(
+      AuthServiceConfig authServiceConfig,
+      MeterRegistry meterRegistry
+  ) {
+    this.authServiceConfig = authServiceConfig;
+    this.pinnedCounter = Counter.builder("jvm.threads.virtual.pinned")
+        .description("Virtual threads pinned to their carrier while blocking")
+        .register(meterRegistry);
+  }
+
+  @Override
+  public void start() {
+    this.recordingStream = new RecordingStream();
+    this.recordingStream.enable(PINNED_EVENT)
+        .withThreshold(this.authServiceConfig.getThreads().getPinnedThreshold())
+        .withStackTrace();
+    this.recordingStream.onEvent(PINNED_EVENT, this::reportPinnedThread);
+    this.recordingStream.startAsync();
+    LOGGER.info("Virtual threads enabled, reporting pinned threads blocked for longer than {}",
+        this.authServiceConfig.getThreads().getPinnedThreshold());
+  }
+
+  @Override
+  public void stop() {
+    this.recordingStream.close();
+    this.recordingStream = null;
+  }
+
+  @Override
+  public boolean isRunning() {
+    return this.recordingStream != null;
+  }
+
+  private void reportPinnedThread(RecordedEvent event) {
+    this.pinnedCounter.increment();
+    RecordedStackTrace stackTrace = event.getStackTrace();
+    String frames = stackTrace == null ? "<no stack trace>" : stackTrace.getFrames().stream()
+        .limit(REPORTED_FRAMES)
+        .map(frame -> frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+            + ":" + frame.getLineNumber())
+        .collect(Collectors.joining("\n\tat "));
+    LOGGER.warn("Virtual thread pinned for {} ms:\n\tat {}",
+        event.getDuration().toMillis(), frames);
+  }
+}
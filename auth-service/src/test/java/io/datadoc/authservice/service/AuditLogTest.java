@@ -0,0 +1,123 @@
+package io.datadoc.authservice.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.datadoc.authservice.config.AuthServiceConfig;
+import io.datadoc.authservice.model.audit.AuditOperation;
+import io.datadoc.authservice.model.audit.AuditOverflowPolicy;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class AuditLogTest {
+
+  // Rounded up to a power of two - the buffer holds exactly this many events.
+  private static final int BUFFER_SIZE = 4;
+  private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final BlockingSink sink = new BlockingSink();
+
+  @Test
+  void dropsEventsWhenTheBufferIsFull() throws InterruptedException {
+    AuditLog auditLog = auditLog(AuditOverflowPolicy.DROP);
+    record(auditLog, 0);
+    this.sink.awaitFirstWrite();
+
+    for (int i = 1; i < 10; i++) {
+      record(auditLog, i);
+    }
+    this.sink.release();
+    auditLog.close();
+
+    assertThat(this.sink.usernames).containsExactly("0", "1", "2", "3");
+    assertThat(this.sink.dropped).hasValue(6);
+    assertThat(events("written")).isEqualTo(4);
+    assertThat(events("dropped")).isEqualTo(6);
+  }
+
+  @Test
+  void blocksUntilTheWriterFreesASlot() throws Exception {
+    AuditLog auditLog = auditLog(AuditOverflowPolicy.BLOCK);
+    record(auditLog, 0);
+    this.sink.awaitFirstWrite();
+
+    CompletableFuture<Void> producer = CompletableFuture.runAsync(() -> {
+      for (int i = 1; i < 6; i++) {
+        record(auditLog, i);
+      }
+    });
+    Thread.sleep(200);
+    assertThat(producer).isNotDone();
+
+    this.sink.release();
+    producer.get(5, TimeUnit.SECONDS);
+    auditLog.close();
+
+    assertThat(this.sink.usernames)
+        .containsExactlyElementsOf(IntStream.range(0, 6).mapToObj(String::valueOf).toList());
+    assertThat(this.sink.dropped).hasValue(0);
+    assertThat(events("dropped")).isZero();
+  }
+
+  private AuditLog auditLog(AuditOverflowPolicy overflow) {
+    AuthServiceConfig authServiceConfig = new AuthServiceConfig();
+    authServiceConfig.getAudit().setBufferSize(BUFFER_SIZE);
+    authServiceConfig.getAudit().setOverflow(overflow);
+    authServiceConfig.getAudit().setPollInterval(Duration.ofMillis(1));
+    return new AuditLog(authServiceConfig, this.sink, this.meterRegistry);
+  }
+
+  private static void record(AuditLog auditLog, int username) {
+    auditLog.record(AuditOperation.LOGIN, "acme", String.valueOf(username), null, () -> "ok");
+  }
+
+  private double events(String outcome) {
+    return this.meterRegistry.get("audit.events").tag("outcome", outcome).counter().count();
+  }
+
+  /**
+   * Holds the writer in its first write until released, so the buffer fills up.
+   */
+  private static final class BlockingSink implements AuditSink {
+
+    private final List<String> usernames = new CopyOnWriteArrayList<>();
+    private final AtomicLong dropped = new AtomicLong();
+    private final CountDownLatch firstWrite = new CountDownLatch(1);
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    @Override
+    public void write(AuditEvent event) {
+      this.firstWrite.countDown();
+      try {
+        assertThat(this.released.await(5, TimeUnit.SECONDS)).isTrue();
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      this.usernames.add(event.getUsername());
+    }
+
+    @Override
+    public void writeDropped(long count, long timestampMillis) {
+      this.dropped.addAndGet(count);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    void awaitFirstWrite() throws InterruptedException {
+      assertThat(this.firstWrite.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    void release() {
+      this.released.countDown();
+    }
+  }
+}
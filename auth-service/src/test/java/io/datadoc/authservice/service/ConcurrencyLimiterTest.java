@@ -0,0 +1,98 @@
+package io.datadoc.authservice.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.datadoc.authservice.config.AuthServiceConfig;
+import io.datadoc.authservice.exception.OverloadedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class ConcurrencyLimiterTest {
+
+  private static final int INITIAL_LIMIT = 10;
+  private static final long RTT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+  private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final ConcurrencyLimiter limiter = limiter();
+
+  @Test
+  void shedsLowPriorityOperationsFirst() {
+    // LOW may fill 60% of the limit, HIGH all of it.
+    acquire("login", 6);
+    assertThatThrownBy(() -> this.limiter.acquire("login"))
+        .isInstanceOf(OverloadedException.class);
+
+    acquire("me", 4);
+    assertThatThrownBy(() -> this.limiter.acquire("me"))
+        .isInstanceOf(OverloadedException.class);
+    assertThat(shed("login")).isEqualTo(1);
+    assertThat(shed("me")).isEqualTo(1);
+  }
+
+  @Test
+  void admitsAgainOnceReleased() {
+    acquire("me", INITIAL_LIMIT);
+    assertThatThrownBy(() -> this.limiter.acquire("me"))
+        .isInstanceOf(OverloadedException.class);
+
+    this.limiter.release();
+
+    this.limiter.acquire("me");
+  }
+
+  @Test
+  void growsWhileTheRttIsSteady() {
+    acquire("me", INITIAL_LIMIT);
+
+    for (int i = 0; i < 10; i++) {
+      this.limiter.onSample(RTT_NANOS);
+    }
+
+    assertThat(limit()).isGreaterThan(INITIAL_LIMIT);
+  }
+
+  @Test
+  void shrinksOnceTheRttRises() {
+    acquire("me", INITIAL_LIMIT);
+    this.limiter.onSample(RTT_NANOS);
+    double steady = limit();
+
+    this.limiter.onSample(RTT_NANOS * 10);
+
+    assertThat(limit()).isLessThan(steady);
+  }
+
+  @Test
+  void ignoresSamplesWhileTheLimitIsMostlyUnused() {
+    acquire("me", INITIAL_LIMIT / 2 - 1);
+
+    this.limiter.onSample(RTT_NANOS);
+    this.limiter.onSample(RTT_NANOS * 10);
+
+    assertThat(limit()).isEqualTo(INITIAL_LIMIT);
+  }
+
+  private ConcurrencyLimiter limiter() {
+    AuthServiceConfig authServiceConfig = new AuthServiceConfig();
+    authServiceConfig.getConcurrencyLimit().setInitialLimit(INITIAL_LIMIT);
+    authServiceConfig.getConcurrencyLimit().setMinLimit(1);
+    return new ConcurrencyLimiter(authServiceConfig, this.meterRegistry);
+  }
+
+  private void acquire(String operation, int count) {
+    for (int i = 0; i < count; i++) {
+      this.limiter.acquire(operation);
+    }
+  }
+
+  private double limit() {
+    return this.meterRegistry.get("graphql.concurrency.limit").gauge().value();
+  }
+
+  private double shed(String operation) {
+    return this.meterRegistry.get("graphql.concurrency.shed").tag("operation", operation)
+        .counter().count();
+  }
+}
@@ -0,0 +1,70 @@
+package io.datadoc.authservice.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class RevocationTableTest {
+
+  private static final long NOW = 1_700_000_000L;
+
+  @Test
+  void containsAnEntryUntilItExpires() {
+    RevocationTable table = new RevocationTable(16);
+
+    table.put(42, NOW + 60, NOW);
+
+    assertThat(table.contains(42, NOW)).isTrue();
+    assertThat(table.contains(42, NOW + 60)).isFalse();
+    assertThat(table.contains(43, NOW)).isFalse();
+  }
+
+  @Test
+  void extendsTheExpiryOfAnEntryAddedAgain() {
+    RevocationTable table = new RevocationTable(16);
+
+    table.put(42, NOW + 60, NOW);
+    table.put(42, NOW + 120, NOW);
+    table.put(42, NOW + 30, NOW);
+
+    assertThat(table.contains(42, NOW + 90)).isTrue();
+    assertThat(table.size()).isEqualTo(1);
+  }
+
+  @Test
+  void growsAndKeepsCollidingEntries() {
+    RevocationTable table = new RevocationTable(16);
+    Map<Long, Long> entries = new HashMap<>();
+    // Multiples of the 32 slots all start probing at the same slot.
+    for (long i = 1; i <= 1_000; i++) {
+      entries.put(i * 32, NOW + i);
+      table.put(i * 32, NOW + i, NOW);
+    }
+
+    for (long hash : entries.keySet()) {
+      assertThat(table.contains(hash, NOW)).isTrue();
+    }
+    assertThat(table.size()).isEqualTo(1_000);
+    Map<Long, Long> listed = new HashMap<>();
+    table.forEach(NOW, listed::put);
+    assertThat(listed).isEqualTo(entries);
+  }
+
+  @Test
+  void dropsExpiredEntriesWhenRebuilt() {
+    RevocationTable table = new RevocationTable(16);
+    // Fills the 32 slots of the table up to the load factor.
+    for (long i = 1; i <= 16; i++) {
+      table.put(i, NOW + 1, NOW);
+    }
+
+    // The table is rebuilt without the expired entries.
+    table.put(100, NOW + 60, NOW + 10);
+
+    assertThat(table.size()).isEqualTo(1);
+    assertThat(table.contains(100, NOW + 10)).isTrue();
+    assertThat(table.contains(1, NOW)).isFalse();
+  }
+}
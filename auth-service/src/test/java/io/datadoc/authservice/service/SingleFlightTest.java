@@ -0,0 +1,191 @@
+package io.datadoc.authservice.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+class SingleFlightTest {
+
+  private static final int FOLLOWERS = 8;
+  private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private SingleFlight<String, String> singleFlight;
+  private ExecutorService executor;
+
+  @BeforeEach
+  void setUp() {
+    this.singleFlight = new SingleFlight<>("test", this.meterRegistry);
+    this.executor = Executors.newCachedThreadPool();
+  }
+
+  @AfterEach
+  void tearDown() {
+    this.executor.shutdownNow();
+  }
+
+  @Test
+  void executeCoalescesConcurrentCalls() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    List<Future<String>> results = startCalls(() -> {
+      calls.incrementAndGet();
+      await(release);
+      return "result";
+    });
+    release.countDown();
+
+    for (Future<String> result : results) {
+      assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+    }
+    assertThat(calls).hasValue(1);
+    assertThat(coalesced()).isEqualTo(FOLLOWERS);
+  }
+
+  @Test
+  void executeSharesAnErrorOfTheLeaderAndForgetsTheCall() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    List<Future<String>> results = startCalls(() -> {
+      await(release);
+      throw new AssertionError("leader failed");
+    });
+    release.countDown();
+
+    for (Future<String> result : results) {
+      assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+          .isInstanceOf(ExecutionException.class)
+          .hasRootCauseInstanceOf(AssertionError.class);
+    }
+    assertThat(this.singleFlight.execute("key", () -> "next")).isEqualTo("next");
+  }
+
+  @Test
+  void executeAsyncCoalescesConcurrentSubscribers() {
+    AtomicInteger calls = new AtomicInteger();
+    Sinks.One<String> response = Sinks.one();
+    Mono<String> call = this.singleFlight.executeAsync("key", () -> {
+      calls.incrementAndGet();
+      return response.asMono();
+    });
+    CompletableFuture<String> first = call.toFuture();
+    CompletableFuture<String> second = call.toFuture();
+
+    response.tryEmitValue("result");
+
+    assertThat(first.join()).isEqualTo("result");
+    assertThat(second.join()).isEqualTo("result");
+    assertThat(calls).hasValue(1);
+    assertThat(coalesced()).isEqualTo(1);
+  }
+
+  @Test
+  void executeAsyncSharesAnError() {
+    Sinks.One<String> response = Sinks.one();
+    Mono<String> call = this.singleFlight.executeAsync("key", response::asMono);
+    CompletableFuture<String> first = call.toFuture();
+    CompletableFuture<String> second = call.toFuture();
+
+    response.tryEmitError(new IllegalStateException("unauthorized"));
+
+    assertThatThrownBy(first::join).hasCauseInstanceOf(IllegalStateException.class);
+    assertThatThrownBy(second::join).hasCauseInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void executeAsyncForgetsACallThatThrows() {
+    Mono<String> failed = this.singleFlight.executeAsync("key", () -> {
+      throw new IllegalStateException("no client");
+    });
+
+    assertThatThrownBy(() -> failed.block(Duration.ofSeconds(5)))
+        .isInstanceOf(IllegalStateException.class);
+    assertThat(this.singleFlight.executeAsync("key", () -> Mono.just("next"))
+        .block(Duration.ofSeconds(5))).isEqualTo("next");
+  }
+
+  @Test
+  void executeAsyncKeepsTheCallWhenTheLeaderCancels() {
+    AtomicInteger cancelled = new AtomicInteger();
+    Sinks.One<String> response = Sinks.one();
+    Mono<String> call = this.singleFlight.executeAsync("key",
+        () -> response.asMono().doOnCancel(cancelled::incrementAndGet));
+    Disposable leader = call.subscribe();
+    CompletableFuture<String> follower = call.toFuture();
+
+    leader.dispose();
+    response.tryEmitValue("result");
+
+    assertThat(follower.join()).isEqualTo("result");
+    assertThat(cancelled).hasValue(0);
+  }
+
+  @Test
+  void executeAsyncCancelsTheCallWhenEverySubscriberCancels() {
+    AtomicInteger cancelled = new AtomicInteger();
+    Sinks.One<String> response = Sinks.one();
+    Mono<String> call = this.singleFlight.executeAsync("key",
+        () -> response.asMono().doOnCancel(cancelled::incrementAndGet));
+    Disposable leader = call.subscribe();
+    Disposable follower = call.subscribe();
+
+    leader.dispose();
+    follower.dispose();
+
+    assertThat(cancelled).hasValue(1);
+    assertThat(this.singleFlight.executeAsync("key", () -> Mono.just("next"))
+        .block(Duration.ofSeconds(5))).isEqualTo("next");
+  }
+
+  /**
+   * Starts the leader and the followers, and returns once every follower waits for the leader.
+   */
+  private List<Future<String>> startCalls(Supplier<String> call)
+      throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(1);
+    List<Future<String>> results = new ArrayList<>();
+    results.add(this.executor.submit(() -> this.singleFlight.execute("key", () -> {
+      started.countDown();
+      return call.get();
+    })));
+    assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+    for (int i = 0; i < FOLLOWERS; i++) {
+      results.add(this.executor.submit(
+          () -> this.singleFlight.execute("key", () -> "not coalesced")));
+    }
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (coalesced() < FOLLOWERS && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    return results;
+  }
+
+  private double coalesced() {
+    return this.meterRegistry.get("keycloak.requests.coalesced").counter().count();
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package io.datadoc.authservice.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class TokenBucketLimiterTest {
+
+  private static final int ATTEMPTS = 3;
+  private static final Duration PERIOD = Duration.ofMillis(600);
+
+  @Test
+  void allowsABurstOfAttemptsThenRejects() {
+    TokenBucketLimiter limiter = new TokenBucketLimiter(ATTEMPTS, PERIOD, 4, Duration.ofHours(1));
+
+    for (int i = 0; i < ATTEMPTS; i++) {
+      assertThat(limiter.tryAcquire("key")).isEqualTo(TokenBucketLimiter.ALLOWED);
+    }
+    long wait = limiter.tryAcquire("key");
+
+    assertThat(wait).isPositive().isLessThanOrEqualTo(PERIOD.toNanos() / ATTEMPTS);
+  }
+
+  @Test
+  void keepsTheBucketsOfKeysApart() {
+    TokenBucketLimiter limiter = new TokenBucketLimiter(1, PERIOD, 4, Duration.ofHours(1));
+
+    assertThat(limiter.tryAcquire("first")).isEqualTo(TokenBucketLimiter.ALLOWED);
+    assertThat(limiter.tryAcquire("first")).isPositive();
+    assertThat(limiter.tryAcquire("second")).isEqualTo(TokenBucketLimiter.ALLOWED);
+  }
+
+  @Test
+  void refillsOneTokenPerInterval() throws InterruptedException {
+    TokenBucketLimiter limiter = new TokenBucketLimiter(ATTEMPTS, PERIOD, 4, Duration.ofHours(1));
+    for (int i = 0; i < ATTEMPTS; i++) {
+      limiter.tryAcquire("key");
+    }
+
+    long wait = limiter.tryAcquire("key");
+    TimeUnit.NANOSECONDS.sleep(wait);
+
+    assertThat(limiter.tryAcquire("key")).isEqualTo(TokenBucketLimiter.ALLOWED);
+    assertThat(limiter.tryAcquire("key")).isPositive();
+  }
+
+  @Test
+  void dropsFullBucketsOnTheSweep() throws InterruptedException {
+    TokenBucketLimiter limiter = new TokenBucketLimiter(ATTEMPTS, PERIOD, 1, PERIOD);
+    limiter.tryAcquire("first");
+    assertThat(limiter.size()).isEqualTo(1);
+
+    TimeUnit.NANOSECONDS.sleep(PERIOD.toNanos() * 2);
+    limiter.tryAcquire("second");
+
+    assertThat(limiter.size()).isEqualTo(1);
+  }
+}
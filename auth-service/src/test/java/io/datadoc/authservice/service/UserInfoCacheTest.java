@@ -0,0 +1,55 @@
+package io.datadoc.authservice.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.PlainJWT;
+import io.datadoc.authservice.config.AuthServiceConfig;
+import io.datadoc.authservice.model.auth.UserMetadata;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Date;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+class UserInfoCacheTest {
+
+  private static final String TENANT_ID = "acme";
+  private static final UserMetadata USER =
+      new UserMetadata("user-id", "user", "First", "Last", "user@example.com", true);
+
+  @Test
+  void invalidatesASessionAfterItsTokenWasCachedAgain() {
+    UserInfoCache cache = userInfoCache();
+    JWTClaimsSet claims = new JWTClaimsSet.Builder()
+        .subject(USER.id())
+        .claim("sid", "session")
+        .expirationTime(new Date(System.currentTimeMillis() + 60_000))
+        .build();
+    String accessToken = new PlainJWT(claims).serialize();
+
+    cache.put(TENANT_ID, accessToken, USER, claims, cache.generation());
+    cache.put(TENANT_ID, accessToken, USER, claims, cache.generation());
+    // Removal listeners run on the common pool.
+    ForkJoinPool.commonPool().awaitQuiescence(5, TimeUnit.SECONDS);
+    cache.invalidateSessionOf(TENANT_ID, accessToken);
+
+    assertThat(cache.get(TENANT_ID, accessToken)).isNull();
+  }
+
+  private static UserInfoCache userInfoCache() {
+    AuthServiceConfig authServiceConfig = new AuthServiceConfig();
+    // Without revocations only the session index removes the entries of a logged-out session.
+    authServiceConfig.getRevocation().setEnabled(false);
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    return new UserInfoCache(
+        authServiceConfig,
+        new RevocationStore(authServiceConfig, meterRegistry),
+        new DefaultListableBeanFactory().getBeanProvider(SharedCacheStore.class),
+        new ObjectMapper(),
+        meterRegistry
+    );
+  }
+}
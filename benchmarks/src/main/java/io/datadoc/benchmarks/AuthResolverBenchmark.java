@@ -0,0 +1,157 @@
+package io.datadoc.benchmarks;
+
+import io.datadoc.authservice.AuthServiceApplication;
+import io.datadoc.keycloakstub.KeycloakStub;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.graphql.ExecutionGraphQlResponse;
+import org.springframework.graphql.ExecutionGraphQlService;
+import org.springframework.graphql.support.DefaultExecutionGraphQlRequest;
+
+/**
+ * Runs every AuthResolver operation through the ExecutionGraphQlService of a real auth-service
+ * context, which talks to the in-process KeycloakStub over HTTP. Only the web server is left out,
+ * so the numbers cover GraphQL execution, the resolvers, the Keycloak client and the stub's
+ * latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AuthResolverBenchmark {
+
+  private static final String LOGIN = """
+      mutation Login($email: String!, $password: String!) {
+        login(credentials: {email: $email, password: $password}) {
+          accessToken refreshToken idToken expiresIn
+        }
+      }""";
+  private static final String ME = """
+      query Me($accessToken: String!) {
+        me(accessToken: $accessToken) { id username email emailVerified }
+      }""";
+  private static final String REFRESH = """
+      mutation Refresh($refreshToken: String!) {
+        refresh(refreshToken: $refreshToken) { accessToken refreshToken expiresIn }
+      }""";
+  private static final String LOGOUT = """
+      mutation Logout($idToken: String!) { logout(idToken: $idToken) }""";
+  private static final String REVOKE = """
+      mutation Revoke($token: String!) { revoke(token: $token) }""";
+  private static final Map<String, Object> CREDENTIALS = Map.of(
+      "email", "user1@mockrealm.com",
+      "password", "user1pass"
+  );
+
+  /**
+   * Latency the stub adds to every Keycloak response.
+   */
+  @Param({"1"})
+  public long latencyMillis;
+
+  /**
+   * REMOTE or LOCAL - see keycloak.verification.mode.
+   */
+  @Param({"REMOTE", "LOCAL"})
+  public String verificationMode;
+
+  @Param({"false"})
+  public boolean userCache;
+
+  private KeycloakStub keycloakStub;
+  private ConfigurableApplicationContext context;
+  private ExecutionGraphQlService graphQlService;
+  private String accessToken;
+  private String refreshToken;
+  private String idToken;
+
+  @Setup
+  public void setUp() {
+    this.keycloakStub = KeycloakStub.builder()
+        .latency(Duration.ofMillis(this.latencyMillis))
+        .build()
+        .start();
+    // Command line arguments, as application.yaml takes precedence over default properties.
+    this.context = new SpringApplicationBuilder(AuthServiceApplication.class)
+        .web(WebApplicationType.NONE)
+        .bannerMode(Banner.Mode.OFF)
+        .run(
+            "--keycloak.realm=" + this.keycloakStub.getRealm(),
+            "--keycloak.client.id=auth-api",
+            "--keycloak.client.secret=secret",
+            "--keycloak.base-url=" + this.keycloakStub.getBaseUrl(),
+            "--keycloak.protocol=openid-connect",
+            "--keycloak.verification.mode=" + this.verificationMode,
+            "--auth-service.user-cache.enabled=" + this.userCache,
+            "--logging.level.root=WARN"
+        );
+    this.graphQlService = this.context.getBean(ExecutionGraphQlService.class);
+
+    Map<String, Object> tokens = execute(LOGIN, CREDENTIALS).field("login").getValue();
+    this.accessToken = (String) tokens.get("accessToken");
+    this.refreshToken = (String) tokens.get("refreshToken");
+    this.idToken = (String) tokens.get("idToken");
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.context.close();
+    this.keycloakStub.close();
+  }
+
+  @Benchmark
+  public ExecutionGraphQlResponse login() {
+    return execute(LOGIN, CREDENTIALS);
+  }
+
+  @Benchmark
+  public ExecutionGraphQlResponse me() {
+    return execute(ME, Map.of("accessToken", this.accessToken));
+  }
+
+  @Benchmark
+  public ExecutionGraphQlResponse refresh() {
+    return execute(REFRESH, Map.of("refreshToken", this.refreshToken));
+  }
+
+  @Benchmark
+  public ExecutionGraphQlResponse logout() {
+    return execute(LOGOUT, Map.of("idToken", this.idToken));
+  }
+
+  @Benchmark
+  public ExecutionGraphQlResponse revoke() {
+    return execute(REVOKE, Map.of("token", this.refreshToken));
+  }
+
+  /**
+   * Executes the operation and fails the benchmark if it returned errors, so a misconfigured run
+   * doesn't end up measuring error handling.
+   */
+  private ExecutionGraphQlResponse execute(String document, Map<String, Object> variables) {
+    ExecutionGraphQlResponse response = this.graphQlService.execute(
+        new DefaultExecutionGraphQlRequest(document, null, variables, null,
+            UUID.randomUUID().toString(), Locale.ENGLISH)
+    ).block();
+    if (response == null || !response.getErrors().isEmpty()) {
+      throw new IllegalStateException("GraphQL operation failed: "
+          + (response == null ? "no response" : response.getErrors()));
+    }
+    return response;
+  }
+}
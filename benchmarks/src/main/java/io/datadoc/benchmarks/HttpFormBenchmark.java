@@ -0,0 +1,101 @@
+package io.datadoc.benchmarks;
+
+import io.datadoc.authservice.model.http.HttpGrantType;
+import io.datadoc.authservice.model.http.HttpScope;
+import io.datadoc.authservice.service.HttpFormTemplate;
+import io.datadoc.authservice.service.HttpService;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.FormHttpMessageConverter;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+/**
+ * Measures building the Keycloak token request form and writing it the way the RestTemplate does,
+ * i.e. with the FormHttpMessageConverter, against rendering it from a shared HttpFormTemplate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HttpFormBenchmark {
+
+  private final HttpService httpService = new HttpService();
+  private final FormHttpMessageConverter converter = new FormHttpMessageConverter();
+  private final BufferedOutputMessage outputMessage = new BufferedOutputMessage();
+  private final HttpFormTemplate loginTemplate = HttpFormTemplate.builder()
+      .with("grant_type", HttpGrantType.PASSWORD.getGrantType())
+      .with("client_id", "auth-api")
+      .with("client_secret", "2tVsMVbnQ6pRclPzNyixNbYxQ6nUJDbf")
+      .with("scope", HttpScope.OPENID.getScope())
+      .withVariable("username")
+      .withVariable("password")
+      .build();
+
+  @Benchmark
+  public MultiValueMap<String, String> buildLoginForm() {
+    return loginForm();
+  }
+
+  @Benchmark
+  public HttpHeaders buildFormHeaders() {
+    return this.httpService.getHttpFormHeaders();
+  }
+
+  @Benchmark
+  public int writeLoginForm() throws IOException {
+    this.outputMessage.reset();
+    this.converter.write(loginForm(), MediaType.APPLICATION_FORM_URLENCODED, this.outputMessage);
+    return this.outputMessage.body.size();
+  }
+
+  @Benchmark
+  public byte[] renderLoginForm() {
+    return this.loginTemplate.render("user1@mockrealm.com", "user1pass");
+  }
+
+  private static MultiValueMap<String, String> loginForm() {
+    MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+    form.add("grant_type", HttpGrantType.PASSWORD.getGrantType());
+    form.add("client_id", "auth-api");
+    form.add("client_secret", "2tVsMVbnQ6pRclPzNyixNbYxQ6nUJDbf");
+    form.add("username", "user1@mockrealm.com");
+    form.add("password", "user1pass");
+    form.add("scope", HttpScope.OPENID.getScope());
+    return form;
+  }
+
+  /**
+   * HttpOutputMessage writing into a reusable in-memory buffer.
+   */
+  private static final class BufferedOutputMessage implements HttpOutputMessage {
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(512);
+    private HttpHeaders headers = new HttpHeaders();
+
+    void reset() {
+      this.body.reset();
+      this.headers = new HttpHeaders();
+    }
+
+    @Override
+    public OutputStream getBody() {
+      return this.body;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return this.headers;
+    }
+  }
+}
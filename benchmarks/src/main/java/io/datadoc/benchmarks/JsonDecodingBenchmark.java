@@ -0,0 +1,99 @@
+package io.datadoc.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.datadoc.authservice.model.auth.JwtPayload;
+import io.datadoc.authservice.model.auth.UserMetadata;
+import io.datadoc.authservice.service.KeycloakResponseDecoder;
+import io.datadoc.keycloakstub.KeycloakStub;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures decoding the Keycloak token and userinfo responses into JwtPayload and UserMetadata,
+ * with Jackson's data binding and with the streaming KeycloakResponseDecoder. The response bodies
+ * are captured from the KeycloakStub once, so the token sizes match the ones seen by the service.
+ * Run with -prof gc to compare the allocation per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JsonDecodingBenchmark {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final ObjectReader jwtPayloadReader = this.objectMapper.readerFor(JwtPayload.class);
+  private final ObjectReader userMetadataReader = this.objectMapper.readerFor(UserMetadata.class);
+  private final KeycloakResponseDecoder responseDecoder = new KeycloakResponseDecoder();
+  private byte[] tokenResponse;
+  private byte[] userInfoResponse;
+
+  @Setup
+  public void setUp() throws IOException, InterruptedException {
+    try (KeycloakStub keycloakStub = KeycloakStub.builder().build().start();
+        HttpClient httpClient = HttpClient.newHttpClient()) {
+      String endpoints = keycloakStub.getIssuer() + "/protocol/openid-connect/";
+      this.tokenResponse = httpClient.send(HttpRequest.newBuilder(URI.create(endpoints + "token"))
+              .header("Content-Type", "application/x-www-form-urlencoded")
+              .POST(HttpRequest.BodyPublishers.ofString(
+                  "grant_type=password&username=user1%40mockrealm.com&password=user1pass"))
+              .build(),
+          HttpResponse.BodyHandlers.ofByteArray()
+      ).body();
+      String accessToken = this.objectMapper.readValue(this.tokenResponse, JwtPayload.class)
+          .accessToken();
+      this.userInfoResponse = httpClient.send(
+          HttpRequest.newBuilder(URI.create(endpoints + "userinfo"))
+              .header("Authorization", "Bearer " + accessToken)
+              .GET()
+              .build(),
+          HttpResponse.BodyHandlers.ofByteArray()
+      ).body();
+    }
+  }
+
+  @Benchmark
+  public JwtPayload decodeJwtPayload() throws IOException {
+    return this.objectMapper.readValue(this.tokenResponse, JwtPayload.class);
+  }
+
+  @Benchmark
+  public JwtPayload decodeJwtPayloadWithReader() throws IOException {
+    return this.jwtPayloadReader.readValue(this.tokenResponse);
+  }
+
+  @Benchmark
+  public UserMetadata decodeUserMetadata() throws IOException {
+    return this.objectMapper.readValue(this.userInfoResponse, UserMetadata.class);
+  }
+
+  @Benchmark
+  public UserMetadata decodeUserMetadataWithReader() throws IOException {
+    return this.userMetadataReader.readValue(this.userInfoResponse);
+  }
+
+  @Benchmark
+  public JwtPayload decodeJwtPayloadStreaming() throws IOException {
+    return this.responseDecoder.decode(
+        new ByteArrayInputStream(this.tokenResponse), JwtPayload.class
+    );
+  }
+
+  @Benchmark
+  public UserMetadata decodeUserMetadataStreaming() throws IOException {
+    return this.responseDecoder.decode(
+        new ByteArrayInputStream(this.userInfoResponse), UserMetadata.class
+    );
+  }
+}
@@ -0,0 +1,163 @@
+package io.datadoc.benchmarks;
+
+import io.datadoc.authservice.AuthServiceApplication;
+import io.datadoc.keycloakstub.KeycloakStub;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.graphql.ExecutionGraphQlResponse;
+import org.springframework.graphql.ExecutionGraphQlService;
+import org.springframework.graphql.support.DefaultExecutionGraphQlRequest;
+
+/**
+ * Runs the `me` query against a cluster of in-process KeycloakStub nodes, one of which is slower
+ * than the others, with every load balancing strategy. The sampled latency distribution shows how
+ * much of the slow node's latency reaches the tail - round robin sends it a fair share of the
+ * calls, the load-aware strategies steer most of them to the fast nodes.
+ *
+ * <p>The user cache is off and the tokens are verified remotely, so every call reaches a node.
+ * Every thread logs in as its own user, so the concurrent calls aren't merged by the SingleFlight.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(16)
+public class LoadBalancingBenchmark {
+
+  private static final String LOGIN = """
+      mutation Login($email: String!, $password: String!) {
+        login(credentials: {email: $email, password: $password}) { accessToken }
+      }""";
+  private static final String ME = """
+      query Me($accessToken: String!) {
+        me(accessToken: $accessToken) { id username email emailVerified }
+      }""";
+
+  @Param({"ROUND_ROBIN", "LEAST_OUTSTANDING_REQUESTS", "POWER_OF_TWO_CHOICES"})
+  public String strategy;
+
+  @Param({"3"})
+  public int nodes;
+
+  /**
+   * Latency of the fast nodes.
+   */
+  @Param({"2"})
+  public long latencyMillis;
+
+  /**
+   * Latency of the slow node.
+   */
+  @Param({"40"})
+  public long slowLatencyMillis;
+
+  /**
+   * Off by default, so the strategies are compared on their own - with it on, the slow node gets
+   * ejected once it's slower than keycloak.load-balancing.outlier-ejection.minimum-latency.
+   */
+  @Param({"false"})
+  public boolean outlierEjection;
+
+  private final List<KeycloakStub> keycloakStubs = new ArrayList<>();
+  private ConfigurableApplicationContext context;
+  private ExecutionGraphQlService graphQlService;
+
+  @Setup
+  public void setUp() {
+    for (int i = 0; i < this.nodes; i++) {
+      long latency = i == this.nodes - 1 ? this.slowLatencyMillis : this.latencyMillis;
+      this.keycloakStubs.add(KeycloakStub.builder()
+          .latency(Duration.ofMillis(latency))
+          .latencyJitter(Duration.ofMillis(Math.max(1, latency / 2)))
+          .build()
+          .start());
+    }
+    KeycloakStub first = this.keycloakStubs.get(0);
+    String nodeUrls = this.keycloakStubs.stream()
+        .map(KeycloakStub::getBaseUrl)
+        .collect(Collectors.joining(","));
+    // Command line arguments, as application.yaml takes precedence over default properties.
+    this.context = new SpringApplicationBuilder(AuthServiceApplication.class)
+        .web(WebApplicationType.NONE)
+        .bannerMode(Banner.Mode.OFF)
+        .run(
+            "--keycloak.realm=" + first.getRealm(),
+            "--keycloak.client.id=auth-api",
+            "--keycloak.client.secret=secret",
+            "--keycloak.base-url=" + first.getBaseUrl(),
+            "--keycloak.nodes=" + nodeUrls,
+            "--keycloak.protocol=openid-connect",
+            "--keycloak.load-balancing.strategy=" + this.strategy,
+            "--keycloak.load-balancing.outlier-ejection.enabled=" + this.outlierEjection,
+            "--keycloak.verification.mode=REMOTE",
+            "--auth-service.user-cache.enabled=false",
+            "--auth-service.login-rate-limit.enabled=false",
+            "--logging.level.root=WARN"
+        );
+    this.graphQlService = this.context.getBean(ExecutionGraphQlService.class);
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.context.close();
+    this.keycloakStubs.forEach(KeycloakStub::close);
+  }
+
+  @Benchmark
+  public ExecutionGraphQlResponse me(Caller caller) {
+    return execute(ME, Map.of("accessToken", caller.accessToken));
+  }
+
+  private ExecutionGraphQlResponse execute(String document, Map<String, Object> variables) {
+    ExecutionGraphQlResponse response = this.graphQlService.execute(
+        new DefaultExecutionGraphQlRequest(document, null, variables, null,
+            UUID.randomUUID().toString(), Locale.ENGLISH)
+    ).block();
+    if (response == null || !response.getErrors().isEmpty()) {
+      throw new IllegalStateException("GraphQL operation failed: "
+          + (response == null ? "no response" : response.getErrors()));
+    }
+    return response;
+  }
+
+  /**
+   * The user of a benchmark thread.
+   */
+  @State(Scope.Thread)
+  public static class Caller {
+
+    private static final AtomicInteger USERS = new AtomicInteger();
+    private String accessToken;
+
+    @Setup
+    public void setUp(LoadBalancingBenchmark benchmark) {
+      // The stubs only check the type and expiry of a token, any node accepts it.
+      String user = "user" + USERS.incrementAndGet();
+      Map<String, Object> tokens = benchmark.execute(LOGIN, Map.of(
+          "email", user + "@mockrealm.com",
+          "password", user + "pass"
+      )).field("login").getValue();
+      this.accessToken = (String) tokens.get("accessToken");
+    }
+  }
+}
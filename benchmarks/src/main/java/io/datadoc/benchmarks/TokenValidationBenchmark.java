@@ -0,0 +1,197 @@
+package io.datadoc.benchmarks;
+
+import io.datadoc.authservice.AuthServiceApplication;
+import io.datadoc.authservice.grpc.TokenRequest;
+import io.datadoc.authservice.grpc.TokenValidationGrpc;
+import io.datadoc.authservice.grpc.ValidateTokenResponse;
+import io.datadoc.keycloakstub.KeycloakStub;
+import io.grpc.ManagedChannel;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.stub.StreamObserver;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.graphql.ExecutionGraphQlResponse;
+import org.springframework.graphql.ExecutionGraphQlService;
+import org.springframework.graphql.support.DefaultExecutionGraphQlRequest;
+
+/**
+ * Compares the `me` query executed through the ExecutionGraphQlService with the ValidateToken RPC
+ * of the internal gRPC service, called over an in-process channel - one token per call, and
+ * STREAM_SIZE tokens pipelined over one ValidateTokenStream. Neither goes over the network, so the
+ * difference is the cost of GraphQL parsing, validation and JSON against the protobuf messages.
+ * Use LOCAL verification with the user cache to see the protocol overhead alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TokenValidationBenchmark {
+
+  private static final int STREAM_SIZE = 100;
+  private static final String LOGIN = """
+      mutation Login($email: String!, $password: String!) {
+        login(credentials: {email: $email, password: $password}) { accessToken }
+      }""";
+  private static final String ME = """
+      query Me($accessToken: String!) {
+        me(accessToken: $accessToken) { id username firstName lastName email emailVerified }
+      }""";
+
+  /**
+   * Latency the stub adds to every Keycloak response.
+   */
+  @Param({"1"})
+  public long latencyMillis;
+
+  /**
+   * REMOTE or LOCAL - see keycloak.verification.mode.
+   */
+  @Param({"REMOTE", "LOCAL"})
+  public String verificationMode;
+
+  @Param({"false", "true"})
+  public boolean userCache;
+
+  private KeycloakStub keycloakStub;
+  private ConfigurableApplicationContext context;
+  private ExecutionGraphQlService graphQlService;
+  private ManagedChannel channel;
+  private TokenValidationGrpc.TokenValidationBlockingStub blockingStub;
+  private TokenValidationGrpc.TokenValidationStub asyncStub;
+  private String accessToken;
+  private TokenRequest request;
+
+  @Setup
+  public void setUp() {
+    this.keycloakStub = KeycloakStub.builder()
+        .latency(Duration.ofMillis(this.latencyMillis))
+        .build()
+        .start();
+    String inProcessName = "token-validation-" + UUID.randomUUID();
+    // Command line arguments, as application.yaml takes precedence over default properties.
+    this.context = new SpringApplicationBuilder(AuthServiceApplication.class)
+        .web(WebApplicationType.NONE)
+        .bannerMode(Banner.Mode.OFF)
+        .run(
+            "--keycloak.realm=" + this.keycloakStub.getRealm(),
+            "--keycloak.client.id=auth-api",
+            "--keycloak.client.secret=secret",
+            "--keycloak.base-url=" + this.keycloakStub.getBaseUrl(),
+            "--keycloak.protocol=openid-connect",
+            "--keycloak.verification.mode=" + this.verificationMode,
+            "--auth-service.user-cache.enabled=" + this.userCache,
+            "--auth-service.grpc.enabled=true",
+            "--auth-service.grpc.port=-1",
+            "--auth-service.grpc.in-process-name=" + inProcessName,
+            "--logging.level.root=WARN"
+        );
+    this.graphQlService = this.context.getBean(ExecutionGraphQlService.class);
+    this.channel = InProcessChannelBuilder.forName(inProcessName).build();
+    this.blockingStub = TokenValidationGrpc.newBlockingStub(this.channel);
+    this.asyncStub = TokenValidationGrpc.newStub(this.channel);
+
+    Map<String, Object> tokens = execute(LOGIN, Map.of(
+        "email", "user1@mockrealm.com",
+        "password", "user1pass"
+    )).field("login").getValue();
+    this.accessToken = (String) tokens.get("accessToken");
+    this.request = TokenRequest.newBuilder().setAccessToken(this.accessToken).build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.channel.shutdownNow();
+    this.context.close();
+    this.keycloakStub.close();
+  }
+
+  @Benchmark
+  public ExecutionGraphQlResponse graphQlMe() {
+    return execute(ME, Map.of("accessToken", this.accessToken));
+  }
+
+  @Benchmark
+  public ValidateTokenResponse grpcValidateToken() {
+    return check(this.blockingStub.validateToken(this.request));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(STREAM_SIZE)
+  public int grpcValidateTokenStream() {
+    CompletableFuture<Integer> done = new CompletableFuture<>();
+    AtomicInteger received = new AtomicInteger();
+    AtomicReference<ValidateTokenResponse> invalid = new AtomicReference<>();
+    StreamObserver<TokenRequest> requests = this.asyncStub.validateTokenStream(
+        new StreamObserver<>() {
+          @Override
+          public void onNext(ValidateTokenResponse response) {
+            // Checked once the stream completed - throwing here would cancel the call.
+            if (!response.getValid()) {
+              invalid.compareAndSet(null, response);
+            }
+            received.incrementAndGet();
+          }
+
+          @Override
+          public void onError(Throwable t) {
+            done.completeExceptionally(t);
+          }
+
+          @Override
+          public void onCompleted() {
+            done.complete(received.get());
+          }
+        });
+    for (int i = 0; i < STREAM_SIZE; i++) {
+      requests.onNext(this.request.toBuilder().setId(i).build());
+    }
+    requests.onCompleted();
+    int count = done.join();
+    if (invalid.get() != null) {
+      check(invalid.get());
+    }
+    return count;
+  }
+
+  /**
+   * Fails the benchmark if the token wasn't valid, so a misconfigured run doesn't end up
+   * measuring error handling.
+   */
+  private static ValidateTokenResponse check(ValidateTokenResponse response) {
+    if (!response.getValid()) {
+      throw new IllegalStateException("Token validation failed: " + response.getError());
+    }
+    return response;
+  }
+
+  private ExecutionGraphQlResponse execute(String document, Map<String, Object> variables) {
+    ExecutionGraphQlResponse response = this.graphQlService.execute(
+        new DefaultExecutionGraphQlRequest(document, null, variables, null,
+            UUID.randomUUID().toString(), Locale.ENGLISH)
+    ).block();
+    if (response == null || !response.getErrors().isEmpty()) {
+      throw new IllegalStateException("GraphQL operation failed: "
+          + (response == null ? "no response" : response.getErrors()));
+    }
+    return response;
+  }
+}
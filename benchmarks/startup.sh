@@ -0,0 +1,64 @@
+#!/usr/bin/env bash
+# Compares the startup of the auth-service packagings - the time until /actuator/health is UP and
+# the resident memory at that point:
+#   jvm     - the executable jar
+#   jvm-aot - the same jar built with -Pnative, started with the AOT-generated initialization
+#   native  - the GraalVM native executable, if it was built with -Pnative native:compile
+#
+# Build first, from the repository root:
+#   ./auth-service/mvnw -f auth-service -Pnative -DskipTests package
+#   ./auth-service/mvnw -f auth-service -Pnative -DskipTests native:compile   (optional)
+#
+# Keycloak must be reachable - e.g. a KeycloakStub on port 8080, see the README.
+# Usage: benchmarks/startup.sh [runs]
+set -euo pipefail
+
+RUNS=${1:-5}
+PORT=${PORT:-8081}
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+JAR="$ROOT/auth-service/target/auth-service-0.0.1-SNAPSHOT-exec.jar"
+NATIVE="$ROOT/auth-service/target/auth-service"
+
+export KEYCLOAK_REALM=${KEYCLOAK_REALM:-mockrealm}
+export KEYCLOAK_CLIENT_ID=${KEYCLOAK_CLIENT_ID:-auth-api}
+export KEYCLOAK_CLIENT_SECRET=${KEYCLOAK_CLIENT_SECRET:-secret}
+export KEYCLOAK_BASE_URL=${KEYCLOAK_BASE_URL:-http://127.0.0.1:8080/realms}
+export KEYCLOAK_PROTOCOL=${KEYCLOAK_PROTOCOL:-openid-connect}
+export AUTH_SERVICE_AUDIT_FILE=${AUTH_SERVICE_AUDIT_FILE:-$(mktemp -d)/audit.jsonl}
+
+# Starts the command, prints the milliseconds until the service is UP and its RSS in MB.
+measure() {
+  local start pid ready rss
+  start=$(date +%s%N)
+  "$@" --server.port="$PORT" >/dev/null 2>&1 &
+  pid=$!
+  until curl -sf "http://127.0.0.1:$PORT/actuator/health" 2>/dev/null | grep -q UP; do
+    if ! kill -0 "$pid" 2>/dev/null; then
+      echo "failed to start: $*" >&2
+      return 1
+    fi
+    sleep 0.01
+  done
+  ready=$(( ($(date +%s%N) - start) / 1000000 ))
+  rss=$(awk '/VmRSS/ { printf "%d", $2 / 1024 }' "/proc/$pid/status")
+  kill "$pid"
+  wait "$pid" 2>/dev/null || true
+  printf "%8d ms %6d MB\n" "$ready" "$rss"
+}
+
+run() {
+  local name=$1
+  shift
+  echo "$name"
+  for _ in $(seq "$RUNS"); do
+    measure "$@"
+  done
+}
+
+run jvm java -jar "$JAR"
+if unzip -p "$JAR" META-INF/MANIFEST.MF | grep -q Spring-Boot-Native-Processed; then
+  run jvm-aot java -Dspring.aot.enabled=true -jar "$JAR"
+fi
+if [ -x "$NATIVE" ]; then
+  run native "$NATIVE"
+fi
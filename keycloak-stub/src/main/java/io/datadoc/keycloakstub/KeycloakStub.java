@@ -0,0 +1,469 @@
+package io.datadoc.keycloakstub;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.JWTParser;
+import com.nimbusds.jwt.SignedJWT;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * KeycloakStub mimics the Keycloak OpenID Connect endpoints called by the auth-service - token
+ * (password and refresh_token grants), userinfo, revoke, logout and certs - on a local port.
+ * Tokens are real RS256 JWTs signed with a key published at the certs endpoint, so the
+ * auth-service's local verification mode works against the stub as well.
+ *
+ * <p>Users follow the mock realm convention: any email is accepted when the password is the local
+ * part of the email followed by "pass" (user1@mockrealm.com / user1pass). Every response is delayed
+ * by the configured latency plus a random jitter, to emulate a remote Keycloak. A share of the
+ * token, userinfo, revoke and logout calls can fail with a configured status, to emulate an
+ * overloaded one - certs never fails, so health checks keep the stub in rotation.
+ */
+public final class KeycloakStub implements AutoCloseable {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final byte[] EMPTY = new byte[0];
+
+  static {
+    // The JDK server writes the headers and the body separately - without TCP_NODELAY, Nagle's
+    // algorithm and the client's delayed ACK add ~40ms to every response.
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+  }
+
+  private final String realm;
+  private final Duration latency;
+  private final Duration latencyJitter;
+  private final Duration tokenLifetime;
+  private final double errorRate;
+  private final int errorStatus;
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  private final RSAKey signingKey;
+  private final byte[] jwks;
+  private final Map<String, IssuedTokens> tokensByUser = new ConcurrentHashMap<>();
+  private final Map<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+  private final LongAdder injectedErrors = new LongAdder();
+
+  private KeycloakStub(Builder builder) {
+    this.realm = builder.realm;
+    this.latency = builder.latency;
+    this.latencyJitter = builder.latencyJitter;
+    this.tokenLifetime = builder.tokenLifetime;
+    this.errorRate = builder.errorRate;
+    this.errorStatus = builder.errorStatus;
+    try {
+      this.signingKey = new RSAKeyGenerator(2048)
+          .keyID(UUID.randomUUID().toString())
+          .keyUse(KeyUse.SIGNATURE)
+          .algorithm(JWSAlgorithm.RS256)
+          .generate();
+      this.jwks = MAPPER.writeValueAsBytes(new JWKSet(this.signingKey.toPublicJWK()).toJSONObject());
+      this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", builder.port), 0);
+    } catch (JOSEException e) {
+      throw new IllegalStateException("Unable to generate the signing key", e);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    this.server.setExecutor(this.executor);
+    String realmPath = "/realms/" + this.realm;
+    String protocolPath = realmPath + "/protocol/openid-connect/";
+    this.server.createContext(protocolPath + "token", exchange -> handle(exchange, "token",
+        failing(this::token)));
+    this.server.createContext(protocolPath + "userinfo", exchange -> handle(exchange, "userinfo",
+        failing(this::userInfo)));
+    this.server.createContext(protocolPath + "revoke", exchange -> handle(exchange, "revoke",
+        failing(ignored -> new Response(200, EMPTY))));
+    this.server.createContext(protocolPath + "logout", exchange -> handle(exchange, "logout",
+        failing(ignored -> new Response(204, EMPTY))));
+    this.server.createContext(protocolPath + "certs", exchange -> handle(exchange, "certs",
+        ignored -> new Response(200, this.jwks)));
+    this.server.createContext(realmPath + "/.well-known/openid-configuration",
+        exchange -> handle(exchange, "openid-configuration", ignored -> openIdConfiguration()));
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Starts the stub from the command line, e.g. {@code --port=8080 --latency=5 --jitter=2}.
+   * Latency and jitter are in milliseconds, {@code --error-rate=0.01 --error-status=503} injects
+   * errors.
+   *
+   * @param args The command line arguments.
+   */
+  public static void main(String[] args) {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      String[] option = arg.replaceFirst("^--", "").split("=", 2);
+      options.put(option[0], option.length > 1 ? option[1] : "true");
+    }
+    KeycloakStub stub = builder()
+        .port(Integer.parseInt(options.getOrDefault("port", "8080")))
+        .realm(options.getOrDefault("realm", "mockrealm"))
+        .latency(Duration.ofMillis(Long.parseLong(options.getOrDefault("latency", "0"))))
+        .latencyJitter(Duration.ofMillis(Long.parseLong(options.getOrDefault("jitter", "0"))))
+        .errorRate(Double.parseDouble(options.getOrDefault("error-rate", "0")))
+        .errorStatus(Integer.parseInt(options.getOrDefault("error-status", "503")))
+        .build()
+        .start();
+    Runtime.getRuntime().addShutdownHook(new Thread(stub::close));
+    System.out.println("Keycloak stub listening on " + stub.getBaseUrl() + "/" + stub.getRealm());
+  }
+
+  public KeycloakStub start() {
+    this.server.start();
+    return this;
+  }
+
+  @Override
+  public void close() {
+    this.server.stop(0);
+    this.executor.shutdownNow();
+  }
+
+  /**
+   * Returns the base URL in the format of the auth-service's keycloak.base-url property.
+   *
+   * @return The base URL, e.g. http://127.0.0.1:8080/realms
+   */
+  public String getBaseUrl() {
+    return "http://127.0.0.1:" + this.server.getAddress().getPort() + "/realms";
+  }
+
+  public String getRealm() {
+    return this.realm;
+  }
+
+  public String getIssuer() {
+    return getBaseUrl() + "/" + this.realm;
+  }
+
+  /**
+   * Returns the number of requests received by an endpoint.
+   *
+   * @param endpoint The endpoint name - token, userinfo, revoke, logout or certs.
+   * @return The number of requests.
+   */
+  public long getRequestCount(String endpoint) {
+    LongAdder count = this.requestCounts.get(endpoint);
+    return count == null ? 0 : count.sum();
+  }
+
+  /**
+   * Returns the number of calls failed on purpose.
+   *
+   * @return The number of injected errors.
+   */
+  public long getInjectedErrorCount() {
+    return this.injectedErrors.sum();
+  }
+
+  private void handle(HttpExchange exchange, String endpoint, Handler handler) throws IOException {
+    this.requestCounts.computeIfAbsent(endpoint, e -> new LongAdder()).increment();
+    try (exchange) {
+      Response response;
+      try {
+        response = handler.handle(exchange);
+      } catch (Exception e) {
+        response = error(500, "server_error");
+      }
+      delay();
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(response.status(),
+          response.body().length == 0 ? -1 : response.body().length);
+      if (response.body().length > 0) {
+        try (OutputStream body = exchange.getResponseBody()) {
+          body.write(response.body());
+        }
+      }
+    }
+  }
+
+  /**
+   * Fails the configured share of the calls before they're handled.
+   */
+  private Handler failing(Handler handler) {
+    return exchange -> {
+      if (this.errorRate > 0 && ThreadLocalRandom.current().nextDouble() < this.errorRate) {
+        this.injectedErrors.increment();
+        exchange.getRequestBody().readAllBytes();
+        return error(this.errorStatus, "injected_error");
+      }
+      return handler.handle(exchange);
+    };
+  }
+
+  private void delay() {
+    long delayNanos = this.latency.toNanos();
+    if (!this.latencyJitter.isZero()) {
+      delayNanos += ThreadLocalRandom.current().nextLong(this.latencyJitter.toNanos());
+    }
+    if (delayNanos > 0) {
+      try {
+        Thread.sleep(Duration.ofNanos(delayNanos));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private Response token(HttpExchange exchange) throws IOException {
+    Map<String, String> form = readForm(exchange);
+    String grantType = form.getOrDefault("grant_type", "");
+    if (grantType.equals("password")) {
+      String email = form.getOrDefault("username", "");
+      String localPart = email.split("@", 2)[0];
+      if (localPart.isEmpty() || !form.getOrDefault("password", "").equals(localPart + "pass")) {
+        return error(401, "invalid_grant");
+      }
+      return new Response(200, issueTokens(email).tokenResponse());
+    }
+    if (grantType.equals("refresh_token")) {
+      JWTClaimsSet claims = readValidClaims(form.get("refresh_token"), "Refresh");
+      if (claims == null) {
+        return error(400, "invalid_grant");
+      }
+      return new Response(200, issueTokens((String) claims.getClaim("email")).tokenResponse());
+    }
+    return error(400, "unsupported_grant_type");
+  }
+
+  private Response userInfo(HttpExchange exchange) {
+    String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+    String token = authorization == null ? null : authorization.replaceFirst("^Bearer ", "");
+    JWTClaimsSet claims = readValidClaims(token, "Bearer");
+    if (claims == null) {
+      return error(401, "invalid_token");
+    }
+    return new Response(200, issueTokens((String) claims.getClaim("email")).userInfoResponse());
+  }
+
+  private Response openIdConfiguration() throws IOException {
+    return new Response(200, MAPPER.writeValueAsBytes(Map.of("issuer", getIssuer())));
+  }
+
+  /**
+   * Signing RSA tokens is expensive, so every user gets one set of tokens which is reissued after
+   * half of its lifetime. That keeps the stub's CPU usage out of the measurements.
+   */
+  private IssuedTokens issueTokens(String email) {
+    return this.tokensByUser.compute(email, (user, issued) -> {
+      long now = System.currentTimeMillis();
+      if (issued != null && now - issued.issuedAtMillis() < this.tokenLifetime.toMillis() / 2) {
+        return issued;
+      }
+      return mintTokens(user, now);
+    });
+  }
+
+  private IssuedTokens mintTokens(String email, long now) {
+    String username = email.split("@", 2)[0];
+    String subject = UUID.nameUUIDFromBytes(email.getBytes(StandardCharsets.UTF_8)).toString();
+    String sessionId = UUID.randomUUID().toString();
+    Map<String, Object> userInfo = new LinkedHashMap<>();
+    userInfo.put("sub", subject);
+    userInfo.put("email_verified", true);
+    userInfo.put("preferred_username", username);
+    userInfo.put("given_name", username);
+    userInfo.put("family_name", "Stub");
+    userInfo.put("email", email);
+
+    long lifetimeSeconds = this.tokenLifetime.toSeconds();
+    Map<String, Object> tokenResponse = new LinkedHashMap<>();
+    tokenResponse.put("access_token", sign(claims("Bearer", now, lifetimeSeconds, sessionId,
+        userInfo)));
+    tokenResponse.put("expires_in", lifetimeSeconds);
+    tokenResponse.put("refresh_expires_in", lifetimeSeconds * 6);
+    tokenResponse.put("refresh_token", sign(claims("Refresh", now, lifetimeSeconds * 6, sessionId,
+        userInfo)));
+    tokenResponse.put("token_type", "Bearer");
+    tokenResponse.put("id_token", sign(claims("ID", now, lifetimeSeconds, sessionId, userInfo)));
+    tokenResponse.put("not-before-policy", 0);
+    tokenResponse.put("session_state", sessionId);
+    tokenResponse.put("scope", "openid profile email");
+    try {
+      return new IssuedTokens(now, MAPPER.writeValueAsBytes(tokenResponse),
+          MAPPER.writeValueAsBytes(userInfo));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private JWTClaimsSet claims(String type, long now, long lifetimeSeconds, String sessionId,
+      Map<String, Object> userInfo) {
+    JWTClaimsSet.Builder claims = new JWTClaimsSet.Builder()
+        .issuer(getIssuer())
+        .subject((String) userInfo.get("sub"))
+        .jwtID(UUID.randomUUID().toString())
+        .issueTime(new Date(now))
+        .expirationTime(new Date(now + lifetimeSeconds * 1000))
+        .claim("typ", type)
+        .claim("azp", "auth-api")
+        .claim("sid", sessionId);
+    userInfo.forEach(claims::claim);
+    return claims.build();
+  }
+
+  private String sign(JWTClaimsSet claims) {
+    try {
+      SignedJWT jwt = new SignedJWT(
+          new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(this.signingKey.getKeyID()).build(),
+          claims
+      );
+      jwt.sign(new RSASSASigner(this.signingKey));
+      return jwt.serialize();
+    } catch (JOSEException e) {
+      throw new IllegalStateException("Unable to sign the token", e);
+    }
+  }
+
+  /**
+   * The stub issued the tokens itself, so only the type and expiry are checked.
+   */
+  private JWTClaimsSet readValidClaims(String token, String type) {
+    if (token == null) {
+      return null;
+    }
+    try {
+      JWTClaimsSet claims = JWTParser.parse(token).getJWTClaimsSet();
+      boolean expired = claims.getExpirationTime() == null
+          || claims.getExpirationTime().before(new Date());
+      return type.equals(claims.getClaim("typ")) && !expired ? claims : null;
+    } catch (ParseException e) {
+      return null;
+    }
+  }
+
+  private static Map<String, String> readForm(HttpExchange exchange) throws IOException {
+    String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+    Map<String, String> form = new HashMap<>();
+    for (String pair : body.split("&")) {
+      String[] keyValue = pair.split("=", 2);
+      if (keyValue.length == 2) {
+        form.put(URLDecoder.decode(keyValue[0], StandardCharsets.UTF_8),
+            URLDecoder.decode(keyValue[1], StandardCharsets.UTF_8));
+      }
+    }
+    return form;
+  }
+
+  private static Response error(int status, String error) {
+    return new Response(status, ("{\"error\":\"" + error + "\"}").getBytes(StandardCharsets.UTF_8));
+  }
+
+  @FunctionalInterface
+  private interface Handler {
+
+    Response handle(HttpExchange exchange) throws Exception;
+  }
+
+  private record Response(int status, byte[] body) {
+
+  }
+
+  private record IssuedTokens(long issuedAtMillis, byte[] tokenResponse, byte[] userInfoResponse) {
+
+  }
+
+  /**
+   * Builder for the KeycloakStub.
+   */
+  public static final class Builder {
+
+    private int port;
+    private String realm = "mockrealm";
+    private Duration latency = Duration.ZERO;
+    private Duration latencyJitter = Duration.ZERO;
+    private Duration tokenLifetime = Duration.ofMinutes(5);
+    private double errorRate;
+    private int errorStatus = 503;
+
+    private Builder() {
+    }
+
+    /**
+     * Port to listen on - 0 (default) picks a free port.
+     */
+    public Builder port(int port) {
+      this.port = port;
+      return this;
+    }
+
+    public Builder realm(String realm) {
+      this.realm = realm;
+      return this;
+    }
+
+    /**
+     * Fixed delay added to every response.
+     */
+    public Builder latency(Duration latency) {
+      this.latency = latency;
+      return this;
+    }
+
+    /**
+     * Upper bound of the random delay added on top of the fixed latency.
+     */
+    public Builder latencyJitter(Duration latencyJitter) {
+      this.latencyJitter = latencyJitter;
+      return this;
+    }
+
+    /**
+     * Lifetime of the issued access tokens - refresh tokens live six times longer.
+     */
+    public Builder tokenLifetime(Duration tokenLifetime) {
+      this.tokenLifetime = tokenLifetime;
+      return this;
+    }
+
+    /**
+     * Share of the token, userinfo, revoke and logout calls failing with the error status - 0
+     * (default) to 1.
+     */
+    public Builder errorRate(double errorRate) {
+      this.errorRate = errorRate;
+      return this;
+    }
+
+    /**
+     * HTTP status of the injected errors - 503 by default.
+     */
+    public Builder errorStatus(int errorStatus) {
+      this.errorStatus = errorStatus;
+      return this;
+    }
+
+    public KeycloakStub build() {
+      return new KeycloakStub(this);
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package io.datadoc.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * GraphQlClient posts the operations to the GraphQL endpoint over HTTP/1.1 keep-alive connections,
+ * like a gateway in front of the service would. Failures are reduced to an error kind for the
+ * report: the GraphQL error classification, http_&lt;status&gt;, timeout or io_error.
+ */
+final class GraphQlClient implements AutoCloseable {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  private final HttpClient httpClient;
+  private final URI uri;
+  private final Duration timeout;
+
+  GraphQlClient(URI uri, Duration timeout) {
+    this.uri = uri;
+    this.timeout = timeout;
+    this.httpClient = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(timeout)
+        .executor(this.executor)
+        .build();
+  }
+
+  /**
+   * Executes an operation.
+   *
+   * @param operation The operation.
+   * @param variables The variables of the operation.
+   * @return The result of the operation's field or the kind of the error.
+   * @throws InterruptedException If the thread is interrupted while waiting for the response.
+   */
+  Result execute(Operation operation, Map<String, Object> variables)
+      throws InterruptedException {
+    try {
+      byte[] body = MAPPER.writeValueAsBytes(
+          Map.of("query", operation.getDocument(), "variables", variables));
+      HttpResponse<byte[]> response = this.httpClient.send(
+          HttpRequest.newBuilder(this.uri)
+              .timeout(this.timeout)
+              .header("Content-Type", "application/json")
+              .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+              .build(),
+          HttpResponse.BodyHandlers.ofByteArray()
+      );
+      if (response.statusCode() != 200) {
+        return Result.failed("http_" + response.statusCode());
+      }
+      JsonNode json = MAPPER.readTree(response.body());
+      JsonNode errors = json.path("errors");
+      if (!errors.isEmpty()) {
+        return Result.failed(errors.get(0).path("extensions").path("classification")
+            .asText("graphql_error"));
+      }
+      return new Result(json.path("data").path(operation.getName()), null);
+    } catch (HttpTimeoutException e) {
+      return Result.failed("timeout");
+    } catch (IOException e) {
+      return Result.failed("io_error");
+    }
+  }
+
+  @Override
+  public void close() {
+    this.httpClient.close();
+    this.executor.close();
+  }
+
+  /**
+   * The field of a successful operation, or the kind of the error.
+   */
+  record Result(JsonNode data, String error) {
+
+    static Result failed(String error) {
+      return new Result(null, error);
+    }
+  }
+}
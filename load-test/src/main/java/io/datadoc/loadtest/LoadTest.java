@@ -0,0 +1,291 @@
+package io.datadoc.loadtest;
+
+import io.datadoc.authservice.AuthServiceApplication;
+import io.datadoc.keycloakstub.KeycloakStub;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.springframework.boot.Banner;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * LoadTest drives the GraphQL endpoint of the auth-service with an open workload: operations are
+ * started at a fixed rate, drawn from a weighted mix, whether the earlier ones completed or not -
+ * the way independent clients arrive. Unlike a closed loop of threads, the load doesn't back off
+ * when the service slows down, so queueing in Tomcat, connection pool contention and GC pauses
+ * show up in the latencies.
+ *
+ * <p>Without --target, a KeycloakStub with the configured latency and error rate and the
+ * auth-service are started in-process, the service on a random port with the login rate limit
+ * off. Every user is logged in first, then the load runs for the warmup and the measured
+ * duration. A progress line is printed every report interval, the interval histograms of every
+ * operation are logged to latency.hlog (readable by the HdrHistogram tools) and the summary is
+ * written to report.json:
+ *
+ * <pre>
+ * mvn -pl load-test exec:exec -Dload.args="--rate=200 --duration=10m --stub-error-rate=0.01"
+ * </pre>
+ */
+public final class LoadTest {
+
+  private static final PrintStream OUT = System.out;
+
+  private LoadTest() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    LoadTestOptions options = LoadTestOptions.parse(args);
+    Path baseline = options.baseline();
+    KeycloakStub stub = null;
+    ConfigurableApplicationContext service = null;
+    try {
+      String target = options.target();
+      if (target == null) {
+        stub = KeycloakStub.builder()
+            .latency(options.stubLatency())
+            .latencyJitter(options.stubJitter())
+            .errorRate(options.stubErrorRate())
+            .errorStatus(options.stubErrorStatus())
+            .build()
+            .start();
+        service = startService(options, stub);
+        target = "http://127.0.0.1:" + service.getEnvironment().getProperty("local.server.port")
+            + "/graphql";
+      }
+      LoadTestReport report = run(options, URI.create(target));
+      Path reportFile = options.output().resolve("report.json");
+      report.write(reportFile);
+      OUT.println();
+      report.print(OUT, baseline);
+      if (stub != null) {
+        OUT.printf(Locale.ROOT, "%nKeycloak stub: %d errors injected%n",
+            stub.getInjectedErrorCount());
+      }
+      OUT.println("Report written to " + reportFile.toAbsolutePath());
+    } finally {
+      if (service != null) {
+        service.close();
+      }
+      if (stub != null) {
+        stub.close();
+      }
+    }
+  }
+
+  private static ConfigurableApplicationContext startService(
+      LoadTestOptions options,
+      KeycloakStub stub
+  ) {
+    Map<String, String> properties = new LinkedHashMap<>();
+    properties.put("server.port", "0");
+    properties.put("keycloak.realm", stub.getRealm());
+    properties.put("keycloak.client.id", "auth-api");
+    properties.put("keycloak.client.secret", "secret");
+    properties.put("keycloak.base-url", stub.getBaseUrl());
+    properties.put("keycloak.protocol", "openid-connect");
+    properties.put("auth-service.login-rate-limit.enabled", "false");
+    properties.put("auth-service.audit.file",
+        options.output().resolve("audit.jsonl").toAbsolutePath().toString());
+    properties.put("logging.level.root", "WARN");
+    // Reactor's schedulers outlive the context, which Tomcat reports at length on shutdown.
+    properties.put("logging.level.org.apache.catalina.loader", "ERROR");
+    properties.putAll(options.serviceProperties());
+    // Command line arguments, as application.yaml takes precedence over default properties.
+    String[] args = properties.entrySet().stream()
+        .map(property -> "--" + property.getKey() + "=" + property.getValue())
+        .toArray(String[]::new);
+    return new SpringApplicationBuilder(AuthServiceApplication.class)
+        .bannerMode(Banner.Mode.OFF)
+        .run(args);
+  }
+
+  private static LoadTestReport run(LoadTestOptions options, URI target) throws Exception {
+    Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+    for (Operation operation : options.mix().keySet()) {
+      stats.put(operation, new OperationStats(operation));
+    }
+    Operation[] mix = weightedMix(options.mix());
+    SessionPool sessions = new SessionPool(options.users());
+    Files.createDirectories(options.output());
+
+    try (GraphQlClient client = new GraphQlClient(target, options.timeout());
+        PrintStream histogramLog = new PrintStream(
+            Files.newOutputStream(options.output().resolve("latency.hlog")))) {
+      Workload workload = new Workload(client, sessions);
+      OUT.printf(Locale.ROOT, "Logging in %d users at %s%n", options.users(), target);
+      int failedLogins = workload.logInAll();
+      if (failedLogins == options.users()) {
+        throw new IllegalStateException("No user could log in at " + target);
+      }
+      OUT.printf(Locale.ROOT, "%.0f ops/s for %ds after %ds of warmup%n", options.rate(),
+          options.duration().toSeconds(), options.warmup().toSeconds());
+
+      HistogramLogWriter logWriter = new HistogramLogWriter(histogramLog);
+      Instant startedAt = Instant.now();
+      logWriter.outputLogFormatVersion();
+      logWriter.outputStartTime(startedAt.toEpochMilli());
+      logWriter.setBaseTime(startedAt.toEpochMilli());
+      logWriter.outputLegend();
+
+      double intervalNanos = TimeUnit.SECONDS.toNanos(1) / options.rate();
+      long start = System.nanoTime();
+      long measureStart = start + options.warmup().toNanos();
+      long end = measureStart + options.duration().toNanos();
+      IntervalReporter reporter = new IntervalReporter(stats.values(), logWriter, start,
+          measureStart);
+      ScheduledExecutorService reportScheduler = Executors.newSingleThreadScheduledExecutor(
+          Thread.ofPlatform().daemon().name("load-test-report").factory());
+      long reportMillis = options.reportInterval().toMillis();
+      reportScheduler.scheduleAtFixedRate(reporter, reportMillis, reportMillis,
+          TimeUnit.MILLISECONDS);
+
+      Semaphore inFlight = new Semaphore(options.maxInFlight());
+      long[] gcBefore = null;
+      try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+        for (long i = 0; ; i++) {
+          long scheduled = start + (long) (i * intervalNanos);
+          if (scheduled >= end) {
+            break;
+          }
+          long delay;
+          while ((delay = scheduled - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(delay);
+          }
+          boolean measured = scheduled >= measureStart;
+          if (measured && gcBefore == null) {
+            gcBefore = gc();
+          }
+          Operation operation = mix[ThreadLocalRandom.current().nextInt(mix.length)];
+          OperationStats operationStats = stats.get(operation);
+          if (!inFlight.tryAcquire()) {
+            if (measured) {
+              operationStats.countError("overflow");
+            }
+            continue;
+          }
+          executor.execute(() -> {
+            try {
+              long sent = System.nanoTime();
+              String error = workload.run(operation);
+              if (measured) {
+                if (Workload.NO_SESSION.equals(error)) {
+                  operationStats.countError(error);
+                } else {
+                  operationStats.record(scheduled, sent, System.nanoTime(), error);
+                }
+              }
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            } finally {
+              inFlight.release();
+            }
+          });
+        }
+      }
+      reportScheduler.shutdown();
+      reportScheduler.awaitTermination(1, TimeUnit.MINUTES);
+      reporter.run();
+      long[] gcAfter = gc();
+      long[] gcStart = gcBefore != null ? gcBefore : gcAfter;
+      return new LoadTestReport(startedAt, options, new ArrayList<>(stats.values()),
+          gcAfter[0] - gcStart[0], gcAfter[1] - gcStart[1]);
+    }
+  }
+
+  /**
+   * Expands the weights into an array, so an operation is drawn with one random index.
+   */
+  private static Operation[] weightedMix(Map<Operation, Integer> weights) {
+    List<Operation> mix = new ArrayList<>();
+    weights.forEach((operation, weight) -> {
+      for (int i = 0; i < weight; i++) {
+        mix.add(operation);
+      }
+    });
+    return mix.toArray(Operation[]::new);
+  }
+
+  /**
+   * Returns the number of collections and their total time in milliseconds.
+   */
+  private static long[] gc() {
+    long count = 0;
+    long millis = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0, collector.getCollectionCount());
+      millis += Math.max(0, collector.getCollectionTime());
+    }
+    return new long[] {count, millis};
+  }
+
+  /**
+   * Prints a progress line and logs the interval histograms of every operation.
+   */
+  private static final class IntervalReporter implements Runnable {
+
+    private final Iterable<OperationStats> stats;
+    private final HistogramLogWriter logWriter;
+    private final long start;
+    private final long measureStart;
+    private final Histogram total = new Histogram(3);
+    private long intervalStart;
+
+    IntervalReporter(Iterable<OperationStats> stats, HistogramLogWriter logWriter, long start,
+        long measureStart) {
+      this.stats = stats;
+      this.logWriter = logWriter;
+      this.start = start;
+      this.measureStart = measureStart;
+      this.intervalStart = start;
+    }
+
+    @Override
+    public synchronized void run() {
+      long now = System.nanoTime();
+      boolean warmup = this.intervalStart < this.measureStart;
+      double from = (this.intervalStart - this.start) / 1e9;
+      double to = (now - this.start) / 1e9;
+      this.intervalStart = now;
+      this.total.reset();
+      long errors = 0;
+      for (OperationStats operation : this.stats) {
+        Histogram interval = operation.nextInterval();
+        errors += operation.getErrorCount();
+        if (interval.getTotalCount() > 0) {
+          interval.setTag(operation.getOperation().getName());
+          this.logWriter.outputIntervalHistogram(from, to, interval, 1000.0);
+          this.total.add(interval);
+        }
+      }
+      if (warmup) {
+        OUT.printf(Locale.ROOT, "%6.0fs  warming up%n", to);
+        return;
+      }
+      OUT.printf(Locale.ROOT,
+          "%6.0fs  %8.1f ops/s  p50 %8.2f ms  p99 %8.2f ms  max %8.2f ms  errors %d%n", to,
+          this.total.getTotalCount() / (to - from), this.total.getValueAtPercentile(50) / 1000.0,
+          this.total.getValueAtPercentile(99) / 1000.0, this.total.getMaxValue() / 1000.0,
+          errors);
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package io.datadoc.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The command line options of the LoadTest, as {@code --name=value}. Options with a dot in the
+ * name (e.g. {@code --keycloak.verification.mode=LOCAL}) are passed to the in-process auth-service.
+ *
+ * @param target            GraphQL endpoint of a running service - the service and the stub are
+ *                          started in-process if null.
+ * @param rate              Operations started per second, whether the earlier ones completed or
+ *                          not.
+ * @param warmup            Time the load runs before it's measured.
+ * @param duration          Time the load is measured.
+ * @param mix               Weights of the operations.
+ * @param users             Simulated users, all logged in before the load starts.
+ * @param timeout           Timeout of a request.
+ * @param maxInFlight       Requests in flight at most - further ones fail as overflow.
+ * @param reportInterval    Interval of the progress lines and the histogram log.
+ * @param output            Directory of the report and the histogram log.
+ * @param baseline          Report of an earlier run to compare with, if not null.
+ * @param stubLatency       Latency of the in-process Keycloak stub.
+ * @param stubJitter        Random latency added on top of the stub latency.
+ * @param stubErrorRate     Share of the stub calls failing with the stub error status.
+ * @param stubErrorStatus   HTTP status of the injected errors.
+ * @param serviceProperties Properties of the in-process auth-service.
+ */
+record LoadTestOptions(
+    String target,
+    double rate,
+    Duration warmup,
+    Duration duration,
+    Map<Operation, Integer> mix,
+    int users,
+    Duration timeout,
+    int maxInFlight,
+    Duration reportInterval,
+    Path output,
+    Path baseline,
+    Duration stubLatency,
+    Duration stubJitter,
+    double stubErrorRate,
+    int stubErrorStatus,
+    Map<String, String> serviceProperties
+) {
+
+  static final String DEFAULT_MIX = "login:15,me:55,refresh:15,logout:5,revoke:10";
+  private static final Pattern DURATION = Pattern.compile("(\\d+)(ms|s|m|h)");
+
+  static LoadTestOptions parse(String[] args) {
+    Map<String, String> options = new LinkedHashMap<>();
+    Map<String, String> serviceProperties = new LinkedHashMap<>();
+    for (String arg : args) {
+      String[] option = arg.replaceFirst("^--", "").split("=", 2);
+      String value = option.length > 1 ? option[1] : "true";
+      (option[0].contains(".") ? serviceProperties : options).put(option[0], value);
+    }
+    LoadTestOptions parsed = new LoadTestOptions(
+        options.remove("target"),
+        Double.parseDouble(option(options, "rate", "100")),
+        duration(option(options, "warmup", "10s")),
+        duration(option(options, "duration", "60s")),
+        mix(option(options, "mix", DEFAULT_MIX)),
+        Integer.parseInt(option(options, "users", "200")),
+        duration(option(options, "timeout", "30s")),
+        Integer.parseInt(option(options, "max-in-flight", "10000")),
+        duration(option(options, "report-interval", "10s")),
+        Path.of(option(options, "output", "target/load-test")),
+        options.containsKey("baseline") ? Path.of(options.remove("baseline")) : null,
+        duration(option(options, "stub-latency", "5ms")),
+        duration(option(options, "stub-jitter", "5ms")),
+        Double.parseDouble(option(options, "stub-error-rate", "0")),
+        Integer.parseInt(option(options, "stub-error-status", "503")),
+        serviceProperties
+    );
+    if (!options.isEmpty()) {
+      throw new IllegalArgumentException("Unknown options: " + options.keySet());
+    }
+    return parsed;
+  }
+
+  private static String option(Map<String, String> options, String name, String defaultValue) {
+    String value = options.remove(name);
+    return value != null ? value : defaultValue;
+  }
+
+  /**
+   * Parses a duration such as 500ms, 30s, 10m or 2h.
+   */
+  static Duration duration(String value) {
+    Matcher matcher = DURATION.matcher(value.trim());
+    if (!matcher.matches()) {
+      throw new IllegalArgumentException("Invalid duration: " + value);
+    }
+    long amount = Long.parseLong(matcher.group(1));
+    return switch (matcher.group(2)) {
+      case "ms" -> Duration.ofMillis(amount);
+      case "s" -> Duration.ofSeconds(amount);
+      case "m" -> Duration.ofMinutes(amount);
+      default -> Duration.ofHours(amount);
+    };
+  }
+
+  /**
+   * Parses the operation weights, e.g. login:10,me:90.
+   */
+  static Map<Operation, Integer> mix(String value) {
+    Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+    for (String entry : value.split(",")) {
+      String[] weight = entry.split(":", 2);
+      if (weight.length != 2) {
+        throw new IllegalArgumentException("Invalid mix entry: " + entry);
+      }
+      mix.put(Operation.forName(weight[0]), Integer.parseInt(weight[1].trim()));
+    }
+    if (mix.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+      throw new IllegalArgumentException("The mix has no weight: " + value);
+    }
+    return mix;
+  }
+
+  /**
+   * Describes the options for the report, so runs can be told apart.
+   */
+  Map<String, Object> describe() {
+    Map<String, Object> description = new LinkedHashMap<>();
+    description.put("target", this.target != null ? this.target : "in-process");
+    description.put("rate", this.rate);
+    description.put("warmupSeconds", this.warmup.toSeconds());
+    description.put("durationSeconds", this.duration.toSeconds());
+    Map<String, Integer> mix = new LinkedHashMap<>();
+    this.mix.forEach((operation, weight) -> mix.put(operation.getName(), weight));
+    description.put("mix", mix);
+    description.put("users", this.users);
+    if (this.target == null) {
+      description.put("stubLatencyMillis", this.stubLatency.toMillis());
+      description.put("stubJitterMillis", this.stubJitter.toMillis());
+      description.put("stubErrorRate", this.stubErrorRate);
+      description.put("stubErrorStatus", this.stubErrorStatus);
+      description.put("serviceProperties", this.serviceProperties);
+    }
+    description.put("java", System.getProperty("java.version") + " "
+        + System.getProperty("os.arch").toLowerCase(Locale.ROOT));
+    description.put("processors", Runtime.getRuntime().availableProcessors());
+    return description;
+  }
+}
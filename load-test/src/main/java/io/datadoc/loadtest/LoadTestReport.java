@@ -0,0 +1,115 @@
+package io.datadoc.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.HdrHistogram.Histogram;
+
+/**
+ * LoadTestReport summarizes a run as JSON - the options, and the count, throughput, errors and
+ * latency percentiles of every operation - so runs can be diffed or compared with --baseline.
+ * Latencies are in milliseconds.
+ */
+final class LoadTestReport {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+      .enable(SerializationFeature.INDENT_OUTPUT);
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+  private final Map<String, Object> report = new LinkedHashMap<>();
+  private final Map<String, Map<String, Object>> operations = new LinkedHashMap<>();
+
+  LoadTestReport(Instant startedAt, LoadTestOptions options, List<OperationStats> stats,
+      long gcCount, long gcMillis) {
+    double seconds = options.duration().toMillis() / 1000.0;
+    for (OperationStats operation : stats) {
+      Histogram responseTime = operation.getResponseTime();
+      Map<String, Object> summary = new LinkedHashMap<>();
+      summary.put("count", responseTime.getTotalCount());
+      summary.put("throughput", round(responseTime.getTotalCount() / seconds));
+      summary.put("errors", operation.getErrors());
+      long attempts = operation.getAttemptCount();
+      summary.put("errorRate", attempts == 0 ? 0
+          : round((double) operation.getErrorCount() / attempts));
+      summary.put("responseTime", latencies(responseTime));
+      summary.put("serviceTime", latencies(operation.getServiceTime()));
+      this.operations.put(operation.getOperation().getName(), summary);
+    }
+    this.report.put("startedAt", startedAt.toString());
+    this.report.put("options", options.describe());
+    this.report.put("operations", this.operations);
+    // The service shares the JVM when it runs in-process, so its collections are included.
+    this.report.put("gc", Map.of("collections", gcCount, "timeMillis", gcMillis));
+  }
+
+  void write(Path file) throws IOException {
+    Files.createDirectories(file.toAbsolutePath().getParent());
+    MAPPER.writeValue(file.toFile(), this.report);
+  }
+
+  /**
+   * Prints a table of the response times, with the change against the baseline if there is one.
+   */
+  void print(PrintStream out, Path baseline) throws IOException {
+    JsonNode baselineOperations = baseline == null ? null
+        : MAPPER.readTree(baseline.toFile()).path("operations");
+    out.printf(Locale.ROOT, "%-10s %9s %9s %8s %9s %9s %9s %9s %9s%n", "operation", "count",
+        "ops/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+    this.operations.forEach((name, summary) -> {
+      @SuppressWarnings("unchecked")
+      Map<String, Double> latencies = (Map<String, Double>) summary.get("responseTime");
+      out.printf(Locale.ROOT, "%-10s %9d %9.1f %7.2f%% %9.2f %9.2f %9.2f %9.2f %9.2f%n", name,
+          (long) summary.get("count"), (double) summary.get("throughput"),
+          100 * ((Number) summary.get("errorRate")).doubleValue(), latencies.get("p50"),
+          latencies.get("p90"), latencies.get("p99"), latencies.get("p99.9"), latencies.get("max"));
+      if (baselineOperations != null && baselineOperations.has(name)) {
+        JsonNode before = baselineOperations.get(name);
+        JsonNode beforeLatencies = before.path("responseTime");
+        out.printf(Locale.ROOT, "%-10s %9s %9s %8s %9s %9s %9s %9s %9s%n", "  vs base", "",
+            change(before.path("throughput"), (double) summary.get("throughput")),
+            change(before.path("errorRate"), ((Number) summary.get("errorRate")).doubleValue()),
+            change(beforeLatencies.path("p50"), latencies.get("p50")),
+            change(beforeLatencies.path("p90"), latencies.get("p90")),
+            change(beforeLatencies.path("p99"), latencies.get("p99")),
+            change(beforeLatencies.path("p99.9"), latencies.get("p99.9")),
+            change(beforeLatencies.path("max"), latencies.get("max")));
+      }
+    });
+  }
+
+  private static Map<String, Double> latencies(Histogram histogram) {
+    Map<String, Double> latencies = new LinkedHashMap<>();
+    latencies.put("mean", millis(histogram.getMean()));
+    for (double percentile : PERCENTILES) {
+      latencies.put("p" + (percentile == Math.rint(percentile)
+              ? String.valueOf((int) percentile) : String.valueOf(percentile)),
+          millis(histogram.getValueAtPercentile(percentile)));
+    }
+    latencies.put("max", millis(histogram.getMaxValue()));
+    return latencies;
+  }
+
+  private static String change(JsonNode before, double after) {
+    if (!before.isNumber() || before.asDouble() == 0) {
+      return "-";
+    }
+    return String.format(Locale.ROOT, "%+.1f%%", 100 * (after - before.asDouble())
+        / before.asDouble());
+  }
+
+  private static double millis(double micros) {
+    return round(micros / 1000);
+  }
+
+  private static double round(double value) {
+    return Math.round(value * 1000) / 1000.0;
+  }
+}
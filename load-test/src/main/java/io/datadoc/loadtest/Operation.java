@@ -0,0 +1,52 @@
+package io.datadoc.loadtest;
+
+import java.util.Locale;
+
+/**
+ * The GraphQL operations of the load mix.
+ */
+enum Operation {
+  LOGIN("""
+      mutation Login($email: String!, $password: String!) {
+        login(credentials: {email: $email, password: $password}) {
+          accessToken refreshToken idToken
+        }
+      }"""),
+  ME("""
+      query Me($accessToken: String!) {
+        me(accessToken: $accessToken) { id username email emailVerified }
+      }"""),
+  REFRESH("""
+      mutation Refresh($refreshToken: String!) {
+        refresh(refreshToken: $refreshToken) { accessToken refreshToken idToken }
+      }"""),
+  LOGOUT("""
+      mutation Logout($idToken: String!) {
+        logout(idToken: $idToken)
+      }"""),
+  REVOKE("""
+      mutation Revoke($token: String!) {
+        revoke(token: $token)
+      }""");
+
+  private final String document;
+
+  Operation(String document) {
+    this.document = document;
+  }
+
+  String getDocument() {
+    return this.document;
+  }
+
+  /**
+   * Returns the name of the GraphQL field, also used in the options and the report.
+   */
+  String getName() {
+    return name().toLowerCase(Locale.ROOT);
+  }
+
+  static Operation forName(String name) {
+    return valueOf(name.trim().toUpperCase(Locale.ROOT));
+  }
+}
@@ -0,0 +1,111 @@
+package io.datadoc.loadtest;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * OperationStats records the latencies and errors of one operation, in microseconds.
+ *
+ * <p>The response time is measured from the moment the request was scheduled to start, not from
+ * when it was sent. When the service stalls, the requests that should have been sent meanwhile are
+ * late, and their wait counts against the service - measuring from the send would hide it
+ * (coordinated omission). The service time, from the send, is recorded next to it: the difference
+ * between the two is the time requests queued in the load generator.
+ */
+final class OperationStats {
+
+  private static final int SIGNIFICANT_DIGITS = 3;
+  private final Operation operation;
+  private final Recorder responseTimeRecorder = new Recorder(SIGNIFICANT_DIGITS);
+  private final Recorder serviceTimeRecorder = new Recorder(SIGNIFICANT_DIGITS);
+  private final Histogram responseTime = new Histogram(SIGNIFICANT_DIGITS);
+  private final Histogram serviceTime = new Histogram(SIGNIFICANT_DIGITS);
+  private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+  private final LongAdder notSent = new LongAdder();
+  private Histogram responseTimeInterval;
+  private Histogram serviceTimeInterval;
+
+  OperationStats(Operation operation) {
+    this.operation = operation;
+  }
+
+  Operation getOperation() {
+    return this.operation;
+  }
+
+  /**
+   * Records a completed operation. Called concurrently.
+   *
+   * @param scheduledNanos When the operation was scheduled to start.
+   * @param sentNanos      When it was sent.
+   * @param endNanos       When it completed.
+   * @param error          The kind of the error or null if it succeeded.
+   */
+  void record(long scheduledNanos, long sentNanos, long endNanos, String error) {
+    this.responseTimeRecorder.recordValue(toMicros(endNanos - scheduledNanos));
+    this.serviceTimeRecorder.recordValue(toMicros(endNanos - sentNanos));
+    if (error != null) {
+      this.errors.computeIfAbsent(error, e -> new LongAdder()).increment();
+    }
+  }
+
+  /**
+   * Counts an operation that failed without being sent.
+   */
+  void countError(String error) {
+    this.notSent.increment();
+    this.errors.computeIfAbsent(error, e -> new LongAdder()).increment();
+  }
+
+  /**
+   * Moves the values recorded since the last call into the totals. Called by one thread.
+   *
+   * @return The response times of the interval.
+   */
+  Histogram nextInterval() {
+    this.responseTimeInterval = this.responseTimeRecorder.getIntervalHistogram(
+        this.responseTimeInterval);
+    this.serviceTimeInterval = this.serviceTimeRecorder.getIntervalHistogram(
+        this.serviceTimeInterval);
+    this.responseTime.add(this.responseTimeInterval);
+    this.serviceTime.add(this.serviceTimeInterval);
+    return this.responseTimeInterval;
+  }
+
+  Histogram getResponseTime() {
+    return this.responseTime;
+  }
+
+  Histogram getServiceTime() {
+    return this.serviceTime;
+  }
+
+  /**
+   * Returns the errors by kind, sorted by name.
+   */
+  Map<String, Long> getErrors() {
+    Map<String, Long> errors = new TreeMap<>();
+    this.errors.forEach((error, count) -> errors.put(error, count.sum()));
+    return errors;
+  }
+
+  /**
+   * Returns the number of operations attempted - sent or not.
+   */
+  long getAttemptCount() {
+    return this.responseTime.getTotalCount() + this.notSent.sum();
+  }
+
+  long getErrorCount() {
+    return this.errors.values().stream().mapToLong(LongAdder::sum).sum();
+  }
+
+  private static long toMicros(long nanos) {
+    return Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+  }
+}
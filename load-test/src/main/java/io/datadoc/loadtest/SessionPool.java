@@ -0,0 +1,82 @@
+package io.datadoc.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * SessionPool holds the tokens of the simulated users - slot i belongs to user i + 1. A login
+ * fills the slot of a user that is logged out, refresh replaces its tokens, logout and revoke
+ * empty it. The other operations pick a random user that is logged in.
+ */
+final class SessionPool {
+
+  private static final int PROBES = 8;
+  private final AtomicReferenceArray<Tokens> slots;
+
+  SessionPool(int users) {
+    this.slots = new AtomicReferenceArray<>(users);
+  }
+
+  int size() {
+    return this.slots.length();
+  }
+
+  /**
+   * Picks a random logged in user.
+   *
+   * @return The slot of the user or -1 if nobody is logged in.
+   */
+  int pick() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int length = this.slots.length();
+    for (int i = 0; i < PROBES; i++) {
+      int slot = random.nextInt(length);
+      if (this.slots.get(slot) != null) {
+        return slot;
+      }
+    }
+    int start = random.nextInt(length);
+    for (int i = 0; i < length; i++) {
+      int slot = (start + i) % length;
+      if (this.slots.get(slot) != null) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Picks a random user that is logged out - or any user if everybody is logged in.
+   */
+  int pickLoggedOut() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int length = this.slots.length();
+    int start = random.nextInt(length);
+    for (int i = 0; i < length; i++) {
+      int slot = (start + i) % length;
+      if (this.slots.get(slot) == null) {
+        return slot;
+      }
+    }
+    return start;
+  }
+
+  Tokens get(int slot) {
+    return this.slots.get(slot);
+  }
+
+  /**
+   * Empties the slot, so no other operation uses the tokens of a session being ended.
+   */
+  Tokens take(int slot) {
+    return this.slots.getAndSet(slot, null);
+  }
+
+  void put(int slot, Tokens tokens) {
+    this.slots.set(slot, tokens);
+  }
+
+  record Tokens(String accessToken, String refreshToken, String idToken) {
+
+  }
+}
@@ -0,0 +1,115 @@
+package io.datadoc.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.datadoc.loadtest.SessionPool.Tokens;
+import java.util.Map;
+
+/**
+ * Workload runs one operation as a simulated user. Users follow the stub's convention -
+ * user&lt;n&gt;@loadtest.local with the password user&lt;n&gt;pass - and keep their tokens in the
+ * SessionPool between operations.
+ */
+final class Workload {
+
+  /**
+   * Error kind of an operation that found no logged in user - the mix ends sessions faster than
+   * it logs in.
+   */
+  static final String NO_SESSION = "no_session";
+  private final GraphQlClient client;
+  private final SessionPool sessions;
+
+  Workload(GraphQlClient client, SessionPool sessions) {
+    this.client = client;
+    this.sessions = sessions;
+  }
+
+  /**
+   * Logs every user in, so the measured mix starts with a full pool.
+   *
+   * @return The number of users that failed to log in.
+   */
+  int logInAll() throws InterruptedException {
+    int failed = 0;
+    for (int slot = 0; slot < this.sessions.size(); slot++) {
+      if (login(slot) != null) {
+        failed++;
+      }
+    }
+    return failed;
+  }
+
+  /**
+   * Runs the operation.
+   *
+   * @param operation The operation.
+   * @return null if the operation succeeded, the kind of the error otherwise.
+   */
+  String run(Operation operation) throws InterruptedException {
+    return switch (operation) {
+      case LOGIN -> login(this.sessions.pickLoggedOut());
+      case ME -> me();
+      case REFRESH -> refresh();
+      case LOGOUT -> endSession(Operation.LOGOUT);
+      case REVOKE -> endSession(Operation.REVOKE);
+    };
+  }
+
+  private String login(int slot) throws InterruptedException {
+    String user = "user" + (slot + 1);
+    GraphQlClient.Result result = this.client.execute(Operation.LOGIN, Map.of(
+        "email", user + "@loadtest.local",
+        "password", user + "pass"
+    ));
+    if (result.error() == null) {
+      this.sessions.put(slot, tokens(result.data()));
+    }
+    return result.error();
+  }
+
+  private String me() throws InterruptedException {
+    int slot = this.sessions.pick();
+    Tokens tokens = slot < 0 ? null : this.sessions.get(slot);
+    if (tokens == null) {
+      return NO_SESSION;
+    }
+    return this.client.execute(Operation.ME, Map.of("accessToken", tokens.accessToken())).error();
+  }
+
+  private String refresh() throws InterruptedException {
+    int slot = this.sessions.pick();
+    Tokens tokens = slot < 0 ? null : this.sessions.get(slot);
+    if (tokens == null) {
+      return NO_SESSION;
+    }
+    GraphQlClient.Result result = this.client.execute(Operation.REFRESH,
+        Map.of("refreshToken", tokens.refreshToken()));
+    if (result.error() == null) {
+      this.sessions.put(slot, tokens(result.data()));
+    }
+    return result.error();
+  }
+
+  /**
+   * Logs out with the ID token or revokes the refresh token - both end the session.
+   */
+  private String endSession(Operation operation) throws InterruptedException {
+    int slot = this.sessions.pick();
+    Tokens tokens = slot < 0 ? null : this.sessions.take(slot);
+    if (tokens == null) {
+      return NO_SESSION;
+    }
+    Map<String, Object> variables = operation == Operation.LOGOUT
+        ? Map.of("idToken", tokens.idToken())
+        : Map.of("token", tokens.refreshToken());
+    return this.client.execute(operation, variables).error();
+  }
+
+  private static Tokens tokens(JsonNode payload) {
+    return new Tokens(
+        payload.path("accessToken").asText(),
+        payload.path("refreshToken").asText(),
+        payload.path("idToken").asText()
+    );
+  }
+}